@@ -80,9 +80,11 @@ public abstract class AbstractKapuaConverter
         if ((Message) message.getJmsMessage() instanceof javax.jms.BytesMessage) {
             try {
                 Date queuedOn = new Date(message.getHeader(CamelConstants.JMS_HEADER_TIMESTAMP, Long.class));
-                KapuaId connectionId = (KapuaId) message.getHeader(MessageConstants.HEADER_KAPUA_CONNECTION_ID);
-                ConnectorDescriptor connectorDescriptor = (ConnectorDescriptor) message.getHeader(MessageConstants.HEADER_KAPUA_CONNECTOR_DEVICE_PROTOCOL);
-                return JmsUtil.convertToCamelKapuaMessage(connectorDescriptor, messageType, (byte[]) value, CamelUtil.getTopic(message), queuedOn, connectionId);
+                KapuaId connectionId = CamelUtil.getConnectionId(message);
+                ConnectorDescriptor connectorDescriptor = CamelUtil.getConnectorDescriptor(message);
+                // topic tokens already split by the topic classifier (if the route classified the message)
+                String[] topicTokens = message.getHeader(MessageConstants.HEADER_KAPUA_TOPIC_TOKENS, String[].class);
+                return JmsUtil.convertToCamelKapuaMessage(connectorDescriptor, messageType, (byte[]) value, CamelUtil.getTopic(message), topicTokens, queuedOn, connectionId);
             }
             catch (JMSException e) {
                 metricConverterErrorMessage.inc();
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.converter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.eclipse.kapua.broker.core.message.CamelUtil;
+import org.eclipse.kapua.broker.core.message.MessageConstants;
+import org.eclipse.kapua.broker.core.plugin.ConnectorDescriptor.MESSAGE_TYPE;
+import org.eclipse.kapua.transport.jms.setting.JmsClientSetting;
+import org.eclipse.kapua.transport.jms.setting.JmsClientSettingKeys;
+
+/**
+ * Kapua Camel processor used to classify the incoming messages by topic.<br>
+ * The topic is split once and matched against a trie compiled from the known life cycle topics
+ * ({@code $EDC.{account}.{clientId}.MQTT.BIRTH} and so on). The topics starting with {@code $EDC} which don't match any life cycle topic are
+ * unmatched messages, all the other topics are data messages.<br>
+ * The result is set in the message headers ({@link MessageConstants#HEADER_KAPUA_TOPIC_CLASS} for the route choice and
+ * {@link MessageConstants#HEADER_KAPUA_TOPIC_TOKENS} for the converters), so the converters don't have to split the topic again.<br>
+ * The topic is split by the same separator of the JMS topics ({@link JmsClientSetting}.{@link JmsClientSettingKeys#TRANSPORT_TOPIC_SEPARATOR}).
+ *
+ * @since 1.0
+ */
+public class KapuaTopicClassifier implements Processor
+{
+
+    private static final String TOPIC_SEPARATOR = JmsClientSetting.getInstance().getString(JmsClientSettingKeys.TRANSPORT_TOPIC_SEPARATOR);
+    private static final String CONTROL_PREFIX  = "$EDC";
+    private static final String ANY_LEVEL       = "+";
+
+    private final TrieNode lifeCycleTopics = new TrieNode();
+
+    /**
+     * Constructor
+     */
+    public KapuaTopicClassifier()
+    {
+        addLifeCycleTopic(MESSAGE_TYPE.birth, "BIRTH");
+        addLifeCycleTopic(MESSAGE_TYPE.disconnect, "DC");
+        addLifeCycleTopic(MESSAGE_TYPE.app, "APPS");
+        addLifeCycleTopic(MESSAGE_TYPE.missing, "LWT");
+        addLifeCycleTopic(MESSAGE_TYPE.notify, "NOTIFY");
+    }
+
+    @Override
+    public void process(Exchange exchange)
+        throws Exception
+    {
+        Message message = exchange.getIn();
+        ClassifiedTopic classifiedTopic = classify(CamelUtil.getTopic(message));
+
+        message.setHeader(MessageConstants.HEADER_KAPUA_TOPIC_CLASS, classifiedTopic.getMessageType().name());
+        message.setHeader(MessageConstants.HEADER_KAPUA_TOPIC_TOKENS, classifiedTopic.getTokens());
+    }
+
+    /**
+     * Classify the topic
+     *
+     * @param topic
+     * @return
+     */
+    public ClassifiedTopic classify(String topic)
+    {
+        String[] tokens = split(topic);
+        if (!topic.startsWith(CONTROL_PREFIX + TOPIC_SEPARATOR)) {
+            // {account}.{clientId}.{semantic topic}
+            return new ClassifiedTopic(MESSAGE_TYPE.data, tokens, 0);
+        }
+
+        TrieNode node = lifeCycleTopics;
+        for (int i = 1; i < tokens.length && node != null; i++) {
+            TrieNode child = node.children.get(tokens[i]);
+            node = child != null ? child : node.anyLevel;
+        }
+        MESSAGE_TYPE messageType = node != null && node.messageType != null ? node.messageType : MESSAGE_TYPE.unmatched;
+        // $EDC.{account}.{clientId}.{semantic topic}
+        return new ClassifiedTopic(messageType, tokens, 1);
+    }
+
+    private void addLifeCycleTopic(MESSAGE_TYPE messageType, String lifeCycleTopic)
+    {
+        TrieNode node = lifeCycleTopics;
+        // the account and the client id are single topic levels (the broker acls don't allow anything else)
+        for (String token : Arrays.asList(ANY_LEVEL, ANY_LEVEL, "MQTT", lifeCycleTopic)) {
+            if (ANY_LEVEL.equals(token)) {
+                if (node.anyLevel == null) {
+                    node.anyLevel = new TrieNode();
+                }
+                node = node.anyLevel;
+            }
+            else {
+                node = node.children.computeIfAbsent(token, t -> new TrieNode());
+            }
+        }
+        node.messageType = messageType;
+    }
+
+    /**
+     * Split the topic as {@link String#split(String)} does (trailing empty tokens are removed), without regular expressions
+     *
+     * @param topic
+     * @return
+     */
+    private static String[] split(String topic)
+    {
+        List<String> tokens = new ArrayList<>(8);
+        int start = 0;
+        int end;
+        while ((end = topic.indexOf(TOPIC_SEPARATOR, start)) >= 0) {
+            tokens.add(topic.substring(start, end));
+            start = end + TOPIC_SEPARATOR.length();
+        }
+        tokens.add(topic.substring(start));
+        while (tokens.size() > 1 && tokens.get(tokens.size() - 1).isEmpty()) {
+            tokens.remove(tokens.size() - 1);
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    private static class TrieNode
+    {
+
+        private final Map<String, TrieNode> children = new HashMap<>();
+        private TrieNode                    anyLevel;
+        private MESSAGE_TYPE                messageType;
+    }
+
+    /**
+     * Topic classification result (the account, the client id and the semantic topic are read from the tokens on request)
+     *
+     * @since 1.0
+     */
+    public static class ClassifiedTopic
+    {
+
+        private final MESSAGE_TYPE messageType;
+        private final String[]     tokens;
+        private final int          accountIndex;
+
+        private ClassifiedTopic(MESSAGE_TYPE messageType, String[] tokens, int accountIndex)
+        {
+            this.messageType = messageType;
+            this.tokens = tokens;
+            this.accountIndex = accountIndex;
+        }
+
+        public MESSAGE_TYPE getMessageType()
+        {
+            return messageType;
+        }
+
+        public String[] getTokens()
+        {
+            return tokens;
+        }
+
+        public String getAccount()
+        {
+            return tokens.length > accountIndex ? tokens[accountIndex] : null;
+        }
+
+        public String getClientId()
+        {
+            return tokens.length > accountIndex + 1 ? tokens[accountIndex + 1] : null;
+        }
+
+        public String getSemanticTopic()
+        {
+            return tokens.length > accountIndex + 2 ? String.join(TOPIC_SEPARATOR, Arrays.asList(tokens).subList(accountIndex + 2, tokens.length)) : null;
+        }
+    }
+}
@@ -59,10 +59,13 @@ public class DataStorageMessageProcessor extends AbstractProcessor<CamelKapuaMes
     }
 
     /**
-     * Process a data message.
+     * Process a data message.<BR>
+     * The method returns once the message is stored, so the message is acknowledged only after it is persisted. If the store fails the
+     * exception is thrown to the route, so the message is delivered again (and then sent to the error listener).
      */
     @Override
     public void processMessage(CamelKapuaMessage<?> message)
+        throws KapuaException
     {
         metricStorageMessage.inc();
 
@@ -70,15 +73,20 @@ public class DataStorageMessageProcessor extends AbstractProcessor<CamelKapuaMes
         //
 
         // data messages
+        // with the bulk ingestion the store waits for the bulk holding the message. The bulk is flushed as soon as the ingester
+        // drains its queue, so the messages of the concurrent consumers are written together without waiting for a full bulk
+        Context metricStorageDataSaveTimeContext = metricStorageDataSaveTime.time();
         try {
-            Context metricStorageDataSaveTimeContext = metricStorageDataSaveTime.time();
             MessageCreator mc = datastoreObjectFactory.newMessageCreator();
             messageStoreService.store(message.getMessage().getScopeId(), mc);
-            metricStorageDataSaveTimeContext.stop();
         }
         catch (KapuaException e) {
             metricStorageDataErrorMessage.inc();
             logger.error("An error occurred while storing message: {}", e.getCode().toString());
+            throw e;
+        }
+        finally {
+            metricStorageDataSaveTimeContext.stop();
         }
     }
 
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.broker.core.message;
 
+import java.math.BigInteger;
+
 import javax.jms.JMSException;
 
 import org.apache.activemq.command.ActiveMQDestination;
@@ -19,6 +21,12 @@ import org.apache.activemq.command.ActiveMQTopic;
 import org.apache.camel.Message;
 import org.eclipse.kapua.broker.core.listener.CamelConstants;
 import org.eclipse.kapua.broker.core.plugin.AclConstants;
+import org.eclipse.kapua.broker.core.plugin.ConnectionRegistry;
+import org.eclipse.kapua.broker.core.plugin.ConnectorDescriptor;
+import org.eclipse.kapua.broker.core.plugin.KapuaSecurityContext;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.model.id.KapuaId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,4 +66,80 @@ public class CamelUtil
         }
     }
 
+    /**
+     * Return the session of the connection that published the message (as set by the broker filter).<BR>
+     * If the connection is no more registered (i.e. the message was stored before a broker restart) the session is rebuilt from the
+     * scope and user ids of the message.
+     * 
+     * @param message
+     * @return the session or null if the message was not published by a device connection
+     */
+    public static KapuaSession getKapuaSession(org.apache.camel.Message message)
+    {
+        KapuaSecurityContext securityContext = getSecurityContext(message);
+        if (securityContext != null) {
+            return securityContext.getKapuaSession();
+        }
+
+        KapuaId scopeId = getKapuaId(message, MessageConstants.HEADER_KAPUA_SCOPE_ID);
+        KapuaId userId = getKapuaId(message, MessageConstants.HEADER_KAPUA_USER_ID);
+        if (scopeId == null || userId == null) {
+            return null;
+        }
+        logger.debug("Connection {} not registered, restoring the session of scope {} and user {}",
+                     new Object[] { message.getHeader(MessageConstants.HEADER_KAPUA_CONNECTION_HANDLE), scopeId, userId });
+        return ConnectionRegistry.getInstance().restoreSession(scopeId, userId);
+    }
+
+    /**
+     * Return the device connection id of the connection that published the message (or null if not known)
+     * 
+     * @param message
+     * @return
+     */
+    public static KapuaId getConnectionId(org.apache.camel.Message message)
+    {
+        // the device connection is written asynchronously, so the registered connection may know it even if the message doesn't
+        KapuaSecurityContext securityContext = getSecurityContext(message);
+        if (securityContext != null && securityContext.getConnectionId() != null) {
+            return securityContext.getConnectionId();
+        }
+        return getKapuaId(message, MessageConstants.HEADER_KAPUA_CONNECTION_ID);
+    }
+
+    /**
+     * Return the descriptor of the connector the message was published to (or null if not known)
+     * 
+     * @param message
+     * @return
+     */
+    public static ConnectorDescriptor getConnectorDescriptor(org.apache.camel.Message message)
+    {
+        Integer connectorId = message.getHeader(MessageConstants.HEADER_KAPUA_CONNECTOR_ID, Integer.class);
+        return connectorId != null ? ConnectionRegistry.getInstance().getConnectorDescriptor(connectorId) : null;
+    }
+
+    private static KapuaSecurityContext getSecurityContext(org.apache.camel.Message message)
+    {
+        Long handle = message.getHeader(MessageConstants.HEADER_KAPUA_CONNECTION_HANDLE, Long.class);
+        if (handle == null) {
+            return null;
+        }
+
+        KapuaSecurityContext securityContext = ConnectionRegistry.getInstance().getConnection(handle);
+        // the handles are not reused, anyway never resolve the connection of another scope
+        Long scopeId = message.getHeader(MessageConstants.HEADER_KAPUA_SCOPE_ID, Long.class);
+        if (securityContext != null && (scopeId == null || securityContext.getKapuaSession().getScopeId().getId().longValue() != scopeId)) {
+            logger.warn("Connection {} doesn't belong to the message scope, ignoring it", handle);
+            return null;
+        }
+        return securityContext;
+    }
+
+    private static KapuaId getKapuaId(org.apache.camel.Message message, String header)
+    {
+        Long id = message.getHeader(header, Long.class);
+        return id != null ? new KapuaEid(BigInteger.valueOf(id)) : null;
+    }
+
 }
@@ -13,8 +13,6 @@
 package org.eclipse.kapua.broker.core.message;
 
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.jms.BytesMessage;
 import javax.jms.JMSException;
@@ -42,22 +40,11 @@ import org.slf4j.LoggerFactory;
  * @since 1.0
  * 
  */
-// TODO add translator caching
 public class JmsUtil
 {
 
     public static final Logger logger = LoggerFactory.getLogger(JmsUtil.class);
 
-    @SuppressWarnings("rawtypes")
-    private final static Map<String, Translator<JmsMessage, DeviceMessage>>   translatorFromJmsMap = new HashMap<String, Translator<JmsMessage, DeviceMessage>>();
-    @SuppressWarnings("rawtypes")
-    private final static Map<String, Translator<DeviceMessage, KapuaMessage>> translatorToKapuaMap = new HashMap<String, Translator<DeviceMessage, KapuaMessage>>();
-
-    @SuppressWarnings("rawtypes")
-    private final static Map<String, Translator<KapuaMessage, DeviceMessage>> translatorFromKapuaMap = new HashMap<String, Translator<KapuaMessage, DeviceMessage>>();
-    @SuppressWarnings("rawtypes")
-    private final static Map<String, Translator<DeviceMessage, JmsMessage>>   translatorToJmsMap     = new HashMap<String, Translator<DeviceMessage, JmsMessage>>();
-
     /**
      * Return the topic for the message's destination
      * 
@@ -136,7 +123,7 @@ public class JmsUtil
             int readBytes = jmsMessage.readBytes(payload);
             logger.debug("Message conversion... {} bytes read!", readBytes);
         }
-        KapuaMessage kapuaMessage = convertToKapuaMessage(deviceMessageType, kapuaMessageType, payload, jmsTopic, queuedOn, connectionId);
+        KapuaMessage kapuaMessage = convertToKapuaMessage(deviceMessageType, kapuaMessageType, payload, new JmsTopic(jmsTopic), queuedOn, connectionId);
         return new CamelKapuaMessage(kapuaMessage, connectionId, connectorDescriptor);
     }
 
@@ -152,9 +139,35 @@ public class JmsUtil
      * @return
      * @throws KapuaException
      */
-    @SuppressWarnings({ "rawtypes", "unchecked" })
     public static CamelKapuaMessage<?> convertToCamelKapuaMessage(ConnectorDescriptor connectorDescriptor, MESSAGE_TYPE messageType, byte[] messageBody, String jmsTopic, Date queuedOn, KapuaId connectionId)
         throws KapuaException
+    {
+        return convertToCamelKapuaMessage(connectorDescriptor, messageType, messageBody, new JmsTopic(jmsTopic), queuedOn, connectionId);
+    }
+
+    /**
+     * Convert raw byte[] message to {@link CamelKapuaMessage} reusing the topic tokens already available (e.g. set by the topic classification)
+     * 
+     * @param connectorDescriptor
+     * @param messageType
+     * @param messageBody
+     * @param jmsTopic
+     * @param jmsTopicTokens topic tokens (if null the topic is split by the translators)
+     * @param queuedOn
+     * @param connectionId
+     * @return
+     * @throws KapuaException
+     */
+    public static CamelKapuaMessage<?> convertToCamelKapuaMessage(ConnectorDescriptor connectorDescriptor, MESSAGE_TYPE messageType, byte[] messageBody, String jmsTopic, String[] jmsTopicTokens, Date queuedOn,
+                                                                  KapuaId connectionId)
+        throws KapuaException
+    {
+        return convertToCamelKapuaMessage(connectorDescriptor, messageType, messageBody, new JmsTopic(jmsTopic, jmsTopicTokens), queuedOn, connectionId);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static CamelKapuaMessage<?> convertToCamelKapuaMessage(ConnectorDescriptor connectorDescriptor, MESSAGE_TYPE messageType, byte[] messageBody, JmsTopic jmsTopic, Date queuedOn, KapuaId connectionId)
+        throws KapuaException
     {
         KapuaMessage kapuaMessage = convertToKapuaMessage(connectorDescriptor.getDeviceClass(messageType), connectorDescriptor.getKapuaClass(messageType), messageBody, jmsTopic, queuedOn, connectionId);
         return new CamelKapuaMessage(kapuaMessage, connectionId, connectorDescriptor);
@@ -173,24 +186,15 @@ public class JmsUtil
      * @throws KapuaException
      */
     @SuppressWarnings("rawtypes")
-    private static KapuaMessage convertToKapuaMessage(Class<DeviceMessage<?, ?>> deviceMessageType, Class<KapuaMessage<?, ?>> kapuaMessageType, byte[] messageBody, String jmsTopic, Date queuedOn, KapuaId connectionId)
+    private static KapuaMessage convertToKapuaMessage(Class<DeviceMessage<?, ?>> deviceMessageType, Class<KapuaMessage<?, ?>> kapuaMessageType, byte[] messageBody, JmsTopic jmsTopic, Date queuedOn, KapuaId connectionId)
         throws KapuaException
     {
-        Translator<JmsMessage, DeviceMessage<?, ?>> translatorFromJms = null;// = translatorFromJmsMap.get(connectorDescriptor.getDeviceProtocolName());
-        if (translatorFromJms == null) {
-            // lookup
-            translatorFromJms = Translator.getTranslatorFor(JmsMessage.class, deviceMessageType);// birth ...
-            // translatorFromJmsMap.put(protocol, translatorFromJms);
-        }
-        DeviceMessage deviceMessage = translatorFromJms.translate(new JmsMessage(new JmsTopic(jmsTopic), queuedOn, new JmsPayload(messageBody)));
+        // first step... from jms to device dependent protocol level (unknown)
+        Translator<JmsMessage, DeviceMessage<?, ?>> translatorFromJms = Translator.getTranslatorFor(JmsMessage.class, deviceMessageType);// birth ...
+        DeviceMessage deviceMessage = translatorFromJms.translate(new JmsMessage(jmsTopic, queuedOn, new JmsPayload(messageBody)));
 
         // second step.... from device dependent protocol (unknown) to Kapua
-        Translator<DeviceMessage<?, ?>, KapuaMessage<?, ?>> translatorToKapua = null;// = translatorToKapuaMap.get(connectorDescriptor.getDeviceProtocolName());
-        if (translatorToKapua == null) {
-            // lookup
-            translatorToKapua = Translator.getTranslatorFor(deviceMessageType, kapuaMessageType);
-            // translatorToKapuaMap.put(protocol, translatorToKapua);
-        }
+        Translator<DeviceMessage<?, ?>, KapuaMessage<?, ?>> translatorToKapua = Translator.getTranslatorFor(deviceMessageType, kapuaMessageType);
         return translatorToKapua.translate(deviceMessage);
     }
 
@@ -208,21 +212,11 @@ public class JmsUtil
     public static JmsMessage convertToJmsMessage(ConnectorDescriptor connectorDescriptor, MESSAGE_TYPE messageType, KapuaMessage kapuaMessage) throws KapuaException, ClassNotFoundException
     {
         // first step... from Kapua to device level
-        Translator<KapuaMessage<?, ?>, DeviceMessage<?, ?>> translatorFromKapua = null; // translatorFromKapuaMap.get(protocol);
-        if (translatorFromKapua == null) {
-            // lookup
-            translatorFromKapua = Translator.getTranslatorFor(connectorDescriptor.getKapuaClass(messageType), connectorDescriptor.getDeviceClass(messageType));
-            // translatorFromKapuaMap.put(protocol, translatorFromKapua);
-        }
+        Translator<KapuaMessage<?, ?>, DeviceMessage<?, ?>> translatorFromKapua = Translator.getTranslatorFor(connectorDescriptor.getKapuaClass(messageType), connectorDescriptor.getDeviceClass(messageType));
         DeviceMessage deviceMessage = translatorFromKapua.translate(kapuaMessage);
 
         // second step.... from device level to jms
-        Translator<DeviceMessage<?, ?>, JmsMessage> translatorToJms = null; // translatorToJmsMap.get(protocol);
-        if (translatorToJms == null) {
-            // lookup
-            translatorToJms = Translator.getTranslatorFor(connectorDescriptor.getDeviceClass(messageType), JmsMessage.class);
-            // translatorToJmsMap.put(protocol, translatorToJms);
-        }
+        Translator<DeviceMessage<?, ?>, JmsMessage> translatorToJms = Translator.getTranslatorFor(connectorDescriptor.getDeviceClass(messageType), JmsMessage.class);
         return translatorToJms.translate(deviceMessage);
     }
 
@@ -32,8 +32,18 @@ public class MessageConstants
     public static final String METRIC_USER_ID = "userId";
     public static final String METRIC_NODE_ID = "nodeId";
 
-    public static final String HEADER_KAPUA_CONNECTION_ID             = "KAPUA_CONNECTION_ID";
-    public static final String HEADER_KAPUA_CONNECTOR_DEVICE_PROTOCOL = "KAPUA_DEVICE_PROTOCOL";
-    public static final String HEADER_KAPUA_SESSION                   = "KAPUA_SESSION";
+    // prefix of the headers set by the broker (the ones published by the clients are removed by the broker filter)
+    public static final String HEADER_KAPUA_PREFIX = "KAPUA_";
+
+    // set by the broker filter (primitives only, the connection and the connector are resolved through the connection registry)
+    public static final String HEADER_KAPUA_CONNECTION_HANDLE = "KAPUA_CONNECTION_HANDLE";
+    public static final String HEADER_KAPUA_CONNECTOR_ID      = "KAPUA_CONNECTOR_ID";
+    public static final String HEADER_KAPUA_CONNECTION_ID     = "KAPUA_CONNECTION_ID";
+    public static final String HEADER_KAPUA_SCOPE_ID          = "KAPUA_SCOPE_ID";
+    public static final String HEADER_KAPUA_USER_ID           = "KAPUA_USER_ID";
+
+    // set by the topic classifier
+    public static final String HEADER_KAPUA_TOPIC_CLASS  = "KAPUA_TOPIC_CLASS";
+    public static final String HEADER_KAPUA_TOPIC_TOKENS = "KAPUA_TOPIC_TOKENS";
 
 }
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.activemq.command.ActiveMQDestination;
+
+/**
+ * Authorization rules of a permission profile (admin, provisioning or the combination of the device manage, data view and data manage
+ * permissions).<br>
+ * The rules are built once per profile and shared by all the connections with that profile: the account and client id dependent parts of
+ * the destinations are placeholders, bound by each connection {@link KapuaAuthorizationMap}.
+ *
+ * @since 1.0
+ */
+public class AclTemplate {
+
+    static final String ACCOUNT_NAME = "${account}";
+    static final String CLIENT_ID = "${clientId}";
+    static final String FULL_CLIENT_ID = "${fullClientId}";
+
+    private static final AclTemplate ADMIN = buildAdminTemplate();
+    private static final AclTemplate PROVISIONING = buildProvisioningTemplate();
+    private static final AclTemplate[] USER = buildUserTemplates();
+
+    private final List<AclRule> rules = new ArrayList<>();
+
+    private AclTemplate() {
+    }
+
+    /**
+     * Return the rules of the admin user
+     * 
+     * @return
+     */
+    public static AclTemplate admin() {
+        return ADMIN;
+    }
+
+    /**
+     * Return the rules of a provisioning connection
+     * 
+     * @return
+     */
+    public static AclTemplate provisioning() {
+        return PROVISIONING;
+    }
+
+    /**
+     * Return the rules of a user with the provided permissions (the broker connect permission is already checked)
+     * 
+     * @param hasPermissions
+     *            the permissions indexed as {@link AclConstants#DEVICE_MANAGE_IDX}, {@link AclConstants#DATA_VIEW_IDX} and
+     *            {@link AclConstants#DATA_MANAGE_IDX}
+     * @return
+     */
+    public static AclTemplate forPermissions(boolean[] hasPermissions) {
+        return USER[profileIndex(hasPermissions[AclConstants.DEVICE_MANAGE_IDX],
+                hasPermissions[AclConstants.DATA_VIEW_IDX],
+                hasPermissions[AclConstants.DATA_MANAGE_IDX])];
+    }
+
+    public List<AclRule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    private static int profileIndex(boolean deviceManage, boolean dataView, boolean dataManage) {
+        return (deviceManage ? 4 : 0) | (dataView ? 2 : 0) | (dataManage ? 1 : 0);
+    }
+
+    private static AclTemplate buildAdminTemplate() {
+        AclTemplate template = new AclTemplate();
+        template.addRules(AclConstants.ACL_HASH, true, true, true);
+        template.addRules(AclConstants.ACL_AMQ_ADVISORY, false, true, true);
+        return template;
+    }
+
+    private static AclTemplate buildProvisioningTemplate() {
+        AclTemplate template = new AclTemplate();
+        // Write reply to any client Id and any application
+        template.addRules(MessageFormat.format(AclConstants.ACL_CTRL_ACC_REPLY, ACCOUNT_NAME), false, true, false);
+
+        // Publish only on MQTT/# for life-cycle messages and message that will trigger the provision service
+        template.addRules(MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI_MQTT_LIFE_CYCLE, ACCOUNT_NAME, CLIENT_ID), false, true, false);
+
+        // Read any control topic on its client id to be able to receive configurations and bundles
+        template.addRules(MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI, ACCOUNT_NAME, CLIENT_ID), true, false, false);
+
+        // FIXME: check if is correct "$EDC.{0}.>" instead of ">"
+        template.addRules(MessageFormat.format(AclConstants.ACL_CTRL_ACC, ACCOUNT_NAME), false, false, true);
+
+        template.addRules(AclConstants.ACL_AMQ_ADVISORY, false, true, true);
+        return template;
+    }
+
+    private static AclTemplate[] buildUserTemplates() {
+        AclTemplate[] templates = new AclTemplate[8];
+        for (boolean deviceManage : new boolean[] { false, true }) {
+            for (boolean dataView : new boolean[] { false, true }) {
+                for (boolean dataManage : new boolean[] { false, true }) {
+                    templates[profileIndex(deviceManage, dataView, dataManage)] = buildUserTemplate(deviceManage, dataView, dataManage);
+                }
+            }
+        }
+        return templates;
+    }
+
+    private static AclTemplate buildUserTemplate(boolean deviceManage, boolean dataView, boolean dataManage) {
+        AclTemplate template = new AclTemplate();
+        template.addRules(AclConstants.ACL_AMQ_ADVISORY, false, true, true);
+
+        if (deviceManage) {
+            template.addRules(MessageFormat.format(AclConstants.ACL_CTRL_ACC, ACCOUNT_NAME), true, true, true);
+        } else {
+            template.addRules(MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI, ACCOUNT_NAME, CLIENT_ID), true, true, true);
+        }
+
+        if (dataManage) {
+            template.addRules(MessageFormat.format(AclConstants.ACL_DATA_ACC, ACCOUNT_NAME), true, true, true);
+        } else if (dataView) {
+            template.addRules(MessageFormat.format(AclConstants.ACL_DATA_ACC, ACCOUNT_NAME), true, false, true);
+            template.addRules(MessageFormat.format(AclConstants.ACL_DATA_ACC_CLI, ACCOUNT_NAME, CLIENT_ID), false, true, false);
+        } else {
+            template.addRules(MessageFormat.format(AclConstants.ACL_DATA_ACC_CLI, ACCOUNT_NAME, CLIENT_ID), true, true, true);
+        }
+
+        template.addRules(MessageFormat.format(AclConstants.ACL_CTRL_ACC_REPLY, ACCOUNT_NAME), false, true, true);
+
+        // Write notify to any client Id and any application and operation
+        template.addRules(MessageFormat.format(AclConstants.ACL_CTRL_ACC_NOTIFY, ACCOUNT_NAME, CLIENT_ID), false, true, false);
+        return template;
+    }
+
+    private void addRules(String topic, boolean read, boolean write, boolean admin) {
+        rules.add(new AclRule(topic, ActiveMQDestination.TOPIC_TYPE, read, write, admin));
+        // added to support the vt topic name space for durable subscriptions
+        if (read) {
+            rules.add(new AclRule(MessageFormat.format(AclConstants.ACL_VT_DURABLE_PREFIX[0], FULL_CLIENT_ID, topic), ActiveMQDestination.QUEUE_TYPE, true, false, false));
+            rules.add(new AclRule(MessageFormat.format(AclConstants.ACL_VT_DURABLE_PREFIX[1], FULL_CLIENT_ID, topic), ActiveMQDestination.QUEUE_TYPE, true, false, false));
+        }
+    }
+
+    /**
+     * Authorization rule: the destination (with the account and client id placeholders) and the granted operations
+     */
+    public static class AclRule {
+
+        private final String destination;
+        private final byte destinationType;
+        private final boolean read;
+        private final boolean write;
+        private final boolean admin;
+
+        /**
+         * The destination paths, if the destination has no placeholders
+         */
+        private final String[] paths;
+
+        private AclRule(String destination, byte destinationType, boolean read, boolean write, boolean admin) {
+            this.destination = destination;
+            this.destinationType = destinationType;
+            this.read = read;
+            this.write = write;
+            this.admin = admin;
+            this.paths = destination.contains("${") ? null : ActiveMQDestination.createDestination(destination, destinationType).getDestinationPaths();
+        }
+
+        public String getDestination() {
+            return destination;
+        }
+
+        public byte getDestinationType() {
+            return destinationType;
+        }
+
+        public boolean isRead() {
+            return read;
+        }
+
+        public boolean isWrite() {
+            return write;
+        }
+
+        public boolean isAdmin() {
+            return admin;
+        }
+
+        String[] getPaths() {
+            return paths;
+        }
+    }
+}
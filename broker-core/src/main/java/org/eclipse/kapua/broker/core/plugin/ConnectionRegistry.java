@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.broker.core.setting.BrokerSetting;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Broker local registry of the connections and of the connectors.<BR>
+ * The messages published by the devices carry the numeric handle of the connection and the numeric id of the connector instead of the
+ * connection session and connector descriptor objects, so only primitives are stored with the persistent messages. The Camel routes,
+ * running in the same broker, resolve them through this registry.<BR>
+ * The messages may be consumed after the connection is closed, so the closed connections are kept for the configured retention.
+ * The handles are never reused (also across broker restarts), so a handle not found (i.e. a message stored before a restart) cannot
+ * resolve to another connection.
+ *
+ * @since 1.0
+ */
+public class ConnectionRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionRegistry.class);
+
+    private static final String METRIC_MODULE = "broker";
+    private static final String METRIC_COMPONENT = "connection_registry";
+
+    /**
+     * Bits of the handle left to the connections opened by a broker run (the handles start from the broker start time shifted by them)
+     */
+    private static final int HANDLE_SEQUENCE_BITS = 20;
+
+    private static ConnectionRegistry instance;
+
+    private final AtomicLong nextHandle = new AtomicLong(System.currentTimeMillis() << HANDLE_SEQUENCE_BITS);
+    private final Map<Long, KapuaSecurityContext> connections = new ConcurrentHashMap<>();
+    private final Cache<Long, KapuaSecurityContext> closedConnections;
+
+    private final Map<String, ConnectorDescriptor> connectorsByName;
+    private final List<ConnectorDescriptor> connectorsById;
+    private final Map<ConnectorDescriptor, Integer> connectorIds = new IdentityHashMap<>();
+
+    private ConnectionRegistry() {
+        BrokerSetting config = BrokerSetting.getInstance();
+        closedConnections = CacheBuilder.newBuilder()
+                .expireAfterWrite(config.getLong(BrokerSettingKey.CONNECTION_REGISTRY_CLOSED_RETENTION), TimeUnit.MILLISECONDS)
+                .maximumSize(config.getLong(BrokerSettingKey.CONNECTION_REGISTRY_CLOSED_MAX))
+                .build();
+
+        // the connector ids are assigned in the connector name order, so they are the same after a restart with the same configuration
+        connectorsByName = Collections.unmodifiableMap(new TreeMap<>(ConnectorDescriptorLoader.loadConnectorDescriptors()));
+        List<ConnectorDescriptor> connectors = new ArrayList<>();
+        for (ConnectorDescriptor connectorDescriptor : connectorsByName.values()) {
+            connectorIds.put(connectorDescriptor, connectors.size());
+            connectors.add(connectorDescriptor);
+        }
+        connectorsById = Collections.unmodifiableList(connectors);
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        try {
+            metricsService.registerGauge(new Gauge<Integer>() {
+
+                @Override
+                public Integer getValue() {
+                    return connections.size();
+                }
+            }, METRIC_MODULE, METRIC_COMPONENT, "connections", "size");
+            metricsService.registerGauge(new Gauge<Long>() {
+
+                @Override
+                public Long getValue() {
+                    return closedConnections.size();
+                }
+            }, METRIC_MODULE, METRIC_COMPONENT, "closed", "size");
+        } catch (KapuaException e) {
+            logger.warn("Cannot register the connection registry gauges: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Return the registry instance, creating it on the first call
+     * 
+     * @return
+     */
+    public static synchronized ConnectionRegistry getInstance() {
+        if (instance == null) {
+            instance = new ConnectionRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Register an opened connection
+     * 
+     * @param securityContext
+     * @return the connection handle
+     */
+    public long register(KapuaSecurityContext securityContext) {
+        long handle = nextHandle.incrementAndGet();
+        connections.put(handle, securityContext);
+        return handle;
+    }
+
+    /**
+     * Unregister a closed connection.<BR>
+     * The connection is still resolved for the configured retention, since its messages may still be waiting for the consumers.
+     * 
+     * @param handle
+     */
+    public void unregister(long handle) {
+        KapuaSecurityContext securityContext = connections.remove(handle);
+        if (securityContext != null) {
+            closedConnections.put(handle, securityContext);
+        }
+    }
+
+    /**
+     * Return the connection with the provided handle (the connection may be already closed) or null if the connection is not known
+     * 
+     * @param handle
+     * @return
+     */
+    public KapuaSecurityContext getConnection(long handle) {
+        KapuaSecurityContext securityContext = connections.get(handle);
+        if (securityContext == null) {
+            securityContext = closedConnections.getIfPresent(handle);
+        }
+        return securityContext;
+    }
+
+    /**
+     * Return the descriptor of the connector with the provided name (or null if the connector is not configured)
+     * 
+     * @param connectorName
+     * @return
+     */
+    public ConnectorDescriptor getConnectorDescriptor(String connectorName) {
+        return connectorsByName.get(connectorName);
+    }
+
+    /**
+     * Return the descriptor of the connector with the provided id (or null if the connector is not configured)
+     * 
+     * @param connectorId
+     * @return
+     */
+    public ConnectorDescriptor getConnectorDescriptor(int connectorId) {
+        return connectorId >= 0 && connectorId < connectorsById.size() ? connectorsById.get(connectorId) : null;
+    }
+
+    /**
+     * Return the id of the connector descriptor (or -1 if the descriptor is not a configured one)
+     * 
+     * @param connectorDescriptor
+     * @return
+     */
+    public int getConnectorId(ConnectorDescriptor connectorDescriptor) {
+        Integer connectorId = connectorIds.get(connectorDescriptor);
+        return connectorId != null ? connectorId : -1;
+    }
+
+    /**
+     * Rebuild the trusted session of a connection no more registered (i.e. the message was stored before a broker restart).<BR>
+     * As for the session of a registered connection, the permissions were checked by the connection login.
+     * 
+     * @param scopeId
+     * @param userId
+     * @return
+     */
+    public KapuaSession restoreSession(KapuaId scopeId, KapuaId userId) {
+        KapuaSession previousSession = KapuaSecurityUtils.getSession();
+        KapuaSecurityUtils.setSession(new KapuaSession(null, scopeId, userId));
+        try {
+            return KapuaSession.createFrom();
+        } finally {
+            if (previousSession != null) {
+                KapuaSecurityUtils.setSession(previousSession);
+            } else {
+                KapuaSecurityUtils.clearSession();
+            }
+        }
+    }
+}
@@ -0,0 +1,523 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.broker.core.setting.BrokerSetting;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnection;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionCreator;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionStatus;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionService;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Write-behind writer of the device connection status.<BR>
+ * The broker connect/disconnect handling only records the latest connection status of the client and returns. A single worker writes
+ * the pending statuses in batches (one transaction per batch) through {@link DeviceConnectionService#updateStatus(List)}.<BR>
+ * A client has at most one pending status: a status submitted while the previous one is still pending replaces it. Since there is a
+ * single worker, the statuses of a client are written in the submission order.<BR>
+ * The submission never blocks the caller (the broker transport thread). When the pending clients reach the configured maximum, the status
+ * of a client already pending still replaces the previous one and a disconnection is always accepted, while the connection of any other
+ * client is deferred: the worker moves the deferred statuses to the pending ones as soon as there is room again. A status that cannot be
+ * written after the configured attempts is deferred as well and retried after the retry interval, so the device connection is eventually
+ * reconciled with the latest status of the client. A newer status of the client always supersedes the deferred one.<BR>
+ * The statuses still pending or deferred when the broker stops are lost.
+ *
+ * @since 1.0
+ */
+public class DeviceConnectionStatusWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceConnectionStatusWriter.class);
+
+    private static final String METRIC_MODULE = "broker";
+    private static final String METRIC_COMPONENT = "connection_status";
+
+    private static final long POLL_TIMEOUT = 1000;
+    private static final long STOP_TIMEOUT = 10000;
+    private static final long DEFER_LOG_INTERVAL = 10000;
+
+    private static DeviceConnectionStatusWriter instance;
+
+    private final DeviceConnectionService deviceConnectionService;
+
+    private final Map<String, PendingStatus> pending = new ConcurrentHashMap<>();
+    private final Map<String, PendingStatus> deferred = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> ready = new LinkedBlockingQueue<>();
+    private final Semaphore room;
+    private final AtomicLong lastDeferLog = new AtomicLong();
+    private final int batchSize;
+    private final long retryInterval;
+    private final int retryMax;
+    private final Cache<String, KapuaId> connectionIds;
+
+    private final Thread worker;
+    private volatile boolean running;
+
+    // metrics
+    private final Counter metricSubmitted;
+    private final Counter metricCoalesced;
+    private final Counter metricDeferred;
+    private final Counter metricWritten;
+    private final Counter metricFailed;
+    private final Counter metricDiscarded;
+    private final Histogram metricBatchSize;
+    private final Histogram metricLag;
+    private final Timer metricWriteTime;
+
+    /**
+     * The latest connection status of a client waiting to be written
+     */
+    private static class PendingStatus {
+
+        private final String key;
+        private final DeviceConnectionCreator creator;
+        private final KapuaSecurityContext securityContext;
+        private final long submittedOn;
+        // whether the status holds one of the pending places (a disconnection is accepted even without)
+        private final boolean holdsRoom;
+        // a deferred status is not moved to the pending ones before this time
+        private final long notBefore;
+        private int attempts;
+
+        private PendingStatus(String key, DeviceConnectionCreator creator, KapuaSecurityContext securityContext, boolean holdsRoom, long notBefore) {
+            this.key = key;
+            this.creator = creator;
+            this.securityContext = securityContext;
+            this.submittedOn = System.currentTimeMillis();
+            this.holdsRoom = holdsRoom;
+            this.notBefore = notBefore;
+        }
+    }
+
+    private DeviceConnectionStatusWriter(KapuaLocator locator, BrokerSetting config) {
+        this(locator.getService(DeviceConnectionService.class),
+                config.getInt(BrokerSettingKey.CONNECTION_STATUS_PENDING_MAX),
+                config.getInt(BrokerSettingKey.CONNECTION_STATUS_BATCH_SIZE),
+                config.getLong(BrokerSettingKey.CONNECTION_STATUS_RETRY_INTERVAL),
+                config.getInt(BrokerSettingKey.CONNECTION_STATUS_RETRY_MAX),
+                config.getLong(BrokerSettingKey.CONNECTION_STATUS_CONNECTION_ID_CACHE_SIZE),
+                locator.getService(MetricsService.class));
+    }
+
+    /**
+     * Constructor, the worker is started
+     * 
+     * @param deviceConnectionService
+     * @param pendingMax
+     *            max number of clients with a pending connection status
+     * @param batchSize
+     *            max number of connection statuses written in a transaction
+     * @param retryInterval
+     *            time in milliseconds before a failed connection status is retried once deferred
+     * @param retryMax
+     *            number of failed attempts after which a connection status is deferred
+     * @param connectionIdCacheSize
+     *            max number of device connection ids kept
+     * @param metricsService
+     */
+    DeviceConnectionStatusWriter(DeviceConnectionService deviceConnectionService, int pendingMax, int batchSize, long retryInterval, int retryMax,
+            long connectionIdCacheSize, MetricsService metricsService) {
+        this.deviceConnectionService = deviceConnectionService;
+        room = new Semaphore(pendingMax);
+        this.batchSize = batchSize;
+        this.retryInterval = retryInterval;
+        this.retryMax = retryMax;
+        connectionIds = CacheBuilder.newBuilder()
+                .maximumSize(connectionIdCacheSize)
+                .build();
+
+        metricSubmitted = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "submitted", "count");
+        metricCoalesced = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "coalesced", "count");
+        metricDeferred = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "deferred", "count");
+        metricWritten = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "written", "count");
+        metricFailed = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "failed", "count");
+        metricDiscarded = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "discarded", "count");
+        metricBatchSize = metricsService.getHistogram(METRIC_MODULE, METRIC_COMPONENT, "batch", "size");
+        metricLag = metricsService.getHistogram(METRIC_MODULE, METRIC_COMPONENT, "lag", "ms");
+        metricWriteTime = metricsService.getTimer(METRIC_MODULE, METRIC_COMPONENT, "batch", "write", "time", "s");
+        try {
+            metricsService.registerGauge(new Gauge<Integer>() {
+
+                @Override
+                public Integer getValue() {
+                    return pending.size();
+                }
+            }, METRIC_MODULE, METRIC_COMPONENT, "pending", "size");
+            metricsService.registerGauge(new Gauge<Integer>() {
+
+                @Override
+                public Integer getValue() {
+                    return deferred.size();
+                }
+            }, METRIC_MODULE, METRIC_COMPONENT, "deferred", "size");
+            metricsService.registerGauge(new Gauge<Long>() {
+
+                @Override
+                public Long getValue() {
+                    return getOldestPendingAge();
+                }
+            }, METRIC_MODULE, METRIC_COMPONENT, "pending", "oldest", "ms");
+        } catch (KapuaException e) {
+            logger.warn("Cannot register the connection status writer gauges: {}", e.getMessage());
+        }
+
+        running = true;
+        worker = new Thread(() -> processPending(), "DeviceConnectionStatusWriter");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Return the writer instance, creating and starting it on the first call
+     * 
+     * @return
+     */
+    public static synchronized DeviceConnectionStatusWriter getInstance() {
+        if (instance == null) {
+            instance = new DeviceConnectionStatusWriter(KapuaLocator.getInstance(), BrokerSetting.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * Submit the connection status of a client.<BR>
+     * The creator carries the status and the connection fields: the device connection is created from it if it doesn't exist yet,
+     * otherwise its status and not null fields are updated.<BR>
+     * The method never blocks: if the pending statuses reached the maximum and the client has no pending status, a connection is deferred
+     * until there is room again, while a disconnection is accepted anyway.
+     * 
+     * @param creator
+     * @param securityContext
+     *            the security context to set the device connection id to once written (may be null)
+     * @return true if the status is pending, false if it is deferred
+     */
+    public boolean submit(DeviceConnectionCreator creator, KapuaSecurityContext securityContext) {
+        metricSubmitted.inc();
+        String fullClientId = getKey(creator.getScopeId(), creator.getClientId());
+
+        // the new status supersedes the deferred one
+        deferred.remove(fullClientId);
+
+        boolean connected = DeviceConnectionStatus.CONNECTED.equals(creator.getStatus());
+        while (true) {
+            PendingStatus previous = pending.get(fullClientId);
+            if (previous != null) {
+                if (pending.replace(fullClientId, previous, new PendingStatus(fullClientId, creator, securityContext, previous.holdsRoom, 0))) {
+                    // the key is already queued (or being written, and the worker queues it again once done)
+                    metricCoalesced.inc();
+                    return true;
+                }
+                continue;
+            }
+
+            boolean holdsRoom = room.tryAcquire();
+            if (!holdsRoom && connected) {
+                defer(new PendingStatus(fullClientId, creator, securityContext, false, 0));
+                return false;
+            }
+            if (pending.putIfAbsent(fullClientId, new PendingStatus(fullClientId, creator, securityContext, holdsRoom, 0)) == null) {
+                ready.add(fullClientId);
+                return true;
+            }
+            if (holdsRoom) {
+                room.release();
+            }
+        }
+    }
+
+    /**
+     * Return the device connection id of the client, if it is known
+     * 
+     * @param scopeId
+     * @param clientId
+     * @return the device connection id or null if the connection of the client was not written by this broker yet
+     */
+    public KapuaId getConnectionId(KapuaId scopeId, String clientId) {
+        return connectionIds.getIfPresent(getKey(scopeId, clientId));
+    }
+
+    /**
+     * Return the number of clients with a connection status waiting to be written
+     * 
+     * @return
+     */
+    public int getPendingSize() {
+        return pending.size();
+    }
+
+    /**
+     * Return the number of clients with a deferred connection status
+     * 
+     * @return
+     */
+    public int getDeferredSize() {
+        return deferred.size();
+    }
+
+    /**
+     * Return the number of pending places still available
+     * 
+     * @return
+     */
+    int getAvailableRoom() {
+        return room.availablePermits();
+    }
+
+    /**
+     * Stop the worker. The pending statuses are written before the worker exits (waiting up to ten seconds).
+     */
+    public void stop() {
+        running = false;
+        try {
+            worker.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!pending.isEmpty() || !deferred.isEmpty()) {
+            logger.warn("Connection status writer stopped with {} pending and {} deferred connection statuses", pending.size(), deferred.size());
+        }
+    }
+
+    private static String getKey(KapuaId scopeId, String clientId) {
+        return scopeId.getId() + ":" + clientId;
+    }
+
+    private void defer(PendingStatus status) {
+        metricDeferred.inc();
+        deferred.put(status.key, status);
+        // logged at most once per interval, the deferred count is in the metrics
+        long now = System.currentTimeMillis();
+        long lastLog = lastDeferLog.get();
+        if (now - lastLog >= DEFER_LOG_INTERVAL && lastDeferLog.compareAndSet(lastLog, now)) {
+            logger.warn("Too many pending connection statuses ({}), the writer is not keeping up: deferring the connection status {} of client {}",
+                    new Object[] { pending.size(), status.creator.getStatus(), status.creator.getClientId() });
+        }
+    }
+
+    /**
+     * Move the deferred statuses that are due to the pending ones, as long as there is room
+     */
+    private void promoteDeferred() {
+        long now = System.currentTimeMillis();
+        for (PendingStatus status : deferred.values()) {
+            if (status.notBefore > now) {
+                continue;
+            }
+            if (!room.tryAcquire()) {
+                return;
+            }
+            if (!deferred.remove(status.key, status) ||
+                    pending.putIfAbsent(status.key, new PendingStatus(status.key, status.creator, status.securityContext, true, 0)) != null) {
+                // superseded by a newer status
+                room.release();
+                continue;
+            }
+            ready.add(status.key);
+        }
+    }
+
+    private long getOldestPendingAge() {
+        long oldest = Long.MAX_VALUE;
+        for (PendingStatus status : pending.values()) {
+            oldest = Math.min(oldest, status.submittedOn);
+        }
+        return oldest != Long.MAX_VALUE ? System.currentTimeMillis() - oldest : 0;
+    }
+
+    private void processPending() {
+        Set<String> keys = new LinkedHashSet<>();
+        List<String> drained = new ArrayList<>(batchSize);
+        while (running || !ready.isEmpty()) {
+            try {
+                if (running && !deferred.isEmpty()) {
+                    promoteDeferred();
+                }
+
+                String first = running ? ready.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS) : ready.poll();
+                if (first == null) {
+                    continue;
+                }
+
+                keys.add(first);
+                ready.drainTo(drained, batchSize - 1);
+                keys.addAll(drained);
+                write(keys);
+            } catch (InterruptedException e) {
+                // nothing taken from the queue
+            } catch (Throwable t) {
+                logger.error("Unexpected error while writing the connection statuses", t);
+                for (String key : keys) {
+                    if (pending.containsKey(key)) {
+                        ready.add(key);
+                    }
+                }
+            } finally {
+                keys.clear();
+                drained.clear();
+            }
+        }
+        logger.info("Connection status writer stopped");
+    }
+
+    private void write(Set<String> keys) {
+        // the connections are created on behalf of the connecting user, so a transaction is run for each user
+        Map<KapuaId, List<PendingStatus>> statusesByUser = new LinkedHashMap<>();
+        for (String key : keys) {
+            PendingStatus status = pending.get(key);
+            if (status != null) {
+                statusesByUser.computeIfAbsent(status.creator.getUserId(), userId -> new ArrayList<>()).add(status);
+            }
+        }
+
+        for (List<PendingStatus> statuses : statusesByUser.values()) {
+            metricBatchSize.update(statuses.size());
+            Context metricWriteTimeContext = metricWriteTime.time();
+            try {
+                written(statuses, updateStatus(statuses));
+            } catch (Exception e) {
+                logger.warn("Cannot write {} connection statuses in a batch, writing them one by one: {}", statuses.size(), e.getMessage());
+                writeOneByOne(statuses);
+            } finally {
+                metricWriteTimeContext.stop();
+            }
+        }
+    }
+
+    private void writeOneByOne(List<PendingStatus> statuses) {
+        List<PendingStatus> failed = new ArrayList<>();
+        Exception lastError = null;
+        for (PendingStatus status : statuses) {
+            List<PendingStatus> single = Collections.singletonList(status);
+            try {
+                written(single, updateStatus(single));
+            } catch (Exception e) {
+                failed.add(status);
+                lastError = e;
+            }
+        }
+        if (failed.isEmpty()) {
+            return;
+        }
+
+        // every status failed: the device registry is likely unavailable, so the writer backs off before the next attempt
+        boolean unavailable = failed.size() == statuses.size();
+        logger.warn("Cannot write {} connection statuses: {}", failed.size(), lastError.getMessage());
+        for (PendingStatus status : failed) {
+            metricFailed.inc();
+            if (!running) {
+                discard(status, "the writer is stopped");
+            } else if (++status.attempts >= retryMax) {
+                discard(status, "too many failed attempts");
+            } else {
+                ready.add(status.key);
+            }
+        }
+
+        if (unavailable && running) {
+            try {
+                Thread.sleep(retryInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private List<DeviceConnection> updateStatus(List<PendingStatus> statuses)
+            throws Exception {
+        List<DeviceConnectionCreator> creators = new ArrayList<>(statuses.size());
+        for (PendingStatus status : statuses) {
+            creators.add(status.creator);
+        }
+
+        DeviceConnectionCreator first = creators.get(0);
+        KapuaSession session = new KapuaSession(null, first.getScopeId(), first.getUserId());
+        return KapuaSecurityUtils.doPriviledge(session, () -> deviceConnectionService.updateStatus(creators));
+    }
+
+    private void written(List<PendingStatus> statuses, List<DeviceConnection> deviceConnections) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < statuses.size(); i++) {
+            PendingStatus status = statuses.get(i);
+            KapuaId connectionId = deviceConnections.get(i).getId();
+            connectionIds.put(status.key, connectionId);
+            if (status.securityContext != null) {
+                status.securityContext.setConnectionId(connectionId);
+            }
+            metricWritten.inc();
+            metricLag.update(now - status.submittedOn);
+            release(status);
+        }
+    }
+
+    private void discard(PendingStatus status, String reason) {
+        metricDiscarded.inc();
+        if (running) {
+            // retried later: deferred before leaving the pending ones, so a newer status submitted meanwhile supersedes it
+            PendingStatus retry = new PendingStatus(status.key, status.creator, status.securityContext, false, System.currentTimeMillis() + retryInterval);
+            if (deferred.putIfAbsent(status.key, retry) == null) {
+                if (release(status)) {
+                    logger.error("Cannot write the connection status {} of client {}: {}, retrying in {} ms",
+                            new Object[] { status.creator.getStatus(), status.key, reason, retryInterval });
+                } else {
+                    deferred.remove(status.key, retry);
+                }
+                return;
+            }
+        }
+
+        logger.error("Discarding the connection status {} of client {}: {}", new Object[] { status.creator.getStatus(), status.key, reason });
+        release(status);
+    }
+
+    private boolean release(PendingStatus status) {
+        if (pending.remove(status.key, status)) {
+            if (status.holdsRoom) {
+                room.release();
+            }
+            return true;
+        }
+
+        // a newer status was submitted meanwhile
+        ready.add(status.key);
+        return false;
+    }
+}
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.security.AuthorizationMap;
+import org.eclipse.kapua.broker.core.plugin.AclTemplate.AclRule;
+import org.eclipse.kapua.service.authentication.KapuaPrincipal;
+
+/**
+ * Authorization map of a connection.<br>
+ * It binds the shared rules of the connection permission profile ({@link AclTemplate}) to the connection account and client id, instead of
+ * building a {@code DefaultAuthorizationMap} (and its destination tree) for every connection. The destinations are matched as the ActiveMQ
+ * destination map does: '*' matches a path element, '&gt;' matches the remaining path elements (also none), and the composite destinations
+ * match if any of their destinations matches.<br>
+ * The ACLs of a destination are the connection principal, if a matching rule grants the operation, or no principal.
+ *
+ * @since 1.0
+ */
+public class KapuaAuthorizationMap implements AuthorizationMap {
+
+    private static final String ANY_CHILD = "*";
+    private static final String ANY_DESCENDANT = ">";
+
+    private enum Operation {
+        READ, WRITE, ADMIN
+    }
+
+    private final AclTemplate template;
+    private final Set<Object> principalACLs;
+    private final String accountName;
+    private final String clientId;
+    private final String fullClientId;
+
+    /**
+     * Constructor
+     * 
+     * @param template
+     *            the rules of the connection permission profile
+     * @param principal
+     *            the connection principal
+     * @param accountName
+     * @param clientId
+     * @param fullClientId
+     *            the client id with the account prepended
+     */
+    public KapuaAuthorizationMap(AclTemplate template, KapuaPrincipal principal, String accountName, String clientId, String fullClientId) {
+        this.template = template;
+        this.principalACLs = Collections.singleton(principal);
+        this.accountName = accountName;
+        this.clientId = clientId;
+        this.fullClientId = fullClientId;
+    }
+
+    @Override
+    public Set<?> getTempDestinationAdminACLs() {
+        return null;
+    }
+
+    @Override
+    public Set<?> getTempDestinationReadACLs() {
+        return null;
+    }
+
+    @Override
+    public Set<?> getTempDestinationWriteACLs() {
+        return null;
+    }
+
+    @Override
+    public Set<?> getAdminACLs(ActiveMQDestination destination) {
+        return isGranted(destination, Operation.ADMIN) ? principalACLs : Collections.emptySet();
+    }
+
+    @Override
+    public Set<?> getReadACLs(ActiveMQDestination destination) {
+        return isGranted(destination, Operation.READ) ? principalACLs : Collections.emptySet();
+    }
+
+    @Override
+    public Set<?> getWriteACLs(ActiveMQDestination destination) {
+        return isGranted(destination, Operation.WRITE) ? principalACLs : Collections.emptySet();
+    }
+
+    /**
+     * Return the rules bound to the connection, as read/write/admin - destination lines
+     * 
+     * @return
+     */
+    public List<String> getRuleDescriptions() {
+        List<String> descriptions = new ArrayList<>();
+        for (AclRule rule : template.getRules()) {
+            descriptions.add(MessageFormat.format(AclConstants.PERMISSION_LOG,
+                    rule.isRead() ? "r" : "_",
+                    rule.isWrite() ? "w" : "_",
+                    rule.isAdmin() ? "a" : "_",
+                    bind(rule.getDestination())));
+        }
+        return descriptions;
+    }
+
+    private boolean isGranted(ActiveMQDestination destination, Operation operation) {
+        if (destination.isComposite()) {
+            for (ActiveMQDestination childDestination : destination.getCompositeDestinations()) {
+                if (isGranted(childDestination, operation)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (destination.isTemporary()) {
+            return false;
+        }
+
+        String[] paths = destination.getDestinationPaths();
+        for (AclRule rule : template.getRules()) {
+            if (!grants(rule, operation) || (rule.getDestinationType() == ActiveMQDestination.QUEUE_TYPE) != destination.isQueue()) {
+                continue;
+            }
+
+            if (rule.getPaths() != null) {
+                if (matches(rule.getPaths(), paths)) {
+                    return true;
+                }
+                continue;
+            }
+
+            // bind the connection to the rule (as the destination was rendered by the MessageFormat of the ACLs)
+            ActiveMQDestination ruleDestination = ActiveMQDestination.createDestination(bind(rule.getDestination()), rule.getDestinationType());
+            if (ruleDestination.isComposite()) {
+                for (ActiveMQDestination childRuleDestination : ruleDestination.getCompositeDestinations()) {
+                    if (matches(childRuleDestination.getDestinationPaths(), paths)) {
+                        return true;
+                    }
+                }
+            } else if (matches(ruleDestination.getDestinationPaths(), paths)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean grants(AclRule rule, Operation operation) {
+        switch (operation) {
+        case READ:
+            return rule.isRead();
+        case WRITE:
+            return rule.isWrite();
+        default:
+            return rule.isAdmin();
+        }
+    }
+
+    private String bind(String destination) {
+        if (destination.indexOf("${") < 0) {
+            return destination;
+        }
+        return replace(replace(replace(destination, AclTemplate.ACCOUNT_NAME, accountName), AclTemplate.CLIENT_ID, clientId), AclTemplate.FULL_CLIENT_ID, fullClientId);
+    }
+
+    private static String replace(String text, String placeholder, String value) {
+        int index = text.indexOf(placeholder);
+        if (index < 0) {
+            return text;
+        }
+
+        StringBuilder sb = new StringBuilder(text.length() + value.length());
+        int start = 0;
+        do {
+            sb.append(text, start, index).append(value);
+            start = index + placeholder.length();
+            index = text.indexOf(placeholder, start);
+        } while (index >= 0);
+        return sb.append(text, start, text.length()).toString();
+    }
+
+    /**
+     * Tell if the rule paths match the destination paths
+     * 
+     * @param rulePaths
+     * @param paths
+     * @return
+     */
+    static boolean matches(String[] rulePaths, String[] paths) {
+        return matches(rulePaths, 0, paths, 0);
+    }
+
+    private static boolean matches(String[] rulePaths, int ruleIndex, String[] paths, int index) {
+        for (;; ruleIndex++, index++) {
+            if (index == paths.length) {
+                // FOO.BAR matches the FOO.BAR.> rule too
+                return ruleIndex == rulePaths.length || (ruleIndex == rulePaths.length - 1 && ANY_DESCENDANT.equals(rulePaths[ruleIndex]));
+            }
+            if (ruleIndex == rulePaths.length) {
+                return false;
+            }
+            // a wildcard destination matches all the rules below it
+            if (ANY_DESCENDANT.equals(paths[index])) {
+                return true;
+            }
+
+            String rulePath = rulePaths[ruleIndex];
+            if (ANY_DESCENDANT.equals(rulePath)) {
+                return true;
+            }
+            if (!ANY_CHILD.equals(rulePath) && !ANY_CHILD.equals(paths[index]) && !rulePath.equals(paths[index])) {
+                return false;
+            }
+        }
+    }
+}
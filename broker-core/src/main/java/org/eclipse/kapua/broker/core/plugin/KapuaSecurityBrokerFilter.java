@@ -12,13 +12,12 @@
  *******************************************************************************/
 package org.eclipse.kapua.broker.core.plugin;
 
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.security.auth.login.CredentialException;
@@ -35,9 +34,6 @@ import org.apache.activemq.command.ConnectionId;
 import org.apache.activemq.command.ConnectionInfo;
 import org.apache.activemq.command.ConsumerInfo;
 import org.apache.activemq.command.Message;
-import org.apache.activemq.filter.DestinationMapEntry;
-import org.apache.activemq.security.AuthorizationEntry;
-import org.apache.activemq.security.DefaultAuthorizationMap;
 import org.apache.activemq.security.SecurityContext;
 import org.apache.shiro.ShiroException;
 import org.apache.shiro.authc.AuthenticationException;
@@ -68,10 +64,8 @@ import org.eclipse.kapua.service.authorization.permission.Actions;
 import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
 import org.eclipse.kapua.service.datastore.DatastoreDomain;
 import org.eclipse.kapua.service.device.management.commons.DeviceManagementDomain;
-import org.eclipse.kapua.service.device.registry.connection.DeviceConnection;
 import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionCreator;
 import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionFactory;
-import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionService;
 import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionStatus;
 import org.eclipse.kapua.service.metric.MetricsService;
 import org.slf4j.Logger;
@@ -99,7 +93,7 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
 
     private static Logger logger = LoggerFactory.getLogger(KapuaSecurityBrokerFilter.class);
 
-    private Map<String, ConnectorDescriptor> connectorsDescriptorMap;
+    private ConnectionRegistry connectionRegistry;
 
     private final static Map<String, ConnectionId> connectionMap = new ConcurrentHashMap<>();
 
@@ -121,7 +115,6 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
     private Timer metricLoginPreCheckTime;
     private Timer metricLoginShiroLoginTime;
     private Timer metricLoginCheckAccessTime;
-    private Timer metricLoginFindClientIdTime;
     private Timer metricLoginFindDevTime;
     private Timer metricLoginShiroLogoutTime;
     private Timer metricLoginSendLoginUpdateMsgTime;
@@ -147,14 +140,16 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
     private PermissionFactory permissionFactory = KapuaLocator.getInstance().getFactory(PermissionFactory.class);
     private CredentialsFactory credentialsFactory = KapuaLocator.getInstance().getFactory(CredentialsFactory.class);
     private AccountService accountService = KapuaLocator.getInstance().getService(AccountService.class);
-    private DeviceConnectionService deviceConnectionService = KapuaLocator.getInstance().getService(DeviceConnectionService.class);
     private DeviceConnectionFactory deviceConnectionFactory = KapuaLocator.getInstance().getFactory(DeviceConnectionFactory.class);
     private MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
 
+    private DeviceConnectionStatusWriter connectionStatusWriter;
+
     public KapuaSecurityBrokerFilter(Broker next) throws KapuaException {
         super(next);
 
-        connectorsDescriptorMap = ConnectorDescriptorLoader.loadConnectorDescriptors();
+        connectionRegistry = ConnectionRegistry.getInstance();
+        connectionStatusWriter = DeviceConnectionStatusWriter.getInstance();
 
         // login
         metricLoginSuccess = metricsService.getCounter("security", "login", "success", "count");
@@ -171,7 +166,6 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
         metricLoginPreCheckTime = metricsService.getTimer("security", "login", "pre_check", "time", "s");
         metricLoginShiroLoginTime = metricsService.getTimer("security", "login", "shiro", "login", "time", "s");
         metricLoginCheckAccessTime = metricsService.getTimer("security", "login", "check_access", "time", "s");
-        metricLoginFindClientIdTime = metricsService.getTimer("security", "login", "find_client_id", "time", "s");
         metricLoginFindDevTime = metricsService.getTimer("security", "login", "find_device", "time", "s");
         metricLoginShiroLogoutTime = metricsService.getTimer("security", "login", "shiro", "logout", "time", "s");
         metricLoginSendLoginUpdateMsgTime = metricsService.getTimer("security", "login", "send_login_update", "time", "s");
@@ -204,6 +198,8 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
     public void stop()
             throws Exception {
         logger.info(">>> Security broker filter: calling stop...");
+        // write the pending device connection statuses
+        connectionStatusWriter.stop();
         super.stop();
     }
 
@@ -316,7 +312,8 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
 
             Context loginShiroLoginTimeContext = metricLoginShiroLoginTime.time();
             LoginCredentials credentials = credentialsFactory.newUsernamePasswordCredentials(username, password.toCharArray());
-            AccessToken accessToken = authenticationService.login(credentials);
+            // the access token is dropped by the logout at the end of the connection checks, so there is no need to persist it
+            AccessToken accessToken = authenticationService.login(credentials, false);
 
             KapuaId scopeId = accessToken.getScopeId();
             KapuaId userId = accessToken.getUserId();
@@ -350,13 +347,13 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
                     username,
                     clientId,
                     clientIp);
-            DeviceConnection deviceConnection = null;
+            DeviceConnectionCreator deviceConnectionCreator = null;
             // 3) check authorization
-            DefaultAuthorizationMap authMap = null;
+            KapuaAuthorizationMap authMap = null;
             if (isAdminUser(username)) {
                 metricLoginKapuasysTokenAttempt.inc();
                 // 3-1) admin authMap
-                authMap = buildAdminAuthMap(authDestinations, principal, fullClientId);
+                authMap = buildAdminAuthMap(authDestinations, principal, accountName, fullClientId);
                 metricClientConnectedKapuasys.inc();
             } else {
                 Context loginNormalUserTimeContext = metricLoginNormalUserTime.time();
@@ -379,11 +376,7 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
                 // 3-4) build authMap
                 authMap = buildAuthMap(authDestinations, principal, hasPermissions, accountName, clientId, fullClientId);
 
-                // 4) find device
-                Context loginFindClientIdTimeContext = metricLoginFindClientIdTime.time();
-                deviceConnection = KapuaSecurityUtils.doPriviledge(() -> deviceConnectionService.findByClientId(scopeId, clientId));
-                loginFindClientIdTimeContext.stop();
-
+                // 4) update the device connection (written asynchronously)
                 Context loginFindDevTimeContext = metricLoginFindDevTime.time();
 
                 // send connect message
@@ -391,34 +384,24 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
                 boolean stealingLinkDetected = (previousConnectionId != null);
                 // Update map for stealing link detection on disconnect
                 connectionMap.put(fullClientId, info.getConnectionId());
-                if (deviceConnection == null) {
-                    DeviceConnectionCreator deviceConnectionCreator = deviceConnectionFactory.newCreator(scopeId);
-                    deviceConnectionCreator.setClientId(clientId);
-                    deviceConnectionCreator.setClientIp(clientIp);
-                    deviceConnectionCreator.setProtocol("MQTT");
-                    deviceConnectionCreator.setServerIp(null);// TODO to be filled with the proper value
-                    deviceConnectionCreator.setUserId(userId);
-                    deviceConnection = KapuaSecurityUtils.doPriviledge(() -> deviceConnectionService.create(deviceConnectionCreator));
-                } else {
-                    deviceConnection.setClientIp(clientIp);
-                    deviceConnection.setProtocol("MQTT");
-                    deviceConnection.setServerIp(null);// TODO to be filled with the proper value
-                    deviceConnection.setUserId(userId);
-                    deviceConnection.setStatus(DeviceConnectionStatus.CONNECTED);
-                    final DeviceConnection deviceConnectionToUpdate = deviceConnection;
-                    KapuaSecurityUtils.doPriviledge(() -> deviceConnectionService.update(deviceConnectionToUpdate));
-                    // TODO implement the banned status
-                    // if (DeviceStatus.DISABLED.equals(device.getStatus())) {
-                    // throw new KapuaIllegalAccessException("clientId - This client ID is disabled and cannot connect");
-                    // }
-                    // TODO manage the stealing link event (may be a good idea to use different connect status (connect -stealing)?
-                    if (stealingLinkDetected) {
-                        metricLoginStealingLinkConnect.inc();
-
-                        // stealing link detected, skip info
-                        logger.warn("Detected Stealing link for cliend id {} - account - last connection id was {} - current connection id is {} - IP: {} - No connection status changes!",
-                                new Object[] { clientId, accountName, previousConnectionId, info.getConnectionId(), info.getClientIp() });
-                    }
+                deviceConnectionCreator = deviceConnectionFactory.newCreator(scopeId);
+                deviceConnectionCreator.setClientId(clientId);
+                deviceConnectionCreator.setClientIp(clientIp);
+                deviceConnectionCreator.setProtocol("MQTT");
+                deviceConnectionCreator.setServerIp(null);// TODO to be filled with the proper value
+                deviceConnectionCreator.setUserId(userId);
+                deviceConnectionCreator.setStatus(DeviceConnectionStatus.CONNECTED);
+                // TODO implement the banned status
+                // if (DeviceStatus.DISABLED.equals(device.getStatus())) {
+                // throw new KapuaIllegalAccessException("clientId - This client ID is disabled and cannot connect");
+                // }
+                // TODO manage the stealing link event (may be a good idea to use different connect status (connect -stealing)?
+                if (stealingLinkDetected) {
+                    metricLoginStealingLinkConnect.inc();
+
+                    // stealing link detected, skip info
+                    logger.warn("Detected Stealing link for cliend id {} - account - last connection id was {} - current connection id is {} - IP: {} - No connection status changes!",
+                            new Object[] { clientId, accountName, previousConnectionId, info.getConnectionId(), info.getClientIp() });
                 }
                 loginFindDevTimeContext.stop();
 
@@ -430,13 +413,18 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
             }
             logAuthDestinationToLog(authDestinations);
 
-            ConnectorDescriptor connectorDescriptor = connectorsDescriptorMap.get((((TransportConnector) context.getConnector()).getName()));
+            ConnectorDescriptor connectorDescriptor = connectionRegistry.getConnectorDescriptor((((TransportConnector) context.getConnector()).getName()));
             KapuaSecurityContext securityCtx = new KapuaSecurityContext(principal,
                     authMap,
-                    (deviceConnection != null ? deviceConnection.getId() : null),
+                    (deviceConnectionCreator != null ? connectionStatusWriter.getConnectionId(scopeId, clientId) : null),
                     connectionId,
                     connectorDescriptor);
+            securityCtx.setConnectionHandle(connectionRegistry.register(securityCtx));
             context.setSecurityContext(securityCtx);
+            if (deviceConnectionCreator != null) {
+                // the security context gets the device connection id once the connection is written
+                connectionStatusWriter.submit(deviceConnectionCreator, securityCtx);
+            }
 
             // multiple account stealing link fix
             info.setClientId(fullClientId);
@@ -528,35 +516,18 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
                         logger.warn("Detected Stealing link for cliend id {} - account id {} - last connection id was {} - current connection id is {} - IP: {} - No disconnection info will be added!",
                                 new Object[] { clientId, accountId, connectionId, info.getConnectionId(), info.getClientIp() });
                     } else {
-                        DeviceConnection deviceConnection = null;
-                        try {
-                            deviceConnection = KapuaSecurityUtils.doPriviledge(new Callable<DeviceConnection>() {
-
-                                @Override
-                                public DeviceConnection call()
-                                        throws Exception {
-                                    return deviceConnectionService.findByClientId(scopeId, clientId);
-                                }
-                            });
-                        } catch (Exception e) {
-                            throw new ShiroException("Error while looking for device connection on updating the device!", e);
-                        }
-                        // the device connection must be not null
-                        // update device connection
-                        final DeviceConnection deviceConnectionToUpdate = deviceConnection;
+                        // update device connection (written asynchronously)
+                        DeviceConnectionCreator deviceConnectionCreator = deviceConnectionFactory.newCreator(scopeId);
+                        deviceConnectionCreator.setClientId(clientId);
+                        deviceConnectionCreator.setClientIp(kapuaPrincipal.getClientIp());
+                        deviceConnectionCreator.setProtocol("MQTT");
+                        deviceConnectionCreator.setUserId(kapuaPrincipal.getUserId());
                         if (error == null) {
-                            deviceConnectionToUpdate.setStatus(DeviceConnectionStatus.DISCONNECTED);
+                            deviceConnectionCreator.setStatus(DeviceConnectionStatus.DISCONNECTED);
                         } else {
-                            deviceConnectionToUpdate.setStatus(DeviceConnectionStatus.MISSING);
-                        }
-                        try {
-                            KapuaSecurityUtils.doPriviledge(() -> {
-                                deviceConnectionService.update(deviceConnectionToUpdate);
-                                return null;
-                            });
-                        } catch (Exception e) {
-                            throw new ShiroException("Error while updating the device connection status!", e);
+                            deviceConnectionCreator.setStatus(DeviceConnectionStatus.MISSING);
                         }
+                        connectionStatusWriter.submit(deviceConnectionCreator, null);
                     }
                     metricClientDisconnectionClient.inc();
                 } else {
@@ -572,6 +543,9 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
                     // cleanup stealing link detection map
                     connectionMap.remove(fullClientId);
                 }
+                if (context.getSecurityContext() instanceof KapuaSecurityContext) {
+                    connectionRegistry.unregister(((KapuaSecurityContext) context.getSecurityContext()).getConnectionHandle());
+                }
             }
         }
         super.removeConnection(context, info, error);
@@ -605,30 +579,31 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
             throws Exception {
         if (!isBrokerContext(producerExchange.getConnectionContext())) {
             KapuaSecurityContext kapuaSecurityContext = getKapuaSecurityContext(producerExchange.getConnectionContext());
-            // if (!kapuaSecurityContext.getAuthorizedWriteDests().contains(messageSend.getDestination()))
-            // {
-            if (!messageSend.getDestination().isTemporary()) {
-                Set<?> allowedACLs = kapuaSecurityContext.getAuthorizationMap().getWriteACLs(messageSend.getDestination());
-                if (allowedACLs != null && !kapuaSecurityContext.isInOneOf(allowedACLs)) {
-                    String message = MessageFormat.format("User {0} ({1} - {2} - conn id {3}) is not authorized to write to: {4}",
-                            kapuaSecurityContext.getUserName(),
-                            ((KapuaPrincipal) kapuaSecurityContext.getMainPrincipal()).getClientId(),
-                            ((KapuaPrincipal) kapuaSecurityContext.getMainPrincipal()).getClientIp(),
-                            kapuaSecurityContext.getConnectionId(),
-                            messageSend.getDestination());
-                    logger.warn(message);
-                    metricPublishMessageSizeNotAllowed.update(messageSend.getSize());
-                    metricPublishNotAllowedMessages.inc();
-                    // IMPORTANT
-                    // restored the throw exception because otherwise we got acl's issues
-                    throw new SecurityException(message);
-                }
-                // kapuaSecurityContext.getAuthorizedWriteDests().put(messageSend.getDestination(), messageSend.getDestination());
+            if (!messageSend.getDestination().isTemporary() && !kapuaSecurityContext.isWriteAllowed(messageSend.getDestination())) {
+                String message = MessageFormat.format("User {0} ({1} - {2} - conn id {3}) is not authorized to write to: {4}",
+                        kapuaSecurityContext.getUserName(),
+                        ((KapuaPrincipal) kapuaSecurityContext.getMainPrincipal()).getClientId(),
+                        ((KapuaPrincipal) kapuaSecurityContext.getMainPrincipal()).getClientIp(),
+                        kapuaSecurityContext.getConnectionId(),
+                        messageSend.getDestination());
+                logger.warn(message);
+                metricPublishMessageSizeNotAllowed.update(messageSend.getSize());
+                metricPublishNotAllowedMessages.inc();
+                // IMPORTANT
+                // restored the throw exception because otherwise we got acl's issues
+                throw new SecurityException(message);
+            }
+            // the Kapua headers are trusted by the routes, so the ones set by the client are never forwarded
+            removeKapuaProperties(messageSend);
+            // only primitives are stored with the message: the connection and the connector are resolved through the connection registry
+            KapuaSession kapuaSession = kapuaSecurityContext.getKapuaSession();
+            messageSend.setProperty(MessageConstants.HEADER_KAPUA_CONNECTION_HANDLE, kapuaSecurityContext.getConnectionHandle());
+            messageSend.setProperty(MessageConstants.HEADER_KAPUA_CONNECTOR_ID, connectionRegistry.getConnectorId(kapuaSecurityContext.getConnectorDescriptor()));
+            messageSend.setProperty(MessageConstants.HEADER_KAPUA_SCOPE_ID, kapuaSession.getScopeId().getId().longValue());
+            messageSend.setProperty(MessageConstants.HEADER_KAPUA_USER_ID, kapuaSession.getUserId().getId().longValue());
+            if (kapuaSecurityContext.getConnectionId() != null) {
+                messageSend.setProperty(MessageConstants.HEADER_KAPUA_CONNECTION_ID, kapuaSecurityContext.getConnectionId().getId().longValue());
             }
-            // }
-            messageSend.setProperty(MessageConstants.HEADER_KAPUA_CONNECTION_ID, kapuaSecurityContext.getConnectionId());
-            messageSend.setProperty(MessageConstants.HEADER_KAPUA_CONNECTOR_DEVICE_PROTOCOL, kapuaSecurityContext.getConnectorDescriptor());
-            messageSend.setProperty(MessageConstants.HEADER_KAPUA_SESSION, kapuaSecurityContext.getKapuaSession());
         }
         if (messageSend.getContent() != null) {
             metricPublishMessageSizeAllowed.update(messageSend.getContent().length);
@@ -644,6 +619,25 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
         super.send(producerExchange, messageSend);
     }
 
+    /**
+     * Remove the Kapua headers and the original topic property from the message published by a client
+     * 
+     * @param message
+     * @throws IOException
+     */
+    static void removeKapuaProperties(Message message)
+            throws IOException {
+        List<String> kapuaProperties = new ArrayList<>();
+        for (String name : message.getProperties().keySet()) {
+            if (name.startsWith(MessageConstants.HEADER_KAPUA_PREFIX) || MessageConstants.PROPERTY_ORIGINAL_TOPIC.equals(name)) {
+                kapuaProperties.add(name);
+            }
+        }
+        for (String name : kapuaProperties) {
+            message.removeProperty(name);
+        }
+    }
+
     // ------------------------------------------------------------------
     //
     // Consumer
@@ -732,200 +726,36 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter {
     //
     // ------------------------------------------------------------------
 
-    @SuppressWarnings("rawtypes")
-    private DefaultAuthorizationMap buildAdminAuthMap(List<String> authDestinations, KapuaPrincipal principal, String fullClientId) {
-        ArrayList<DestinationMapEntry> dme = new ArrayList<DestinationMapEntry>();
-        String clientId = principal.getClientId();
-        dme.addAll(createAuthorizationEntries(authDestinations, AclConstants.ACL_HASH,
-                principal, clientId, fullClientId, true, true, true));// (topic, principal, read, write, admin)
-        dme.addAll(createAuthorizationEntries(authDestinations, AclConstants.ACL_AMQ_ADVISORY,
-                principal, clientId, fullClientId, false, true, true));// (topic, principal, read, write, admin)
-        return new DefaultAuthorizationMap(dme);
+    private KapuaAuthorizationMap buildAdminAuthMap(List<String> authDestinations, KapuaPrincipal principal, String accountName, String fullClientId) {
+        return bindAclTemplate(authDestinations, AclTemplate.admin(), principal, accountName, principal.getClientId(), fullClientId);
     }
 
-    @SuppressWarnings("rawtypes")
-    private DefaultAuthorizationMap buildProvisioningAuthMap(List<String> authDestinations, KapuaPrincipal principal, String accountName, String fullClientId) {
-        ArrayList<DestinationMapEntry> dme = new ArrayList<DestinationMapEntry>();
-
-        String clientId = principal.getClientId();
-        // Write reply to any client Id and any application
-        dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC_REPLY, accountName),
-                principal, clientId, fullClientId, false, true, false));// (topic, principal, read, write, admin)
-
-        // Publish only on MQTT/# for life-cycle messages and message that will trigger the provision service
-        dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI_MQTT_LIFE_CYCLE, accountName, clientId),
-                principal, clientId, fullClientId, false, true, false));// (topic, principal, read, write, admin)
-
-        // Read any control topic on its client id to be able to receive configurations and bundles
-        dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI, accountName, clientId),
-                principal, clientId, fullClientId, true, false, false));// (topic, principal, read, write, admin)
-
-        // FIXME: check if is correct "$EDC.{0}.>" instead of ">"
-        dme.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC, accountName),
-                principal, clientId, fullClientId, false, false, true));// (topic, principal, read, write, admin)
-
-        dme.addAll(createAuthorizationEntries(authDestinations, AclConstants.ACL_AMQ_ADVISORY,
-                principal, clientId, fullClientId, false, true, true));// (topic, principal, read, write, admin)
-
-        return new DefaultAuthorizationMap(dme);
+    private KapuaAuthorizationMap buildProvisioningAuthMap(List<String> authDestinations, KapuaPrincipal principal, String accountName, String fullClientId) {
+        return bindAclTemplate(authDestinations, AclTemplate.provisioning(), principal, accountName, principal.getClientId(), fullClientId);
     }
 
-    @SuppressWarnings("rawtypes")
-    private DefaultAuthorizationMap buildAuthMap(List<String> authDestinations, KapuaPrincipal principal,
+    private KapuaAuthorizationMap buildAuthMap(List<String> authDestinations, KapuaPrincipal principal,
             boolean[] hasPermissions,
             String accountName,
             String clientId,
             String fullClientId) {
-        ArrayList<DestinationMapEntry> dme = new ArrayList<DestinationMapEntry>();
-
-        dme.addAll(createAuthorizationEntries(authDestinations, AclConstants.ACL_AMQ_ADVISORY,
-                principal, clientId, fullClientId, false, true, true));// (topic, principal, read, write, admin)
-
         // addConnection checks BROKER_CONNECT_IDX permission before call this method
         // then here user has BROKER_CONNECT_IDX permission and if check isn't needed
-        // if (hasPermissions[BROKER_CONNECT_IDX]) {
-        if (hasPermissions[AclConstants.DEVICE_MANAGE_IDX]) {
-            dme.addAll(createAuthorizationEntries(authDestinations,
-                    MessageFormat.format(AclConstants.ACL_CTRL_ACC, accountName),
-                    principal,
-                    clientId,
-                    fullClientId,
-                    true,
-                    true,
-                    true)); // (topic, principal, read, write, admin)
-        } else {
-            dme.addAll(createAuthorizationEntries(authDestinations,
-                    MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI, accountName, clientId),
-                    principal,
-                    clientId,
-                    fullClientId,
-                    true,
-                    true,
-                    true)); // (topic, principal, read, write, admin)
-        }
-
-        if (hasPermissions[AclConstants.DATA_MANAGE_IDX]) {
-            dme.addAll(createAuthorizationEntries(authDestinations,
-                    MessageFormat.format(AclConstants.ACL_DATA_ACC, accountName),
-                    principal,
-                    clientId,
-                    fullClientId,
-                    true,
-                    true,
-                    true)); // (topic, principal, read, write, admin)
-        } else if (hasPermissions[AclConstants.DATA_VIEW_IDX]) {
-            dme.addAll(createAuthorizationEntries(authDestinations,
-                    MessageFormat.format(AclConstants.ACL_DATA_ACC, accountName),
-                    principal,
-                    clientId,
-                    fullClientId,
-                    true,
-                    false,
-                    true)); // (topic, principal, read, write, admin)
-
-            dme.addAll(createAuthorizationEntries(authDestinations,
-                    MessageFormat.format(AclConstants.ACL_DATA_ACC_CLI, accountName, clientId),
-                    principal,
-                    clientId,
-                    fullClientId,
-                    false,
-                    true,
-                    false)); // (topic, principal, read, write, admin)
-        } else {
-            dme.addAll(createAuthorizationEntries(authDestinations,
-                    MessageFormat.format(AclConstants.ACL_DATA_ACC_CLI, accountName, clientId),
-                    principal,
-                    clientId,
-                    fullClientId,
-                    true,
-                    true,
-                    true)); // (topic, principal, read, write, admin)
-        }
-
-        dme.addAll(createAuthorizationEntries(authDestinations,
-                MessageFormat.format(AclConstants.ACL_CTRL_ACC_REPLY, accountName),
-                principal,
-                clientId,
-                fullClientId,
-                false,
-                true,
-                true)); // (topic, principal, read, write, admin)
-
-        // Write notify to any client Id and any application and operation
-        dme.addAll(createAuthorizationEntries(authDestinations,
-                MessageFormat.format(AclConstants.ACL_CTRL_ACC_NOTIFY, accountName, clientId),
-                principal,
-                clientId,
-                fullClientId,
-                false,
-                true,
-                false));// (topic, principal, read, write, admin)
-
-        return new DefaultAuthorizationMap(dme);
+        return bindAclTemplate(authDestinations, AclTemplate.forPermissions(hasPermissions), principal, accountName, clientId, fullClientId);
     }
 
-    protected List<AuthorizationEntry> createAuthorizationEntries(List<String> authDestinations, String topic, KapuaPrincipal principal, String clientId, String fullClientId, boolean read,
-            boolean write, boolean admin) {
-        List<AuthorizationEntry> entries = new ArrayList<AuthorizationEntry>();
-        entries.add(createAuthorizationEntry(authDestinations, topic, principal, read, write, admin));
-        // added to support the vt topic name space for durable subscriptions
-        if (read) {
-            // logger.info("pattern {} - clientid {} - topic {} - evaluated {}", new Object[]{JmsConstants.ACL_VT_DURABLE_PREFIX[0], clientId, topic,
-            // MessageFormat.format(JmsConstants.ACL_VT_DURABLE_PREFIX[0], fullClientId, topic)});
-            entries.add(createAuthorizationEntry(authDestinations, MessageFormat.format(AclConstants.ACL_VT_DURABLE_PREFIX[0], fullClientId, topic), principal));
-            // logger.info("pattern {} - clientid {} - topic {} - evaluated {}", new Object[]{JmsConstants.ACL_VT_DURABLE_PREFIX[1], clientId, topic,
-            // MessageFormat.format(JmsConstants.ACL_VT_DURABLE_PREFIX[1], fullClientId, topic)});
-            entries.add(createAuthorizationEntry(authDestinations, MessageFormat.format(AclConstants.ACL_VT_DURABLE_PREFIX[1], fullClientId, topic), principal));
-        }
-        return entries;
-    }
-
-    protected AuthorizationEntry createAuthorizationEntry(List<String> authDestinations, String topic, KapuaPrincipal principal, boolean read, boolean write, boolean admin) {
-        AuthorizationEntry entry = new AuthorizationEntry();
-        entry.setDestination(ActiveMQDestination.createDestination(topic, ActiveMQDestination.TOPIC_TYPE));
-        Set<Object> writeACLs = new HashSet<Object>();
-        Set<Object> readACLs = new HashSet<Object>();
-        Set<Object> adminACLs = new HashSet<Object>();
-        if (read) {
-            readACLs.add(principal);
-        }
-        if (write) {
-            writeACLs.add(principal);
-        }
-        if (admin) {
-            adminACLs.add(principal);
-        }
-        entry.setWriteACLs(writeACLs);
-        entry.setReadACLs(readACLs);
-        entry.setAdminACLs(adminACLs);
-        addAuthDestinationToLog(authDestinations, MessageFormat.format(AclConstants.PERMISSION_LOG,
-                read ? "r" : "_",
-                write ? "w" : "_",
-                admin ? "a" : "_",
-                topic));
-        return entry;
-
-    }
-
-    protected AuthorizationEntry createAuthorizationEntry(List<String> authDestinations, String topic, KapuaPrincipal principal) {
-        AuthorizationEntry entry = new AuthorizationEntry();
-        entry.setDestination(ActiveMQDestination.createDestination(topic, ActiveMQDestination.QUEUE_TYPE));
-        Set<Object> writeACLs = new HashSet<Object>();
-        Set<Object> readACLs = new HashSet<Object>();
-        Set<Object> adminACLs = new HashSet<Object>();
-        readACLs.add(principal);
-        entry.setWriteACLs(writeACLs);
-        entry.setReadACLs(readACLs);
-        entry.setAdminACLs(adminACLs);
-        addAuthDestinationToLog(authDestinations, MessageFormat.format(AclConstants.PERMISSION_LOG, "r", "_", "_", topic));
-        return entry;
-
-    }
-
-    private void addAuthDestinationToLog(List<String> authDestinations, String message) {
-        if (logger.isDebugEnabled()) {
-            authDestinations.add(message);
+    /**
+     * Bind the shared rules of the connection permission profile to the connection
+     */
+    private KapuaAuthorizationMap bindAclTemplate(List<String> authDestinations, AclTemplate template, KapuaPrincipal principal,
+            String accountName,
+            String clientId,
+            String fullClientId) {
+        KapuaAuthorizationMap authMap = new KapuaAuthorizationMap(template, principal, accountName, clientId, fullClientId);
+        if (authDestinations != null) {
+            authDestinations.addAll(authMap.getRuleDescriptions());
         }
+        return authMap;
     }
 
     private void logAuthDestinationToLog(List<String> authDestinations) {
@@ -16,9 +16,12 @@ import java.security.Principal;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ConnectionId;
 import org.apache.activemq.security.AuthorizationMap;
 import org.apache.activemq.security.SecurityContext;
+import org.eclipse.kapua.broker.core.setting.BrokerSetting;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
 import org.eclipse.kapua.commons.security.KapuaSession;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.authentication.KapuaPrincipal;
@@ -29,15 +32,18 @@ import org.eclipse.kapua.service.authentication.KapuaPrincipal;
  * @since 1.0
  */
 public class KapuaSecurityContext extends SecurityContext {
+
+    private static final int WRITE_ACL_CACHE_SIZE = BrokerSetting.getInstance().getInt(BrokerSettingKey.SECURITY_WRITE_ACL_CACHE_SIZE);
 	
     private KapuaPrincipal   principal;
     private KapuaSession        kapuaSession;
-    private KapuaId          connectionId;
+    private volatile KapuaId connectionId;
     private Set<Principal>   principals;
     private ConnectorDescriptor connectorDescriptor;
     private ConnectionId        brokerConnectionId;
+    private long                connectionHandle;
 
-    private AuthorizationMap authMap;
+    private final WriteAuthorizationCache writeAuthorizations;
     private boolean          hasDataView;
     private boolean          hasDataManage;
     private boolean          hasDeviceView;
@@ -55,7 +61,7 @@ public class KapuaSecurityContext extends SecurityContext {
         principals = new HashSet<Principal>();
         principals.add(principal);
 
-        this.authMap = authMap;
+        this.writeAuthorizations = new WriteAuthorizationCache(authMap, WRITE_ACL_CACHE_SIZE);
         this.connectionId = connectionId;
         this.connectorDescriptor = connectorDescriptor;
         this.brokerConnectionId = brokerConnectionId;
@@ -73,7 +79,18 @@ public class KapuaSecurityContext extends SecurityContext {
 
     public AuthorizationMap getAuthorizationMap()
     {
-        return authMap;
+        return writeAuthorizations.getAuthorizationMap();
+    }
+
+    /**
+     * Tell if the connection is allowed to publish to the destination (see {@link WriteAuthorizationCache})
+     * 
+     * @param destination
+     * @return
+     */
+    public boolean isWriteAllowed(ActiveMQDestination destination)
+    {
+        return writeAuthorizations.isAllowed(this, destination);
     }
 
     public KapuaId getConnectionId()
@@ -81,11 +98,36 @@ public class KapuaSecurityContext extends SecurityContext {
         return connectionId;
     }
 
+    /**
+     * Set the device connection id (the device connection is written asynchronously, so it may be not known yet when the security context is created)
+     * 
+     * @param connectionId
+     */
+    public void setConnectionId(KapuaId connectionId)
+    {
+        this.connectionId = connectionId;
+    }
+
     public ConnectionId getBrokerConnectionId()
     {
         return brokerConnectionId;
     }
 
+    public long getConnectionHandle()
+    {
+        return connectionHandle;
+    }
+
+    /**
+     * Set the handle of the connection in the broker {@link ConnectionRegistry}
+     * 
+     * @param connectionHandle
+     */
+    public void setConnectionHandle(long connectionHandle)
+    {
+        this.connectionHandle = connectionHandle;
+    }
+
     public ConnectorDescriptor getConnectorDescriptor()
     {
         return connectorDescriptor;
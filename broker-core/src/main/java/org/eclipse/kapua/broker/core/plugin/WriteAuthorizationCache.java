@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.security.AuthorizationMap;
+import org.apache.activemq.security.SecurityContext;
+
+/**
+ * Publish authorization decisions of a connection.<br>
+ * Walking the {@link AuthorizationMap} builds the set of the write ACLs of the destination, so the decisions (allowed or denied) are cached by
+ * destination and a steady state publish costs a single lookup. A device publishes to a few destinations, so when the cache reaches its
+ * maximum size (i.e. a client publishing to ever changing destinations) it is simply cleared.<br>
+ * The cache is bound to the authorization map it takes the decisions from. The map is built when the client connects and it is fixed for the
+ * life of the connection (a permission change applies from the next connection), so the decisions are never invalidated.
+ *
+ * @since 1.0
+ */
+public class WriteAuthorizationCache {
+
+    private final AuthorizationMap authMap;
+    private final int maxSize;
+    private final ConcurrentMap<ActiveMQDestination, Boolean> decisions = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     * 
+     * @param authMap
+     * @param maxSize the maximum number of cached decisions
+     */
+    public WriteAuthorizationCache(AuthorizationMap authMap, int maxSize) {
+        this.authMap = authMap;
+        this.maxSize = maxSize;
+    }
+
+    public AuthorizationMap getAuthorizationMap() {
+        return authMap;
+    }
+
+    /**
+     * Tell if the security context is allowed to publish to the destination
+     * 
+     * @param securityContext
+     * @param destination
+     * @return
+     */
+    public boolean isAllowed(SecurityContext securityContext, ActiveMQDestination destination) {
+        Boolean allowed = decisions.get(destination);
+        if (allowed == null) {
+            Set<?> allowedACLs = authMap.getWriteACLs(destination);
+            allowed = allowedACLs == null || securityContext.isInOneOf(allowedACLs);
+
+            if (decisions.size() >= maxSize) {
+                decisions.clear();
+            }
+            decisions.put(destination, allowed);
+        }
+        return allowed;
+    }
+}
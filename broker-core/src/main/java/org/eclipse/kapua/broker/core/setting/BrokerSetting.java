@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.setting;
+
+import org.eclipse.kapua.commons.setting.AbstractKapuaSetting;
+
+/**
+ * Class that offers access to all setting of {@link org.eclipse.kapua.broker.core}
+ *
+ * @since 1.0.0
+ */
+public class BrokerSetting extends AbstractKapuaSetting<BrokerSettingKey> {
+
+    /**
+     * Resource file from which source properties.
+     * 
+     * @since 1.0.0
+     */
+    private static final String BROKER_CONFIG_RESOURCE = "kapua-broker-setting.properties";
+
+    /**
+     * Singleton instance of this {@link class}.
+     * 
+     * @since 1.0.0
+     */
+    private static final BrokerSetting instance = new BrokerSetting();
+
+    /**
+     * Initialize the {@link AbstractKapuaSetting} with the {@link BrokerSetting#BROKER_CONFIG_RESOURCE} value.
+     * 
+     * @since 1.0.0
+     */
+    private BrokerSetting() {
+        super(BROKER_CONFIG_RESOURCE);
+    }
+
+    /**
+     * Gets a singleton instance of {@link BrokerSetting}.
+     * 
+     * @return A singleton instance of BrokerSetting.
+     * @since 1.0.0
+     */
+    public static BrokerSetting getInstance() {
+        return instance;
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.setting;
+
+import org.eclipse.kapua.commons.setting.SettingKey;
+
+/**
+ * Available settings key for the broker plugin
+ *
+ * @since 1.0.0
+ */
+public enum BrokerSettingKey implements SettingKey {
+    /**
+     * Maximum number of clients with a connection status change waiting to be written.
+     * 
+     * @since 1.0.0
+     */
+    CONNECTION_STATUS_PENDING_MAX("broker.connection.status.pending.max"),
+    /**
+     * Maximum number of connection status changes written in a single transaction.
+     * 
+     * @since 1.0.0
+     */
+    CONNECTION_STATUS_BATCH_SIZE("broker.connection.status.batch.size"),
+    /**
+     * Time (milliseconds) to wait before retrying a failed connection status change.
+     * 
+     * @since 1.0.0
+     */
+    CONNECTION_STATUS_RETRY_INTERVAL("broker.connection.status.retry.interval"),
+    /**
+     * Maximum number of attempts to write a connection status change before deferring it for the retry interval.
+     * 
+     * @since 1.0.0
+     */
+    CONNECTION_STATUS_RETRY_MAX("broker.connection.status.retry.max"),
+    /**
+     * Maximum number of device connection identifiers cached by client id.
+     * 
+     * @since 1.0.0
+     */
+    CONNECTION_STATUS_CONNECTION_ID_CACHE_SIZE("broker.connection.status.connection_id.cache.size"),
+    /**
+     * Maximum number of publish authorization decisions (allowed or denied destinations) cached by each connection.
+     * 
+     * @since 1.0.0
+     */
+    SECURITY_WRITE_ACL_CACHE_SIZE("broker.security.write_acl.cache.size"),
+    /**
+     * Time (milliseconds) a closed connection is still resolved by the connection registry (for its messages waiting for the consumers).
+     * 
+     * @since 1.0.0
+     */
+    CONNECTION_REGISTRY_CLOSED_RETENTION("broker.connection.registry.closed.retention"),
+    /**
+     * Maximum number of closed connections kept by the connection registry.
+     * 
+     * @since 1.0.0
+     */
+    CONNECTION_REGISTRY_CLOSED_MAX("broker.connection.registry.closed.max"),
+    ;
+
+    /**
+     * The key value in the configuration resources.
+     * 
+     * @since 1.0.0
+     */
+    private String key;
+
+    /**
+     * Set up the {@code enum} with the key value provided
+     * 
+     * @param key
+     *            The value mapped by this {@link enum} value
+     * @since 1.0.0
+     */
+    private BrokerSettingKey(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Gets the key for this {@link BrokerSettingKey}
+     * 
+     * @since 1.0.0
+     */
+    public String key() {
+        return key;
+    }
+}
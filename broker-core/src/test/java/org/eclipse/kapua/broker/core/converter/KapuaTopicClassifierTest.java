@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.converter;
+
+import java.util.regex.Pattern;
+
+import org.eclipse.kapua.broker.core.converter.KapuaTopicClassifier.ClassifiedTopic;
+import org.eclipse.kapua.broker.core.plugin.ConnectorDescriptor.MESSAGE_TYPE;
+import org.eclipse.kapua.transport.jms.setting.JmsClientSetting;
+import org.eclipse.kapua.transport.jms.setting.JmsClientSettingKeys;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KapuaTopicClassifierTest extends Assert
+{
+
+    private static final String SEPARATOR = JmsClientSetting.getInstance().getString(JmsClientSettingKeys.TRANSPORT_TOPIC_SEPARATOR);
+
+    private static final String[] TOPICS = new String[] {
+                                                          topic("kapua-sys", "device-1", "heater/data/temperature"),
+                                                          topic("kapua-sys", "device-1", "assets", "plc", "register/40001"),
+                                                          topic("kapua-sys"),
+                                                          topic("$EDC", "kapua-sys", "device-1", "MQTT", "BIRTH"),
+                                                          topic("$EDC", "kapua-sys", "device-1", "MQTT", "DC"),
+                                                          topic("$EDC", "kapua-sys", "device-1", "MQTT", "APPS"),
+                                                          topic("$EDC", "kapua-sys", "device-1", "MQTT", "LWT"),
+                                                          topic("$EDC", "kapua-sys", "device-1", "MQTT", "NOTIFY"),
+                                                          topic("$EDC", "kapua-sys", "device-1", "CONF-V1", "REPLY", "req-1"),
+                                                          topic("$EDC", "kapua-sys", "device-1", "MQTT", "BIRTH", "extra"),
+                                                          topic("$EDC", "kapua-sys", "MQTT", "BIRTH"),
+                                                          topic("$EDC", ""),
+                                                          topic("$EDC")
+    };
+
+    /**
+     * The classification as it was done by the broker Camel route choice (the simple language regex operator matches the whole topic)
+     */
+    private static final Pattern        SYSTEM_TOPIC      = Pattern.compile("^\\$EDC" + Pattern.quote(SEPARATOR) + ".*");
+    private static final Pattern[]      LIFE_CYCLE_TOPICS = new Pattern[] {
+                                                                            lifeCycleTopic("BIRTH"),
+                                                                            lifeCycleTopic("DC"),
+                                                                            lifeCycleTopic("APPS"),
+                                                                            lifeCycleTopic("LWT"),
+                                                                            lifeCycleTopic("NOTIFY")
+    };
+    private static final MESSAGE_TYPE[] LIFE_CYCLE_TYPES  = new MESSAGE_TYPE[] {
+                                                                                MESSAGE_TYPE.birth,
+                                                                                MESSAGE_TYPE.disconnect,
+                                                                                MESSAGE_TYPE.app,
+                                                                                MESSAGE_TYPE.missing,
+                                                                                MESSAGE_TYPE.notify
+    };
+
+    @Test
+    public void testClassificationMatchesRoute()
+        throws Exception
+    {
+        KapuaTopicClassifier classifier = new KapuaTopicClassifier();
+
+        // the classifier must route the messages as the regular expressions of the route did
+        // (the account and the client id are single topic levels, the broker acls don't allow anything else)
+        for (String topic : TOPICS) {
+            assertEquals(topic, regexClassify(topic), classifier.classify(topic).getMessageType());
+        }
+    }
+
+    @Test
+    public void testDataTopic()
+        throws Exception
+    {
+        ClassifiedTopic classifiedTopic = new KapuaTopicClassifier().classify(topic("kapua-sys", "device-1", "assets", "plc"));
+
+        assertEquals(MESSAGE_TYPE.data, classifiedTopic.getMessageType());
+        assertArrayEquals(new String[] { "kapua-sys", "device-1", "assets", "plc" }, classifiedTopic.getTokens());
+        assertEquals("kapua-sys", classifiedTopic.getAccount());
+        assertEquals("device-1", classifiedTopic.getClientId());
+        assertEquals(topic("assets", "plc"), classifiedTopic.getSemanticTopic());
+    }
+
+    @Test
+    public void testLifeCycleTopic()
+        throws Exception
+    {
+        ClassifiedTopic classifiedTopic = new KapuaTopicClassifier().classify(topic("$EDC", "kapua-sys", "device-1", "MQTT", "BIRTH"));
+
+        assertEquals(MESSAGE_TYPE.birth, classifiedTopic.getMessageType());
+        assertEquals(5, classifiedTopic.getTokens().length);
+        assertEquals("kapua-sys", classifiedTopic.getAccount());
+        assertEquals("device-1", classifiedTopic.getClientId());
+        assertEquals(topic("MQTT", "BIRTH"), classifiedTopic.getSemanticTopic());
+    }
+
+    @Test
+    public void testShortTopic()
+        throws Exception
+    {
+        ClassifiedTopic classifiedTopic = new KapuaTopicClassifier().classify(topic("kapua-sys") + SEPARATOR);
+
+        // the trailing empty tokens are removed as String.split does
+        assertEquals(MESSAGE_TYPE.data, classifiedTopic.getMessageType());
+        assertArrayEquals(new String[] { "kapua-sys" }, classifiedTopic.getTokens());
+        assertEquals("kapua-sys", classifiedTopic.getAccount());
+        assertNull(classifiedTopic.getClientId());
+        assertNull(classifiedTopic.getSemanticTopic());
+    }
+
+    private static MESSAGE_TYPE regexClassify(String topic)
+    {
+        if (!SYSTEM_TOPIC.matcher(topic).matches()) {
+            return MESSAGE_TYPE.data;
+        }
+        for (int i = 0; i < LIFE_CYCLE_TOPICS.length; i++) {
+            if (LIFE_CYCLE_TOPICS[i].matcher(topic).matches()) {
+                return LIFE_CYCLE_TYPES[i];
+            }
+        }
+        return MESSAGE_TYPE.unmatched;
+    }
+
+    private static Pattern lifeCycleTopic(String lifeCycleTopic)
+    {
+        String separator = Pattern.quote(SEPARATOR);
+        return Pattern.compile("^\\$EDC" + separator + "(.*" + separator + "){2}MQTT" + separator + lifeCycleTopic);
+    }
+
+    private static String topic(String... tokens)
+    {
+        return String.join(SEPARATOR, tokens);
+    }
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.message;
+
+import java.math.BigInteger;
+
+import org.apache.camel.Message;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.eclipse.kapua.broker.core.plugin.ConnectionRegistry;
+import org.eclipse.kapua.broker.core.plugin.KapuaPrincipalImpl;
+import org.eclipse.kapua.broker.core.plugin.KapuaSecurityContext;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authentication.token.shiro.AccessTokenImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CamelUtilTest extends Assert
+{
+
+    private static final KapuaId SCOPE_ID       = new KapuaEid(BigInteger.ONE);
+    private static final KapuaId OTHER_SCOPE_ID = new KapuaEid(BigInteger.valueOf(10));
+    private static final KapuaId USER_ID        = new KapuaEid(BigInteger.valueOf(2));
+    private static final KapuaId OTHER_USER_ID  = new KapuaEid(BigInteger.valueOf(20));
+    private static final KapuaId CONNECTION_ID  = new KapuaEid(BigInteger.valueOf(3));
+
+    @Test
+    public void testRegisteredConnection()
+        throws Exception
+    {
+        KapuaSecurityContext securityContext = newSecurityContext(SCOPE_ID, USER_ID);
+        securityContext.setConnectionId(CONNECTION_ID);
+        long handle = ConnectionRegistry.getInstance().register(securityContext);
+
+        // the connection id was not known when the message was published
+        Message message = newMessage(handle, SCOPE_ID, USER_ID, null);
+
+        assertSame(securityContext.getKapuaSession(), CamelUtil.getKapuaSession(message));
+        assertEquals(CONNECTION_ID, CamelUtil.getConnectionId(message));
+    }
+
+    @Test
+    public void testConnectionOfAnotherScope()
+        throws Exception
+    {
+        KapuaSecurityContext securityContext = newSecurityContext(OTHER_SCOPE_ID, OTHER_USER_ID);
+        securityContext.setConnectionId(CONNECTION_ID);
+        long handle = ConnectionRegistry.getInstance().register(securityContext);
+
+        Message message = newMessage(handle, SCOPE_ID, USER_ID, null);
+
+        // the connection is ignored and the session is the one of the message scope
+        KapuaSession kapuaSession = CamelUtil.getKapuaSession(message);
+        assertNotSame(securityContext.getKapuaSession(), kapuaSession);
+        assertEquals(SCOPE_ID, kapuaSession.getScopeId());
+        assertEquals(USER_ID, kapuaSession.getUserId());
+        assertNull(CamelUtil.getConnectionId(message));
+    }
+
+    @Test
+    public void testUnknownConnection()
+        throws Exception
+    {
+        long handle = ConnectionRegistry.getInstance().register(newSecurityContext(SCOPE_ID, USER_ID)) + 1000;
+
+        Message message = newMessage(handle, SCOPE_ID, USER_ID, CONNECTION_ID);
+
+        KapuaSession kapuaSession = CamelUtil.getKapuaSession(message);
+        assertEquals(SCOPE_ID, kapuaSession.getScopeId());
+        assertEquals(USER_ID, kapuaSession.getUserId());
+        assertTrue(kapuaSession.isTrustedMode());
+        assertEquals(CONNECTION_ID, CamelUtil.getConnectionId(message));
+
+        assertNull(CamelUtil.getKapuaSession(new DefaultExchange(new DefaultCamelContext()).getIn()));
+    }
+
+    private static Message newMessage(long handle, KapuaId scopeId, KapuaId userId, KapuaId connectionId)
+    {
+        Message message = new DefaultExchange(new DefaultCamelContext()).getIn();
+        message.setHeader(MessageConstants.HEADER_KAPUA_CONNECTION_HANDLE, handle);
+        message.setHeader(MessageConstants.HEADER_KAPUA_SCOPE_ID, scopeId.getId().longValue());
+        message.setHeader(MessageConstants.HEADER_KAPUA_USER_ID, userId.getId().longValue());
+        if (connectionId != null) {
+            message.setHeader(MessageConstants.HEADER_KAPUA_CONNECTION_ID, connectionId.getId().longValue());
+        }
+        return message;
+    }
+
+    private static KapuaSecurityContext newSecurityContext(KapuaId scopeId, KapuaId userId)
+    {
+        KapuaSecurityUtils.setSession(new KapuaSession(null, scopeId, userId));
+        try {
+            KapuaPrincipalImpl principal = new KapuaPrincipalImpl(new AccessTokenImpl(scopeId, userId, "token", null), "user", "device-1", "127.0.0.1");
+            return new KapuaSecurityContext(principal, null, null, null, null);
+        }
+        finally {
+            KapuaSecurityUtils.clearSession();
+        }
+    }
+}
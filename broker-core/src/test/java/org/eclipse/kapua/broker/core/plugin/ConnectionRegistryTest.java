@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import java.math.BigInteger;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.eclipse.kapua.broker.core.message.MessageConstants;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authentication.token.shiro.AccessTokenImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConnectionRegistryTest extends Assert
+{
+
+    private static final KapuaId SCOPE_ID = new KapuaEid(BigInteger.ONE);
+    private static final KapuaId USER_ID  = new KapuaEid(BigInteger.valueOf(2));
+
+    @Test
+    public void testRegister()
+        throws Exception
+    {
+        ConnectionRegistry connectionRegistry = ConnectionRegistry.getInstance();
+        KapuaSecurityContext securityContext = newSecurityContext(SCOPE_ID, USER_ID);
+
+        long handle = connectionRegistry.register(securityContext);
+        long otherHandle = connectionRegistry.register(newSecurityContext(SCOPE_ID, USER_ID));
+
+        assertNotEquals(handle, otherHandle);
+        assertSame(securityContext, connectionRegistry.getConnection(handle));
+
+        // the closed connection is still resolved for its queued messages
+        connectionRegistry.unregister(handle);
+        assertSame(securityContext, connectionRegistry.getConnection(handle));
+
+        assertNull(connectionRegistry.getConnection(otherHandle + 1));
+    }
+
+    @Test
+    public void testConnectorIds()
+        throws Exception
+    {
+        ConnectionRegistry connectionRegistry = ConnectionRegistry.getInstance();
+
+        ConnectorDescriptor mqtt = connectionRegistry.getConnectorDescriptor("mqtt");
+        ConnectorDescriptor mqtts = connectionRegistry.getConnectorDescriptor("mqtts");
+        assertNotNull(mqtt);
+        assertNotNull(mqtts);
+
+        // the ids follow the connector names order
+        assertEquals(0, connectionRegistry.getConnectorId(mqtt));
+        assertEquals(1, connectionRegistry.getConnectorId(mqtts));
+        assertSame(mqtt, connectionRegistry.getConnectorDescriptor(0));
+        assertSame(mqtts, connectionRegistry.getConnectorDescriptor(1));
+
+        assertNull(connectionRegistry.getConnectorDescriptor(2));
+        assertNull(connectionRegistry.getConnectorDescriptor(-1));
+        assertEquals(-1, connectionRegistry.getConnectorId(null));
+    }
+
+    @Test
+    public void testRemoveKapuaProperties()
+        throws Exception
+    {
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.setProperty(MessageConstants.HEADER_KAPUA_CONNECTION_HANDLE, 1L);
+        message.setProperty(MessageConstants.HEADER_KAPUA_CONNECTION_ID, 2L);
+        message.setProperty(MessageConstants.HEADER_KAPUA_SCOPE_ID, 3L);
+        message.setProperty(MessageConstants.HEADER_KAPUA_TOPIC_CLASS, "data");
+        message.setProperty(MessageConstants.PROPERTY_ORIGINAL_TOPIC, "kapua-sys/device-1/data");
+        message.setProperty("applicationProperty", "value");
+
+        KapuaSecurityBrokerFilter.removeKapuaProperties(message);
+
+        assertEquals(1, message.getProperties().size());
+        assertEquals("value", message.getProperty("applicationProperty"));
+    }
+
+    private static KapuaSecurityContext newSecurityContext(KapuaId scopeId, KapuaId userId)
+    {
+        KapuaSecurityUtils.setSession(new KapuaSession(null, scopeId, userId));
+        try {
+            KapuaPrincipalImpl principal = new KapuaPrincipalImpl(new AccessTokenImpl(scopeId, userId, "token", null), "user", "device-1", "127.0.0.1");
+            return new KapuaSecurityContext(principal, null, null, null, null);
+        }
+        finally {
+            KapuaSecurityUtils.clearSession();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.metric.MetricsServiceImpl;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnection;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionCreator;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionService;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionStatus;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeviceConnectionStatusWriterTest extends Assert
+{
+
+    private static final KapuaId SCOPE_ID      = new KapuaEid(BigInteger.ONE);
+    private static final KapuaId USER_ID       = new KapuaEid(BigInteger.valueOf(2));
+    private static final KapuaId OTHER_USER_ID = new KapuaEid(BigInteger.valueOf(3));
+
+    // the written batches, as client id:status
+    private final List<List<String>> batches       = new CopyOnWriteArrayList<>();
+    private final Set<String>        failedClients = ConcurrentHashMap.newKeySet();
+    private final AtomicLong         nextId        = new AtomicLong();
+    private volatile boolean         unavailable;
+    private volatile CountDownLatch  writing       = new CountDownLatch(1);
+    private volatile CountDownLatch  released      = new CountDownLatch(0);
+
+    private DeviceConnectionService deviceConnectionService;
+    private DeviceConnectionStatusWriter writer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp()
+        throws Exception
+    {
+        deviceConnectionService = mock(DeviceConnectionService.class);
+        doAnswer(invocation -> {
+            List<DeviceConnectionCreator> creators = (List<DeviceConnectionCreator>) invocation.getArguments()[0];
+            List<String> batch = new ArrayList<>();
+            for (DeviceConnectionCreator creator : creators) {
+                batch.add(creator.getClientId() + ":" + creator.getStatus());
+            }
+            batches.add(batch);
+
+            writing.countDown();
+            released.await();
+
+            List<DeviceConnection> deviceConnections = new ArrayList<>();
+            for (DeviceConnectionCreator creator : creators) {
+                if (unavailable || failedClients.contains(creator.getClientId())) {
+                    throw KapuaException.internalError("Cannot write the connection of " + creator.getClientId());
+                }
+                deviceConnections.add(newDeviceConnection(new KapuaEid(BigInteger.valueOf(nextId.incrementAndGet()))));
+            }
+            return deviceConnections;
+        }).when(deviceConnectionService).updateStatus(anyListOf(DeviceConnectionCreator.class));
+    }
+
+    @After
+    public void tearDown()
+    {
+        released.countDown();
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void testCoalesceToTheLatestStatus()
+        throws Exception
+    {
+        writer = newWriter(10, 10, 60000L, 10);
+        hold();
+        writer.submit(newCreator("blocker", USER_ID, DeviceConnectionStatus.CONNECTED), null);
+        assertTrue(writing.await(1, TimeUnit.SECONDS));
+
+        assertTrue(writer.submit(newCreator("client-1", USER_ID, DeviceConnectionStatus.CONNECTED), null));
+        assertTrue(writer.submit(newCreator("client-1", USER_ID, DeviceConnectionStatus.DISCONNECTED), null));
+        assertEquals(2, writer.getPendingSize());
+
+        released.countDown();
+        await(() -> writer.getPendingSize() == 0);
+
+        assertEquals(Arrays.asList(Arrays.asList("blocker:CONNECTED"), Arrays.asList("client-1:DISCONNECTED")), batches);
+        assertNotNull(writer.getConnectionId(SCOPE_ID, "client-1"));
+        assertEquals(10, writer.getAvailableRoom());
+    }
+
+    @Test
+    public void testKeepTheOrderOfAClientAcrossBatches()
+        throws Exception
+    {
+        writer = newWriter(10, 10, 60000L, 10);
+        hold();
+        writer.submit(newCreator("client-1", USER_ID, DeviceConnectionStatus.CONNECTED), null);
+        assertTrue(writing.await(1, TimeUnit.SECONDS));
+
+        // submitted while the previous status of the client is being written
+        writer.submit(newCreator("client-1", USER_ID, DeviceConnectionStatus.DISCONNECTED), null);
+
+        released.countDown();
+        await(() -> writer.getPendingSize() == 0);
+
+        assertEquals(Arrays.asList(Arrays.asList("client-1:CONNECTED"), Arrays.asList("client-1:DISCONNECTED")), batches);
+        assertEquals(10, writer.getAvailableRoom());
+    }
+
+    @Test
+    public void testOneTransactionPerUser()
+        throws Exception
+    {
+        writer = newWriter(10, 10, 60000L, 10);
+        hold();
+        writer.submit(newCreator("blocker", USER_ID, DeviceConnectionStatus.CONNECTED), null);
+        assertTrue(writing.await(1, TimeUnit.SECONDS));
+
+        writer.submit(newCreator("client-1", USER_ID, DeviceConnectionStatus.CONNECTED), null);
+        writer.submit(newCreator("client-2", OTHER_USER_ID, DeviceConnectionStatus.CONNECTED), null);
+        writer.submit(newCreator("client-3", USER_ID, DeviceConnectionStatus.CONNECTED), null);
+
+        released.countDown();
+        await(() -> writer.getPendingSize() == 0);
+
+        assertEquals(Arrays.asList(Arrays.asList("blocker:CONNECTED"),
+                                   Arrays.asList("client-1:CONNECTED", "client-3:CONNECTED"),
+                                   Arrays.asList("client-2:CONNECTED")),
+                     batches);
+    }
+
+    @Test
+    public void testWriteOneByOneOnPartialFailure()
+        throws Exception
+    {
+        writer = newWriter(10, 10, 60000L, 1);
+        failedClients.add("client-2");
+        hold();
+        writer.submit(newCreator("blocker", USER_ID, DeviceConnectionStatus.CONNECTED), null);
+        assertTrue(writing.await(1, TimeUnit.SECONDS));
+
+        writer.submit(newCreator("client-1", USER_ID, DeviceConnectionStatus.CONNECTED), null);
+        writer.submit(newCreator("client-2", USER_ID, DeviceConnectionStatus.CONNECTED), null);
+        writer.submit(newCreator("client-3", USER_ID, DeviceConnectionStatus.CONNECTED), null);
+
+        released.countDown();
+        await(() -> writer.getPendingSize() == 0);
+
+        assertEquals(Arrays.asList(Arrays.asList("blocker:CONNECTED"),
+                                   Arrays.asList("client-1:CONNECTED", "client-2:CONNECTED", "client-3:CONNECTED"),
+                                   Arrays.asList("client-1:CONNECTED"),
+                                   Arrays.asList("client-2:CONNECTED"),
+                                   Arrays.asList("client-3:CONNECTED")),
+                     batches);
+        assertNotNull(writer.getConnectionId(SCOPE_ID, "client-1"));
+        assertNull(writer.getConnectionId(SCOPE_ID, "client-2"));
+        assertNotNull(writer.getConnectionId(SCOPE_ID, "client-3"));
+
+        // the failed status is retried later, without holding a pending place meanwhile
+        assertEquals(1, writer.getDeferredSize());
+        assertEquals(10, writer.getAvailableRoom());
+    }
+
+    @Test
+    public void testRetryWhenTheRegistryIsBack()
+        throws Exception
+    {
+        writer = newWriter(10, 10, 200L, 1);
+        unavailable = true;
+
+        writer.submit(newCreator("client-1", USER_ID, DeviceConnectionStatus.CONNECTED), null);
+        await(() -> writer.getDeferredSize() == 1 && writer.getPendingSize() == 0);
+        assertEquals(10, writer.getAvailableRoom());
+
+        unavailable = false;
+        await(() -> writer.getConnectionId(SCOPE_ID, "client-1") != null);
+        await(() -> writer.getPendingSize() == 0);
+
+        assertEquals(0, writer.getDeferredSize());
+        assertEquals(10, writer.getAvailableRoom());
+    }
+
+    @Test
+    public void testDeferTheConnectionsWhenFull()
+        throws Exception
+    {
+        writer = newWriter(1, 10, 60000L, 10);
+        hold();
+        assertTrue(writer.submit(newCreator("client-1", USER_ID, DeviceConnectionStatus.CONNECTED), null));
+        assertTrue(writing.await(1, TimeUnit.SECONDS));
+        assertEquals(0, writer.getAvailableRoom());
+
+        // the connection of another client is deferred, a disconnection and the status of a pending client are accepted
+        assertFalse(writer.submit(newCreator("client-2", USER_ID, DeviceConnectionStatus.CONNECTED), null));
+        assertTrue(writer.submit(newCreator("client-3", USER_ID, DeviceConnectionStatus.DISCONNECTED), null));
+        assertTrue(writer.submit(newCreator("client-1", USER_ID, DeviceConnectionStatus.DISCONNECTED), null));
+        assertEquals(1, writer.getDeferredSize());
+
+        released.countDown();
+        await(() -> writer.getPendingSize() == 0 && writer.getDeferredSize() == 0);
+
+        List<String> written = new ArrayList<>();
+        for (List<String> batch : batches) {
+            written.addAll(batch);
+        }
+        assertEquals(4, written.size());
+        assertTrue(written.indexOf("client-1:CONNECTED") < written.indexOf("client-1:DISCONNECTED"));
+        assertTrue(written.contains("client-2:CONNECTED"));
+        assertTrue(written.contains("client-3:DISCONNECTED"));
+        assertEquals(1, writer.getAvailableRoom());
+    }
+
+    private DeviceConnectionStatusWriter newWriter(int pendingMax, int batchSize, long retryInterval, int retryMax)
+    {
+        return new DeviceConnectionStatusWriter(deviceConnectionService, pendingMax, batchSize, retryInterval, retryMax, 100, new MetricsServiceImpl());
+    }
+
+    /**
+     * Hold the next write until released
+     */
+    private void hold()
+    {
+        writing = new CountDownLatch(1);
+        released = new CountDownLatch(1);
+    }
+
+    private static DeviceConnectionCreator newCreator(String clientId, KapuaId userId, DeviceConnectionStatus status)
+    {
+        DeviceConnectionCreator creator = mock(DeviceConnectionCreator.class);
+        doReturn(SCOPE_ID).when(creator).getScopeId();
+        doReturn(clientId).when(creator).getClientId();
+        doReturn(userId).when(creator).getUserId();
+        doReturn(status).when(creator).getStatus();
+        return creator;
+    }
+
+    private static DeviceConnection newDeviceConnection(KapuaId id)
+    {
+        return (DeviceConnection) Proxy.newProxyInstance(DeviceConnection.class.getClassLoader(),
+                                                         new Class<?>[] { DeviceConnection.class },
+                                                         (proxy, method, args) -> "getId".equals(method.getName()) ? id : null);
+    }
+
+    private static void await(BooleanSupplier condition)
+        throws InterruptedException
+    {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.filter.DestinationMapEntry;
+import org.apache.activemq.security.AuthorizationEntry;
+import org.apache.activemq.security.AuthorizationMap;
+import org.apache.activemq.security.DefaultAuthorizationMap;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authentication.KapuaPrincipal;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KapuaAuthorizationMapTest extends Assert
+{
+
+    private static final String ACCOUNT        = "kapua-sys";
+    private static final String CLIENT_ID      = "device-1";
+    private static final String FULL_CLIENT_ID = "1:device-1";
+
+    private static final String[] TOPICS = new String[] {
+                                                          "VirtualTopic.kapua-sys.device-1.heater.data",
+                                                          "VirtualTopic.kapua-sys.device-2.heater.data",
+                                                          "VirtualTopic.kapua-sys.>",
+                                                          "VirtualTopic.kapua-sys.*.heater.data",
+                                                          "VirtualTopic.other-account.device-1.heater.data",
+                                                          "VirtualTopic.$EDC.kapua-sys.device-1.MQTT.BIRTH",
+                                                          "VirtualTopic.$EDC.kapua-sys.device-2.MQTT.BIRTH",
+                                                          "VirtualTopic.$EDC.kapua-sys.device-1.MQTT.NOTIFY.device-1.deploy",
+                                                          "VirtualTopic.$EDC.kapua-sys.device-2.MQTT.NOTIFY.device-1.deploy",
+                                                          "VirtualTopic.$EDC.kapua-sys.device-2.DEPLOY-V1.REPLY.req-1",
+                                                          "VirtualTopic.ActiveMQ.Advisory.Connection",
+                                                          "VirtualTopic.kapua-sys.device-1.heater.data,VirtualTopic.other-account.device-1.data"
+    };
+
+    private static final String[] QUEUES = new String[] {
+                                                          "Consumer.1:device-1:AT_LEAST_ONCE.VirtualTopic.kapua-sys.device-1.heater.data",
+                                                          "Consumer.1:device-2:AT_LEAST_ONCE.VirtualTopic.kapua-sys.device-1.heater.data",
+                                                          "Consumer.1:device-1:EXACTLY_ONCE.VirtualTopic.kapua-sys.>",
+                                                          "VirtualTopic.kapua-sys.device-1.heater.data"
+    };
+
+    @Test
+    public void testMatches()
+        throws Exception
+    {
+        assertTrue(matches("A.B.C", "A.B.C"));
+        assertFalse(matches("A.B.C", "A.B"));
+        assertFalse(matches("A.B", "A.B.C"));
+        assertTrue(matches("A.*.C", "A.B.C"));
+        assertFalse(matches("A.*.C", "A.B.D"));
+        assertTrue(matches("A.>", "A.B.C"));
+        assertTrue(matches("A.>", "A"));
+        assertFalse(matches("A.>", "B.C"));
+
+        // the wildcard destinations match every rule below them
+        assertTrue(matches("A.B.C", "A.>"));
+        assertTrue(matches("A.B.C", "A.*.C"));
+        assertFalse(matches("A.B.C", "B.>"));
+        assertFalse(matches("A", "A.>"));
+    }
+
+    @Test
+    public void testSameDecisionsOfDefaultAuthorizationMap()
+        throws Exception
+    {
+        KapuaPrincipal principal = new TestPrincipal();
+        for (int profile = 0; profile < 8; profile++) {
+            boolean[] hasPermissions = new boolean[4];
+            hasPermissions[AclConstants.BROKER_CONNECT_IDX] = true;
+            hasPermissions[AclConstants.DEVICE_MANAGE_IDX] = (profile & 4) != 0;
+            hasPermissions[AclConstants.DATA_VIEW_IDX] = (profile & 2) != 0;
+            hasPermissions[AclConstants.DATA_MANAGE_IDX] = (profile & 1) != 0;
+
+            assertSameDecisions(buildDefaultAuthorizationMap(principal, hasPermissions, ACCOUNT, CLIENT_ID, FULL_CLIENT_ID),
+                                new KapuaAuthorizationMap(AclTemplate.forPermissions(hasPermissions), principal, ACCOUNT, CLIENT_ID, FULL_CLIENT_ID));
+        }
+    }
+
+    private static void assertSameDecisions(AuthorizationMap expected, AuthorizationMap actual)
+    {
+        List<ActiveMQDestination> destinations = new ArrayList<ActiveMQDestination>();
+        for (String topic : TOPICS) {
+            destinations.add(ActiveMQDestination.createDestination(topic, ActiveMQDestination.TOPIC_TYPE));
+        }
+        for (String queue : QUEUES) {
+            destinations.add(ActiveMQDestination.createDestination(queue, ActiveMQDestination.QUEUE_TYPE));
+        }
+
+        for (ActiveMQDestination destination : destinations) {
+            assertEquals(destination.toString(), expected.getReadACLs(destination), actual.getReadACLs(destination));
+            assertEquals(destination.toString(), expected.getWriteACLs(destination), actual.getWriteACLs(destination));
+            assertEquals(destination.toString(), expected.getAdminACLs(destination), actual.getAdminACLs(destination));
+        }
+    }
+
+    private static boolean matches(String rule, String destination)
+    {
+        return KapuaAuthorizationMap.matches(ActiveMQDestination.createDestination(rule, ActiveMQDestination.TOPIC_TYPE).getDestinationPaths(),
+                                             ActiveMQDestination.createDestination(destination, ActiveMQDestination.TOPIC_TYPE).getDestinationPaths());
+    }
+
+    /**
+     * Authorization map of a connection as built before the {@link AclTemplate}s
+     */
+    @SuppressWarnings("rawtypes")
+    static DefaultAuthorizationMap buildDefaultAuthorizationMap(KapuaPrincipal principal, boolean[] hasPermissions, String accountName, String clientId, String fullClientId)
+    {
+        List<DestinationMapEntry> entries = new ArrayList<DestinationMapEntry>();
+        addEntries(entries, AclConstants.ACL_AMQ_ADVISORY, principal, fullClientId, false, true, true);
+        if (hasPermissions[AclConstants.DEVICE_MANAGE_IDX]) {
+            addEntries(entries, MessageFormat.format(AclConstants.ACL_CTRL_ACC, accountName), principal, fullClientId, true, true, true);
+        }
+        else {
+            addEntries(entries, MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI, accountName, clientId), principal, fullClientId, true, true, true);
+        }
+        if (hasPermissions[AclConstants.DATA_MANAGE_IDX]) {
+            addEntries(entries, MessageFormat.format(AclConstants.ACL_DATA_ACC, accountName), principal, fullClientId, true, true, true);
+        }
+        else if (hasPermissions[AclConstants.DATA_VIEW_IDX]) {
+            addEntries(entries, MessageFormat.format(AclConstants.ACL_DATA_ACC, accountName), principal, fullClientId, true, false, true);
+            addEntries(entries, MessageFormat.format(AclConstants.ACL_DATA_ACC_CLI, accountName, clientId), principal, fullClientId, false, true, false);
+        }
+        else {
+            addEntries(entries, MessageFormat.format(AclConstants.ACL_DATA_ACC_CLI, accountName, clientId), principal, fullClientId, true, true, true);
+        }
+        addEntries(entries, MessageFormat.format(AclConstants.ACL_CTRL_ACC_REPLY, accountName), principal, fullClientId, false, true, true);
+        addEntries(entries, MessageFormat.format(AclConstants.ACL_CTRL_ACC_NOTIFY, accountName, clientId), principal, fullClientId, false, true, false);
+        return new DefaultAuthorizationMap(entries);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static void addEntries(List<DestinationMapEntry> entries, String topic, KapuaPrincipal principal, String fullClientId, boolean read, boolean write, boolean admin)
+    {
+        entries.add(entry(ActiveMQDestination.createDestination(topic, ActiveMQDestination.TOPIC_TYPE), principal, read, write, admin));
+        if (read) {
+            for (String prefix : AclConstants.ACL_VT_DURABLE_PREFIX) {
+                entries.add(entry(ActiveMQDestination.createDestination(MessageFormat.format(prefix, fullClientId, topic), ActiveMQDestination.QUEUE_TYPE),
+                                  principal, true, false, false));
+            }
+        }
+    }
+
+    private static AuthorizationEntry entry(ActiveMQDestination destination, KapuaPrincipal principal, boolean read, boolean write, boolean admin)
+    {
+        AuthorizationEntry entry = new AuthorizationEntry();
+        entry.setDestination(destination);
+        entry.setReadACLs(acls(principal, read));
+        entry.setWriteACLs(acls(principal, write));
+        entry.setAdminACLs(acls(principal, admin));
+        return entry;
+    }
+
+    private static Set<Object> acls(KapuaPrincipal principal, boolean granted)
+    {
+        Set<Object> acls = new HashSet<Object>();
+        if (granted) {
+            acls.add(principal);
+        }
+        return acls;
+    }
+
+    static class TestPrincipal implements KapuaPrincipal
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String getName()
+        {
+            return "1:test-user";
+        }
+
+        @Override
+        public String getTokenId()
+        {
+            return null;
+        }
+
+        @Override
+        public KapuaId getUserId()
+        {
+            return null;
+        }
+
+        @Override
+        public KapuaId getAccountId()
+        {
+            return null;
+        }
+
+        @Override
+        public String getClientIp()
+        {
+            return null;
+        }
+
+        @Override
+        public String getClientId()
+        {
+            return null;
+        }
+    }
+}
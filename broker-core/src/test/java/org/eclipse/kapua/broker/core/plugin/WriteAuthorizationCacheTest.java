@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import java.math.BigInteger;
+import java.security.Principal;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.filter.DestinationMapEntry;
+import org.apache.activemq.security.AuthorizationEntry;
+import org.apache.activemq.security.DefaultAuthorizationMap;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authentication.token.shiro.AccessTokenImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WriteAuthorizationCacheTest extends Assert
+{
+
+    private static final KapuaId SCOPE_ID = new KapuaEid(BigInteger.ONE);
+    private static final KapuaId USER_ID  = new KapuaEid(BigInteger.valueOf(2));
+
+    private static final String ACCOUNT   = "kapua-sys";
+    private static final String CLIENT_ID = "device-1";
+
+    private static final String[] ALLOWED_TOPICS = new String[] {
+                                                                  "VirtualTopic.kapua-sys.device-1.heater.data.temperature",
+                                                                  "VirtualTopic.kapua-sys.device-1.assets.plc.register",
+                                                                  "VirtualTopic.$EDC.kapua-sys.device-1.MQTT.BIRTH",
+                                                                  "VirtualTopic.$EDC.kapua-sys.device-1.MQTT.NOTIFY.device-1.deploy"
+    };
+    private static final String[] DENIED_TOPICS  = new String[] {
+                                                                  "VirtualTopic.other-account.device-1.data",
+                                                                  "VirtualTopic.kapua-sys.device-2.heater.data.temperature",
+                                                                  "VirtualTopic.$EDC.kapua-sys.device-2.MQTT.BIRTH"
+    };
+
+    @Test
+    public void testDecisionsMatchAuthorizationMap()
+        throws Exception
+    {
+        KapuaSecurityContext securityContext = newSecurityContext();
+        CountingAuthorizationMap authMap = buildAuthMap(securityContext.getMainPrincipal());
+        WriteAuthorizationCache cache = new WriteAuthorizationCache(authMap, 64);
+
+        // the cached decisions (allowed and denied) are the ones of the authorization map
+        for (int round = 0; round < 2; round++) {
+            for (String topic : ALLOWED_TOPICS) {
+                assertTrue(topic, cache.isAllowed(securityContext, topic(topic)));
+            }
+            for (String topic : DENIED_TOPICS) {
+                assertFalse(topic, cache.isAllowed(securityContext, topic(topic)));
+            }
+        }
+
+        // the authorization map is walked once per destination
+        assertEquals(ALLOWED_TOPICS.length + DENIED_TOPICS.length, authMap.getLookups());
+    }
+
+    @Test
+    public void testMaxSize()
+        throws Exception
+    {
+        KapuaSecurityContext securityContext = newSecurityContext();
+        CountingAuthorizationMap authMap = buildAuthMap(securityContext.getMainPrincipal());
+        WriteAuthorizationCache cache = new WriteAuthorizationCache(authMap, 2);
+
+        assertTrue(cache.isAllowed(securityContext, topic(ALLOWED_TOPICS[0])));
+        assertTrue(cache.isAllowed(securityContext, topic(ALLOWED_TOPICS[1])));
+        assertEquals(2, authMap.getLookups());
+
+        // the full cache is cleared, so the first decision is taken again from the authorization map
+        assertFalse(cache.isAllowed(securityContext, topic(DENIED_TOPICS[0])));
+        assertTrue(cache.isAllowed(securityContext, topic(ALLOWED_TOPICS[0])));
+        assertEquals(4, authMap.getLookups());
+    }
+
+    private static KapuaSecurityContext newSecurityContext()
+    {
+        KapuaSecurityUtils.setSession(new KapuaSession(null, SCOPE_ID, USER_ID));
+        try {
+            KapuaPrincipalImpl principal = new KapuaPrincipalImpl(new AccessTokenImpl(SCOPE_ID, USER_ID, "token", null), "user", CLIENT_ID, "127.0.0.1");
+            return new KapuaSecurityContext(principal, null, null, null, null);
+        }
+        finally {
+            KapuaSecurityUtils.clearSession();
+        }
+    }
+
+    private static ActiveMQDestination topic(String topic)
+    {
+        return ActiveMQDestination.createDestination(topic, ActiveMQDestination.TOPIC_TYPE);
+    }
+
+    /**
+     * Authorization map of a device without management permissions (see KapuaSecurityBrokerFilter.buildAuthMap)
+     */
+    @SuppressWarnings("rawtypes")
+    private static CountingAuthorizationMap buildAuthMap(Principal principal)
+    {
+        List<DestinationMapEntry> entries = new ArrayList<DestinationMapEntry>();
+        entries.add(entry(AclConstants.ACL_AMQ_ADVISORY, principal));
+        entries.add(entry(MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI, ACCOUNT, CLIENT_ID), principal));
+        entries.add(entry(MessageFormat.format(AclConstants.ACL_DATA_ACC_CLI, ACCOUNT, CLIENT_ID), principal));
+        entries.add(entry(MessageFormat.format(AclConstants.ACL_CTRL_ACC_REPLY, ACCOUNT), principal));
+        entries.add(entry(MessageFormat.format(AclConstants.ACL_CTRL_ACC_NOTIFY, ACCOUNT, CLIENT_ID), principal));
+        return new CountingAuthorizationMap(entries);
+    }
+
+    private static AuthorizationEntry entry(String topic, Principal principal)
+    {
+        AuthorizationEntry entry = new AuthorizationEntry();
+        entry.setDestination(topic(topic));
+        Set<Object> acls = new HashSet<Object>();
+        acls.add(principal);
+        entry.setWriteACLs(acls);
+        entry.setReadACLs(acls);
+        entry.setAdminACLs(acls);
+        return entry;
+    }
+
+    private static class CountingAuthorizationMap extends DefaultAuthorizationMap
+    {
+
+        private int lookups;
+
+        @SuppressWarnings("rawtypes")
+        private CountingAuthorizationMap(List<DestinationMapEntry> entries)
+        {
+            super(entries);
+        }
+
+        @Override
+        public Set<Object> getWriteACLs(ActiveMQDestination destination)
+        {
+            lookups++;
+            return super.getWriteACLs(destination);
+        }
+
+        private int getLookups()
+        {
+            return lookups;
+        }
+    }
+}
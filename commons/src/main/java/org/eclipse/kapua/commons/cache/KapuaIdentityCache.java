@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.metric.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Process wide identity cache.<br>
+ * It maps the account names to the account scope ids and the (scope id, client id) pairs to the device ids, so the message translators
+ * don't have to query the account and the device registry services for every inbound message.<br>
+ * Only existing entities are cached. The entries are populated on lookup and on device birth and they are invalidated by the services
+ * after the deletion of the entity is committed. An entry loaded before the invalidation is not cached (see {@link #getGeneration()}).<br>
+ * The invalidation is local to the process, so an entity deleted by another node (i.e. by the console) is still resolved by this one
+ * until the entry expires: the time to live is short for this reason.
+ *
+ * @since 1.0
+ */
+public class KapuaIdentityCache
+{
+
+    private static final String METRIC_MODULE     = "commons";
+    private static final String METRIC_COMPONENT  = "identity";
+    private static final String METRIC_SCOPE      = "scope";
+    private static final String METRIC_DEVICE     = "device";
+
+    private static final KapuaIdentityCache instance = new KapuaIdentityCache();
+
+    private final Cache<String, KapuaId> scopeIds;
+    private final Cache<String, KapuaId> deviceIds;
+    private final AtomicLong             generation = new AtomicLong();
+
+    private final Counter scopeHit;
+    private final Counter scopeMiss;
+    private final Counter scopeEviction;
+    private final Counter deviceHit;
+    private final Counter deviceMiss;
+    private final Counter deviceEviction;
+
+    private KapuaIdentityCache()
+    {
+        this(SystemSetting.getInstance().getInt(SystemSettingKey.IDENTITY_CACHE_SIZE_MAXIMUM, 100000),
+             SystemSetting.getInstance().getInt(SystemSettingKey.IDENTITY_CACHE_EXPIRE_AFTER, 30),
+             KapuaLocator.getInstance().getService(MetricsService.class));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param sizeMax max size of each cache
+     * @param expireAfter identifiers ttl in seconds
+     * @param metricsService
+     */
+    KapuaIdentityCache(int sizeMax, int expireAfter, MetricsService metricsService)
+    {
+        scopeHit = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, METRIC_SCOPE, "hit", "count");
+        scopeMiss = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, METRIC_SCOPE, "miss", "count");
+        scopeEviction = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, METRIC_SCOPE, "eviction", "count");
+        deviceHit = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, METRIC_DEVICE, "hit", "count");
+        deviceMiss = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, METRIC_DEVICE, "miss", "count");
+        deviceEviction = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, METRIC_DEVICE, "eviction", "count");
+
+        scopeIds = newCache(sizeMax, expireAfter, scopeEviction);
+        deviceIds = newCache(sizeMax, expireAfter, deviceEviction);
+    }
+
+    private static Cache<String, KapuaId> newCache(int sizeMax, int expireAfter, final Counter evictionCounter)
+    {
+        return CacheBuilder.newBuilder()
+                           .maximumSize(sizeMax)
+                           .expireAfterWrite(expireAfter, TimeUnit.SECONDS)
+                           .removalListener(new RemovalListener<String, KapuaId>() {
+
+                               @Override
+                               public void onRemoval(RemovalNotification<String, KapuaId> notification)
+                               {
+                                   if (notification.wasEvicted()) {
+                                       evictionCounter.inc();
+                                   }
+                               }
+                           })
+                           .build();
+    }
+
+    /**
+     * Get the identity cache instance
+     *
+     * @return
+     */
+    public static KapuaIdentityCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Return the invalidation generation, to be read before looking up the identifier to be cached
+     *
+     * @return
+     */
+    public long getGeneration()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Return the cached scope id of the account, or null if the account name is not cached
+     *
+     * @param accountName
+     * @return
+     */
+    public KapuaId getScopeId(String accountName)
+    {
+        KapuaId scopeId = scopeIds.getIfPresent(accountName);
+        if (scopeId != null) {
+            scopeHit.inc();
+        }
+        else {
+            scopeMiss.inc();
+        }
+        return scopeId;
+    }
+
+    /**
+     * Cache the scope id of the account.<br>
+     * The identifier is not cached if an invalidation happened since the provided generation was read.
+     *
+     * @param accountName
+     * @param scopeId
+     * @param loadGeneration the generation read before looking up the identifier (see {@link #getGeneration()})
+     */
+    public void putScopeId(String accountName, KapuaId scopeId, long loadGeneration)
+    {
+        put(scopeIds, accountName, scopeId, loadGeneration);
+    }
+
+    /**
+     * Invalidate the cached scope id of the account (to be called after the account deletion is committed)
+     *
+     * @param accountName
+     */
+    public void removeScopeId(String accountName)
+    {
+        generation.incrementAndGet();
+        scopeIds.invalidate(accountName);
+    }
+
+    /**
+     * Return the cached device id of the client in the scope, or null if the device is not cached
+     *
+     * @param scopeId
+     * @param clientId
+     * @return
+     */
+    public KapuaId getDeviceId(KapuaId scopeId, String clientId)
+    {
+        KapuaId deviceId = deviceIds.getIfPresent(getDeviceKey(scopeId, clientId));
+        if (deviceId != null) {
+            deviceHit.inc();
+        }
+        else {
+            deviceMiss.inc();
+        }
+        return deviceId;
+    }
+
+    /**
+     * Cache the device id of the client in the scope.<br>
+     * The identifier is not cached if an invalidation happened since the provided generation was read.
+     *
+     * @param scopeId
+     * @param clientId
+     * @param deviceId
+     * @param loadGeneration the generation read before looking up the identifier (see {@link #getGeneration()})
+     */
+    public void putDeviceId(KapuaId scopeId, String clientId, KapuaId deviceId, long loadGeneration)
+    {
+        put(deviceIds, getDeviceKey(scopeId, clientId), deviceId, loadGeneration);
+    }
+
+    /**
+     * Invalidate the cached device id of the client in the scope (to be called after the device deletion is committed)
+     *
+     * @param scopeId
+     * @param clientId
+     */
+    public void removeDeviceId(KapuaId scopeId, String clientId)
+    {
+        generation.incrementAndGet();
+        deviceIds.invalidate(getDeviceKey(scopeId, clientId));
+    }
+
+    private void put(Cache<String, KapuaId> cache, String key, KapuaId id, long loadGeneration)
+    {
+        // the identifier may have been read before a deletion was committed
+        if (generation.get() != loadGeneration) {
+            return;
+        }
+
+        cache.put(key, id);
+
+        // invalidated while putting
+        if (generation.get() != loadGeneration) {
+            cache.asMap().remove(key, id);
+        }
+    }
+
+    private static String getDeviceKey(KapuaId scopeId, String clientId)
+    {
+        return scopeId.getId() + "/" + clientId;
+    }
+}
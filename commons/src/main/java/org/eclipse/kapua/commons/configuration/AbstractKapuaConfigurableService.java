@@ -20,6 +20,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLStreamException;
@@ -32,6 +34,8 @@ import org.eclipse.kapua.commons.model.query.predicate.AndPredicate;
 import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
 import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
 import org.eclipse.kapua.commons.service.internal.AbstractKapuaService;
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
 import org.eclipse.kapua.commons.util.KapuaExceptionUtils;
 import org.eclipse.kapua.commons.util.ResourceUtils;
 import org.eclipse.kapua.commons.util.xml.XmlUtil;
@@ -56,9 +60,44 @@ import org.eclipse.kapua.service.config.KapuaConfigurableService;
 @SuppressWarnings("serial")
 public abstract class AbstractKapuaConfigurableService extends AbstractKapuaService implements KapuaConfigurableService, Serializable {
 
+    /**
+     * Parsed service metadata by pid. The metadata is a static classpath resource so it is read and parsed once per process.
+     */
+    private static final ConcurrentMap<String, KapuaTmetadata> metadataCache = new ConcurrentHashMap<String, KapuaTmetadata>();
+
+    /**
+     * Configuration values by pid and scope id. Entries are invalidated when the values are set through this process, the values set
+     * through another node are seen by this one after at most the configured ttl.
+     */
+    private static final ServiceConfigValuesCache configValuesCache = new ServiceConfigValuesCache(
+            SystemSetting.getInstance().getInt(SystemSettingKey.CONFIG_CACHE_SIZE_MAXIMUM, 1000),
+            SystemSetting.getInstance().getInt(SystemSettingKey.CONFIG_CACHE_EXPIRE_AFTER, 60));
+
     private Domain domain = null;
     private String pid = null;
 
+    /**
+     * Reads metadata for the service pid from the cache, parsing the metatype resource on the first call
+     * 
+     * @param pid
+     * @return
+     * @throws Exception
+     */
+    private static KapuaTmetadata getMetadata(String pid)
+            throws Exception {
+        KapuaTmetadata metaData = metadataCache.get(pid);
+        if (metaData == null) {
+            metaData = readMetadata(pid);
+            if (metaData != null) {
+                KapuaTmetadata previous = metadataCache.putIfAbsent(pid, metaData);
+                if (previous != null) {
+                    metaData = previous;
+                }
+            }
+        }
+        return metaData;
+    }
+
     /**
      * Reads metadata for the service pid
      * 
@@ -255,6 +294,15 @@ public abstract class AbstractKapuaConfigurableService extends AbstractKapuaServ
         this.domain = domain;
     }
 
+    /**
+     * Invalidate the cached configuration values of this service for the scope
+     * 
+     * @param scopeId
+     */
+    protected void invalidateConfigValues(KapuaId scopeId) {
+        configValuesCache.invalidate(this.pid, scopeId);
+    }
+
     @Override
     public KapuaTocd getConfigMetadata()
             throws KapuaException {
@@ -265,8 +313,19 @@ public abstract class AbstractKapuaConfigurableService extends AbstractKapuaServ
         KapuaId scopeId = KapuaSecurityUtils.getSession().getScopeId();
         authorizationService.checkPermission(permissionFactory.newPermission(domain, Actions.read, scopeId));
 
+        return this.readConfigMetadata();
+    }
+
+    /**
+     * Return the service configuration metadata without checking the access
+     * 
+     * @return
+     * @throws KapuaException
+     */
+    private KapuaTocd readConfigMetadata()
+            throws KapuaException {
         try {
-            KapuaTmetadata metadata = readMetadata(this.pid);
+            KapuaTmetadata metadata = getMetadata(this.pid);
             if (metadata.getOCD() != null && metadata.getOCD().size() > 0) {
                 for (KapuaTocd ocd : metadata.getOCD()) {
                     if (ocd.getId() != null && ocd.getId().equals(pid)) {
@@ -288,21 +347,33 @@ public abstract class AbstractKapuaConfigurableService extends AbstractKapuaServ
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(domain, Actions.read, scopeId));
 
-        AndPredicate predicate = new AndPredicate()
-                .and(new AttributePredicate<String>("pid", this.pid, Operator.EQUAL))
-                .and(new AttributePredicate<KapuaId>("scopeId", scopeId, Operator.EQUAL));
-
-        ServiceConfigQueryImpl query = new ServiceConfigQueryImpl(scopeId);
-        query.setPredicate(predicate);
+        Map<String, Object> values = configValuesCache.get(this.pid, scopeId);
+        if (values == null) {
+            long loadGeneration = configValuesCache.getGeneration();
+
+            AndPredicate predicate = new AndPredicate()
+                    .and(new AttributePredicate<String>("pid", this.pid, Operator.EQUAL))
+                    .and(new AttributePredicate<KapuaId>("scopeId", scopeId, Operator.EQUAL));
+
+            ServiceConfigQueryImpl query = new ServiceConfigQueryImpl(scopeId);
+            query.setPredicate(predicate);
+
+            Properties properties = null;
+            EntityManager em = this.entityManagerFactory.createEntityManager();
+            try {
+                ServiceConfigListResult result = ServiceConfigDAO.query(em, ServiceConfig.class, ServiceConfigImpl.class, new ServiceConfigListResultImpl(), query);
+                if (result != null && result.getSize() > 0)
+                    properties = result.getItem(0).getConfigurations();
+            } finally {
+                em.close();
+            }
 
-        Properties properties = null;
-        EntityManager em = this.entityManagerFactory.createEntityManager();
-        ServiceConfigListResult result = ServiceConfigDAO.query(em, ServiceConfig.class, ServiceConfigImpl.class, new ServiceConfigListResultImpl(), query);
-        if (result != null && result.getSize() > 0)
-            properties = result.getItem(0).getConfigurations();
+            KapuaTocd ocd = this.readConfigMetadata();
+            values = toValues(ocd, properties);
+            configValuesCache.put(this.pid, scopeId, values, loadGeneration);
+        }
 
-        KapuaTocd ocd = this.getConfigMetadata();
-        return toValues(ocd, properties);
+        return values;
     }
 
     @Override
@@ -313,7 +384,7 @@ public abstract class AbstractKapuaConfigurableService extends AbstractKapuaServ
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(domain, Actions.write, scopeId));
 
-        KapuaTocd ocd = this.getConfigMetadata();
+        KapuaTocd ocd = this.readConfigMetadata();
         validateConfigurations(this.pid, ocd, values);
 
         Properties props = toProperties(values);
@@ -335,6 +406,7 @@ public abstract class AbstractKapuaConfigurableService extends AbstractKapuaServ
             serviceConfigNew.setPid(this.pid);
             serviceConfigNew.setConfigurations(props);
             serviceConfig = this.create(em, serviceConfigNew);
+            this.invalidateConfigValues(scopeId);
             return;
         }
 
@@ -342,6 +414,7 @@ public abstract class AbstractKapuaConfigurableService extends AbstractKapuaServ
         serviceConfig = result.getItem(0);
         serviceConfig.setConfigurations(props);
         this.update(em, serviceConfig);
+        this.invalidateConfigValues(scopeId);
         return;
     }
 }
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.configuration;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.model.id.KapuaId;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Service configuration values cache by service pid and scope id.<br>
+ * The cache is local to the process: the values set through this process invalidate the cached ones, while the values set through
+ * another node are seen by this one when the cached entry expires, so after at most the ttl (commons.config.cache.expire.after).<br>
+ * Values loaded before an invalidation are not cached (see {@link #getGeneration()}).
+ *
+ * @since 1.0
+ *
+ */
+class ServiceConfigValuesCache {
+
+    private final Cache<String, Map<String, Object>> values;
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param sizeMax max cache size
+     * @param expireAfter values ttl in seconds
+     */
+    ServiceConfigValuesCache(int sizeMax, int expireAfter) {
+        this(sizeMax, expireAfter, Ticker.systemTicker());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param sizeMax max cache size
+     * @param expireAfter values ttl in seconds
+     * @param ticker time source of the values expiration
+     */
+    ServiceConfigValuesCache(int sizeMax, int expireAfter, Ticker ticker) {
+        values = CacheBuilder.newBuilder()
+                .maximumSize(sizeMax)
+                .expireAfterWrite(expireAfter, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Return a copy of the cached configuration values of the service for the scope, null if not cached
+     *
+     * @param pid
+     * @param scopeId
+     * @return
+     */
+    Map<String, Object> get(String pid, KapuaId scopeId) {
+        Map<String, Object> cachedValues = values.getIfPresent(getKey(pid, scopeId));
+        return cachedValues != null ? new HashMap<String, Object>(cachedValues) : null;
+    }
+
+    /**
+     * Return the invalidation generation, to be read before loading the configuration values to be cached
+     *
+     * @return
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Cache the configuration values of the service for the scope.<br>
+     * The values are not cached if an invalidation happened since the provided generation was read, since they may have been loaded
+     * before the invalidated change.
+     *
+     * @param pid
+     * @param scopeId
+     * @param configValues
+     * @param loadGeneration the generation read before loading the values (see {@link #getGeneration()})
+     */
+    void put(String pid, KapuaId scopeId, Map<String, Object> configValues, long loadGeneration) {
+        if (generation.get() != loadGeneration) {
+            return;
+        }
+
+        String key = getKey(pid, scopeId);
+        Map<String, Object> cachedValues = Collections.unmodifiableMap(new HashMap<String, Object>(configValues));
+        values.put(key, cachedValues);
+
+        // invalidated while putting
+        if (generation.get() != loadGeneration) {
+            values.asMap().remove(key, cachedValues);
+        }
+    }
+
+    /**
+     * Invalidate the cached configuration values of the service for the scope
+     *
+     * @param pid
+     * @param scopeId
+     */
+    void invalidate(String pid, KapuaId scopeId) {
+        generation.incrementAndGet();
+        values.invalidate(getKey(pid, scopeId));
+    }
+
+    private static String getKey(String pid, KapuaId scopeId) {
+        return pid + "/" + scopeId.getId();
+    }
+}
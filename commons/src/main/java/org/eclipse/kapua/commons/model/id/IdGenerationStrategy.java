@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.model.id;
+
+import java.math.BigInteger;
+
+/**
+ * Entity identifier generation strategy
+ *
+ * @since 1.0
+ *
+ */
+public interface IdGenerationStrategy
+{
+
+    /**
+     * Generate a new identifier
+     *
+     * @return
+     */
+    public BigInteger generate();
+}
@@ -12,33 +12,44 @@
 package org.eclipse.kapua.commons.model.id;
 
 import java.math.BigInteger;
-import java.security.SecureRandom;
 
 import org.eclipse.kapua.commons.setting.system.SystemSetting;
 import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
 
 /**
- * Generates random identifier
+ * Generates the entity identifiers through the configured {@link IdGenerationStrategy}.<br>
+ * For more detail refer to: {@link SystemSettingKey#KAPUA_ID_STRATEGY}
  *
  * @since 1.0
  * 
  */
 public class IdGenerator
 {
-    private final static SecureRandom secureRandom = new SecureRandom();
-    private static int                ID_SIZE      = SystemSetting.getInstance().getInt(SystemSettingKey.KAPUA_KEY_SIZE);
+    private final static IdGenerationStrategy strategy = newStrategy(SystemSetting.getInstance());
 
     /**
-     * Generate a {@link BigInteger} random value.<br>
-     * For more detail refer to: {@link SystemSettingKey#KAPUA_KEY_SIZE}
+     * Generate a {@link BigInteger} identifier value.<br>
+     * For more detail refer to: {@link SystemSettingKey#KAPUA_ID_STRATEGY}
      * 
      * @return
      */
     public static BigInteger generate()
     {
-        byte[] bytes = new byte[ID_SIZE];
-        secureRandom.nextBytes(bytes);
-        return new BigInteger(bytes);
+        return strategy.generate();
+    }
+
+    private static IdGenerationStrategy newStrategy(SystemSetting config)
+    {
+        String strategyType = config.getString(SystemSettingKey.KAPUA_ID_STRATEGY, "RANDOM");
+        if (strategyType.equals("RANDOM")) {
+            return new RandomIdGenerationStrategy(config.getInt(SystemSettingKey.KAPUA_KEY_SIZE));
+        }
+        else if (strategyType.equals("TIME_ORDERED")) {
+            return new TimeOrderedIdGenerationStrategy(config.getInt(SystemSettingKey.KAPUA_ID_NODE, 0));
+        }
+        else {
+            throw new IllegalArgumentException("Unknown identifier generation strategy: " + strategyType);
+        }
     }
 
 }
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.model.id;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+/**
+ * Random identifier generation strategy.<br>
+ * Every thread draws the identifiers from its own {@link SecureRandom}, so the concurrent generations don't contend on a single entropy source.
+ *
+ * @since 1.0
+ *
+ */
+public class RandomIdGenerationStrategy implements IdGenerationStrategy
+{
+
+    private static final ThreadLocal<SecureRandom> secureRandom = ThreadLocal.withInitial(SecureRandom::new);
+
+    private final int idSize;
+
+    /**
+     * Constructor
+     *
+     * @param idSize the identifier size in bytes
+     */
+    public RandomIdGenerationStrategy(int idSize)
+    {
+        this.idSize = idSize;
+    }
+
+    @Override
+    public BigInteger generate()
+    {
+        byte[] bytes = new byte[idSize];
+        secureRandom.get().nextBytes(bytes);
+        return new BigInteger(bytes);
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.model.id;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time ordered identifier generation strategy.<br>
+ * The identifiers are positive 64 bit values made of (from the most significant bit):
+ * <ul>
+ * <li>41 bits of milliseconds since {@link #EPOCH}</li>
+ * <li>12 bits of sequence within the millisecond</li>
+ * <li>10 bits of node identifier</li>
+ * </ul>
+ * The identifiers generated by a node are strictly increasing, so the inserts append to the primary key indexes instead of scattering
+ * across them. The timestamp and the sequence are advanced together with a single compare and set, without locking. If the sequence of a
+ * millisecond is exhausted, or if the clock goes backwards, the generation goes on from the last generated value (borrowing the following
+ * milliseconds) so the identifiers are never repeated.<br>
+ * The node identifier must be unique among the nodes sharing the same database.
+ *
+ * @since 1.0
+ *
+ */
+public class TimeOrderedIdGenerationStrategy implements IdGenerationStrategy
+{
+
+    /**
+     * Identifiers epoch (2016-01-01T00:00:00Z)
+     */
+    public static final long EPOCH         = 1451606400000L;
+
+    public static final int  NODE_BITS     = 10;
+    public static final int  SEQUENCE_BITS = 12;
+    public static final int  MAX_NODE      = (1 << NODE_BITS) - 1;
+
+    private final long       node;
+
+    /**
+     * The last generated (timestamp, sequence) pair
+     */
+    private final AtomicLong last          = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param node the node identifier (0 - {@link #MAX_NODE})
+     */
+    public TimeOrderedIdGenerationStrategy(int node)
+    {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node identifier out of range (0 - " + MAX_NODE + "): " + node);
+        }
+        this.node = node;
+    }
+
+    @Override
+    public BigInteger generate()
+    {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long next;
+        for (;;) {
+            long previous = last.get();
+            next = Math.max(previous + 1, now);
+            if (last.compareAndSet(previous, next)) {
+                break;
+            }
+        }
+        return BigInteger.valueOf(next << NODE_BITS | node);
+    }
+
+    /**
+     * Return the generation time (milliseconds since the Unix epoch) of an identifier generated by this strategy
+     *
+     * @param id
+     * @return
+     */
+    public static long getTimestamp(BigInteger id)
+    {
+        return (id.longValue() >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+}
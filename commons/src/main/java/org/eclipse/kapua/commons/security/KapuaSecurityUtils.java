@@ -86,4 +86,54 @@ public class KapuaSecurityUtils {
         return result;
     }
 
+    /**
+     * Execute the {@link Callable} on behalf of the given {@link KapuaSession}.<br>
+     * Unlike {@link #doPriviledge(KapuaSession, Callable)} the action runs with a copy of the session which is not trusted, so the
+     * permissions of the session user are checked as they are on the thread the session comes from.
+     *
+     * @param session
+     * @param action
+     * @return
+     * @throws Exception
+     */
+    public static <T> T doAs(KapuaSession session, Callable<T> action)
+            throws Exception {
+        KapuaSession previousSession = getSession();
+        setSession(new KapuaSession(session.getAccessToken(), session.getScopeId(), session.getUserId()));
+        try {
+            return action.call();
+        } finally {
+            if (previousSession != null) {
+                setSession(previousSession);
+            } else {
+                clearSession();
+            }
+        }
+    }
+
+    /**
+     * Execute the {@link Callable} in a privileged context on behalf of the given {@link KapuaSession}.<br>
+     * It is meant for the work started by a caller, whose permissions have already been checked, and completed on another thread:
+     * the action runs with a trusted copy of the session, so the caller session is not changed.
+     *
+     * @param session
+     * @param privilegedAction
+     * @return
+     * @throws Exception
+     */
+    public static <T> T doPriviledge(KapuaSession session, Callable<T> privilegedAction)
+            throws Exception {
+        KapuaSession previousSession = getSession();
+        setSession(new KapuaSession(session.getAccessToken(), session.getScopeId(), session.getUserId()));
+        try {
+            return doPriviledge(privilegedAction);
+        } finally {
+            if (previousSession != null) {
+                setSession(previousSession);
+            } else {
+                clearSession();
+            }
+        }
+    }
+
 }
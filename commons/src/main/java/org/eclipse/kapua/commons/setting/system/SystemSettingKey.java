@@ -169,10 +169,38 @@ public enum SystemSettingKey implements SettingKey
      */
     KAPUA_KEY_SIZE("commons.entity.key.size"),
 
+    /**
+     * Entity identifier generation strategy (RANDOM or TIME_ORDERED)
+     */
+    KAPUA_ID_STRATEGY("commons.entity.id.strategy"),
+
+    /**
+     * Node identifier (0 - 1023) of the time ordered identifier generation strategy. It must be unique among the nodes sharing the database.
+     */
+    KAPUA_ID_NODE("commons.entity.id.node"),
+
     /**
      * Maximum allowed retry (due to a {@link EntityExistsException}, so already exists key) on insert operation
      */
-    KAPUA_INSERT_MAX_RETRY("commons.entity.insert.max.retry");
+    KAPUA_INSERT_MAX_RETRY("commons.entity.insert.max.retry"),
+
+    /**
+     * Service configuration values cache ttl (seconds)
+     */
+    CONFIG_CACHE_EXPIRE_AFTER("commons.config.cache.expire.after"),
+    /**
+     * Service configuration values cache maximum size
+     */
+    CONFIG_CACHE_SIZE_MAXIMUM("commons.config.cache.size.maximum"),
+
+    /**
+     * Account and device identity cache ttl (seconds)
+     */
+    IDENTITY_CACHE_EXPIRE_AFTER("commons.identity.cache.expire.after"),
+    /**
+     * Account and device identity cache maximum size
+     */
+    IDENTITY_CACHE_SIZE_MAXIMUM("commons.identity.cache.size.maximum");
 
     private String key;
 
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.cache;
+
+import java.math.BigInteger;
+
+import org.eclipse.kapua.commons.metric.MetricsServiceImpl;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KapuaIdentityCacheTest extends Assert
+{
+
+    private static final KapuaId SCOPE_ID       = new KapuaEid(BigInteger.ONE);
+    private static final KapuaId OTHER_SCOPE_ID = new KapuaEid(BigInteger.TEN);
+    private static final KapuaId DEVICE_ID      = new KapuaEid(BigInteger.valueOf(100));
+
+    @Test
+    public void testGetScopeId()
+    {
+        KapuaIdentityCache cache = new KapuaIdentityCache(10, 60, new MetricsServiceImpl());
+
+        cache.putScopeId("account-1", SCOPE_ID, cache.getGeneration());
+
+        assertEquals(SCOPE_ID, cache.getScopeId("account-1"));
+        assertNull(cache.getScopeId("account-2"));
+    }
+
+    @Test
+    public void testGetDeviceId()
+    {
+        KapuaIdentityCache cache = new KapuaIdentityCache(10, 60, new MetricsServiceImpl());
+
+        cache.putDeviceId(SCOPE_ID, "client-1", DEVICE_ID, cache.getGeneration());
+
+        assertEquals(DEVICE_ID, cache.getDeviceId(SCOPE_ID, "client-1"));
+        assertNull(cache.getDeviceId(OTHER_SCOPE_ID, "client-1"));
+        assertNull(cache.getDeviceId(SCOPE_ID, "client-2"));
+    }
+
+    @Test
+    public void testRemoveScopeId()
+    {
+        KapuaIdentityCache cache = new KapuaIdentityCache(10, 60, new MetricsServiceImpl());
+
+        cache.putScopeId("account-1", SCOPE_ID, cache.getGeneration());
+        cache.putScopeId("account-2", OTHER_SCOPE_ID, cache.getGeneration());
+        cache.removeScopeId("account-1");
+
+        assertNull(cache.getScopeId("account-1"));
+        assertEquals(OTHER_SCOPE_ID, cache.getScopeId("account-2"));
+    }
+
+    @Test
+    public void testRemoveDeviceId()
+    {
+        KapuaIdentityCache cache = new KapuaIdentityCache(10, 60, new MetricsServiceImpl());
+
+        cache.putDeviceId(SCOPE_ID, "client-1", DEVICE_ID, cache.getGeneration());
+        cache.putDeviceId(OTHER_SCOPE_ID, "client-1", DEVICE_ID, cache.getGeneration());
+        cache.removeDeviceId(SCOPE_ID, "client-1");
+
+        assertNull(cache.getDeviceId(SCOPE_ID, "client-1"));
+        assertEquals(DEVICE_ID, cache.getDeviceId(OTHER_SCOPE_ID, "client-1"));
+    }
+
+    @Test
+    public void testPutAfterInvalidate()
+    {
+        KapuaIdentityCache cache = new KapuaIdentityCache(10, 60, new MetricsServiceImpl());
+
+        // the identifiers are looked up, then the entities are deleted before the identifiers are cached
+        long loadGeneration = cache.getGeneration();
+        cache.removeScopeId("account-1");
+        cache.putScopeId("account-1", SCOPE_ID, loadGeneration);
+        cache.putDeviceId(SCOPE_ID, "client-1", DEVICE_ID, loadGeneration);
+
+        assertNull(cache.getScopeId("account-1"));
+        assertNull(cache.getDeviceId(SCOPE_ID, "client-1"));
+
+        // looked up again after the invalidation
+        cache.putDeviceId(SCOPE_ID, "client-1", DEVICE_ID, cache.getGeneration());
+        assertEquals(DEVICE_ID, cache.getDeviceId(SCOPE_ID, "client-1"));
+    }
+
+    @Test
+    public void testCounters()
+    {
+        MetricsService metricsService = new MetricsServiceImpl();
+        KapuaIdentityCache cache = new KapuaIdentityCache(1, 60, metricsService);
+
+        cache.putScopeId("account-1", SCOPE_ID, cache.getGeneration());
+        cache.getScopeId("account-1");
+        cache.getScopeId("account-2");
+        cache.getDeviceId(SCOPE_ID, "client-1");
+
+        // the cache holds one entry, so the second one evicts the first
+        cache.putScopeId("account-2", OTHER_SCOPE_ID, cache.getGeneration());
+        // an invalidation is not an eviction
+        cache.removeScopeId("account-2");
+
+        assertEquals(1, metricsService.getCounter("commons", "identity", "scope", "hit", "count").getCount());
+        assertEquals(1, metricsService.getCounter("commons", "identity", "scope", "miss", "count").getCount());
+        assertEquals(1, metricsService.getCounter("commons", "identity", "scope", "eviction", "count").getCount());
+        assertEquals(0, metricsService.getCounter("commons", "identity", "device", "hit", "count").getCount());
+        assertEquals(1, metricsService.getCounter("commons", "identity", "device", "miss", "count").getCount());
+        assertEquals(0, metricsService.getCounter("commons", "identity", "device", "eviction", "count").getCount());
+    }
+}
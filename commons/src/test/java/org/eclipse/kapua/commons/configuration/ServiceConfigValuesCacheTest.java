@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.configuration;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+public class ServiceConfigValuesCacheTest extends Assert {
+
+    private static final String PID = "org.eclipse.kapua.test.TestService";
+    private static final String OTHER_PID = "org.eclipse.kapua.test.OtherService";
+
+    private static final KapuaId SCOPE_ID = new KapuaEid(BigInteger.ONE);
+    private static final KapuaId OTHER_SCOPE_ID = new KapuaEid(BigInteger.TEN);
+
+    @Test
+    public void testGetReturnsACopy() {
+        ServiceConfigValuesCache cache = new ServiceConfigValuesCache(10, 60);
+        Map<String, Object> values = newValues(10);
+
+        cache.put(PID, SCOPE_ID, values, cache.getGeneration());
+        values.put("maxNumberChildEntities", 20);
+
+        Map<String, Object> cachedValues = cache.get(PID, SCOPE_ID);
+        assertEquals(10, cachedValues.get("maxNumberChildEntities"));
+
+        cachedValues.put("maxNumberChildEntities", 30);
+        assertEquals(10, cache.get(PID, SCOPE_ID).get("maxNumberChildEntities"));
+    }
+
+    @Test
+    public void testKeyedByPidAndScope() {
+        ServiceConfigValuesCache cache = new ServiceConfigValuesCache(10, 60);
+
+        cache.put(PID, SCOPE_ID, newValues(10), cache.getGeneration());
+
+        assertNotNull(cache.get(PID, SCOPE_ID));
+        assertNull(cache.get(OTHER_PID, SCOPE_ID));
+        assertNull(cache.get(PID, OTHER_SCOPE_ID));
+    }
+
+    @Test
+    public void testInvalidate() {
+        ServiceConfigValuesCache cache = new ServiceConfigValuesCache(10, 60);
+
+        cache.put(PID, SCOPE_ID, newValues(10), cache.getGeneration());
+        cache.put(PID, OTHER_SCOPE_ID, newValues(20), cache.getGeneration());
+        cache.invalidate(PID, SCOPE_ID);
+
+        assertNull(cache.get(PID, SCOPE_ID));
+        assertEquals(20, cache.get(PID, OTHER_SCOPE_ID).get("maxNumberChildEntities"));
+    }
+
+    @Test
+    public void testPutAfterInvalidate() {
+        ServiceConfigValuesCache cache = new ServiceConfigValuesCache(10, 60);
+
+        // the values are loaded, then they are set by another request before they are cached
+        long loadGeneration = cache.getGeneration();
+        cache.invalidate(PID, SCOPE_ID);
+        cache.put(PID, SCOPE_ID, newValues(10), loadGeneration);
+
+        assertNull(cache.get(PID, SCOPE_ID));
+    }
+
+    @Test
+    public void testExpireAfterTheTtl() {
+        final AtomicLong nanos = new AtomicLong();
+        ServiceConfigValuesCache cache = new ServiceConfigValuesCache(10, 60, new Ticker() {
+
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+
+        // values set through another node are not invalidated here, they are reloaded once the entry expires
+        cache.put(PID, SCOPE_ID, newValues(10), cache.getGeneration());
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertNotNull(cache.get(PID, SCOPE_ID));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertNull(cache.get(PID, SCOPE_ID));
+    }
+
+    private static Map<String, Object> newValues(int maxNumberChildEntities) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("maxNumberChildEntities", maxNumberChildEntities);
+        return values;
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.model;
+
+import java.math.BigInteger;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.commons.model.id.TimeOrderedIdGenerationStrategy;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimeOrderedIdGenerationStrategyTest extends Assert
+{
+
+    @Test
+    public void testIdsAreIncreasing()
+        throws Exception
+    {
+        TimeOrderedIdGenerationStrategy strategy = new TimeOrderedIdGenerationStrategy(5);
+
+        BigInteger previous = BigInteger.ZERO;
+        for (int i = 0; i < 100000; i++) {
+            BigInteger id = strategy.generate();
+            assertTrue(id.compareTo(previous) > 0);
+            assertEquals(5, id.intValue() & TimeOrderedIdGenerationStrategy.MAX_NODE);
+            previous = id;
+        }
+        assertTrue(previous.bitLength() <= 63);
+    }
+
+    @Test
+    public void testIdTimestamp()
+        throws Exception
+    {
+        long before = System.currentTimeMillis();
+        BigInteger id = new TimeOrderedIdGenerationStrategy(0).generate();
+
+        // the sequence may have borrowed some milliseconds
+        assertTrue(TimeOrderedIdGenerationStrategy.getTimestamp(id) >= before);
+    }
+
+    @Test
+    public void testConcurrentIdsAreUnique()
+        throws Exception
+    {
+        TimeOrderedIdGenerationStrategy strategy = new TimeOrderedIdGenerationStrategy(TimeOrderedIdGenerationStrategy.MAX_NODE);
+        Set<BigInteger> ids = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 50000; i++) {
+                    ids.add(strategy.generate());
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(8 * 50000, ids.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNodeOutOfRange()
+        throws Exception
+    {
+        new TimeOrderedIdGenerationStrategy(TimeOrderedIdGenerationStrategy.MAX_NODE + 1);
+    }
+}
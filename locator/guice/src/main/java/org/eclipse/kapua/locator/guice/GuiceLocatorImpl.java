@@ -12,17 +12,23 @@
  *******************************************************************************/
 package org.eclipse.kapua.locator.guice;
 
+import java.util.concurrent.TimeUnit;
+
 import com.google.inject.ConfigurationException;
+import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.KapuaRuntimeException;
 import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.locator.KapuaLocatorErrorCodes;
 import org.eclipse.kapua.model.KapuaObjectFactory;
 import org.eclipse.kapua.service.KapuaService;
+import org.eclipse.kapua.service.metric.MetricsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Key;
 
 /**
  * Kapua locator implementation bases on Guice framework
@@ -35,11 +41,20 @@ public class GuiceLocatorImpl extends KapuaLocator
 	
 	private static final Logger logger = LoggerFactory.getLogger(GuiceLocatorImpl.class);
 	
+	private static final String METRICS_MODULE    = "locator";
+	private static final String METRICS_COMPONENT = "injector";
+	
 	private static Injector s_injector = null;
 
 	static {
 		try {
-			s_injector = Guice.createInjector(new KapuaModule());
+			long start = System.nanoTime();
+			KapuaModule module = new KapuaModule();
+			s_injector = Guice.createInjector(module);
+			long startupTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			logger.info("Injector created in {} ms", startupTime);
+			
+			registerMetrics(module, startupTime);
 		}
 		catch (Throwable e) {
 			logger.error("Cannot instantiate injector {}", e.getMessage(), e);
@@ -47,6 +62,26 @@ public class GuiceLocatorImpl extends KapuaLocator
 		}
 	}
 	
+	/**
+	 * Register the locator metrics, if a metric service is provided
+	 * 
+	 * @param module
+	 * @param startupTime the injector creation time (ms)
+	 */
+	private static void registerMetrics(KapuaModule module, long startupTime) {
+		if (s_injector.getExistingBinding(Key.get(MetricsService.class)) == null)
+			return;
+		
+		MetricsService metricsService = s_injector.getInstance(MetricsService.class);
+		module.setProvisionTimer(metricsService.getTimer(METRICS_MODULE, METRICS_COMPONENT, "provision"));
+		try {
+			metricsService.registerGauge((Gauge<Long>) () -> startupTime, METRICS_MODULE, METRICS_COMPONENT, "startup_time");
+		}
+		catch (KapuaException e) {
+			logger.warn("Cannot register the locator metrics: {}", e.getMessage());
+		}
+	}
+	
     @Override
     public <S extends KapuaService> S getService(Class<S> serviceClass) {
         try {
@@ -11,25 +11,44 @@
  *******************************************************************************/
 package org.eclipse.kapua.locator.guice;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
 
 import org.eclipse.kapua.KapuaErrorCodes;
 import org.eclipse.kapua.KapuaRuntimeException;
 import org.eclipse.kapua.commons.util.ResourceUtils;
 import org.eclipse.kapua.locator.KapuaProvider;
+import org.eclipse.kapua.locator.KapuaProviderProcessor;
 import org.eclipse.kapua.model.KapuaObjectFactory;
 import org.eclipse.kapua.service.KapuaService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.ImmutableSet;
-import com.google.common.reflect.ClassPath;
-import com.google.common.reflect.ClassPath.ClassInfo;
+import com.codahale.metrics.Timer;
 import com.google.inject.AbstractModule;
+import com.google.inject.Singleton;
+import com.google.inject.binder.ScopedBindingBuilder;
+import com.google.inject.matcher.Matchers;
+import com.google.inject.spi.ProvisionListener;
 
 public class KapuaModule extends AbstractModule {
 	
@@ -40,6 +59,17 @@ public class KapuaModule extends AbstractModule {
      */
 	private static final String SERVICE_RESOURCE = "locator.xml";
 	
+	private volatile Timer provisionTimer;
+	
+	/**
+	 * Set the timer measuring the building of the provided instances
+	 * 
+	 * @param provisionTimer
+	 */
+	void setProvisionTimer(Timer provisionTimer) {
+		this.provisionTimer = provisionTimer;
+	}
+	
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	protected void configure() 
@@ -58,24 +88,11 @@ public class KapuaModule extends AbstractModule {
 			Collection<String> packageNames = locatorConfig.getPackageNames();
 			
 			ClassLoader classLoader = this.getClass().getClassLoader();
-			ClassPath classPath = ClassPath.from(classLoader);
 			boolean initialize = true;
 			
 			// Among all the classes in the configured packages, retain only the ones 
 			// annotated with @KapuaProvider annotation
-			HashSet<Class> extendedClassInfo = new HashSet<Class>();
-			for(String packageName:packageNames) {
-				// Use the class loader of this (module) class
-				ImmutableSet<ClassInfo> classInfos = classPath.getTopLevelClassesRecursive(packageName);
-				for(ClassInfo classInfo:classInfos) {
-					logger.trace("CLASS: {}", classInfo.getName());
-					Class<?> theClass = Class.forName(classInfo.getName(), !initialize, classLoader);
-					KapuaProvider serviceProvider = theClass.getAnnotation(KapuaProvider.class);
-					if (serviceProvider != null) {
-						extendedClassInfo.add(theClass);
-					}
-				}
-			}			
+			Set<Class> extendedClassInfo = findProviders(classLoader, packageNames);
 			
 			// Provided names are the objects provided by the module (services or factories
 			Collection<String> providedInterfaceNames = locatorConfig.getProvidedInterfaceNames();
@@ -94,7 +111,9 @@ public class KapuaModule extends AbstractModule {
 					for(Class<?> clazz:extendedClassInfo) {
 						if (kapuaObject.isAssignableFrom(clazz)) {
 							ServiceResolver resolver = ServiceResolver.newInstance(kapuaObject, clazz);
-							bind(resolver.getServiceClass()).to(resolver.getImplementationClass());
+							ScopedBindingBuilder binding = bind(resolver.getServiceClass()).to(resolver.getImplementationClass());
+							if (isSingleton(clazz))
+								binding.in(Singleton.class);
 							logger.info("Bind Kapua service {} to {}",kapuaObject, clazz);
 							isClassBound = true;
 							break;
@@ -111,7 +130,9 @@ public class KapuaModule extends AbstractModule {
 					for(Class clazz:extendedClassInfo) {
 						if (kapuaObject.isAssignableFrom(clazz)) {
 							FactoryResolver resolver = FactoryResolver.newInstance(kapuaObject, clazz);
-							bind(resolver.getFactoryClass()).to(resolver.getImplementationClass());
+							ScopedBindingBuilder binding = bind(resolver.getFactoryClass()).to(resolver.getImplementationClass());
+							if (isSingleton(clazz))
+								binding.in(Singleton.class);
 							logger.info("Bind Kapua factory {} to {}",kapuaObject, clazz);
 							isClassBound = true;
 							break;
@@ -125,6 +146,19 @@ public class KapuaModule extends AbstractModule {
 				logger.warn("No provider found for {}", kapuaObject);
 			}
 			
+			// Time the building of the provided instances
+			bindListener(Matchers.any(), new ProvisionListener() {
+
+				@Override
+				public <T> void onProvision(ProvisionInvocation<T> provision) {
+					long start = System.nanoTime();
+					provision.provision();
+					Timer timer = provisionTimer;
+					if (timer != null)
+						timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				}
+			});
+			
 			logger.trace("Binding completed.");
 			
 		} catch (Exception e) {
@@ -135,4 +169,208 @@ public class KapuaModule extends AbstractModule {
 		}
 	}
 
+	/**
+	 * Find the {@link KapuaProvider} annotated classes of the configured packages.<br>
+	 * The classes of the classpath entries (jars or directories) with a provider index built at compile time by the
+	 * {@link KapuaProviderProcessor} are read from the index, while the classes of the entries without an index (i.e. built
+	 * without the annotation processor) are found scanning them: the indexed entries are never listed.
+	 * 
+	 * @param classLoader
+	 * @param packageNames
+	 * @return
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@SuppressWarnings("rawtypes")
+	private static Set<Class> findProviders(ClassLoader classLoader, Collection<String> packageNames) 
+			throws IOException, ClassNotFoundException 
+	{
+		Set<String> indexedRoots = new HashSet<String>();
+		Set<Class> providers = readProviderIndex(classLoader, packageNames, indexedRoots);
+		providers.addAll(scanClassPath(classLoader, packageNames, indexedRoots));
+		return providers;
+	}
+
+	/**
+	 * Read the {@link KapuaProvider} annotated classes of the configured packages from the provider indexes
+	 * 
+	 * @param classLoader
+	 * @param packageNames
+	 * @param indexedRoots filled with the classpath entries having an index
+	 * @return
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	private static Set<Class> readProviderIndex(ClassLoader classLoader, Collection<String> packageNames, Set<String> indexedRoots) 
+			throws IOException 
+	{
+		Set<Class> providers = new HashSet<Class>();
+		Enumeration<URL> indexes = classLoader.getResources(KapuaProviderProcessor.PROVIDER_INDEX);
+		while (indexes.hasMoreElements()) {
+			URL index = indexes.nextElement();
+			logger.trace("INDEX: {}", index);
+			indexedRoots.add(getIndexedRoot(index));
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+				String className;
+				while ((className = reader.readLine()) != null) {
+					className = className.trim();
+					if (className.isEmpty() || !isInPackages(className, packageNames))
+						continue;
+					
+					try {
+						Class<?> theClass = Class.forName(className, false, classLoader);
+						if (theClass.getAnnotation(KapuaProvider.class) != null)
+							providers.add(theClass);
+					}
+					catch (ClassNotFoundException e) {
+						// stale entry left by an incremental compilation
+						logger.debug("Indexed provider {} not found", className);
+					}
+				}
+			}
+		}
+		return providers;
+	}
+	
+	/**
+	 * Scan the classpath entries without a provider index for the {@link KapuaProvider} annotated classes of the configured packages.<br>
+	 * Only the package directories of the entries are listed (found through the class loader), so the entries have to contain the
+	 * directory entries of the packages, as the jars built by maven do.
+	 * 
+	 * @param classLoader
+	 * @param packageNames
+	 * @param indexedRoots the classpath entries having an index (not scanned)
+	 * @return
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@SuppressWarnings("rawtypes")
+	private static Set<Class> scanClassPath(ClassLoader classLoader, Collection<String> packageNames, Set<String> indexedRoots) 
+			throws IOException, ClassNotFoundException 
+	{
+		Set<Class> providers = new HashSet<Class>();
+		for(String packageName:packageNames) {
+			// Use the class loader of this (module) class
+			Enumeration<URL> packageUrls = classLoader.getResources(packageName.replace('.', '/'));
+			while (packageUrls.hasMoreElements()) {
+				URL packageUrl = packageUrls.nextElement();
+				if (isIndexed(packageUrl, indexedRoots))
+					continue;
+				
+				for(String className:listClasses(packageUrl, packageName)) {
+					logger.trace("CLASS: {}", className);
+					Class<?> theClass = Class.forName(className, false, classLoader);
+					KapuaProvider serviceProvider = theClass.getAnnotation(KapuaProvider.class);
+					if (serviceProvider != null) {
+						logger.info("Provider {} found scanning the classpath, its module has no {} resource", theClass, KapuaProviderProcessor.PROVIDER_INDEX);
+						providers.add(theClass);
+					}
+				}
+			}
+		}
+		return providers;
+	}
+	
+	/**
+	 * List the top level classes of the package directory, including its sub packages
+	 * 
+	 * @param packageUrl the package directory, in a directory or in a jar
+	 * @param packageName
+	 * @return
+	 * @throws IOException
+	 */
+	static List<String> listClasses(URL packageUrl, String packageName) 
+			throws IOException 
+	{
+		List<String> classNames = new ArrayList<String>();
+		String packagePath = packageName.replace('.', '/') + "/";
+		if ("file".equals(packageUrl.getProtocol())) {
+			Path packageDir;
+			try {
+				packageDir = Paths.get(packageUrl.toURI());
+			}
+			catch (URISyntaxException e) {
+				throw new IOException(e);
+			}
+			try (Stream<Path> files = Files.walk(packageDir)) {
+				files.forEach(file -> {
+					String className = getClassName(packagePath + packageDir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"));
+					if (className != null)
+						classNames.add(className);
+				});
+			}
+		}
+		else if ("jar".equals(packageUrl.getProtocol())) {
+			// the jar file is shared with the class loader, so it is not closed
+			JarFile jarFile = ((JarURLConnection) packageUrl.openConnection()).getJarFile();
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				String entryName = entries.nextElement().getName();
+				String className = entryName.startsWith(packagePath) ? getClassName(entryName) : null;
+				if (className != null)
+					classNames.add(className);
+			}
+		}
+		else {
+			logger.warn("Cannot scan {}, unsupported protocol", packageUrl);
+		}
+		return classNames;
+	}
+	
+	/**
+	 * Return the name of the top level class of the class file path, or null if the path is not the one of a top level class
+	 * 
+	 * @param path
+	 * @return
+	 */
+	private static String getClassName(String path) 
+	{
+		if (!path.endsWith(".class") || path.indexOf('$', path.lastIndexOf('/') + 1) >= 0)
+			return null;
+		return path.substring(0, path.length() - ".class".length()).replace('/', '.');
+	}
+	
+	/**
+	 * Return the classpath entry of the provider index
+	 * 
+	 * @param index
+	 * @return
+	 */
+	static String getIndexedRoot(URL index) 
+	{
+		String indexUrl = index.toString();
+		return indexUrl.substring(0, indexUrl.length() - KapuaProviderProcessor.PROVIDER_INDEX.length());
+	}
+	
+	/**
+	 * Check if the class is in one of the classpath entries having a provider index
+	 * 
+	 * @param classUrl
+	 * @param indexedRoots
+	 * @return
+	 */
+	static boolean isIndexed(URL classUrl, Set<String> indexedRoots) 
+	{
+		String url = classUrl.toString();
+		for (String indexedRoot:indexedRoots) {
+			if (url.startsWith(indexedRoot))
+				return true;
+		}
+		return false;
+	}
+	
+	private static boolean isInPackages(String className, Collection<String> packageNames) 
+	{
+		for (String packageName:packageNames) {
+			if (className.startsWith(packageName + "."))
+				return true;
+		}
+		return false;
+	}
+	
+	private static boolean isSingleton(Class<?> clazz) 
+	{
+		return clazz.getAnnotation(KapuaProvider.class).singleton();
+	}
+
 }
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.locator.guice;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.eclipse.kapua.locator.KapuaProvider;
+import org.eclipse.kapua.locator.KapuaProviderProcessor;
+import org.eclipse.kapua.service.KapuaService;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+public class KapuaModuleTest extends Assert {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldShareSingletonProviders() {
+		Injector injector = Guice.createInjector(new KapuaModule());
+
+		SharedService service = injector.getInstance(SharedService.class);
+		assertTrue(service instanceof SharedServiceImpl);
+		assertSame(service, injector.getInstance(SharedService.class));
+	}
+
+	@Test
+	public void shouldBuildOptedOutProvidersAtEveryLookup() {
+		Injector injector = Guice.createInjector(new KapuaModule());
+
+		PerLookupService service = injector.getInstance(PerLookupService.class);
+		assertTrue(service instanceof PerLookupServiceImpl);
+		assertNotSame(service, injector.getInstance(PerLookupService.class));
+	}
+
+	@Test
+	public void shouldScanOnlyTheEntriesWithoutProviderIndex() throws Exception {
+		Set<String> indexedRoots = new HashSet<String>();
+		indexedRoots.add(KapuaModule.getIndexedRoot(new URL("jar:file:/lib/indexed.jar!/" + KapuaProviderProcessor.PROVIDER_INDEX)));
+		indexedRoots.add(KapuaModule.getIndexedRoot(new URL("file:/module/target/classes/" + KapuaProviderProcessor.PROVIDER_INDEX)));
+
+		assertTrue(indexedRoots.contains("jar:file:/lib/indexed.jar!/"));
+		assertTrue(indexedRoots.contains("file:/module/target/classes/"));
+
+		assertTrue(KapuaModule.isIndexed(new URL("jar:file:/lib/indexed.jar!/org/eclipse/kapua/ServiceImpl.class"), indexedRoots));
+		assertTrue(KapuaModule.isIndexed(new URL("file:/module/target/classes/org/eclipse/kapua/ServiceImpl.class"), indexedRoots));
+		assertFalse(KapuaModule.isIndexed(new URL("jar:file:/lib/third-party.jar!/org/eclipse/kapua/ServiceImpl.class"), indexedRoots));
+		assertFalse(KapuaModule.isIndexed(new URL("file:/other/target/classes/org/eclipse/kapua/ServiceImpl.class"), indexedRoots));
+	}
+
+	@Test
+	public void shouldListTheTopLevelClassesOfAPackageDirectory() throws Exception {
+		File root = folder.newFolder("classes");
+		for (String path : Arrays.asList("org/acme/Service.class", "org/acme/Service$Inner.class", "org/acme/impl/ServiceImpl.class", "org/acme/service.properties", "org/other/Other.class")) {
+			File file = new File(root, path);
+			assertTrue(file.getParentFile().mkdirs() || file.getParentFile().isDirectory());
+			assertTrue(file.createNewFile());
+		}
+
+		List<String> classNames = KapuaModule.listClasses(new File(root, "org/acme").toURI().toURL(), "org.acme");
+
+		assertEquals(new HashSet<String>(Arrays.asList("org.acme.Service", "org.acme.impl.ServiceImpl")), new HashSet<String>(classNames));
+		assertEquals(2, classNames.size());
+	}
+
+	@Test
+	public void shouldListTheTopLevelClassesOfAPackageInAJar() throws Exception {
+		File jar = folder.newFile("classes.jar");
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			for (String path : Arrays.asList("org/", "org/acme/", "org/acme/Service.class", "org/acme/Service$Inner.class", "org/acme/impl/", "org/acme/impl/ServiceImpl.class", "org/other/", "org/other/Other.class")) {
+				out.putNextEntry(new JarEntry(path));
+				out.closeEntry();
+			}
+		}
+
+		List<String> classNames = KapuaModule.listClasses(new URL("jar:" + jar.toURI().toURL() + "!/org/acme"), "org.acme");
+
+		assertEquals(new HashSet<String>(Arrays.asList("org.acme.Service", "org.acme.impl.ServiceImpl")), new HashSet<String>(classNames));
+		assertEquals(2, classNames.size());
+	}
+
+	public interface SharedService extends KapuaService {
+	}
+
+	public interface PerLookupService extends KapuaService {
+	}
+
+	@KapuaProvider
+	public static class SharedServiceImpl implements SharedService {
+	}
+
+	@KapuaProvider(singleton = false)
+	public static class PerLookupServiceImpl implements PerLookupService {
+	}
+
+}
@@ -19,7 +19,11 @@ import javax.ws.rs.ext.ContextResolver;
 import javax.ws.rs.ext.Provider;
 import javax.xml.bind.JAXBContext;
 
+import org.eclipse.kapua.app.api.v1.resources.model.DeviceBulkJobBean;
+import org.eclipse.kapua.app.api.v1.resources.model.DeviceBulkResultBean;
 import org.eclipse.kapua.app.api.v1.resources.model.ErrorBean;
+import org.eclipse.kapua.app.api.v1.resources.model.MetricLastValueBean;
+import org.eclipse.kapua.app.api.v1.resources.model.MetricLastValuesBean;
 import org.eclipse.kapua.model.config.metatype.KapuaTad;
 import org.eclipse.kapua.model.config.metatype.KapuaTicon;
 import org.eclipse.kapua.model.config.metatype.KapuaTocd;
@@ -108,6 +112,10 @@ public class JaxbContextResolver implements ContextResolver<JAXBContext> {
         try {
             jaxbContext = JAXBContextFactory.createContext(new Class[] {
                     ErrorBean.class,
+                    DeviceBulkJobBean.class,
+                    DeviceBulkResultBean.class,
+                    MetricLastValueBean.class,
+                    MetricLastValuesBean.class,
                     Account.class,
                     AccountCreator.class,
                     AccountListResult.class,
@@ -26,6 +26,10 @@ import org.eclipse.kapua.app.api.settings.KapuaApiSettingKeys;
 import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.service.authentication.AccessTokenCredentials;
 import org.eclipse.kapua.service.authentication.CredentialsFactory;
+import org.eclipse.kapua.service.metric.MetricsService;
+
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
 
 public class KapuaTokenAuthenticationFilter extends AuthenticatingFilter {
 
@@ -33,18 +37,28 @@ public class KapuaTokenAuthenticationFilter extends AuthenticatingFilter {
     private static final String AUTHORIZATION_HEADER = "Authorization";
     private static final String BEARER = "Bearer";
 
+    private final Timer metricLoginTime;
+
+    public KapuaTokenAuthenticationFilter() {
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        metricLoginTime = metricsService.getTimer("rest_api", "authentication", "access_token", "login", "time", "s");
+    }
+
     @Override
     protected boolean isAccessAllowed(ServletRequest request, ServletResponse response, Object mappedValue) {
         if (OPTIONS.equals(((HttpServletRequest) request).getMethod())) {
             return true;
         }
 
+        Context loginTimeContext = metricLoginTime.time();
         try {
             return executeLogin(request, response);
         } catch (AuthenticationException ae) {
             return onLoginFailure(null, ae, request, response);
         } catch (Exception e) {
             throw KapuaRuntimeException.internalError(e);
+        } finally {
+            loginTimeContext.stop();
         }
     }
 
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources;
+
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.eclipse.kapua.app.api.v1.resources.model.MetricLastValueBean;
+import org.eclipse.kapua.app.api.v1.resources.model.MetricLastValuesBean;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.datastore.MessageStoreService;
+import org.eclipse.kapua.service.datastore.model.MetricLastValue;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+
+/**
+ * Last known values of the device metrics.<br>
+ * The values are served from the message store memory, the message store is not queried.
+ */
+@Api("Data Metrics")
+@Path("/data/{clientId}/metrics")
+public class DataMetrics extends AbstractKapuaResource {
+
+    private final KapuaLocator locator = KapuaLocator.getInstance();
+    private final MessageStoreService messageStoreService = locator.getService(MessageStoreService.class);
+
+    /**
+     * Returns the last known values of all the metrics of a device.
+     *
+     * @param clientId The client id of the device
+     * @return The last values of the device metrics.
+     */
+    @GET
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @ApiOperation(value = "Get the last values of the device metrics",
+    notes = "Returns the last known value of every metric published by the device.",
+    response = MetricLastValuesBean.class)
+    public MetricLastValuesBean getLastValues(
+            @ApiParam(value = "The client id of the device", required = true)
+            @PathParam("clientId") String clientId) {
+        MetricLastValuesBean lastValues = null;
+        try {
+            List<MetricLastValue> values = messageStoreService.findLastValues(KapuaSecurityUtils.getSession().getScopeId(), clientId);
+            lastValues = new MetricLastValuesBean(clientId, values);
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return lastValues;
+    }
+
+    /**
+     * Returns the last known value of a device metric.
+     *
+     * @param clientId The client id of the device
+     * @param metricName The metric name
+     * @return The last value of the metric.
+     */
+    @GET
+    @Path("{metricName}")
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @ApiOperation(value = "Get the last value of a device metric",
+    notes = "Returns the last known value of the metric published by the device.",
+    response = MetricLastValueBean.class)
+    public MetricLastValueBean getLastValue(
+            @ApiParam(value = "The client id of the device", required = true)
+            @PathParam("clientId") String clientId,
+
+            @ApiParam(value = "The metric name", required = true)
+            @PathParam("metricName") String metricName) {
+        MetricLastValue lastValue = null;
+        try {
+            lastValue = messageStoreService.findLastValue(KapuaSecurityUtils.getSession().getScopeId(), clientId, metricName);
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return new MetricLastValueBean(returnNotNullEntity(lastValue));
+    }
+}
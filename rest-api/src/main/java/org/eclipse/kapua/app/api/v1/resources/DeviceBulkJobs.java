@@ -0,0 +1,361 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.subject.Subject;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaIllegalArgumentException;
+import org.eclipse.kapua.KapuaIllegalNullArgumentException;
+import org.eclipse.kapua.app.api.v1.resources.model.DeviceBulkJobBean;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.model.query.predicate.AndPredicate;
+import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.model.query.predicate.KapuaAndPredicate;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.eclipse.kapua.service.device.management.command.DeviceCommandInput;
+import org.eclipse.kapua.service.device.management.command.DeviceCommandManagementService;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkJob;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkJobManager;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkOperation;
+import org.eclipse.kapua.service.device.management.configuration.DeviceConfiguration;
+import org.eclipse.kapua.service.device.management.configuration.DeviceConfigurationManagementService;
+import org.eclipse.kapua.service.device.management.packages.DevicePackageManagementService;
+import org.eclipse.kapua.service.device.management.packages.model.download.DevicePackageDownloadRequest;
+import org.eclipse.kapua.service.device.registry.DeviceFactory;
+import org.eclipse.kapua.service.device.registry.DevicePredicates;
+import org.eclipse.kapua.service.device.registry.DeviceQuery;
+import org.eclipse.kapua.service.device.registry.DeviceStatus;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+
+/**
+ * Device management bulk jobs.<br>
+ * A bulk job sends the same request to a set of devices, selected by id or by the device registry filters, and the job progress
+ * and the device results are read while the job is running.<br>
+ * At least a device id or a filter is required, and every device request runs with the permissions of the caller.
+ */
+@Api("Device Bulk Jobs")
+@Path("/devices/bulk")
+public class DeviceBulkJobs extends AbstractKapuaResource {
+
+    private final KapuaLocator locator = KapuaLocator.getInstance();
+    private final DeviceFactory deviceFactory = locator.getFactory(DeviceFactory.class);
+    private final DeviceCommandManagementService commandService = locator.getService(DeviceCommandManagementService.class);
+    private final DeviceConfigurationManagementService configurationService = locator.getService(DeviceConfigurationManagementService.class);
+    private final DevicePackageManagementService packageService = locator.getService(DevicePackageManagementService.class);
+    private final DeviceBulkJobManager bulkJobManager = DeviceBulkJobManager.getInstance();
+
+    /**
+     * Executes a command on a set of devices.
+     * The devices are the ones with the given ids or, if no id is given, the ones matching all the given filters (at least one).
+     *
+     * @param commandInput The input command
+     * @param deviceId One or more ids of the devices
+     * @param clientId One or more client ids of the devices
+     * @param modelId The model id of the devices
+     * @param firmwareVersion The firmware version of the devices
+     * @param status The status (Enabled/Disabled) of the devices
+     * @param timeout The timeout of the command execution
+     * @return The started job.
+     */
+    @POST
+    @Path("command")
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @ApiOperation(value = "Executes a command on a set of devices",
+    notes = "Starts a job executing a remote command on a set of devices. The devices are the ones with the given ids or, " +
+            "if no id is given, the ones matching all the given filters (at least one is required).",
+    response = DeviceBulkJobBean.class)
+    public DeviceBulkJobBean sendCommand(
+            @ApiParam(value = "The input command", required = true)
+            DeviceCommandInput commandInput,
+
+            @ApiParam(value = "One or more ids of the devices", required = false)
+            @QueryParam("deviceId") List<String> deviceId,
+
+            @ApiParam(value = "One or more client ids of the devices", required = false)
+            @QueryParam("clientId") List<String> clientId,
+
+            @ApiParam(value = "The model id of the devices", required = false)
+            @QueryParam("modelId") String modelId,
+
+            @ApiParam(value = "The firmware version of the devices", required = false)
+            @QueryParam("firmwareVersion") String firmwareVersion,
+
+            @ApiParam(value = "The status (Enabled/Disabled) of the devices", required = false)
+            @QueryParam("status") String status,
+
+            @ApiParam(value = "The timeout of the command execution", required = false)
+            @QueryParam("timeout") Long timeout) {
+        DeviceBulkJob<?> job = null;
+        try {
+            job = submit(deviceId, clientId, modelId, firmwareVersion, status, Actions.execute,
+                         (scopeId, id) -> commandService.execAsync(scopeId, id, commandInput, timeout));
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return new DeviceBulkJobBean(returnNotNullEntity(job), 0, 0);
+    }
+
+    /**
+     * Updates the configuration of a set of devices.
+     * The devices are the ones with the given ids or, if no id is given, the ones matching all the given filters (at least one).
+     *
+     * @param deviceConfiguration The configuration to apply
+     * @param deviceId One or more ids of the devices
+     * @param clientId One or more client ids of the devices
+     * @param modelId The model id of the devices
+     * @param firmwareVersion The firmware version of the devices
+     * @param status The status (Enabled/Disabled) of the devices
+     * @param timeout The timeout waiting for the device responses
+     * @return The started job.
+     */
+    @POST
+    @Path("configurations")
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @ApiOperation(value = "Updates the configuration of a set of devices",
+    notes = "Starts a job updating the configuration of a set of devices. The devices are the ones with the given ids or, " +
+            "if no id is given, the ones matching all the given filters (at least one is required).",
+    response = DeviceBulkJobBean.class)
+    public DeviceBulkJobBean putConfigurations(
+            @ApiParam(value = "The configuration to apply", required = true)
+            DeviceConfiguration deviceConfiguration,
+
+            @ApiParam(value = "One or more ids of the devices", required = false)
+            @QueryParam("deviceId") List<String> deviceId,
+
+            @ApiParam(value = "One or more client ids of the devices", required = false)
+            @QueryParam("clientId") List<String> clientId,
+
+            @ApiParam(value = "The model id of the devices", required = false)
+            @QueryParam("modelId") String modelId,
+
+            @ApiParam(value = "The firmware version of the devices", required = false)
+            @QueryParam("firmwareVersion") String firmwareVersion,
+
+            @ApiParam(value = "The status (Enabled/Disabled) of the devices", required = false)
+            @QueryParam("status") String status,
+
+            @ApiParam(value = "The timeout waiting for the device responses", required = false)
+            @QueryParam("timeout") Long timeout) {
+        DeviceBulkJob<?> job = null;
+        try {
+            job = submit(deviceId, clientId, modelId, firmwareVersion, status, Actions.write,
+                         (scopeId, id) -> configurationService.putAsync(scopeId, id, deviceConfiguration, timeout));
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return new DeviceBulkJobBean(returnNotNullEntity(job), 0, 0);
+    }
+
+    /**
+     * Installs a deployment package on a set of devices.
+     * The devices are the ones with the given ids or, if no id is given, the ones matching all the given filters (at least one).
+     *
+     * @param request Mandatory object with all the informations needed to download a package
+     * @param deviceId One or more ids of the devices
+     * @param clientId One or more client ids of the devices
+     * @param modelId The model id of the devices
+     * @param firmwareVersion The firmware version of the devices
+     * @param status The status (Enabled/Disabled) of the devices
+     * @param timeout The timeout waiting for the device responses
+     * @return The started job.
+     */
+    @POST
+    @Path("packages")
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @ApiOperation(value = "Installs a package on a set of devices",
+    notes = "Starts a job installing a deployment package on a set of devices. The devices are the ones with the given ids or, " +
+            "if no id is given, the ones matching all the given filters (at least one is required).",
+    response = DeviceBulkJobBean.class)
+    public DeviceBulkJobBean installPackage(
+            @ApiParam(value = "Mandatory object with all the informations needed to download a package", required = true)
+            DevicePackageDownloadRequest request,
+
+            @ApiParam(value = "One or more ids of the devices", required = false)
+            @QueryParam("deviceId") List<String> deviceId,
+
+            @ApiParam(value = "One or more client ids of the devices", required = false)
+            @QueryParam("clientId") List<String> clientId,
+
+            @ApiParam(value = "The model id of the devices", required = false)
+            @QueryParam("modelId") String modelId,
+
+            @ApiParam(value = "The firmware version of the devices", required = false)
+            @QueryParam("firmwareVersion") String firmwareVersion,
+
+            @ApiParam(value = "The status (Enabled/Disabled) of the devices", required = false)
+            @QueryParam("status") String status,
+
+            @ApiParam(value = "The timeout waiting for the device responses", required = false)
+            @QueryParam("timeout") Long timeout) {
+        DeviceBulkJob<?> job = null;
+        try {
+            job = submit(deviceId, clientId, modelId, firmwareVersion, status, Actions.write,
+                         (scopeId, id) -> packageService.downloadExecAsync(scopeId, id, request, timeout));
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return new DeviceBulkJobBean(returnNotNullEntity(job), 0, 0);
+    }
+
+    /**
+     * Returns the progress of a job and the device results completed from the given offset.
+     * The results are returned in completion order, so the job can be followed reading again from the returned nextOffset.
+     *
+     * @param jobId The id of the job
+     * @param offset Starting offset for the results to be returned
+     * @param limit Maximum number of results to be returned
+     * @return The job progress.
+     */
+    @GET
+    @Path("{jobId}")
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @ApiOperation(value = "Gets the progress of a job",
+    notes = "Returns the progress of a job and the device results completed from the given offset. " +
+            "The results are returned in completion order, so the job can be followed reading again from the returned nextOffset.",
+    response = DeviceBulkJobBean.class)
+    public DeviceBulkJobBean getJob(
+            @ApiParam(value = "The id of the job", required = true)
+            @PathParam("jobId") String jobId,
+
+            @ApiParam(value = "Starting offset for the results to be returned", required = false)
+            @QueryParam("offset") @DefaultValue("0") int offset,
+
+            @ApiParam(value = "Maximum number of results to be returned", required = false)
+            @QueryParam("limit") @DefaultValue("100") int limit) {
+        DeviceBulkJob<?> job = null;
+        try {
+            job = bulkJobManager.find(KapuaSecurityUtils.getSession().getScopeId(), jobId);
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return new DeviceBulkJobBean(returnNotNullEntity(job), offset, limit);
+    }
+
+    /**
+     * Cancels a job: the requests not yet sent to the devices are skipped.
+     *
+     * @param jobId The id of the job
+     * @return The job progress.
+     */
+    @DELETE
+    @Path("{jobId}")
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @ApiOperation(value = "Cancels a job",
+    notes = "Cancels a job: the requests not yet sent to the devices are skipped.",
+    response = DeviceBulkJobBean.class)
+    public DeviceBulkJobBean cancelJob(
+            @ApiParam(value = "The id of the job", required = true)
+            @PathParam("jobId") String jobId) {
+        DeviceBulkJob<?> job = null;
+        try {
+            job = bulkJobManager.cancel(KapuaSecurityUtils.getSession().getScopeId(), jobId);
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return new DeviceBulkJobBean(returnNotNullEntity(job), 0, 0);
+    }
+
+    private <R> DeviceBulkJob<R> submit(List<String> deviceId,
+                                        List<String> clientId,
+                                        String modelId,
+                                        String firmwareVersion,
+                                        String status,
+                                        Actions action,
+                                        DeviceBulkOperation<R> operation)
+        throws KapuaException
+    {
+        KapuaId scopeId = KapuaSecurityUtils.getSession().getScopeId();
+        DeviceBulkOperation<R> callerOperation = asCaller(operation);
+
+        if (deviceId != null && deviceId.size() > 0) {
+            List<KapuaId> deviceIds = new ArrayList<>(deviceId.size());
+            for (String id : deviceId) {
+                deviceIds.add(KapuaEid.parseCompactId(id));
+            }
+            return bulkJobManager.submit(scopeId, deviceIds, action, callerOperation);
+        }
+
+        // the whole fleet is never selected by omission
+        if ((clientId == null || clientId.isEmpty()) && modelId == null && firmwareVersion == null && status == null) {
+            throw new KapuaIllegalNullArgumentException("deviceId");
+        }
+
+        DeviceQuery query = deviceFactory.newQuery(scopeId);
+        KapuaAndPredicate andPredicate = new AndPredicate();
+        if (clientId != null && clientId.size() > 0) {
+            andPredicate = andPredicate.and(new AttributePredicate<>(DevicePredicates.CLIENT_ID, clientId.toArray(new String[] {})));
+        }
+        if (modelId != null) {
+            andPredicate = andPredicate.and(new AttributePredicate<>(DevicePredicates.MODEL_ID, modelId));
+        }
+        if (firmwareVersion != null) {
+            andPredicate = andPredicate.and(new AttributePredicate<>(DevicePredicates.FIRMWARE_VERSION, firmwareVersion));
+        }
+        if (status != null) {
+            try {
+                andPredicate = andPredicate.and(new AttributePredicate<>(DevicePredicates.STATUS, DeviceStatus.valueOf(status)));
+            }
+            catch (IllegalArgumentException iae) {
+                throw new KapuaIllegalArgumentException("status", status);
+            }
+        }
+        query.setPredicate(andPredicate);
+
+        return bulkJobManager.submit(query, action, callerOperation);
+    }
+
+    /**
+     * Bind the operation to the Shiro subject of the caller, so the device management services check the caller permissions on the
+     * job threads too
+     */
+    private static <R> DeviceBulkOperation<R> asCaller(DeviceBulkOperation<R> operation)
+    {
+        Subject subject = SecurityUtils.getSubject();
+        return (scopeId, deviceId) -> {
+            try {
+                return subject.execute(() -> operation.execute(scopeId, deviceId));
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof KapuaException) {
+                    throw (KapuaException) e.getCause();
+                }
+                throw KapuaException.internalError(e.getCause());
+            }
+        };
+    }
+}
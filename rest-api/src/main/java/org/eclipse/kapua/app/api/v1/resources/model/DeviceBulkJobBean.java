@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources.model;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkJob;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkResult;
+
+import com.codahale.metrics.Snapshot;
+
+/**
+ * Device bulk job progress.<br>
+ * The results are the ones completed from the requested offset: reading again from nextOffset returns only the new results.
+ */
+@XmlRootElement(name = "deviceBulkJob")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class DeviceBulkJobBean
+{
+    @XmlElement(name = "id")
+    private String  id;
+
+    @XmlElement(name = "status")
+    private String  status;
+
+    @XmlElement(name = "createdOn")
+    private Date    createdOn;
+
+    @XmlElement(name = "endedOn")
+    private Date    endedOn;
+
+    @XmlElement(name = "total")
+    private int     total;
+
+    @XmlElement(name = "dispatched")
+    private int     dispatched;
+
+    @XmlElement(name = "completed")
+    private int     completed;
+
+    @XmlElement(name = "succeeded")
+    private int     succeeded;
+
+    @XmlElement(name = "failed")
+    private int     failed;
+
+    @XmlElement(name = "throughput")
+    private double  throughput;
+
+    @XmlElement(name = "latencyMean")
+    private double  latencyMean;
+
+    @XmlElement(name = "latency50thPercentile")
+    private double  latency50thPercentile;
+
+    @XmlElement(name = "latency95thPercentile")
+    private double  latency95thPercentile;
+
+    @XmlElement(name = "latency99thPercentile")
+    private double  latency99thPercentile;
+
+    @XmlElement(name = "latencyMax")
+    private long    latencyMax;
+
+    @XmlElement(name = "nextOffset")
+    private int     nextOffset;
+
+    @XmlElementWrapper(name = "results")
+    @XmlElement(name = "result")
+    private List<DeviceBulkResultBean> results = new ArrayList<>();
+
+    public DeviceBulkJobBean() {
+    }
+
+    public DeviceBulkJobBean(DeviceBulkJob<?> job, int offset, int limit) {
+        this.id = job.getId();
+        this.status = job.getStatus().name();
+        this.createdOn = job.getCreatedOn();
+        this.endedOn = job.getEndedOn();
+        this.total = job.getTotal();
+        this.dispatched = job.getDispatched();
+        this.completed = job.getCompleted();
+        this.succeeded = job.getSucceeded();
+        this.failed = job.getFailed();
+        this.throughput = job.getThroughput();
+
+        Snapshot latency = job.getLatency();
+        this.latencyMean = latency.getMean();
+        this.latency50thPercentile = latency.getMedian();
+        this.latency95thPercentile = latency.get95thPercentile();
+        this.latency99thPercentile = latency.get99thPercentile();
+        this.latencyMax = latency.getMax();
+
+        List<? extends DeviceBulkResult<?>> jobResults = job.getResults(offset, limit);
+        for (DeviceBulkResult<?> result : jobResults) {
+            results.add(new DeviceBulkResultBean(result));
+        }
+        this.nextOffset = Math.max(offset, 0) + jobResults.size();
+    }
+}
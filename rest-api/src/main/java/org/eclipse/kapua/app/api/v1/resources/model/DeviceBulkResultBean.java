@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources.model;
+
+import java.util.Date;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkResult;
+
+@XmlRootElement(name = "deviceBulkResult")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class DeviceBulkResultBean
+{
+    @XmlElement(name = "deviceId")
+    private String  deviceId;
+
+    @XmlElement(name = "succeeded")
+    private boolean succeeded;
+
+    @XmlElement(name = "exceptionMessage")
+    private String  exceptionMessage;
+
+    @XmlElement(name = "latency")
+    private long    latency;
+
+    @XmlElement(name = "completedOn")
+    private Date    completedOn;
+
+    public DeviceBulkResultBean() {
+    }
+
+    public DeviceBulkResultBean(DeviceBulkResult<?> result) {
+        this.deviceId = result.getDeviceId().toCompactId();
+        this.succeeded = result.isSucceeded();
+        this.exceptionMessage = result.getExceptionMessage();
+        this.latency = result.getLatency();
+        this.completedOn = result.getCompletedOn();
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources.model;
+
+import java.util.Base64;
+import java.util.Date;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.eclipse.kapua.service.datastore.model.MetricLastValue;
+
+/**
+ * Last known value of a device metric.<br>
+ * The value is returned as text together with its type (string, integer, long, float, double, boolean, date or binary).
+ */
+@XmlRootElement(name = "metricLastValue")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class MetricLastValueBean
+{
+    @XmlElement(name = "clientId")
+    private String clientId;
+
+    @XmlElement(name = "name")
+    private String name;
+
+    @XmlElement(name = "type")
+    private String type;
+
+    @XmlElement(name = "value")
+    private String value;
+
+    @XmlElement(name = "timestamp")
+    private Date   timestamp;
+
+    @XmlElement(name = "messageId")
+    private String messageId;
+
+    public MetricLastValueBean() {
+    }
+
+    public MetricLastValueBean(MetricLastValue lastValue) {
+        this.clientId = lastValue.getClientId();
+        this.name = lastValue.getName();
+        this.timestamp = lastValue.getTimestamp();
+        this.messageId = lastValue.getMessageId() != null ? lastValue.getMessageId().toString() : null;
+
+        Object metricValue = lastValue.getValue();
+        if (metricValue instanceof Date) {
+            this.type = "date";
+            this.value = String.valueOf(((Date) metricValue).getTime());
+        } else if (metricValue instanceof byte[]) {
+            this.type = "binary";
+            this.value = Base64.getEncoder().encodeToString((byte[]) metricValue);
+        } else if (metricValue != null) {
+            this.type = metricValue.getClass().getSimpleName().toLowerCase();
+            this.value = metricValue.toString();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.eclipse.kapua.service.datastore.model.MetricLastValue;
+
+/**
+ * Last known values of all the metrics of a device.
+ */
+@XmlRootElement(name = "metricLastValues")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class MetricLastValuesBean
+{
+    @XmlElement(name = "clientId")
+    private String clientId;
+
+    @XmlElementWrapper(name = "metrics")
+    @XmlElement(name = "metric")
+    private List<MetricLastValueBean> metrics = new ArrayList<>();
+
+    public MetricLastValuesBean() {
+    }
+
+    public MetricLastValuesBean(String clientId, List<MetricLastValue> lastValues) {
+        this.clientId = clientId;
+        for (MetricLastValue lastValue : lastValues) {
+            metrics.add(new MetricLastValueBean(lastValue));
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.KapuaIllegalAccessException;
 import org.eclipse.kapua.KapuaIllegalArgumentException;
+import org.eclipse.kapua.commons.cache.KapuaIdentityCache;
 import org.eclipse.kapua.commons.configuration.AbstractKapuaConfigurableService;
 import org.eclipse.kapua.commons.model.query.KapuaListResultImpl;
 import org.eclipse.kapua.commons.setting.system.SystemSetting;
@@ -171,7 +172,7 @@ public class AccountServiceImpl extends AbstractKapuaConfigurableService impleme
             throw new KapuaAccountException(KapuaAccountErrorCodes.OPERATION_NOT_ALLOWED, null, "This account cannot be deleted. Delete its child first.");
         }
 
-        entityManagerSession.onTransactedAction(em -> {
+        Account account = entityManagerSession.onTransactedResult(em -> {
             // Entity needs to be loaded in the context of the same EntityManger to be able to delete it afterwards
             Account accountx = AccountDAO.find(em, accountId);
             if (accountx == null) {
@@ -189,7 +190,10 @@ public class AccountServiceImpl extends AbstractKapuaConfigurableService impleme
             }
 
             AccountDAO.delete(em, accountId);
+            return accountx;
         });
+        // invalidated once committed, so the account is not cached again by a concurrent lookup
+        KapuaIdentityCache.getInstance().removeScopeId(account.getName());
     }
 
     @Override
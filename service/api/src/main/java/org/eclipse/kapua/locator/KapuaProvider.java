@@ -17,7 +17,23 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * Marks a service or factory implementation to be provided by the {@link KapuaLocator}.<br>
+ * The annotated classes are listed at build time in the {@link KapuaProviderProcessor#PROVIDER_INDEX} resource, so the locator doesn't
+ * need to scan the classpath.
+ * 
+ * @since 1.0
+ *
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.TYPE)
 public @interface KapuaProvider {
+
+    /**
+     * Whether the locator shares a single instance of the provider (the default) or builds a new one at every lookup.<br>
+     * Providers keeping state bound to the caller have to opt out.
+     * 
+     * @return
+     */
+    boolean singleton() default true;
 }
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.locator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor building the index of the {@link KapuaProvider} annotated classes of a module.<br>
+ * The index is the {@link #PROVIDER_INDEX} resource, listing a class name per line. It is read by the locator implementations in place of a
+ * classpath scan.<br>
+ * The entries of an already existing index are kept, so incremental compilations (that only process the changed classes) don't lose them.
+ * 
+ * @since 1.0
+ *
+ */
+@SupportedAnnotationTypes("org.eclipse.kapua.locator.KapuaProvider")
+public class KapuaProviderProcessor extends AbstractProcessor {
+
+    /**
+     * Provider index resource name
+     */
+    public static final String PROVIDER_INDEX = "META-INF/kapua/providers.idx";
+
+    private final Set<String> providers = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!providers.isEmpty()) {
+                writeIndex();
+            }
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(KapuaProvider.class)) {
+            if (element.getKind() == ElementKind.CLASS) {
+                providers.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+            }
+        }
+        return false;
+    }
+
+    private void writeIndex() {
+        try {
+            readIndex();
+        } catch (IOException e) {
+            // no previous index
+        }
+
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", PROVIDER_INDEX);
+            try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String provider : providers) {
+                    writer.write(provider);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write the Kapua provider index " + PROVIDER_INDEX + ": " + e.getMessage());
+        }
+    }
+
+    private void readIndex() throws IOException {
+        FileObject index = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", PROVIDER_INDEX);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    providers.add(line.trim());
+                }
+            }
+        }
+    }
+}
@@ -12,6 +12,9 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.KapuaService;
@@ -19,9 +22,13 @@ import org.eclipse.kapua.service.config.KapuaConfigurableService;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.MessageCreator;
 import org.eclipse.kapua.service.datastore.model.MessageListResult;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationResult;
+import org.eclipse.kapua.service.datastore.model.MetricLastValue;
 import org.eclipse.kapua.service.datastore.model.StorableId;
+import org.eclipse.kapua.service.datastore.model.StorableIterator;
 import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
 
 /**
  * Service responsible for storing and accessing telemetry data generated by devices. If given operation is not
@@ -33,6 +40,20 @@ public interface MessageStoreService extends KapuaService,
     StorableId store(KapuaId scopeId, MessageCreator message)
         throws KapuaException;
 
+    /**
+     * Queue the message for storage without waiting for it to be persisted.<BR>
+     * If the underlying store does not support asynchronous ingestion the message is stored synchronously and an already
+     * completed future is returned.<BR>
+     * The caller may be blocked while the ingestion queue is full.
+     * 
+     * @param scopeId
+     * @param message
+     * @return a future completed with the message id once stored, or exceptionally if the message could not be stored
+     * @throws KapuaException if the message cannot be accepted (i.e. validation errors or ingestion queue still full after the timeout)
+     */
+    CompletableFuture<StorableId> storeAsync(KapuaId scopeId, MessageCreator message)
+        throws KapuaException;
+
     void delete(KapuaId scopeId, StorableId id)
         throws KapuaException;
 
@@ -42,9 +63,71 @@ public interface MessageStoreService extends KapuaService,
     MessageListResult query(KapuaId scopeId, MessageQuery query)
         throws KapuaException;
 
+    /**
+     * Return the page of messages following the cursor, sorted by timestamp in the query sort direction (the query offset is ignored).<BR>
+     * The cursor of the next page is returned as the result next key, it is null if there are no more messages. The cursor is an
+     * opaque url safe string, so it can be handed to the clients (i.e. through the REST apis) and passed back as is.
+     * 
+     * @param scopeId
+     * @param query
+     * @param cursor the cursor returned by the previous page, null for the first page
+     * @return
+     * @throws KapuaException
+     */
+    MessageListResult query(KapuaId scopeId, MessageQuery query, String cursor)
+        throws KapuaException;
+
+    /**
+     * Return an iterator over all the messages matching the query (the query offset is ignored and the limit is the fetch batch size).<BR>
+     * The messages are not sorted. The iterator must be closed.
+     * 
+     * @param scopeId
+     * @param query
+     * @return
+     * @throws KapuaException
+     */
+    StorableIterator<Message> export(KapuaId scopeId, MessageQuery query)
+        throws KapuaException;
+
     long count(KapuaId scopeId, MessageQuery query)
         throws KapuaException;
 
+    /**
+     * Aggregate a metric of the messages matching the query in time buckets. The aggregation is computed by the store, the messages are
+     * not returned.
+     * 
+     * @param scopeId
+     * @param query
+     * @return
+     * @throws KapuaException
+     */
+    MetricAggregationResult aggregate(KapuaId scopeId, MetricAggregationQuery query)
+        throws KapuaException;
+
+    /**
+     * Return the last known value of a device metric. The value is served from memory, so it is available without querying the
+     * store once the device published (or its last values were loaded).
+     * 
+     * @param scopeId
+     * @param clientId
+     * @param metricName
+     * @return the last value, or null if the device never published the metric
+     * @throws KapuaException
+     */
+    MetricLastValue findLastValue(KapuaId scopeId, String clientId, String metricName)
+        throws KapuaException;
+
+    /**
+     * Return the last known values of all the metrics of a device (see {@link #findLastValue(KapuaId, String, String)})
+     * 
+     * @param scopeId
+     * @param clientId
+     * @return
+     * @throws KapuaException
+     */
+    List<MetricLastValue> findLastValues(KapuaId scopeId, String clientId)
+        throws KapuaException;
+
     void delete(KapuaId scopeId, MessageQuery query)
         throws KapuaException;
 }
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.model;
+
+/**
+ * Result of a {@link org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery}.<BR>
+ * The buckets are returned as parallel arrays sorted by bucket start time; the buckets without values of the metric are not returned.
+ *
+ * @since 1.0
+ */
+public interface MetricAggregationResult
+{
+    /**
+     * The number of buckets
+     *
+     * @return
+     */
+    public int size();
+
+    /**
+     * The bucket start times (milliseconds)
+     *
+     * @return
+     */
+    public long[] getTimestamps();
+
+    public long[] getCounts();
+
+    public double[] getMin();
+
+    public double[] getMax();
+
+    public double[] getAvg();
+
+    /**
+     * The metric value of the latest message of each bucket
+     *
+     * @return
+     */
+    public double[] getLast();
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.model;
+
+import java.util.Date;
+
+/**
+ * Last known value of a device metric
+ *
+ * @since 1.0
+ */
+public interface MetricLastValue
+{
+    /**
+     * The device client id (the asset of the message topic)
+     *
+     * @return
+     */
+    public String getClientId();
+
+    public String getName();
+
+    public Object getValue();
+
+    /**
+     * The timestamp of the message carrying the value
+     *
+     * @return
+     */
+    public Date getTimestamp();
+
+    /**
+     * The id of the message carrying the value
+     *
+     * @return
+     */
+    public StorableId getMessageId();
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.model;
+
+import java.util.Iterator;
+
+/**
+ * Iterator over a (possibly large) set of storables fetched in batches from the store.<BR>
+ * The iterator holds resources on the store until it is exhausted or closed, so it must always be closed.<BR>
+ * A store failure while fetching the next batch is thrown as a {@link org.eclipse.kapua.KapuaRuntimeException}.
+ *
+ * @param <S> storable type
+ *
+ * @since 1.0
+ */
+public interface StorableIterator<S extends Storable> extends Iterator<S>,
+                                                          AutoCloseable
+{
+
+    /**
+     * Release the store resources held by the iterator
+     */
+    @Override
+    public void close();
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.model.query;
+
+/**
+ * Time bucketed aggregation of a metric over the messages matching the predicate.<BR>
+ * The messages are grouped in buckets of the given interval by timestamp, for each bucket the count, min, max, average and last value of
+ * the metric are computed by the store. The devices, topics and assets are selected by the predicate (i.e. with a {@link TermPredicate}
+ * on the asset or a {@link TopicMatchPredicate}).
+ *
+ * @since 1.0
+ */
+public interface MetricAggregationQuery
+{
+    public StorablePredicate getPredicate();
+
+    public void setPredicate(StorablePredicate predicate);
+
+    /**
+     * The metric name, as sent by the device
+     *
+     * @return
+     */
+    public String getMetricName();
+
+    public void setMetricName(String metricName);
+
+    /**
+     * The metric value type (i.e. {@link Double}, {@link Integer})
+     *
+     * @return
+     */
+    public Class<?> getMetricType();
+
+    public void setMetricType(Class<?> metricType);
+
+    /**
+     * The bucket interval in milliseconds
+     *
+     * @return
+     */
+    public long getInterval();
+
+    public void setInterval(long interval);
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.model.id.KapuaId;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Account and service plan cache by scope id.<br>
+ * The cache is local to the process: a service plan set through this process invalidates the cached one, while a service plan set
+ * through another node is seen by this one when the cached entry expires. Since the plan is loaded through the service configuration
+ * values cache, a change made on another node is seen after at most datastore.cache.account.expire.after +
+ * commons.config.cache.expire.after seconds.<br>
+ * Account infos loaded before an invalidation are not cached (see {@link #getGeneration()}).
+ *
+ * @since 1.0
+ */
+class AccountInfoCache
+{
+
+    private final Cache<String, AccountInfo> accounts;
+    private final AtomicLong                 generation = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param sizeMax max cache size
+     * @param expireAfter account infos ttl in seconds
+     */
+    AccountInfoCache(int sizeMax, int expireAfter)
+    {
+        this(sizeMax, expireAfter, Ticker.systemTicker());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param sizeMax max cache size
+     * @param expireAfter account infos ttl in seconds
+     * @param ticker time source of the account infos expiration
+     */
+    AccountInfoCache(int sizeMax, int expireAfter, Ticker ticker)
+    {
+        accounts = CacheBuilder.newBuilder()
+                               .maximumSize(sizeMax)
+                               .expireAfterWrite(expireAfter, TimeUnit.SECONDS)
+                               .ticker(ticker)
+                               .build();
+    }
+
+    /**
+     * Return the cached account info of the scope, null if not cached
+     *
+     * @param scopeId
+     * @return
+     */
+    AccountInfo get(KapuaId scopeId)
+    {
+        return accounts.getIfPresent(getKey(scopeId));
+    }
+
+    /**
+     * Return the invalidation generation, to be read before loading the account info to be cached
+     *
+     * @return
+     */
+    long getGeneration()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Cache the account info of the scope.<br>
+     * The info is not cached if an invalidation happened since the provided generation was read, since it may have been loaded
+     * before the invalidated change.
+     *
+     * @param scopeId
+     * @param accountInfo
+     * @param loadGeneration the generation read before loading the info (see {@link #getGeneration()})
+     */
+    void put(KapuaId scopeId, AccountInfo accountInfo, long loadGeneration)
+    {
+        if (generation.get() != loadGeneration) {
+            return;
+        }
+
+        String key = getKey(scopeId);
+        accounts.put(key, accountInfo);
+
+        // invalidated while putting
+        if (generation.get() != loadGeneration) {
+            accounts.asMap().remove(key, accountInfo);
+        }
+    }
+
+    /**
+     * Invalidate the cached account info of the scope
+     *
+     * @param scopeId
+     */
+    void invalidate(KapuaId scopeId)
+    {
+        generation.incrementAndGet();
+        accounts.invalidate(getKey(scopeId));
+    }
+
+    private static String getKey(KapuaId scopeId)
+    {
+        return scopeId.getId().toString();
+    }
+}
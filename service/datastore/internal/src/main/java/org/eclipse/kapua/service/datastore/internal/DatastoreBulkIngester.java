@@ -0,0 +1,423 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.cache.LocalCache;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsClient;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMetricDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsAssetDAO;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMessageDAO;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMetricDAO;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsTopicDAO;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.eclipse.kapua.service.datastore.model.StorableId;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+
+/**
+ * Asynchronous bulk ingester for the message store.<BR>
+ * Messages (together with their topic, metric and asset metadata) are queued in a bounded queue and coalesced by a single
+ * worker into Elasticsearch bulk requests. The worker does not wait for a bulk to fill up: as soon as it takes a message it drains
+ * the queue (up to the configured bulk size) and flushes what it got. The messages queued while a bulk is written go into the next
+ * one, so the bulk size follows the load and a lone message is never delayed.<BR>
+ * When the queue is full the producer is blocked up to the configured offer timeout, so the backpressure is propagated to the
+ * caller (i.e. the broker consumer threads).<BR>
+ * On stop (also on the JVM shutdown) the queued messages are flushed before the worker exits.
+ *
+ * @since 1.0
+ */
+public class DatastoreBulkIngester
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(DatastoreBulkIngester.class);
+
+    private static final String METRIC_MODULE    = "datastore";
+    private static final String METRIC_COMPONENT = "ingest";
+
+    private static final long POLL_TIMEOUT = 1000;
+    private static final long STOP_TIMEOUT = 10000;
+
+    private static DatastoreBulkIngester instance;
+
+    private final BlockingQueue<IngestItem> queue;
+    private final long                      offerTimeout;
+    private final int                       bulkSize;
+
+    private final Thread                    worker;
+    private volatile boolean                running;
+
+    // metrics
+    private final Histogram                 metricBulkSize;
+    private final Timer                     metricFlushTime;
+    private final Counter                   metricStoredMessage;
+    private final Counter                   metricFailedMessage;
+    private final Counter                   metricRejectedMessage;
+
+    /**
+     * A queued message waiting for the next bulk flush
+     */
+    static class IngestItem
+    {
+
+        private final EsSchema.Metadata             schemaMetadata;
+        private final EsDocumentBuilder             docBuilder;
+        private final CompletableFuture<StorableId> future;
+
+        private IngestItem(EsSchema.Metadata schemaMetadata, EsDocumentBuilder docBuilder)
+        {
+            this.schemaMetadata = schemaMetadata;
+            this.docBuilder = docBuilder;
+            this.future = new CompletableFuture<StorableId>();
+        }
+
+        EsDocumentBuilder getDocBuilder()
+        {
+            return docBuilder;
+        }
+
+        CompletableFuture<StorableId> getFuture()
+        {
+            return future;
+        }
+    }
+
+    /**
+     * A single bulk action. The owner is set for message actions only, the cache and cache key only for metadata actions.
+     */
+    private static class BulkAction
+    {
+
+        private final IngestItem                  owner;
+        private final LocalCache<String, Boolean> cache;
+        private final String                      cacheKey;
+
+        private BulkAction(IngestItem owner, LocalCache<String, Boolean> cache, String cacheKey)
+        {
+            this.owner = owner;
+            this.cache = cache;
+            this.cacheKey = cacheKey;
+        }
+    }
+
+    private DatastoreBulkIngester()
+    {
+        this(DatastoreSettings.getInstance().getInt(DatastoreSettingKey.CONFIG_INGEST_QUEUE_SIZE),
+             DatastoreSettings.getInstance().getLong(DatastoreSettingKey.CONFIG_INGEST_QUEUE_OFFER_TIMEOUT),
+             DatastoreSettings.getInstance().getInt(DatastoreSettingKey.CONFIG_INGEST_BULK_SIZE),
+             KapuaLocator.getInstance().getService(MetricsService.class));
+    }
+
+    /**
+     * Create a stopped ingester. {@link #start()} must be called before submitting any message.
+     *
+     * @param queueSize
+     * @param offerTimeout
+     * @param bulkSize
+     * @param metricsService
+     */
+    DatastoreBulkIngester(int queueSize, long offerTimeout, int bulkSize, MetricsService metricsService)
+    {
+        queue = new ArrayBlockingQueue<IngestItem>(queueSize);
+        this.offerTimeout = offerTimeout;
+        this.bulkSize = bulkSize;
+
+        metricBulkSize = metricsService.getHistogram(METRIC_MODULE, METRIC_COMPONENT, "bulk", "size");
+        metricFlushTime = metricsService.getTimer(METRIC_MODULE, METRIC_COMPONENT, "bulk", "flush", "time", "s");
+        metricStoredMessage = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "messages", "stored", "count");
+        metricFailedMessage = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "messages", "failed", "count");
+        metricRejectedMessage = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "messages", "rejected", "count");
+        try {
+            metricsService.registerGauge(new Gauge<Integer>() {
+
+                @Override
+                public Integer getValue()
+                {
+                    return queue.size();
+                }
+            }, METRIC_MODULE, METRIC_COMPONENT, "queue", "size");
+        }
+        catch (KapuaException e) {
+            logger.warn("Cannot register the ingest queue size gauge: {}", e.getMessage());
+        }
+
+        worker = new Thread(new Runnable() {
+
+            @Override
+            public void run()
+            {
+                processQueue();
+            }
+        }, "DatastoreBulkIngester");
+        worker.setDaemon(true);
+    }
+
+    /**
+     * Return the ingester instance, creating and starting it on the first call
+     *
+     * @return
+     */
+    public static synchronized DatastoreBulkIngester getInstance()
+    {
+        if (instance == null) {
+            instance = new DatastoreBulkIngester();
+            instance.start();
+
+            // the queued messages are flushed on shutdown
+            final DatastoreBulkIngester ingester = instance;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> ingester.stop(), "DatastoreBulkIngesterShutdown"));
+        }
+        return instance;
+    }
+
+    /**
+     * Start the worker
+     */
+    void start()
+    {
+        running = true;
+        worker.start();
+    }
+
+    /**
+     * Queue the message document (and its metadata documents) for the next bulk flush.<BR>
+     * If the queue is full the caller is blocked up to the configured offer timeout.
+     *
+     * @param schemaMetadata
+     * @param docBuilder
+     * @return a future completed with the message id once the message is stored or exceptionally if the store failed
+     * @throws EsDatastoreException if the message cannot be queued before the offer timeout expires
+     */
+    public CompletableFuture<StorableId> submit(EsSchema.Metadata schemaMetadata, EsDocumentBuilder docBuilder)
+        throws EsDatastoreException
+    {
+        if (!running) {
+            throw new EsDatastoreException("Bulk ingester is stopped");
+        }
+
+        IngestItem item = new IngestItem(schemaMetadata, docBuilder);
+        boolean queued;
+        try {
+            queued = queue.offer(item, offerTimeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+
+        if (!queued) {
+            metricRejectedMessage.inc();
+            throw new EsDatastoreException(String.format("Ingest queue full, message rejected [%s]", docBuilder.getMessageId()));
+        }
+        return item.future;
+    }
+
+    /**
+     * Return the number of messages waiting for the next flush
+     *
+     * @return
+     */
+    public int getQueueSize()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Stop the worker. The queued messages are flushed before the worker exits (waiting up to ten seconds).
+     */
+    public void stop()
+    {
+        running = false;
+        try {
+            worker.join(STOP_TIMEOUT);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.warn("Bulk ingester stopped with {} queued messages", queue.size());
+        }
+    }
+
+    private void processQueue()
+    {
+        List<IngestItem> batch = new ArrayList<IngestItem>(bulkSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                IngestItem first = running ? queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS) : queue.poll();
+                if (first == null) {
+                    continue;
+                }
+
+                // flush whatever is queued right now: the callers are waiting for their messages
+                batch.add(first);
+                queue.drainTo(batch, bulkSize - 1);
+
+                flush(batch);
+            }
+            catch (InterruptedException e) {
+                // flush what was collected so far
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            }
+            catch (Throwable t) {
+                logger.error("Unexpected error while flushing the ingest bulk", t);
+                for (IngestItem item : batch) {
+                    fail(item, t);
+                }
+            }
+            finally {
+                batch.clear();
+            }
+        }
+        logger.info("Bulk ingester stopped");
+    }
+
+    /**
+     * Write the messages of the batch (and their metadata) in a single bulk request, completing the future of each message
+     *
+     * @param batch
+     */
+    void flush(List<IngestItem> batch)
+    {
+        metricBulkSize.update(batch.size());
+        Context metricFlushTimeContext = metricFlushTime.time();
+
+        DatastoreCacheManager cacheManager = DatastoreCacheManager.getInstance();
+        LocalCache<String, Boolean> topicsCache = cacheManager.getTopicsCache();
+        LocalCache<String, Boolean> metricsCache = cacheManager.getMetricsCache();
+        LocalCache<String, Boolean> assetsCache = cacheManager.getAssetsCache();
+
+        // Metadata already added to this bulk must not be added again
+        Set<String> pendingMetadata = new HashSet<String>();
+
+        BulkRequest bulkRequest = new BulkRequest();
+        List<BulkAction> actions = new ArrayList<BulkAction>();
+        try {
+            Client client = EsClient.getcurrent();
+            for (IngestItem item : batch) {
+
+                EsSchema.Metadata schemaMetadata = item.schemaMetadata;
+                EsDocumentBuilder docBuilder = item.docBuilder;
+                String kapuaIndexName = schemaMetadata.getPrivateIndexName();
+
+                // Message (the big one)
+                bulkRequest.add(EsMessageDAO.connection(client)
+                                            .instance(schemaMetadata.getPublicIndexName(), schemaMetadata.getMessageTypeName())
+                                            .getUpsertReq(docBuilder.getMessageId(), docBuilder.getMessage()));
+                actions.add(new BulkAction(item, null, null));
+
+                // Topic
+                String topicId = docBuilder.getTopicId();
+                if (!topicsCache.get(topicId) && pendingMetadata.add(topicId)) {
+                    bulkRequest.add(EsTopicDAO.connection(client)
+                                              .instance(kapuaIndexName, schemaMetadata.getTopicTypeName())
+                                              .getUpsertRequest(topicId, docBuilder.getTopicBuilder()));
+                    actions.add(new BulkAction(null, topicsCache, topicId));
+                }
+
+                // Topic metrics
+                List<EsMetricDocumentBuilder> esTopicMetrics = docBuilder.getTopicMetrics();
+                if (esTopicMetrics != null) {
+                    for (EsMetricDocumentBuilder esTopicMetric : esTopicMetrics) {
+                        String metricId = esTopicMetric.getId();
+                        if (metricsCache.get(metricId) || !pendingMetadata.add(metricId)) {
+                            continue;
+                        }
+                        bulkRequest.add(EsMetricDAO.connection(client)
+                                                   .instance(kapuaIndexName, schemaMetadata.getMetricTypeName())
+                                                   .getUpsertRequest(esTopicMetric));
+                        actions.add(new BulkAction(null, metricsCache, metricId));
+                    }
+                }
+
+                // Asset
+                String assetId = docBuilder.getAssetId();
+                if (!assetsCache.get(assetId) && pendingMetadata.add(assetId)) {
+                    bulkRequest.add(EsAssetDAO.connection(client)
+                                              .instance(kapuaIndexName, schemaMetadata.getAssetTypeName())
+                                              .getUpsertRequest(assetId, docBuilder.getAssetBuilder()));
+                    actions.add(new BulkAction(null, assetsCache, assetId));
+                }
+            }
+
+            BulkResponse response = EsMetricDAO.connection(client).bulk(bulkRequest);
+
+            // Items are returned in the same order of the requests
+            BulkItemResponse[] itemResponses = response.getItems();
+            for (int i = 0; i < itemResponses.length; i++) {
+                BulkItemResponse itemResponse = itemResponses[i];
+                BulkAction action = actions.get(i);
+                if (action.owner != null) {
+                    if (itemResponse.isFailed()) {
+                        fail(action.owner, new EsDatastoreException(String.format("Message store failed [%s, %s]", itemResponse.getId(), itemResponse.getFailureMessage())));
+                    }
+                    else {
+                        metricStoredMessage.inc();
+                        action.owner.future.complete(new StorableIdImpl(itemResponse.getId()));
+                    }
+                }
+                else if (itemResponse.isFailed()) {
+                    logger.trace(String.format("Upsert failed because metadata already exists [%s, %s]", action.cacheKey, itemResponse.getFailureMessage()));
+                }
+                else {
+                    // Update cache if metadata update is completed successfully
+                    action.cache.put(action.cacheKey, true);
+                }
+            }
+        }
+        catch (Exception e) {
+            logger.error("Bulk request failed, failing {} messages", batch.size(), e);
+            for (IngestItem item : batch) {
+                fail(item, e);
+            }
+        }
+        finally {
+            metricFlushTimeContext.stop();
+        }
+    }
+
+    void fail(IngestItem item, Throwable t)
+    {
+        if (item.future.completeExceptionally(t)) {
+            metricFailedMessage.inc();
+        }
+    }
+}
@@ -23,6 +23,7 @@ public class DatastoreCacheManager
     private final LocalCache<String, Boolean> topicsCache;
     private final LocalCache<String, Boolean> metricsCache;
     private final LocalCache<String, Boolean> assetsCache;
+    private final AccountInfoCache accountsCache;
 
     private DatastoreCacheManager()
     {
@@ -36,6 +37,9 @@ public class DatastoreCacheManager
         topicsCache = new LocalCache<String, Boolean>(sizeMax, expireAfter, false);
         metricsCache = new LocalCache<String, Boolean>(sizeMax, expireAfter, false);
         assetsCache = new LocalCache<String, Boolean>(sizeMax, expireAfter, false);
+
+        // The service plan can be changed at runtime so keep its expiration short
+        accountsCache = new AccountInfoCache(sizeMax, config.getInt(DatastoreSettingKey.CONFIG_CACHE_ACCOUNT_EXPIRE_AFTER, 60));
     }
 
     public static DatastoreCacheManager getInstance()
@@ -54,4 +58,8 @@ public class DatastoreCacheManager
     public LocalCache<String, Boolean> getAssetsCache(){
        return assetsCache;
     }
+    
+    AccountInfoCache getAccountsCache(){
+       return accountsCache;
+    }
 }
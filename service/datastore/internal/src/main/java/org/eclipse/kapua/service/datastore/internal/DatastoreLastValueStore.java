@@ -0,0 +1,450 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.util.KapuaDateUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsClient;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsLastValueDAO;
+import org.eclipse.kapua.service.datastore.internal.model.MetricLastValueImpl;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.eclipse.kapua.service.datastore.model.MetricLastValue;
+import org.eclipse.kapua.service.datastore.model.StorableId;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.IndexNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * In memory table of the last known value of every device metric, updated by the message store.<BR>
+ * The table is bounded by number of devices (the least recently used devices are evicted) and only the stored messages add a device to
+ * it. When the snapshot is enabled, a worker periodically stores the changed devices in the account metadata index (a document per
+ * device), and a device is loaded from its snapshot before it is first updated or looked up, so the table is warm after a restart.<BR>
+ * The lookups of a device not in the table (a device whose messages are not stored by this node, or an unknown client id) never add it
+ * to the table: they are answered from the snapshot through a small separate cache, whose entries expire after the snapshot interval.
+ * Without the snapshot such a lookup finds no value.<BR>
+ * On stop (also on the JVM shutdown) the changed devices are stored before the worker exits.
+ *
+ * @since 1.0
+ */
+public class DatastoreLastValueStore
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(DatastoreLastValueStore.class);
+
+    private static final String METRIC_MODULE    = "datastore";
+    private static final String METRIC_COMPONENT = "lastvalue";
+
+    private static final int    MAX_BULK_ACTIONS = 1000;
+    private static final long   STOP_TIMEOUT     = 10000;
+
+    private static DatastoreLastValueStore instance;
+
+    private final Cache<String, DeviceLastValues> devices;
+    private final Cache<String, DeviceLastValues> lookups;
+    private final Queue<DeviceLastValues>         evictedDevices = new ConcurrentLinkedQueue<DeviceLastValues>();
+    private final Set<String>                     mappedIndices  = ConcurrentHashMap.newKeySet();
+
+    private final boolean                         snapshotEnabled;
+    private final long                            snapshotInterval;
+
+    private final Thread                          worker;
+    private volatile boolean                      running;
+
+    // metrics
+    private final Counter                         metricLoadedDevice;
+    private final Counter                         metricStoredDevice;
+    private final Counter                         metricFailedDevice;
+
+    private DatastoreLastValueStore()
+    {
+        DatastoreSettings config = DatastoreSettings.getInstance();
+        snapshotEnabled = config.getBoolean(DatastoreSettingKey.CONFIG_LAST_VALUE_SNAPSHOT_ENABLED, false);
+        snapshotInterval = config.getLong(DatastoreSettingKey.CONFIG_LAST_VALUE_SNAPSHOT_INTERVAL);
+        devices = CacheBuilder.newBuilder()
+                              .maximumSize(config.getInt(DatastoreSettingKey.CONFIG_LAST_VALUE_DEVICES_MAX))
+                              .removalListener(new RemovalListener<String, DeviceLastValues>() {
+
+                                  @Override
+                                  public void onRemoval(RemovalNotification<String, DeviceLastValues> notification)
+                                  {
+                                      // the changes not stored yet are stored by the next snapshot
+                                      if (snapshotEnabled && notification.wasEvicted() && notification.getValue().isDirty())
+                                          evictedDevices.add(notification.getValue());
+                                  }
+                              })
+                              .build();
+        lookups = CacheBuilder.newBuilder()
+                              .maximumSize(config.getInt(DatastoreSettingKey.CONFIG_LAST_VALUE_LOOKUPS_MAX))
+                              .expireAfterWrite(snapshotInterval, TimeUnit.MILLISECONDS)
+                              .build();
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        metricLoadedDevice = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "devices", "loaded", "count");
+        metricStoredDevice = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "devices", "stored", "count");
+        metricFailedDevice = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "devices", "failed", "count");
+        try {
+            metricsService.registerGauge(new Gauge<Long>() {
+
+                @Override
+                public Long getValue()
+                {
+                    return devices.size();
+                }
+            }, METRIC_MODULE, METRIC_COMPONENT, "devices", "size");
+        }
+        catch (KapuaException e) {
+            logger.warn("Cannot register the last value devices size gauge: {}", e.getMessage());
+        }
+
+        if (!snapshotEnabled) {
+            worker = null;
+            return;
+        }
+
+        running = true;
+        worker = new Thread(new Runnable() {
+
+            @Override
+            public void run()
+            {
+                processSnapshots();
+            }
+        }, "DatastoreLastValueStore");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Return the last value store instance, creating it on the first call
+     *
+     * @return
+     */
+    public static synchronized DatastoreLastValueStore getInstance()
+    {
+        if (instance == null) {
+            instance = new DatastoreLastValueStore();
+
+            // the changed devices are stored on shutdown
+            final DatastoreLastValueStore lastValueStore = instance;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> lastValueStore.stop(), "DatastoreLastValueStoreShutdown"));
+        }
+        return instance;
+    }
+
+    /**
+     * Update the last values of the device with the metrics of a stored message
+     *
+     * @param accountName
+     * @param clientId
+     * @param messageId
+     * @param timestamp the message indexing timestamp
+     * @param metrics
+     */
+    public void update(String accountName, String clientId, StorableId messageId, long timestamp, Map<String, Object> metrics)
+    {
+        if (metrics == null || metrics.isEmpty())
+            return;
+
+        DeviceLastValues device = getIngestedDevice(accountName, clientId);
+        for (Entry<String, Object> metric : metrics.entrySet()) {
+            if (metric.getValue() != null)
+                device.update(new MetricLastValueImpl(clientId, metric.getKey(), metric.getValue(), timestamp, messageId));
+        }
+    }
+
+    /**
+     * Return the last value of a device metric
+     *
+     * @param accountName
+     * @param clientId
+     * @param metricName
+     * @return the last value or null if unknown
+     * @throws KapuaException if the device snapshot cannot be loaded
+     */
+    public MetricLastValue find(String accountName, String clientId, String metricName)
+        throws KapuaException
+    {
+        DeviceLastValues device = lookupDevice(accountName, clientId);
+        return device != null ? device.get(metricName) : null;
+    }
+
+    /**
+     * Return the last values of all the device metrics
+     *
+     * @param accountName
+     * @param clientId
+     * @return
+     * @throws KapuaException if the device snapshot cannot be loaded
+     */
+    public List<MetricLastValue> find(String accountName, String clientId)
+        throws KapuaException
+    {
+        DeviceLastValues device = lookupDevice(accountName, clientId);
+        return device != null ? new ArrayList<MetricLastValue>(device.getAll()) : new ArrayList<MetricLastValue>();
+    }
+
+    /**
+     * Stop the snapshot worker. The changed devices are stored before the worker exits (waiting up to ten seconds).
+     */
+    public void stop()
+    {
+        running = false;
+        if (worker == null)
+            return;
+
+        worker.interrupt();
+        try {
+            worker.join(STOP_TIMEOUT);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private DeviceLastValues getIngestedDevice(String accountName, String clientId)
+    {
+        String key = getKey(accountName, clientId);
+        DeviceLastValues device = devices.getIfPresent(key);
+        if (device != null)
+            return device;
+
+        DeviceLastValues newDevice = new DeviceLastValues(accountName, clientId);
+        device = devices.asMap().putIfAbsent(key, newDevice);
+        if (device != null)
+            return device;
+
+        // the lookups are answered by the table from now on
+        lookups.invalidate(key);
+        return newDevice;
+    }
+
+    private DeviceLastValues lookupDevice(String accountName, String clientId)
+        throws KapuaException
+    {
+        String key = getKey(accountName, clientId);
+        DeviceLastValues device = devices.getIfPresent(key);
+        if (device != null) {
+            loadIfStale(device);
+            return device;
+        }
+
+        if (!snapshotEnabled)
+            return null;
+
+        try {
+            return lookups.get(key, () -> {
+                DeviceLastValues lookedUpDevice = new DeviceLastValues(accountName, clientId);
+                load(lookedUpDevice);
+                return lookedUpDevice;
+            });
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            throw KapuaException.internalError(e.getCause());
+        }
+    }
+
+    private void loadIfStale(DeviceLastValues device)
+        throws KapuaException
+    {
+        if (!snapshotEnabled || !isStale(device))
+            return;
+
+        synchronized (device) {
+            if (!isStale(device))
+                return;
+
+            try {
+                load(device);
+            }
+            catch (Exception e) {
+                throw KapuaException.internalError(e);
+            }
+        }
+    }
+
+    private boolean isStale(DeviceLastValues device)
+    {
+        // the device values are complete once loaded, since the table only holds the devices whose messages are stored by this node
+        return device.getLoadedOn() == 0;
+    }
+
+    private void load(DeviceLastValues device)
+        throws Exception
+    {
+        long now = KapuaDateUtils.getKapuaSysDate().getTime();
+        Map<String, Object> source = null;
+        try {
+            source = EsLastValueDAO.connection(EsClient.getcurrent())
+                                   .instance(getIndexName(device))
+                                   .find(device.getClientId());
+        }
+        catch (IndexNotFoundException e) {
+            logger.debug("No metadata index for account {}, no last values to load", device.getAccountName());
+        }
+        device.load(source, now);
+        metricLoadedDevice.inc();
+    }
+
+    private void processSnapshots()
+    {
+        while (running) {
+            try {
+                Thread.sleep(snapshotInterval);
+            }
+            catch (InterruptedException e) {
+                // stop requested, store the changed devices
+            }
+
+            try {
+                storeSnapshots();
+            }
+            catch (Throwable t) {
+                logger.error("Unexpected error while storing the last values snapshots", t);
+            }
+        }
+
+        // the stop may have interrupted a snapshot: store what is still changed
+        Thread.interrupted();
+        try {
+            storeSnapshots();
+        }
+        catch (Throwable t) {
+            logger.error("Cannot store the last values snapshots on stop", t);
+        }
+        logger.info("Last value store stopped");
+    }
+
+    private void storeSnapshots()
+        throws Exception
+    {
+        List<DeviceLastValues> changedDevices = new ArrayList<DeviceLastValues>();
+        for (DeviceLastValues device : devices.asMap().values()) {
+            if (device.isDirty())
+                changedDevices.add(device);
+        }
+        DeviceLastValues evictedDevice;
+        while ((evictedDevice = evictedDevices.poll()) != null)
+            changedDevices.add(evictedDevice);
+
+        Client client = EsClient.getcurrent();
+        long now = KapuaDateUtils.getKapuaSysDate().getTime();
+        List<DeviceLastValues> pendingDevices = new ArrayList<DeviceLastValues>(MAX_BULK_ACTIONS);
+        BulkRequest bulkRequest = new BulkRequest();
+        for (DeviceLastValues device : changedDevices) {
+            try {
+                // the snapshot replaces the stored one, so it must include the values stored before the restart
+                synchronized (device) {
+                    if (device.getLoadedOn() == 0)
+                        load(device);
+                }
+
+                String indexName = getIndexName(device);
+                if (!mappedIndices.contains(indexName)) {
+                    EsLastValueDAO.connection(client).instance(indexName).putMapping();
+                    mappedIndices.add(indexName);
+                }
+
+                if (!device.takeDirty())
+                    continue;
+
+                bulkRequest.add(EsLastValueDAO.connection(client)
+                                              .instance(indexName)
+                                              .getIndexRequest(device.getClientId(), device.toDocument(now)));
+                pendingDevices.add(device);
+            }
+            catch (Exception e) {
+                metricFailedDevice.inc();
+                logger.warn("Cannot prepare the last values snapshot of device {}: {}", device.getClientId(), e.getMessage());
+            }
+
+            if (pendingDevices.size() >= MAX_BULK_ACTIONS) {
+                storeSnapshots(client, bulkRequest, pendingDevices);
+                bulkRequest = new BulkRequest();
+                pendingDevices.clear();
+            }
+        }
+
+        if (!pendingDevices.isEmpty())
+            storeSnapshots(client, bulkRequest, pendingDevices);
+    }
+
+    private void storeSnapshots(Client client, BulkRequest bulkRequest, List<DeviceLastValues> pendingDevices)
+    {
+        // Items are returned in the same order of the requests
+        BulkItemResponse[] itemResponses;
+        try {
+            itemResponses = EsLastValueDAO.connection(client).bulk(bulkRequest).getItems();
+        }
+        catch (RuntimeException e) {
+            logger.warn("Last values snapshot failed, retrying {} devices with the next snapshot: {}", pendingDevices.size(), e.getMessage());
+            for (DeviceLastValues device : pendingDevices)
+                retry(device);
+            return;
+        }
+
+        for (int i = 0; i < itemResponses.length; i++) {
+            if (itemResponses[i].isFailed()) {
+                logger.warn("Last values snapshot failed [{}, {}]", itemResponses[i].getId(), itemResponses[i].getFailureMessage());
+                retry(pendingDevices.get(i));
+            }
+            else {
+                metricStoredDevice.inc();
+            }
+        }
+    }
+
+    private void retry(DeviceLastValues device)
+    {
+        metricFailedDevice.inc();
+        // an evicted device is not in the table anymore, it is queued again
+        if (devices.getIfPresent(getKey(device.getAccountName(), device.getClientId())) != device)
+            evictedDevices.add(device);
+        device.markDirty();
+    }
+
+    private static String getKey(String accountName, String clientId)
+    {
+        return accountName + "/" + clientId;
+    }
+
+    private static String getIndexName(DeviceLastValues device)
+    {
+        return EsUtils.getActualKapuaIndexName(device.getAccountName(), 0);
+    }
+}
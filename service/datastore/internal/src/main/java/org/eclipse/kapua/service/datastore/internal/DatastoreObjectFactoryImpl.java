@@ -18,6 +18,7 @@ import org.eclipse.kapua.service.datastore.internal.model.MessageCreatorImpl;
 import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
 import org.eclipse.kapua.service.datastore.internal.model.PayloadImpl;
 import org.eclipse.kapua.service.datastore.internal.model.PositionImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.MetricAggregationQueryImpl;
 import org.eclipse.kapua.service.datastore.model.AssetInfo;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.MessageCreator;
@@ -26,6 +27,7 @@ import org.eclipse.kapua.service.datastore.model.Position;
 import org.eclipse.kapua.service.datastore.model.TopicInfo;
 import org.eclipse.kapua.service.datastore.model.query.AssetInfoQuery;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
 import org.eclipse.kapua.service.datastore.model.query.TopicInfoQuery;
 
 @KapuaProvider
@@ -44,6 +46,12 @@ public class DatastoreObjectFactoryImpl implements DatastoreObjectFactory
         return null;
     }
 
+    @Override
+    public MetricAggregationQuery newMetricAggregationQuery()
+    {
+        return new MetricAggregationQueryImpl();
+    }
+
     @Override
     public Payload newPayload()
     {
@@ -0,0 +1,452 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.util.KapuaDateUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsClient;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.LocalServicePlan;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.RollupResolution;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsRollupDAO;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+
+/**
+ * Metric rollups computed at ingest time.<BR>
+ * The numeric metrics of the stored messages are rolled up in memory per account, asset and metric at every {@link RollupResolution}
+ * (count, minimum, maximum, sum and last value). A single worker periodically stores the changed buckets into the rollup indices and
+ * evicts the closed ones, so the memory holds roughly the open buckets of the active metrics. The bucket documents are identified by this
+ * node and a bucket sequence: the partial buckets stored by different nodes (or a late value reopening a bucket) are different documents,
+ * merged at query time.<BR>
+ * When the buckets limit is reached the values of a new bucket are dropped: the worker stores an incomplete marker (see
+ * {@link EsSchema#ROLLUP_INCOMPLETE}) for the account, resolution and bucket start, so the queries of that time range are answered by
+ * the raw messages.<BR>
+ * The rollups have their own retention (see {@link LocalServicePlan#getRollupTimeToLive()}): the worker drops the rollup indices expired
+ * for the accounts rolled up since the node started.<BR>
+ * On stop (also on the JVM shutdown) the changed buckets are stored before the worker exits. The values rolled up since the last flush
+ * are lost if the process crashes, and the deleted messages are not removed from the rollups: the rollups are therefore disabled by
+ * default, and they should be enabled together with the rollup queries only where this approximation is acceptable.
+ *
+ * @since 1.0
+ */
+public class DatastoreRollupManager
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(DatastoreRollupManager.class);
+
+    private static final String METRIC_MODULE    = "datastore";
+    private static final String METRIC_COMPONENT = "rollup";
+
+    private static final long DAY_MILLIS         = TimeUnit.DAYS.toMillis(1);
+    private static final long RETENTION_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    private static final int  MAX_BULK_ACTIONS   = 1000;
+    private static final long STOP_TIMEOUT       = 10000;
+
+    private static DatastoreRollupManager instance;
+
+    private final String                              nodeId             = UUID.randomUUID().toString();
+    private final AtomicLong                          sequence           = new AtomicLong();
+    private final ConcurrentMap<String, RollupBucket> buckets            = new ConcurrentHashMap<String, RollupBucket>();
+    private final ConcurrentMap<String, Integer>      accountTimeToLives = new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentMap<String, RollupGap>    gaps               = new ConcurrentHashMap<String, RollupGap>();
+
+    private final long                                flushInterval;
+    private final long                                lateness;
+    private final int                                 maxBuckets;
+
+    private final Thread                              worker;
+    private volatile boolean                          running;
+    private boolean                                   templateReady;
+    private long                                      lastRetention;
+
+    // metrics
+    private final Counter                             metricFlushedRollup;
+    private final Counter                             metricFailedRollup;
+    private final Counter                             metricDroppedValue;
+    private final Counter                             metricDeletedIndex;
+
+    /**
+     * Bucket some values were dropped from
+     */
+    private static class RollupGap
+    {
+
+        private final String           account;
+        private final RollupResolution resolution;
+        private final long             start;
+
+        private RollupGap(String account, RollupResolution resolution, long start)
+        {
+            this.account = account;
+            this.resolution = resolution;
+            this.start = start;
+        }
+
+        private String getId()
+        {
+            // the same marker for all the nodes
+            return String.format("incomplete-%s-%s-%d", account, resolution.getName(), start);
+        }
+
+        private XContentBuilder toDocument()
+            throws IOException
+        {
+            return XContentFactory.jsonBuilder()
+                                  .startObject()
+                                      .field(EsSchema.ROLLUP_ACCOUNT, account)
+                                      .field(EsSchema.ROLLUP_TIMESTAMP, new Date(start))
+                                      .field(EsSchema.ROLLUP_INCOMPLETE, true)
+                                  .endObject();
+        }
+    }
+
+    private DatastoreRollupManager()
+    {
+        DatastoreSettings config = DatastoreSettings.getInstance();
+        flushInterval = config.getLong(DatastoreSettingKey.CONFIG_ROLLUP_FLUSH_INTERVAL);
+        lateness = config.getLong(DatastoreSettingKey.CONFIG_ROLLUP_LATENESS);
+        maxBuckets = config.getInt(DatastoreSettingKey.CONFIG_ROLLUP_BUCKETS_MAX);
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        metricFlushedRollup = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "rollups", "flushed", "count");
+        metricFailedRollup = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "rollups", "failed", "count");
+        metricDroppedValue = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "values", "dropped", "count");
+        metricDeletedIndex = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "indices", "deleted", "count");
+        try {
+            metricsService.registerGauge(new Gauge<Integer>() {
+
+                @Override
+                public Integer getValue()
+                {
+                    return buckets.size();
+                }
+            }, METRIC_MODULE, METRIC_COMPONENT, "buckets", "size");
+        }
+        catch (KapuaException e) {
+            logger.warn("Cannot register the rollup buckets size gauge: {}", e.getMessage());
+        }
+
+        running = true;
+        worker = new Thread(new Runnable() {
+
+            @Override
+            public void run()
+            {
+                processBuckets();
+            }
+        }, "DatastoreRollupManager");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Return the rollup manager instance, creating and starting it on the first call
+     *
+     * @return
+     */
+    public static synchronized DatastoreRollupManager getInstance()
+    {
+        if (instance == null) {
+            instance = new DatastoreRollupManager();
+
+            // the changed buckets are stored on shutdown
+            final DatastoreRollupManager rollupManager = instance;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> rollupManager.stop(), "DatastoreRollupManagerShutdown"));
+        }
+        return instance;
+    }
+
+    /**
+     * Roll up the numeric metrics of a stored message
+     *
+     * @param accountName
+     * @param asset
+     * @param timestamp the message indexing timestamp
+     * @param metrics the message metrics (the non numeric ones are ignored)
+     * @param timeToLive the account rollups time to live in days
+     */
+    public void add(String accountName, String asset, long timestamp, Map<String, Object> metrics, int timeToLive)
+    {
+        if (metrics == null || metrics.isEmpty())
+            return;
+
+        accountTimeToLives.put(accountName, timeToLive);
+        for (Entry<String, Object> metric : metrics.entrySet()) {
+            Object value = metric.getValue();
+            if (!(value instanceof Integer || value instanceof Long || value instanceof Float || value instanceof Double))
+                continue;
+
+            String esMetricName = EsUtils.normalizeMetricName(metric.getKey());
+            String esType = EsUtils.getEsTypeFromValue(value);
+            double doubleValue = ((Number) value).doubleValue();
+            for (RollupResolution resolution : RollupResolution.values())
+                add(accountName, asset, esMetricName, esType, resolution, timestamp, doubleValue);
+        }
+    }
+
+    /**
+     * Return the number of buckets held in memory
+     *
+     * @return
+     */
+    public int getBucketsSize()
+    {
+        return buckets.size();
+    }
+
+    /**
+     * Stop the worker. The changed buckets are stored before the worker exits (waiting up to ten seconds).
+     */
+    public void stop()
+    {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(STOP_TIMEOUT);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void add(String accountName, String asset, String metric, String metricType, RollupResolution resolution, long timestamp, double value)
+    {
+        long start = resolution.getBucketStart(timestamp);
+        String key = RollupBucket.getKey(accountName, asset, metric, metricType, resolution, start);
+        while (true) {
+            RollupBucket bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= maxBuckets) {
+                    metricDroppedValue.inc();
+                    RollupGap gap = new RollupGap(accountName, resolution, start);
+                    gaps.putIfAbsent(gap.getId(), gap);
+                    return;
+                }
+
+                RollupBucket newBucket = new RollupBucket(nodeId + "-" + sequence.incrementAndGet(), accountName, asset, metric, metricType, resolution, start);
+                bucket = buckets.putIfAbsent(key, newBucket);
+                if (bucket == null)
+                    bucket = newBucket;
+            }
+
+            if (bucket.add(value, timestamp))
+                return;
+
+            // evicted by the worker in the meantime
+            buckets.remove(key, bucket);
+        }
+    }
+
+    private void processBuckets()
+    {
+        while (running) {
+            try {
+                Thread.sleep(flushInterval);
+            }
+            catch (InterruptedException e) {
+                // stop requested, store the changed buckets
+            }
+
+            try {
+                flush();
+
+                long now = KapuaDateUtils.getKapuaSysDate().getTime();
+                if (running && now - lastRetention >= RETENTION_INTERVAL) {
+                    applyRetention(now);
+                    lastRetention = now;
+                }
+            }
+            catch (Throwable t) {
+                logger.error("Unexpected error while flushing the rollups", t);
+            }
+        }
+
+        // the stop may have interrupted a flush: store what is still changed
+        Thread.interrupted();
+        try {
+            flush();
+        }
+        catch (Throwable t) {
+            logger.error("Cannot store the rollups on stop, {} buckets lost", buckets.size(), t);
+        }
+        logger.info("Rollup manager stopped");
+    }
+
+    private void flush()
+        throws Exception
+    {
+        Client client = EsClient.getcurrent();
+        if (!templateReady) {
+            client.admin().indices()
+                  .preparePutTemplate(EsSchema.ROLLUP_TEMPLATE_NAME)
+                  .setTemplate(EsSchema.ROLLUP_INDEX_TEMPLATE)
+                  .setSettings(Settings.builder().put("index.refresh_interval", DatastoreSettings.getInstance().getString(DatastoreSettingKey.ELASTICSEARCH_IDX_REFRESH_INTERVAL)))
+                  .addMapping(EsSchema.ROLLUP_TYPE_NAME, EsSchema.getRollupTypeBuilder())
+                  .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+            templateReady = true;
+        }
+
+        flushGaps(client);
+
+        // a bucket is closed when no more values are expected (the values later than the lateness open a new bucket)
+        long closeTime = KapuaDateUtils.getKapuaSysDate().getTime() - lateness;
+
+        List<RollupBucket> pendingBuckets = new ArrayList<RollupBucket>(MAX_BULK_ACTIONS);
+        List<Long> pendingVersions = new ArrayList<Long>(MAX_BULK_ACTIONS);
+        BulkRequest bulkRequest = new BulkRequest();
+        for (RollupBucket bucket : buckets.values()) {
+            synchronized (bucket) {
+                if (!bucket.isDirty()) {
+                    if (bucket.flushed(bucket.getVersion(), closeTime))
+                        buckets.remove(bucket.getKey(), bucket);
+                    continue;
+                }
+
+                pendingBuckets.add(bucket);
+                pendingVersions.add(bucket.getVersion());
+                bulkRequest.add(EsRollupDAO.connection(client)
+                                           .instance(bucket.getResolution().getIndexName(bucket.getAccount(), bucket.getStart()))
+                                           .getIndexRequest(bucket.getId(), bucket.toDocument()));
+            }
+
+            if (pendingBuckets.size() >= MAX_BULK_ACTIONS) {
+                flush(client, bulkRequest, pendingBuckets, pendingVersions, closeTime);
+                bulkRequest = new BulkRequest();
+                pendingBuckets.clear();
+                pendingVersions.clear();
+            }
+        }
+
+        if (!pendingBuckets.isEmpty())
+            flush(client, bulkRequest, pendingBuckets, pendingVersions, closeTime);
+    }
+
+    private void flushGaps(Client client)
+        throws Exception
+    {
+        if (gaps.isEmpty())
+            return;
+
+        List<RollupGap> pendingGaps = new ArrayList<RollupGap>(gaps.values());
+        BulkRequest bulkRequest = new BulkRequest();
+        for (RollupGap gap : pendingGaps)
+            bulkRequest.add(EsRollupDAO.connection(client)
+                                       .instance(gap.resolution.getIndexName(gap.account, gap.start))
+                                       .getIndexRequest(gap.getId(), gap.toDocument()));
+
+        // Items are returned in the same order of the requests
+        BulkItemResponse[] itemResponses = EsRollupDAO.connection(client).bulk(bulkRequest).getItems();
+        for (int i = 0; i < itemResponses.length; i++) {
+            RollupGap gap = pendingGaps.get(i);
+            if (itemResponses[i].isFailed()) {
+                // retried by the next flush
+                logger.warn("Rollup incomplete marker store failed [{}, {}]", gap.getId(), itemResponses[i].getFailureMessage());
+                continue;
+            }
+            gaps.remove(gap.getId(), gap);
+        }
+    }
+
+    private void flush(Client client, BulkRequest bulkRequest, List<RollupBucket> pendingBuckets, List<Long> pendingVersions, long closeTime)
+        throws Exception
+    {
+        // Items are returned in the same order of the requests
+        BulkItemResponse[] itemResponses = EsRollupDAO.connection(client).bulk(bulkRequest).getItems();
+        for (int i = 0; i < itemResponses.length; i++) {
+            RollupBucket bucket = pendingBuckets.get(i);
+            if (itemResponses[i].isFailed()) {
+                // still dirty, retried by the next flush
+                metricFailedRollup.inc();
+                logger.warn("Rollup store failed [{}, {}]", bucket.getId(), itemResponses[i].getFailureMessage());
+                continue;
+            }
+
+            metricFlushedRollup.inc();
+            if (bucket.flushed(pendingVersions.get(i), closeTime))
+                buckets.remove(bucket.getKey(), bucket);
+        }
+    }
+
+    private void applyRetention(long now)
+        throws Exception
+    {
+        Client client = EsClient.getcurrent();
+        for (Entry<String, Integer> accountTimeToLive : accountTimeToLives.entrySet()) {
+            String accountName = accountTimeToLive.getKey();
+            int timeToLive = accountTimeToLive.getValue();
+            if (timeToLive <= LocalServicePlan.DISABLED)
+                continue;
+
+            long expiration = now - timeToLive * DAY_MILLIS;
+            List<String> expiredIndices = new ArrayList<String>();
+            try {
+                for (RollupResolution resolution : RollupResolution.values()) {
+                    String[] indices = client.admin()
+                                             .indices()
+                                             .prepareGetIndex()
+                                             .setIndices(resolution.getAnyIndexName(accountName))
+                                             .setFeatures(GetIndexRequest.Feature.ALIASES)
+                                             .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()))
+                                             .getIndices();
+                    for (String index : indices) {
+                        long indexEnd = resolution.getIndexEnd(accountName, index);
+                        if (indexEnd > 0 && indexEnd <= expiration)
+                            expiredIndices.add(index);
+                    }
+                }
+
+                if (expiredIndices.isEmpty())
+                    continue;
+
+                client.admin()
+                      .indices()
+                      .prepareDelete(expiredIndices.toArray(new String[expiredIndices.size()]))
+                      .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+                metricDeletedIndex.inc(expiredIndices.size());
+                logger.info("Deleted the expired rollup indices of account {}: {}", accountName, expiredIndices);
+            }
+            catch (Exception e) {
+                logger.warn("Cannot apply the rollup retention of account {}: {}", accountName, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
+import org.eclipse.kapua.service.datastore.internal.model.MetricLastValueImpl;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+/**
+ * Last known values of the metrics of a device.<BR>
+ * A value is replaced only by a value with a timestamp not older, so the out of order messages (and the values loaded from a snapshot)
+ * never hide a newer value.
+ *
+ * @since 1.0
+ */
+class DeviceLastValues
+{
+
+    private final String                                     accountName;
+    private final String                                     clientId;
+    private final ConcurrentMap<String, MetricLastValueImpl> values = new ConcurrentHashMap<String, MetricLastValueImpl>(8, 0.75f, 2);
+
+    // changed since the last snapshot
+    private volatile boolean                                 dirty;
+    // last snapshot load time, 0 if never loaded
+    private volatile long                                    loadedOn;
+
+    DeviceLastValues(String accountName, String clientId)
+    {
+        this.accountName = accountName;
+        this.clientId = clientId;
+    }
+
+    String getAccountName()
+    {
+        return accountName;
+    }
+
+    String getClientId()
+    {
+        return clientId;
+    }
+
+    MetricLastValueImpl get(String metricName)
+    {
+        return values.get(metricName);
+    }
+
+    Collection<MetricLastValueImpl> getAll()
+    {
+        return values.values();
+    }
+
+    /**
+     * Update the metric value with a value of a stored message
+     *
+     * @param value
+     */
+    void update(MetricLastValueImpl value)
+    {
+        if (merge(value))
+            dirty = true;
+    }
+
+    /**
+     * Merge the metric value if it is not older than the current one
+     *
+     * @param value
+     * @return true if the value was merged
+     */
+    boolean merge(MetricLastValueImpl value)
+    {
+        while (true) {
+            MetricLastValueImpl current = values.get(value.getName());
+            if (current == null) {
+                if (values.putIfAbsent(value.getName(), value) == null)
+                    return true;
+            }
+            else if (current.getTime() > value.getTime()) {
+                return false;
+            }
+            else if (values.replace(value.getName(), current, value)) {
+                return true;
+            }
+        }
+    }
+
+    boolean isDirty()
+    {
+        return dirty;
+    }
+
+    /**
+     * Mark the device as changed (i.e. its snapshot failed)
+     */
+    void markDirty()
+    {
+        dirty = true;
+    }
+
+    /**
+     * Clear the dirty flag
+     *
+     * @return true if the device was dirty
+     */
+    boolean takeDirty()
+    {
+        if (!dirty)
+            return false;
+
+        dirty = false;
+        return true;
+    }
+
+    long getLoadedOn()
+    {
+        return loadedOn;
+    }
+
+    /**
+     * Merge the values of a snapshot document
+     *
+     * @param source the snapshot document source (null if there is no snapshot)
+     * @param loadedOn
+     */
+    @SuppressWarnings("unchecked")
+    void load(Map<String, Object> source, long loadedOn)
+    {
+        if (source != null && source.get(EsSchema.LAST_VALUE_METRICS) instanceof List) {
+            for (Object metric : (List<Object>) source.get(EsSchema.LAST_VALUE_METRICS)) {
+                if (!(metric instanceof Map))
+                    continue;
+
+                MetricLastValueImpl value = fromSource(clientId, (Map<String, Object>) metric);
+                if (value != null)
+                    merge(value);
+            }
+        }
+        this.loadedOn = loadedOn;
+    }
+
+    /**
+     * Return the snapshot document of the device values (the values of types not kept by the snapshot are skipped)
+     *
+     * @param timestamp
+     * @return
+     * @throws IOException
+     */
+    XContentBuilder toDocument(long timestamp)
+        throws IOException
+    {
+        List<MetricLastValueImpl> snapshotValues = new ArrayList<MetricLastValueImpl>(values.values());
+
+        XContentBuilder builder = XContentFactory.jsonBuilder()
+                                                 .startObject()
+                                                     .field(EsSchema.LAST_VALUE_ASSET, clientId)
+                                                     .field(EsSchema.LAST_VALUE_TIMESTAMP, new Date(timestamp))
+                                                     .startArray(EsSchema.LAST_VALUE_METRICS);
+        for (MetricLastValueImpl value : snapshotValues) {
+            String esType = getSnapshotType(value.getValue());
+            if (esType == null)
+                continue;
+
+            Object esValue = value.getValue() instanceof Date ? ((Date) value.getValue()).getTime() : value.getValue();
+            builder.startObject()
+                       .field(EsSchema.LAST_VALUE_MTR_NAME, value.getName())
+                       .field(EsSchema.LAST_VALUE_MTR_TYPE, esType)
+                       .field(EsSchema.LAST_VALUE_MTR_VALUE, esValue)
+                       .field(EsSchema.LAST_VALUE_MTR_TIMESTAMP, value.getTime())
+                       .field(EsSchema.LAST_VALUE_MTR_MSG_ID, value.getMessageId() != null ? value.getMessageId().toString() : null)
+                   .endObject();
+        }
+        return builder.endArray()
+                      .endObject();
+    }
+
+    private static String getSnapshotType(Object value)
+    {
+        if (value instanceof String || value instanceof Integer || value instanceof Long || value instanceof Float || value instanceof Double
+            || value instanceof Boolean || value instanceof Date)
+            return EsUtils.getEsTypeFromValue(value);
+
+        return null;
+    }
+
+    private static MetricLastValueImpl fromSource(String clientId, Map<String, Object> source)
+    {
+        Object name = source.get(EsSchema.LAST_VALUE_MTR_NAME);
+        Object esType = source.get(EsSchema.LAST_VALUE_MTR_TYPE);
+        Object esValue = source.get(EsSchema.LAST_VALUE_MTR_VALUE);
+        Object timestamp = source.get(EsSchema.LAST_VALUE_MTR_TIMESTAMP);
+        Object messageId = source.get(EsSchema.LAST_VALUE_MTR_MSG_ID);
+        if (!(name instanceof String) || !(timestamp instanceof Number) || esValue == null)
+            return null;
+
+        Object value;
+        if (EsUtils.ES_TYPE_INTEGER.equals(esType) && esValue instanceof Number)
+            value = ((Number) esValue).intValue();
+        else if (EsUtils.ES_TYPE_LONG.equals(esType) && esValue instanceof Number)
+            value = ((Number) esValue).longValue();
+        else if (EsUtils.ES_TYPE_FLOAT.equals(esType) && esValue instanceof Number)
+            value = ((Number) esValue).floatValue();
+        else if (EsUtils.ES_TYPE_DOUBLE.equals(esType) && esValue instanceof Number)
+            value = ((Number) esValue).doubleValue();
+        else if (EsUtils.ES_TYPE_DATE.equals(esType) && esValue instanceof Number)
+            value = new Date(((Number) esValue).longValue());
+        else if ((EsUtils.ES_TYPE_STRING.equals(esType) && esValue instanceof String) || (EsUtils.ES_TYPE_BOOL.equals(esType) && esValue instanceof Boolean))
+            value = esValue;
+        else
+            return null;
+
+        return new MetricLastValueImpl(clientId,
+                                       (String) name,
+                                       value,
+                                       ((Number) timestamp).longValue(),
+                                       messageId instanceof String ? new StorableIdImpl((String) messageId) : null);
+    }
+}
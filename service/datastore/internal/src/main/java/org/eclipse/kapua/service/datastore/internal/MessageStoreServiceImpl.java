@@ -16,12 +16,14 @@ package org.eclipse.kapua.service.datastore.internal;
 import static java.util.concurrent.TimeUnit.DAYS;
 
 import java.io.IOException;
-import java.net.UnknownHostException;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.eclipse.kapua.KapuaErrorCodes;
 import org.eclipse.kapua.KapuaException;
@@ -43,6 +45,9 @@ import org.eclipse.kapua.service.datastore.MessageStoreService;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsClient;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsIndexPlanner;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMessageCursor;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMessageField;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMetric;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMetricDocumentBuilder;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
@@ -50,6 +55,10 @@ import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.KapuaInvalidTopicException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.KapuaTopic;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.LocalServicePlan;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.RollupAggregationQueryConverter;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.RollupQueryPlanner;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.RollupResolution;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MessageScrollIterator;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsAssetDAO;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMessageDAO;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMetricDAO;
@@ -57,10 +66,13 @@ import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsTopicDAO
 import org.eclipse.kapua.service.datastore.internal.model.DataIndexBy;
 import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
 import org.eclipse.kapua.service.datastore.internal.model.MessageListResultImpl;
+import org.eclipse.kapua.service.datastore.internal.model.MetricAggregationResultImpl;
 import org.eclipse.kapua.service.datastore.internal.model.MetricsIndexBy;
 import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.AndPredicateImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.AssetInfoQueryImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.MetricInfoQueryImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.RangePredicateImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.TopicInfoQueryImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.TopicMatchPredicateImpl;
 import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
@@ -69,15 +81,22 @@ import org.eclipse.kapua.service.datastore.model.AssetInfoListResult;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.MessageCreator;
 import org.eclipse.kapua.service.datastore.model.MessageListResult;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationResult;
 import org.eclipse.kapua.service.datastore.model.MetricInfoListResult;
+import org.eclipse.kapua.service.datastore.model.MetricLastValue;
 import org.eclipse.kapua.service.datastore.model.StorableId;
+import org.eclipse.kapua.service.datastore.model.StorableIterator;
 import org.eclipse.kapua.service.datastore.model.TopicInfoListResult;
 import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
+import org.eclipse.kapua.service.datastore.model.query.SortDirection;
+import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.engine.DocumentAlreadyExistsException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -110,9 +129,21 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
 
     private final Object         metadataUpdateSync;
 
+    private final DatastoreBulkIngester bulkIngester;
+    private final DatastoreRollupManager rollupManager;
+    private final DatastoreLastValueStore lastValueStore;
+    private final boolean               rollupQueryEnabled;
+
     public MessageStoreServiceImpl(AccountService accountService, AuthorizationService authorizationService,
                                       PermissionFactory permissionFactory, EsSchema esSchema,
                                       int maxTopicDepth, Object metadataUpdateSync) {
+        this(accountService, authorizationService, permissionFactory, esSchema, maxTopicDepth, metadataUpdateSync, null, null, null);
+    }
+
+    public MessageStoreServiceImpl(AccountService accountService, AuthorizationService authorizationService,
+                                      PermissionFactory permissionFactory, EsSchema esSchema,
+                                      int maxTopicDepth, Object metadataUpdateSync, DatastoreBulkIngester bulkIngester,
+                                      DatastoreRollupManager rollupManager, DatastoreLastValueStore lastValueStore) {
 
         super(MessageStoreService.class.getName(), datastoreDomain, DatastoreEntityManagerFactory.getInstance());
         this.accountService = accountService;
@@ -121,17 +152,38 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         this.esSchema = esSchema;
         this.maxTopicDepth = maxTopicDepth;
         this.metadataUpdateSync = metadataUpdateSync;
+        this.bulkIngester = bulkIngester;
+        this.rollupManager = rollupManager;
+        this.lastValueStore = lastValueStore;
+        this.rollupQueryEnabled = DatastoreSettings.getInstance().getBoolean(DatastoreSettingKey.CONFIG_ROLLUP_QUERY_ENABLED, false);
     }
 
     public MessageStoreServiceImpl() {
         this(locator.getService(AccountService.class), locator.getService(AuthorizationService.class),
-                locator.getFactory(PermissionFactory.class), new EsSchema(),
-                DatastoreSettings.getInstance().getInt(DatastoreSettingKey.CONFIG_TOPIC_MAX_DEPTH), new Object());
+                locator.getFactory(PermissionFactory.class), EsSchema.getInstance(),
+                DatastoreSettings.getInstance().getInt(DatastoreSettingKey.CONFIG_TOPIC_MAX_DEPTH), new Object(),
+                DatastoreSettings.getInstance().getBoolean(DatastoreSettingKey.CONFIG_INGEST_BULK_ENABLED, false) ? DatastoreBulkIngester.getInstance() : null,
+                DatastoreSettings.getInstance().getBoolean(DatastoreSettingKey.CONFIG_ROLLUP_ENABLED, false) ? DatastoreRollupManager.getInstance() : null,
+                DatastoreSettings.getInstance().getBoolean(DatastoreSettingKey.CONFIG_LAST_VALUE_ENABLED, false) ? DatastoreLastValueStore.getInstance() : null);
     }
 
     @Override
     public StorableId store(KapuaId scopeId, MessageCreator messageCreator)
             throws KapuaException {
+        CompletableFuture<StorableId> future = this.storeAsync(scopeId, messageCreator);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw KapuaException.internalError(e);
+        } catch (ExecutionException e) {
+            throw KapuaException.internalError(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<StorableId> storeAsync(KapuaId scopeId, MessageCreator messageCreator)
+            throws KapuaException {
         ArgumentValidator.notNull(messageCreator, "messageCreator");
 
         MessageImpl messageImpl = new MessageImpl();
@@ -143,7 +195,7 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         return this.store(scopeId, messageImpl);
     }
 
-    private StorableId store(KapuaId scopeId, Message message)
+    private CompletableFuture<StorableId> store(KapuaId scopeId, Message message)
             throws KapuaException {
         //
         // Argument Validation
@@ -204,7 +256,8 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
                                      indexedOn,
                                      receivedOn,
                                      ttl,
-                                     accountServicePlan.getMetricsIndexBy());
+                                     accountServicePlan.getMetricsIndexBy(),
+                                     accountServicePlan.getRollupTimeToLive());
         } catch (Exception e) { // TODO create e new datastore exception
             // TODO manage execeptions
             // CassandraUtils.handleException(e);
@@ -306,10 +359,13 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         }
 
         try {
-            String everyIndex = EsUtils.getAnyIndexName(scopeName);
+            String[] indices = EsIndexPlanner.getInstance().getMessageIndices(scopeName, query.getPredicate());
+            if (indices.length == 0)
+                return new MessageListResultImpl();
+
             MessageListResult result = null;
             result = EsMessageDAO.connection(EsClient.getcurrent())
-                                 .instance(everyIndex, EsSchema.MESSAGE_TYPE_NAME)
+                                 .instance(indices, EsSchema.MESSAGE_TYPE_NAME)
                                  .query(query);
 
             return result;
@@ -320,6 +376,92 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         }
     }
 
+    @Override
+    public MessageListResult query(KapuaId scopeId, MessageQuery query, String cursor)
+            throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notNull(query, "query");
+        EsMessageCursor esCursor = cursor != null ? EsMessageCursor.decode(cursor) : null;
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.read);
+
+        //
+        // Do the find
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        String scopeName = accountInfo.getAccount().getName();
+        LocalServicePlan accountServicePlan = accountInfo.getServicePlan();
+        long ttl = accountServicePlan.getDataTimeToLive() * DAY_MILLIS;
+
+        if (!accountServicePlan.getDataStorageEnabled() || ttl == LocalServicePlan.DISABLED) {
+            logger.debug("Storage not enabled for account {}, returning empty result", scopeName);
+            return new MessageListResultImpl();
+        }
+
+        try {
+            // the cursor bounds the timestamp too, so the indices of the pages already returned are pruned
+            StorablePredicate planPredicate = query.getPredicate();
+            if (esCursor != null) {
+                Date cursorTimestamp = new Date(esCursor.getTimestamp());
+                AndPredicateImpl cursorPredicate = new AndPredicateImpl();
+                cursorPredicate.addPredicate(query.getPredicate());
+                if (SortDirection.ASC.equals(query.getSort()))
+                    cursorPredicate.addPredicate(new RangePredicateImpl(EsMessageField.TIMESTAMP, cursorTimestamp, null));
+                else
+                    cursorPredicate.addPredicate(new RangePredicateImpl(EsMessageField.TIMESTAMP, null, cursorTimestamp));
+                planPredicate = cursorPredicate;
+            }
+
+            String[] indices = EsIndexPlanner.getInstance().getMessageIndices(scopeName, planPredicate);
+            if (indices.length == 0)
+                return new MessageListResultImpl();
+
+            return EsMessageDAO.connection(EsClient.getcurrent())
+                               .instance(indices, EsSchema.MESSAGE_TYPE_NAME)
+                               .query(query, esCursor);
+        } catch (Exception exc) {
+            throw KapuaException.internalError(exc);
+        }
+    }
+
+    @Override
+    public StorableIterator<Message> export(KapuaId scopeId, MessageQuery query)
+            throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notNull(query, "query");
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.read);
+
+        //
+        // Do the find
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        String scopeName = accountInfo.getAccount().getName();
+        LocalServicePlan accountServicePlan = accountInfo.getServicePlan();
+        long ttl = accountServicePlan.getDataTimeToLive() * DAY_MILLIS;
+
+        if (!accountServicePlan.getDataStorageEnabled() || ttl == LocalServicePlan.DISABLED) {
+            logger.debug("Storage not enabled for account {}, returning empty result", scopeName);
+            return MessageScrollIterator.empty();
+        }
+
+        try {
+            String[] indices = EsIndexPlanner.getInstance().getMessageIndices(scopeName, query.getPredicate());
+            if (indices.length == 0)
+                return MessageScrollIterator.empty();
+
+            return EsMessageDAO.connection(EsClient.getcurrent())
+                               .instance(indices, EsSchema.MESSAGE_TYPE_NAME)
+                               .scroll(query, TimeValue.timeValueMillis(EsUtils.getScrollTimeout()));
+        } catch (Exception exc) {
+            throw KapuaException.internalError(exc);
+        }
+    }
+
     public long count(KapuaId scopeId, MessageQuery query)
             throws KapuaException {
         //
@@ -343,10 +485,13 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         }
 
         try {
-            String everyIndex = EsUtils.getAnyIndexName(scopeName);
+            String[] indices = EsIndexPlanner.getInstance().getMessageIndices(scopeName, query.getPredicate());
+            if (indices.length == 0)
+                return 0;
+
             long result;
             result = EsMessageDAO.connection(EsClient.getcurrent())
-                                 .instance(everyIndex, EsSchema.MESSAGE_TYPE_NAME)
+                                 .instance(indices, EsSchema.MESSAGE_TYPE_NAME)
                                  .count(query);
 
             return result;
@@ -357,6 +502,95 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         }
     }
 
+    @Override
+    public MetricAggregationResult aggregate(KapuaId scopeId, MetricAggregationQuery query)
+            throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notNull(query, "query");
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.read);
+
+        //
+        // Do the aggregation
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        String scopeName = accountInfo.getAccount().getName();
+        LocalServicePlan accountServicePlan = accountInfo.getServicePlan();
+        long ttl = accountServicePlan.getDataTimeToLive() * DAY_MILLIS;
+
+        if (!accountServicePlan.getDataStorageEnabled() || ttl == LocalServicePlan.DISABLED) {
+            logger.debug("Storage not enabled for account {}, returning empty result", scopeName);
+            return new MetricAggregationResultImpl(0);
+        }
+
+        try {
+            // Answered by the coarsest rollups the requested buckets are made of, if the predicate only constrains what the rollups keep
+            // (only where the rollups are complete, the rest of the time range is aggregated from the messages)
+            RollupResolution resolution = null;
+            if (this.rollupQueryEnabled && accountServicePlan.getRollupTimeToLive() != LocalServicePlan.DISABLED
+                    && RollupAggregationQueryConverter.supports(query.getPredicate()))
+                resolution = RollupResolution.forInterval(query.getInterval());
+
+            if (resolution != null)
+                return RollupQueryPlanner.getInstance().aggregate(scopeName, query, resolution);
+
+            String[] indices = EsIndexPlanner.getInstance().getMessageIndices(scopeName, query.getPredicate());
+            if (indices.length == 0)
+                return new MetricAggregationResultImpl(0);
+
+            return EsMessageDAO.connection(EsClient.getcurrent())
+                               .instance(indices, EsSchema.MESSAGE_TYPE_NAME)
+                               .aggregate(query);
+        } catch (KapuaException exc) {
+            throw exc;
+        } catch (Exception exc) {
+            throw KapuaException.internalError(exc);
+        }
+    }
+
+    @Override
+    public MetricLastValue findLastValue(KapuaId scopeId, String clientId, String metricName)
+            throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notEmptyOrNull(clientId, "clientId");
+        ArgumentValidator.notEmptyOrNull(metricName, "metricName");
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.read);
+
+        if (this.lastValueStore == null) {
+            logger.debug("Last value store not enabled, returning no value");
+            return null;
+        }
+
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        return this.lastValueStore.find(accountInfo.getAccount().getName(), clientId, metricName);
+    }
+
+    @Override
+    public List<MetricLastValue> findLastValues(KapuaId scopeId, String clientId)
+            throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notEmptyOrNull(clientId, "clientId");
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.read);
+
+        if (this.lastValueStore == null) {
+            logger.debug("Last value store not enabled, returning no value");
+            return new ArrayList<MetricLastValue>();
+        }
+
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        return this.lastValueStore.find(accountInfo.getAccount().getName(), clientId);
+    }
+
     @Override
     public void delete(KapuaId scopeId, MessageQuery query)
             throws KapuaException {
@@ -381,9 +615,12 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         }
 
         try {
-            String everyIndex = EsUtils.getAnyIndexName(scopeName);
+            String[] indices = EsIndexPlanner.getInstance().getMessageIndices(scopeName, query.getPredicate());
+            if (indices.length == 0)
+                return;
+
             EsMessageDAO.connection(EsClient.getcurrent())
-                        .instance(everyIndex, EsSchema.MESSAGE_TYPE_NAME)
+                        .instance(indices, EsSchema.MESSAGE_TYPE_NAME)
                         .deleteByQuery(query);
 
             return;
@@ -409,19 +646,34 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
             throw KapuaException.internalError("Impossible exception");
     }
 
+    @Override
+    public void setConfigValues(KapuaId scopeId, Map<String, Object> values)
+            throws KapuaException {
+        super.setConfigValues(scopeId, values);
+        DatastoreCacheManager.getInstance().getAccountsCache().invalidate(scopeId);
+    }
+
     private AccountInfo getAccountServicePlan(KapuaId scopeId)
             throws KapuaException {
-        Account account = accountService.find(scopeId);
-        return new AccountInfo(account, new LocalServicePlan(this.getConfigValues(account.getId())));
+        AccountInfoCache accountsCache = DatastoreCacheManager.getInstance().getAccountsCache();
+        AccountInfo accountInfo = accountsCache.get(scopeId);
+        if (accountInfo == null) {
+            long loadGeneration = accountsCache.getGeneration();
+            Account account = accountService.find(scopeId);
+            accountInfo = new AccountInfo(account, new LocalServicePlan(this.getConfigValues(account.getId())));
+            accountsCache.put(scopeId, accountInfo, loadGeneration);
+        }
+        return accountInfo;
     }
 
-    private StorableId storeMessage(String accountName,
+    private CompletableFuture<StorableId> storeMessage(String accountName,
                                     Message message,
                                     int maxTopicDepth,
                                     long indexedOn,
                                     long receivedOn,
                                     long ttl,
-                                    MetricsIndexBy indexBy)
+                                    MetricsIndexBy indexBy,
+                                    int rollupTtl)
             throws IOException, ParseException, EsDatastoreException, KapuaInvalidTopicException {
 
         // Extract schema metadata
@@ -445,15 +697,46 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         Map<String, EsMetric> esMetrics = docBuilder.getMessageMetrics();
         this.esSchema.updateMessageMappings(accountName, indexedOn, esMetrics);
 
+        // Batching mode: the message and its metadata are flushed by the ingester
+        if (this.bulkIngester != null) {
+            CompletableFuture<StorableId> future = this.bulkIngester.submit(schemaMetadata, docBuilder);
+            // the last values and the rollups must not count a message which is not stored
+            future.whenComplete((storedId, error) -> {
+                if (error == null) {
+                    this.updateLastValues(accountName, docBuilder, messageId, message, indexedOn);
+                    this.rollup(accountName, docBuilder, message, indexedOn, rollupTtl);
+                }
+            });
+            return future;
+        }
+
         // TODO Investigate why update indivudual performs better than update bulk (!!!)
         this.updateIndividually(schemaMetadata, docBuilder);
         // this.updateBulk(schemaMetadata, docBuilder);
+        this.updateLastValues(accountName, docBuilder, messageId, message, indexedOn);
+        this.rollup(accountName, docBuilder, message, indexedOn, rollupTtl);
+
+        return CompletableFuture.completedFuture(messageId);
+    }
+
+    private void updateLastValues(String accountName, EsDocumentBuilder docBuilder, StorableId messageId, Message message, long indexedOn)
+    {
+        if (this.lastValueStore == null)
+            return;
+
+        this.lastValueStore.update(accountName, docBuilder.getAsset(), messageId, indexedOn, message.getPayload().getMetrics());
+    }
+
+    private void rollup(String accountName, EsDocumentBuilder docBuilder, Message message, long indexedOn, int rollupTtl)
+    {
+        if (this.rollupManager == null || rollupTtl == LocalServicePlan.DISABLED)
+            return;
 
-        return messageId;
+        this.rollupManager.add(accountName, docBuilder.getAsset(), indexedOn, message.getPayload().getMetrics(), rollupTtl);
     }
 
     private void updateIndividually(EsSchema.Metadata schemaMetadata, EsDocumentBuilder docBuilder)
-            throws UnknownHostException, EsDatastoreException {
+            throws IOException, EsDatastoreException {
 
         String indexName = schemaMetadata.getPublicIndexName();
         String messageTypeName = schemaMetadata.getMessageTypeName();
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.RollupResolution;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+/**
+ * In memory rollup of a metric of an asset over a resolution bucket.<BR>
+ * Every change increments the bucket version, so the flush can tell whether the bucket changed after its document was built. A bucket is
+ * evicted once it is closed (its end plus the accepted lateness elapsed) and its last version is stored: an evicted bucket doesn't accept
+ * values anymore and a late value opens a new bucket (i.e. a new partial rollup document).
+ *
+ * @since 1.0
+ */
+class RollupBucket
+{
+
+    private final String           id;
+    private final String           account;
+    private final String           asset;
+    private final String           metric;
+    private final String           metricType;
+    private final RollupResolution resolution;
+    private final long             start;
+
+    private long                   count;
+    private double                 min           = Double.POSITIVE_INFINITY;
+    private double                 max           = Double.NEGATIVE_INFINITY;
+    private double                 sum;
+    private double                 last;
+    private long                   lastTimestamp = Long.MIN_VALUE;
+
+    private long                   version;
+    private long                   flushedVersion;
+    private boolean                evicted;
+
+    RollupBucket(String id, String account, String asset, String metric, String metricType, RollupResolution resolution, long start)
+    {
+        this.id = id;
+        this.account = account;
+        this.asset = asset;
+        this.metric = metric;
+        this.metricType = metricType;
+        this.resolution = resolution;
+        this.start = start;
+    }
+
+    /**
+     * Return the key of the in memory bucket the provided metric value belongs to
+     *
+     * @param account
+     * @param asset
+     * @param metric
+     * @param metricType
+     * @param resolution
+     * @param start
+     * @return
+     */
+    static String getKey(String account, String asset, String metric, String metricType, RollupResolution resolution, long start)
+    {
+        return account + '/' + asset + '/' + resolution.getName() + '/' + start + '/' + metricType + '/' + metric;
+    }
+
+    String getKey()
+    {
+        return getKey(account, asset, metric, metricType, resolution, start);
+    }
+
+    String getId()
+    {
+        return id;
+    }
+
+    String getAccount()
+    {
+        return account;
+    }
+
+    RollupResolution getResolution()
+    {
+        return resolution;
+    }
+
+    long getStart()
+    {
+        return start;
+    }
+
+    synchronized long getCount()
+    {
+        return count;
+    }
+
+    synchronized double getMin()
+    {
+        return min;
+    }
+
+    synchronized double getMax()
+    {
+        return max;
+    }
+
+    synchronized double getSum()
+    {
+        return sum;
+    }
+
+    synchronized double getLast()
+    {
+        return last;
+    }
+
+    synchronized long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Add a value to the bucket
+     *
+     * @param value
+     * @param timestamp
+     * @return false if the bucket is already evicted, so the value has to be added to a new bucket
+     */
+    synchronized boolean add(double value, long timestamp)
+    {
+        if (evicted)
+            return false;
+
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+        if (timestamp >= lastTimestamp) {
+            last = value;
+            lastTimestamp = timestamp;
+        }
+        version++;
+        return true;
+    }
+
+    /**
+     * Return true if the bucket changed since its last stored version
+     *
+     * @return
+     */
+    synchronized boolean isDirty()
+    {
+        return version != flushedVersion;
+    }
+
+    /**
+     * Record that the provided version is stored, and evict the bucket if it is the last version of a closed bucket
+     *
+     * @param storedVersion
+     * @param closeTime the buckets ending before this time are closed
+     * @return true if the bucket is evicted
+     */
+    synchronized boolean flushed(long storedVersion, long closeTime)
+    {
+        flushedVersion = Math.max(flushedVersion, storedVersion);
+        if (flushedVersion == version && start + resolution.getMillis() <= closeTime)
+            evicted = true;
+
+        return evicted;
+    }
+
+    synchronized XContentBuilder toDocument()
+        throws IOException
+    {
+        return XContentFactory.jsonBuilder()
+                              .startObject()
+                                  .field(EsSchema.ROLLUP_ACCOUNT, account)
+                                  .field(EsSchema.ROLLUP_ASSET, asset)
+                                  .field(EsSchema.ROLLUP_METRIC, metric)
+                                  .field(EsSchema.ROLLUP_METRIC_TYPE, metricType)
+                                  .field(EsSchema.ROLLUP_TIMESTAMP, new Date(start))
+                                  .field(EsSchema.ROLLUP_COUNT, count)
+                                  .field(EsSchema.ROLLUP_MIN, min)
+                                  .field(EsSchema.ROLLUP_MAX, max)
+                                  .field(EsSchema.ROLLUP_SUM, sum)
+                                  .field(EsSchema.ROLLUP_LAST, last)
+                                  .field(EsSchema.ROLLUP_LAST_TIMESTAMP, new Date(lastTimestamp))
+                              .endObject();
+    }
+}
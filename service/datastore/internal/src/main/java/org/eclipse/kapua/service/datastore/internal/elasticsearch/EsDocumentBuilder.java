@@ -12,6 +12,7 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
@@ -20,6 +21,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.eclipse.kapua.service.datastore.model.AssetInfo;
 import org.eclipse.kapua.service.datastore.model.Message;
@@ -36,14 +38,32 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.hash.Hashing;
 
+/**
+ * Builds the Elasticsearch documents of a message and of its metadata (topic, metrics and asset).<br>
+ * The message document is encoded in a single pass into a reusable per thread buffer. The metadata documents are built
+ * only when they are requested, which happens only if the metadata is not already in the datastore cache.
+ */
 public class EsDocumentBuilder
 {
 
     @SuppressWarnings("unused")
     private static final Logger   s_logger = LoggerFactory.getLogger(EsDocumentBuilder.class);
 
+    private static final int MESSAGE_BUFFER_INITIAL_SIZE = 4096;
+    // a thread keeps its buffer only if it's not bigger than this (a huge message must not pin its buffer)
+    private static final int MESSAGE_BUFFER_MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteArrayOutputStream> messageBuffer = new ThreadLocal<ByteArrayOutputStream>() {
+
+        @Override
+        protected ByteArrayOutputStream initialValue()
+        {
+            return new ByteArrayOutputStream(MESSAGE_BUFFER_INITIAL_SIZE);
+        }
+    };
+
     private String                messageId;
-    private XContentBuilder       messageBuilder;
+    private byte[]                messageSource;
 
     private String                topicId;
     private XContentBuilder       topicBuilder;
@@ -55,17 +75,29 @@ public class EsDocumentBuilder
     
     private Map<String, EsMetric> messageMetrics;
 
+    // metadata of the message, used to build the topic and asset documents on demand
+    private String                accountName;
+    private String                asset;
+    private String                semTopic;
+    private String                metadataMessageId;
+    private Date                  metadataTimestamp;
+
     private void init()
     {
 
         messageId = null;
-        messageBuilder = null;
+        messageSource = null;
         topicId = null;
         topicBuilder = null;
         metricBuilders = null;
         assetId = null;
         assetBuilder = null;
         messageMetrics = null;
+        accountName = null;
+        asset = null;
+        semTopic = null;
+        metadataMessageId = null;
+        metadataTimestamp = null;
     }
 
     private String getHashCode(String aString)
@@ -85,14 +117,14 @@ public class EsDocumentBuilder
 
     private String getAssetKey(String accountName, String assetName)
     {
-        String assetFullName = String.format("%s/%s", accountName, assetName);
+        String assetFullName = accountName + "/" + assetName;
         String assetHashCode = this.getHashCode(assetFullName);
         return assetHashCode;
     }
 
     private String getTopicMetricKey(String topicFullName, String metricMappedName)
     {
-        String topicMetricFullName = String.format("%s/%s", topicFullName, metricMappedName);
+        String topicMetricFullName = topicFullName + "/" + metricMappedName;
         String topicMetricHashCode = this.getHashCode(topicMetricFullName);
         return topicMetricHashCode;
     }
@@ -126,35 +158,17 @@ public class EsDocumentBuilder
         return builder;
     }
 
-    private XContentBuilder getMetricBuilder(String account, String asset, String topic, String metricName, Object value, Date msgTimestamp, String msgId)
-        throws IOException
-    {
-
-        XContentBuilder builder = XContentFactory.jsonBuilder()
-                                                 .startObject()
-                                                     .field(EsSchema.METRIC_ACCOUNT, account)
-                                                     .field(EsSchema.METRIC_ASSET, asset)
-                                                     .field(EsSchema.METRIC_SEM_NAME, topic)
-                                                     .startObject(EsSchema.METRIC_MTR)
-                                                         .field(EsSchema.METRIC_MTR_NAME, metricName)
-                                                         .field(EsSchema.METRIC_MTR_TYPE, EsUtils.getEsTypeFromValue(value))
-                                                         .field(EsSchema.METRIC_MTR_VALUE, value)
-                                                         .field(EsSchema.METRIC_MTR_TIMESTAMP, msgTimestamp)
-                                                         .field(EsSchema.METRIC_MTR_MSG_ID, msgId)
-                                                     .endObject()
-                                                 .endObject();
-
-        return builder;
-    }
-
-    private XContentBuilder getMessageBuilder(String accountName,
-                                              Message message, String asset, String topicFull,
-                                              String semTopic, String[] topicParts, String messageId,
-                                              Date indexedOn, Date receivedOn)
+    private byte[] getMessageSource(String accountName,
+                                    Message message, String asset, String topicFull,
+                                    String semTopic, String[] topicParts, String messageId,
+                                    Date indexedOn, Date receivedOn)
         throws IOException, ParseException
     {
 
-        XContentBuilder messageBuilder = XContentFactory.jsonBuilder()
+        ByteArrayOutputStream buffer = messageBuffer.get();
+        buffer.reset();
+
+        XContentBuilder messageBuilder = XContentFactory.jsonBuilder(buffer)
                                                         .startObject()
                                                             .field(EsSchema.MESSAGE_TIMESTAMP, indexedOn)
                                                             .field(EsSchema.MESSAGE_RECEIVED_ON, receivedOn) // TODO Which field ??
@@ -164,80 +178,85 @@ public class EsDocumentBuilder
                                                             .field(EsSchema.MESSAGE_SEM_TOPIC, semTopic)
                                                             .field(EsSchema.MESSAGE_TOPIC_PARTS, topicParts);
 
+        Map<String, EsMetric> metricMappings;
+        List<EsMetricDocumentBuilder> metricBuilders;
+
         Payload payload = message.getPayload();
         if (payload == null) {
-            messageBuilder.endObject();
-            return messageBuilder;
+            metricMappings = null;
+            metricBuilders = null;
         }
+        else {
+            messageBuilder.field(EsSchema.MESSAGE_COLLECTED_ON, payload.getCollectedOn());
+
+            Position kapuaPosition = payload.getPosition();
+            if (kapuaPosition != null) {
+                messageBuilder.startObject(EsSchema.MESSAGE_POS)
+                                  .startObject(EsSchema.MESSAGE_POS_LOCATION)
+                                      .field("lon", kapuaPosition.getLongitude())
+                                      .field("lat", kapuaPosition.getLatitude())
+                                  .endObject()
+                                  .field(EsSchema.MESSAGE_POS_ALT, kapuaPosition.getAltitude())
+                                  .field(EsSchema.MESSAGE_POS_PRECISION, kapuaPosition.getPrecision())
+                                  .field(EsSchema.MESSAGE_POS_HEADING, kapuaPosition.getHeading())
+                                  .field(EsSchema.MESSAGE_POS_SPEED, kapuaPosition.getSpeed())
+                                  .field(EsSchema.MESSAGE_POS_TIMESTAMP, kapuaPosition.getTimestamp())
+                                  .field(EsSchema.MESSAGE_POS_SATELLITES, kapuaPosition.getSatellites())
+                                  .field(EsSchema.MESSAGE_POS_STATUS, kapuaPosition.getStatus())
+                              .endObject();
+            }
 
-        messageBuilder.field(EsSchema.MESSAGE_COLLECTED_ON, payload.getCollectedOn());
-
-        Position kapuaPosition = payload.getPosition();
-        if (kapuaPosition != null) {
-
-            Map<String, Object> location = new HashMap<String, Object>();
-            location.put("lon", kapuaPosition.getLongitude());
-            location.put("lat", kapuaPosition.getLatitude());
-
-            Map<String, Object> position = new HashMap<String, Object>();
-            position.put(EsSchema.MESSAGE_POS_LOCATION, location);
-            position.put(EsSchema.MESSAGE_POS_ALT, kapuaPosition.getAltitude());
-            position.put(EsSchema.MESSAGE_POS_PRECISION, kapuaPosition.getPrecision());
-            position.put(EsSchema.MESSAGE_POS_HEADING, kapuaPosition.getHeading());
-            position.put(EsSchema.MESSAGE_POS_SPEED, kapuaPosition.getSpeed());
-            position.put(EsSchema.MESSAGE_POS_TIMESTAMP, kapuaPosition.getTimestamp());
-            position.put(EsSchema.MESSAGE_POS_SATELLITES, kapuaPosition.getSatellites());
-            position.put(EsSchema.MESSAGE_POS_STATUS, kapuaPosition.getStatus());
-            messageBuilder.field(EsSchema.MESSAGE_POS, position);
-        }
-
-        messageBuilder.field(EsSchema.MESSAGE_BODY, payload.getBody());
-
-        Map<String, EsMetric> metricMappings = new HashMap<String, EsMetric>();
-        List<EsMetricDocumentBuilder> metricBuilders = new ArrayList<EsMetricDocumentBuilder>();
-
-        Map<String, Object> kapuaMetrics = payload.getMetrics();
-        if (kapuaMetrics != null) {
-
-            Map<String, Object> metrics = new HashMap<String, Object>();
-            String[] metricNames = kapuaMetrics.keySet().toArray(new String[] {});
-            for (String kapuaMetricName : metricNames) {
-
-                Object metricValue = kapuaMetrics.get(kapuaMetricName);
-                //////////////////////
-                // Sanitize field names. '.' is not allowed
-                String esMetricName = EsUtils.normalizeMetricName(kapuaMetricName);
-                String esType = EsUtils.getEsTypeFromValue(metricValue);
-                String esTypeAcronim = EsUtils.getEsTypeAcronym(esType);
-                EsMetric esMetric = new EsMetric();
-                esMetric.setName(esMetricName);
-                esMetric.setType(esType);
-                //////////////////////
-
-				Map<String, Object> field = new HashMap<String, Object>();
-				field.put(esTypeAcronim, metricValue);
-				metrics.put(esMetricName, field);
-
-                // each metric is potentially a dynamic field so report it a new mapping
-                String mappedName = EsUtils.getMetricValueQualifier(esMetricName, esType);
-                metricMappings.put(mappedName, esMetric);
-
-                EsMetricDocumentBuilder metricBuilder = new EsMetricDocumentBuilder();
-                String metric = getTopicMetricKey(topicFull, mappedName);
-                metricBuilder.setId(metric);
-
-                // TODO retrieve the uuid field
-                metricBuilder.setContent(this.getMetricBuilder(accountName, asset, semTopic, mappedName, metricValue, indexedOn, messageId));
-                metricBuilders.add(metricBuilder);
+            messageBuilder.field(EsSchema.MESSAGE_BODY, payload.getBody());
+
+            Map<String, Object> kapuaMetrics = payload.getMetrics();
+            int metricsCount = kapuaMetrics != null ? kapuaMetrics.size() : 0;
+            metricMappings = new HashMap<String, EsMetric>(metricsCount * 4 / 3 + 1);
+            metricBuilders = new ArrayList<EsMetricDocumentBuilder>(metricsCount);
+
+            if (kapuaMetrics != null) {
+
+                messageBuilder.startObject(EsSchema.MESSAGE_MTR);
+                for (Entry<String, Object> kapuaMetric : kapuaMetrics.entrySet()) {
+
+                    Object metricValue = kapuaMetric.getValue();
+                    //////////////////////
+                    // Sanitize field names. '.' is not allowed
+                    String esMetricName = EsUtils.normalizeMetricName(kapuaMetric.getKey());
+                    String esType = EsUtils.getEsTypeFromValue(metricValue);
+                    String esTypeAcronim = EsUtils.getEsTypeAcronym(esType);
+                    EsMetric esMetric = new EsMetric();
+                    esMetric.setName(esMetricName);
+                    esMetric.setType(esType);
+                    //////////////////////
+
+                    messageBuilder.startObject(esMetricName)
+                                      .field(esTypeAcronim, metricValue)
+                                  .endObject();
+
+                    // each metric is potentially a dynamic field so report it a new mapping
+                    String mappedName = EsUtils.getMetricValueQualifier(esMetricName, esType);
+                    metricMappings.put(mappedName, esMetric);
+
+                    // TODO retrieve the uuid field
+                    // the metric document content is built only if the metric is not cached
+                    metricBuilders.add(new EsMetricDocumentBuilder(getTopicMetricKey(topicFull, mappedName),
+                                                                   accountName, asset, semTopic, mappedName, metricValue, indexedOn, messageId));
+                }
+                messageBuilder.endObject();
             }
-            messageBuilder.field(EsSchema.MESSAGE_MTR, metrics);
         }
 
         messageBuilder.endObject();
+        messageBuilder.close();
+
+        byte[] messageSource = buffer.toByteArray();
+        if (buffer.size() > MESSAGE_BUFFER_MAX_RETAINED_SIZE) {
+            messageBuffer.remove();
+        }
 
         this.setMessageMetrics(metricMappings);
         this.setMetricBuilders(metricBuilders);
-        return messageBuilder;
+        return messageSource;
     }
 
     public EsDocumentBuilder clear()
@@ -293,11 +312,8 @@ public class EsDocumentBuilder
          
         String metricMappedName = EsUtils.getMetricValueQualifier(metricName, EsUtils.convertToEsType(metricInfo.getType()));
        
-        XContentBuilder metricContentBuilder = this.getMetricBuilder(scopeName, asset, topicName, metricMappedName, value, msgTimestamp, msgId.toString());
-        
-        EsMetricDocumentBuilder metricBuilder = new EsMetricDocumentBuilder();
-        metricBuilder.setId(this.getTopicMetricKey(topicName, metricMappedName));
-        metricBuilder.setContent(metricContentBuilder);
+        EsMetricDocumentBuilder metricBuilder = new EsMetricDocumentBuilder(this.getTopicMetricKey(topicName, metricMappedName),
+                                                                            scopeName, asset, topicName, metricMappedName, value, msgTimestamp, msgId.toString());
         List<EsMetricDocumentBuilder> metricBuilders = new ArrayList<EsMetricDocumentBuilder>();
         metricBuilders.add(metricBuilder);
         this.setMetricBuilders(metricBuilders);
@@ -309,7 +325,7 @@ public class EsDocumentBuilder
     {
 
         assert accountName != null : "Account name must be supplied.";
-        assert messageBuilder != null : "Message must be supplied.";
+        assert message != null : "Message must be supplied.";
         assert messageId != null : "Message ID must be supplied.";
 
         String topicFull = message.getTopic();
@@ -318,21 +334,24 @@ public class EsDocumentBuilder
         String semTopic = kapuaTopic.getSemanticTopic();
         String[] topicParts = kapuaTopic.getTopicParts();
 
-        String topicId = this.getTopicKey(topicFull);
-        this.setTopicId(topicId);
-        this.setTopicBuilder(this.getTopicBuilder(semTopic, messageId.toString(), indexedOn, asset, accountName));
+        String msgId = messageId.toString();
 
-        String assetId = this.getAssetKey(accountName, asset);
-        this.setAssetId(assetId);
-        this.setAssetBuilder(this.getAssetBuilder(asset, messageId.toString(), indexedOn, accountName));
+        // the topic and asset documents are built on demand (see getTopicBuilder and getAssetBuilder)
+        this.setTopicId(this.getTopicKey(topicFull));
+        this.setAssetId(this.getAssetKey(accountName, asset));
+        this.accountName = accountName;
+        this.asset = asset;
+        this.semTopic = semTopic;
+        this.metadataMessageId = msgId;
+        this.metadataTimestamp = indexedOn;
 
-        XContentBuilder messageBuilder = this.getMessageBuilder(accountName,
-                                                                message, asset, topicFull, 
-                                                                semTopic, topicParts, messageId.toString(),
-                                                                indexedOn, receivedOn);
+        byte[] messageSource = this.getMessageSource(accountName,
+                                                     message, asset, topicFull,
+                                                     semTopic, topicParts, msgId,
+                                                     indexedOn, receivedOn);
 
-        this.setMessageId(messageId.toString());
-        this.setMessageBuilder(messageBuilder);
+        this.setMessageId(msgId);
+        this.setMessageSource(messageSource);
         return this;
     }
 
@@ -346,14 +365,19 @@ public class EsDocumentBuilder
         this.messageId = esMessageId;
     }
 
-    public XContentBuilder getMessage()
+    /**
+     * Return the encoded message document
+     * 
+     * @return
+     */
+    public byte[] getMessage()
     {
-        return messageBuilder;
+        return messageSource;
     }
 
-    private void setMessageBuilder(XContentBuilder esMessage)
+    private void setMessageSource(byte[] esMessage)
     {
-        this.messageBuilder = esMessage;
+        this.messageSource = esMessage;
     }
 
     public String getTopicId()
@@ -367,7 +391,11 @@ public class EsDocumentBuilder
     }
 
     public XContentBuilder getTopicBuilder()
+        throws IOException
     {
+        if (topicBuilder == null && metadataMessageId != null) {
+            topicBuilder = this.getTopicBuilder(semTopic, metadataMessageId, metadataTimestamp, asset, accountName);
+        }
         return topicBuilder;
     }
 
@@ -397,7 +425,11 @@ public class EsDocumentBuilder
     }
 
     public XContentBuilder getAssetBuilder()
+        throws IOException
     {
+        if (assetBuilder == null && metadataMessageId != null) {
+            assetBuilder = this.getAssetBuilder(asset, metadataMessageId, metadataTimestamp, accountName);
+        }
         return assetBuilder;
     }
 
@@ -406,6 +438,11 @@ public class EsDocumentBuilder
         this.assetBuilder = esAsset;
     }
 
+    public String getAsset()
+    {
+        return asset;
+    }
+
     public Map<String, EsMetric> getMessageMetrics()
     {
         return messageMetrics;
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.commons.util.KapuaDateUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.eclipse.kapua.service.datastore.model.query.AndPredicate;
+import org.eclipse.kapua.service.datastore.model.query.RangePredicate;
+import org.eclipse.kapua.service.datastore.model.query.StorableField;
+import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * Message indices planner.<BR>
+ * The messages are stored in weekly indices (see {@link EsUtils#getActualIndexName(String, long)}), so a query constrained by a time range
+ * only needs the indices of the weeks the range covers. The planner extracts the timestamp bounds from the query predicate (a range on the
+ * message timestamp, alone or in a conjunction), resolves the index names of the range and keeps only the indices that exist.<BR>
+ * A query without a lower bound, or with a range wider than the configured maximum indices, is run on all the account indices.
+ *
+ * @since 1.0
+ */
+public class EsIndexPlanner
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(EsIndexPlanner.class);
+
+    private static final String METRIC_MODULE    = "datastore";
+    private static final String METRIC_COMPONENT = "query";
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static EsIndexPlanner instance;
+
+    private final boolean enabled;
+    private final int     maxIndices;
+    private final long    futureWindow;
+
+    // metrics
+    private final Counter metricPrunedIndices;
+    private final Counter metricPrunedQueries;
+    private final Counter metricUnprunedQueries;
+
+    /**
+     * Timestamp bounds (inclusive) of a predicate, {@link Long#MIN_VALUE} and {@link Long#MAX_VALUE} if unbounded
+     */
+    static class TimestampRange
+    {
+
+        private long lower = Long.MIN_VALUE;
+        private long upper = Long.MAX_VALUE;
+
+        long getLower()
+        {
+            return lower;
+        }
+
+        long getUpper()
+        {
+            return upper;
+        }
+
+        private void narrow(RangePredicate rangePredicate)
+        {
+            Long min = toMillis(rangePredicate.getMinValue());
+            if (min != null)
+                lower = Math.max(lower, min);
+
+            Long max = toMillis(rangePredicate.getMaxValue());
+            if (max != null)
+                upper = Math.min(upper, max);
+        }
+
+        /**
+         * Return the timestamp value in milliseconds or null if it cannot be resolved (e.g. a date math expression)
+         */
+        private static Long toMillis(Object value)
+        {
+            if (value instanceof Date)
+                return ((Date) value).getTime();
+            if (value instanceof Number)
+                return ((Number) value).longValue();
+            return null;
+        }
+    }
+
+    private EsIndexPlanner()
+    {
+        DatastoreSettings config = DatastoreSettings.getInstance();
+        enabled = config.getBoolean(DatastoreSettingKey.CONFIG_QUERY_INDEX_PRUNING_ENABLED, true);
+        maxIndices = config.getInt(DatastoreSettingKey.CONFIG_QUERY_INDEX_PRUNING_MAX_INDICES, 60);
+        futureWindow = config.getLong(DatastoreSettingKey.CONFIG_QUERY_INDEX_PRUNING_FUTURE_WINDOW, TimeUnit.DAYS.toMillis(7));
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        metricPrunedIndices = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "indices", "pruned", "count");
+        metricPrunedQueries = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "queries", "pruned", "count");
+        metricUnprunedQueries = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "queries", "unpruned", "count");
+    }
+
+    /**
+     * Return the planner instance
+     *
+     * @return
+     */
+    public static synchronized EsIndexPlanner getInstance()
+    {
+        if (instance == null) {
+            instance = new EsIndexPlanner();
+        }
+        return instance;
+    }
+
+    /**
+     * Return the message indices of the account the predicate has to be evaluated on.<BR>
+     * An empty array is returned if no existing index can contain a message matching the predicate.
+     *
+     * @param accountName
+     * @param predicate
+     * @return
+     * @throws UnknownHostException
+     * @throws EsDatastoreException
+     */
+    public String[] getMessageIndices(String accountName, StorablePredicate predicate)
+        throws UnknownHostException, EsDatastoreException
+    {
+        String anyIndex = EsUtils.getAnyIndexName(accountName);
+        if (!enabled || predicate == null) {
+            metricUnprunedQueries.inc();
+            return new String[] { anyIndex };
+        }
+
+        TimestampRange range = getTimestampRange(predicate);
+        if (range.getLower() == Long.MIN_VALUE) {
+            metricUnprunedQueries.inc();
+            return new String[] { anyIndex };
+        }
+
+        // device timestamps may be ahead of the current time, so an open range is extended by the future window
+        long lower = range.getLower();
+        long upper = range.getUpper();
+        if (upper == Long.MAX_VALUE)
+            upper = Math.max(KapuaDateUtils.getKapuaSysDate().getTime(), lower) + futureWindow;
+
+        if (lower > upper) {
+            metricPrunedQueries.inc();
+            return new String[0];
+        }
+
+        if ((upper - lower) / DAY_MILLIS > maxIndices * 7L) {
+            metricUnprunedQueries.inc();
+            return new String[] { anyIndex };
+        }
+
+        Set<String> rangeIndices = getIndexNames(accountName, lower, upper);
+        String[] existingIndices = EsClient.getcurrent()
+                                           .admin()
+                                           .indices()
+                                           .prepareGetIndex()
+                                           .setIndices(anyIndex)
+                                           .setFeatures(GetIndexRequest.Feature.ALIASES)
+                                           .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()))
+                                           .getIndices();
+
+        List<String> indices = new ArrayList<String>(rangeIndices.size());
+        for (String existingIndex : existingIndices) {
+            if (rangeIndices.contains(existingIndex))
+                indices.add(existingIndex);
+        }
+
+        int prunedIndices = existingIndices.length - indices.size();
+        metricPrunedIndices.inc(prunedIndices);
+        metricPrunedQueries.inc();
+        logger.debug("Account {} - time range [{}, {}]: {} indices, {} pruned", accountName, lower, upper, indices.size(), prunedIndices);
+
+        return indices.toArray(new String[indices.size()]);
+    }
+
+    /**
+     * Return the timestamp bounds of the predicate.<BR>
+     * Only the ranges on the message timestamp which must be satisfied by every matching message (the predicate itself or the terms of
+     * a conjunction) are taken into account.
+     *
+     * @param predicate
+     * @return
+     */
+    static TimestampRange getTimestampRange(StorablePredicate predicate)
+    {
+        TimestampRange range = new TimestampRange();
+        collectTimestampRange(predicate, range);
+        return range;
+    }
+
+    private static void collectTimestampRange(StorablePredicate predicate, TimestampRange range)
+    {
+        if (predicate instanceof AndPredicate) {
+            for (StorablePredicate subPredicate : ((AndPredicate) predicate).getPredicates())
+                collectTimestampRange(subPredicate, range);
+        }
+        else if (predicate instanceof RangePredicate) {
+            StorableField field = ((RangePredicate) predicate).getField();
+            if (field != null && EsSchema.MESSAGE_TIMESTAMP.equals(field.field()))
+                range.narrow((RangePredicate) predicate);
+        }
+    }
+
+    /**
+     * Return the index names {@link EsUtils#getActualIndexName(String, long)} produces for the timestamps between the bounds (inclusive).<BR>
+     * The names are resolved day by day since the week of the year numbering doesn't follow the calendar year at the year boundaries.
+     *
+     * @param accountName
+     * @param lower
+     * @param upper
+     * @return
+     */
+    static Set<String> getIndexNames(String accountName, long lower, long upper)
+    {
+        Set<String> indexNames = new LinkedHashSet<String>();
+        for (long timestamp = lower; timestamp < upper; timestamp += DAY_MILLIS)
+            indexNames.add(EsUtils.getActualIndexName(accountName, timestamp));
+
+        indexNames.add(EsUtils.getActualIndexName(accountName, upper));
+        return indexNames;
+    }
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.kapua.KapuaIllegalArgumentException;
+import org.eclipse.kapua.service.datastore.model.Message;
+import org.eclipse.kapua.service.datastore.model.query.SortDirection;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+
+/**
+ * Message query continuation cursor.<BR>
+ * The messages are paged by timestamp, so the cursor is the timestamp of the last returned message together with the ids of the
+ * returned messages having that same timestamp: the next page starts from the cursor timestamp and excludes those messages. Unlike an
+ * offset the cursor doesn't make Elasticsearch collect and discard the previous pages, and it is stable under concurrent inserts.<BR>
+ * The cursor is exchanged as an opaque url safe string (see {@link #encode()}).
+ *
+ * @since 1.0
+ */
+public class EsMessageCursor
+{
+
+    private static final byte VERSION = 1;
+
+    private final long        timestamp;
+    private final Set<String> ids;
+
+    /**
+     * Constructor
+     *
+     * @param timestamp the timestamp of the last returned message
+     * @param ids the ids of the returned messages with that timestamp
+     */
+    public EsMessageCursor(long timestamp, Collection<String> ids)
+    {
+        this.timestamp = timestamp;
+        this.ids = new LinkedHashSet<String>(ids);
+    }
+
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public Set<String> getIds()
+    {
+        return ids;
+    }
+
+    /**
+     * Return the cursor of the page following the provided messages (sorted by timestamp)
+     *
+     * @param previous the cursor the messages were queried from (may be null)
+     * @param messages
+     * @return
+     */
+    public static EsMessageCursor next(EsMessageCursor previous, List<Message> messages)
+    {
+        long lastTimestamp = messages.get(messages.size() - 1).getTimestamp().getTime();
+
+        Set<String> lastIds = new LinkedHashSet<String>();
+        boolean wholePage = true;
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            Message message = messages.get(i);
+            if (message.getTimestamp().getTime() != lastTimestamp) {
+                wholePage = false;
+                break;
+            }
+            lastIds.add(message.getId().toString());
+        }
+
+        // the messages with the same timestamp span more pages
+        if (wholePage && previous != null && previous.timestamp == lastTimestamp)
+            lastIds.addAll(previous.ids);
+
+        return new EsMessageCursor(lastTimestamp, lastIds);
+    }
+
+    /**
+     * Return the filter selecting the messages following the cursor
+     *
+     * @param sortDirection
+     * @return
+     */
+    public QueryBuilder toFilter(SortDirection sortDirection)
+    {
+        RangeQueryBuilder timestampRange = QueryBuilders.rangeQuery(EsSchema.MESSAGE_TIMESTAMP);
+        if (SortDirection.ASC.equals(sortDirection))
+            timestampRange.gte(timestamp);
+        else
+            timestampRange.lte(timestamp);
+
+        BoolQueryBuilder filter = QueryBuilders.boolQuery().must(timestampRange);
+        if (!ids.isEmpty())
+            filter.mustNot(QueryBuilders.idsQuery().addIds(ids.toArray(new String[ids.size()])));
+
+        return filter;
+    }
+
+    /**
+     * Encode the cursor as an url safe string
+     *
+     * @return
+     */
+    public String encode()
+    {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(VERSION);
+            out.writeLong(timestamp);
+            out.writeInt(ids.size());
+            for (String id : ids)
+                out.writeUTF(id);
+            out.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.toByteArray());
+        }
+        catch (IOException e) {
+            // cannot happen writing to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decode a cursor returned by {@link #encode()}
+     *
+     * @param cursor
+     * @return
+     * @throws KapuaIllegalArgumentException if the cursor is not valid
+     */
+    public static EsMessageCursor decode(String cursor)
+        throws KapuaIllegalArgumentException
+    {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)));
+            if (in.readByte() != VERSION)
+                throw new KapuaIllegalArgumentException("cursor", cursor);
+
+            long timestamp = in.readLong();
+            int size = in.readInt();
+            if (size < 0)
+                throw new KapuaIllegalArgumentException("cursor", cursor);
+
+            Set<String> ids = new LinkedHashSet<String>();
+            for (int i = 0; i < size; i++)
+                ids.add(in.readUTF());
+
+            if (in.read() != -1)
+                throw new KapuaIllegalArgumentException("cursor", cursor);
+
+            return new EsMessageCursor(timestamp, ids);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            throw new KapuaIllegalArgumentException("cursor", cursor);
+        }
+    }
+}
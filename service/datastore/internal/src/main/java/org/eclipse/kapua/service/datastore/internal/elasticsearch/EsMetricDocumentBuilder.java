@@ -12,17 +12,63 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
+import java.io.IOException;
+import java.util.Date;
+
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 
+/**
+ * Topic metric document.<br>
+ * The content is built the first time it is requested, so it costs nothing when the metric is already known
+ * (i.e. it's in the datastore metrics cache) and the document is not stored.
+ */
 public class EsMetricDocumentBuilder {
 	
 	private String id;
 	private XContentBuilder content;
-	
+
+	private String account;
+	private String asset;
+	private String semTopic;
+	private String metricMappedName;
+	private Object value;
+	private Date timestamp;
+	private String msgId;
+
+	public EsMetricDocumentBuilder() {
+	}
+
+	EsMetricDocumentBuilder(String id, String account, String asset, String semTopic, String metricMappedName, Object value, Date timestamp, String msgId) {
+		this.id = id;
+		this.account = account;
+		this.asset = asset;
+		this.semTopic = semTopic;
+		this.metricMappedName = metricMappedName;
+		this.value = value;
+		this.timestamp = timestamp;
+		this.msgId = msgId;
+	}
+
 	public String getId() {
 		return id;
 	}
-	public XContentBuilder getContent() {
+	public XContentBuilder getContent() throws IOException {
+		if (content == null && metricMappedName != null) {
+			content = XContentFactory.jsonBuilder()
+			                         .startObject()
+			                             .field(EsSchema.METRIC_ACCOUNT, account)
+			                             .field(EsSchema.METRIC_ASSET, asset)
+			                             .field(EsSchema.METRIC_SEM_NAME, semTopic)
+			                             .startObject(EsSchema.METRIC_MTR)
+			                                 .field(EsSchema.METRIC_MTR_NAME, metricMappedName)
+			                                 .field(EsSchema.METRIC_MTR_TYPE, EsUtils.getEsTypeFromValue(value))
+			                                 .field(EsSchema.METRIC_MTR_VALUE, value)
+			                                 .field(EsSchema.METRIC_MTR_TIMESTAMP, timestamp)
+			                                 .field(EsSchema.METRIC_MTR_MSG_ID, msgId)
+			                             .endObject()
+			                         .endObject();
+		}
 		return content;
 	}
 	public void setId(String id) {
@@ -14,11 +14,16 @@ package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Pattern;
 
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsRequest;
@@ -30,6 +35,7 @@ import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMetric;
@@ -102,6 +108,32 @@ public class EsSchema
     public final static String  ASSET_ACCOUNT               = "account";
     public final static String  ASSET_TIMESTAMP             = "timestamp";
     public final static String  ASSET_MESSAGE_ID            = "message_id";
+
+    public final static String  ROLLUP_INDEX_TEMPLATE       = ".rollup-*";
+    public final static String  ROLLUP_TEMPLATE_NAME        = "kapua-rollup";
+    public final static String  ROLLUP_TYPE_NAME            = "rollup";
+    public final static String  ROLLUP_ACCOUNT              = "account";
+    public final static String  ROLLUP_ASSET                = "asset";
+    public final static String  ROLLUP_METRIC               = "metric";
+    public final static String  ROLLUP_METRIC_TYPE          = "metric_type";
+    public final static String  ROLLUP_TIMESTAMP            = "timestamp";
+    public final static String  ROLLUP_COUNT                = "count";
+    public final static String  ROLLUP_MIN                  = "min";
+    public final static String  ROLLUP_MAX                  = "max";
+    public final static String  ROLLUP_SUM                  = "sum";
+    public final static String  ROLLUP_LAST                 = "last";
+    public final static String  ROLLUP_LAST_TIMESTAMP       = "last_timestamp";
+    public final static String  ROLLUP_INCOMPLETE           = "incomplete";
+
+    public final static String  LAST_VALUE_TYPE_NAME        = "last_value";
+    public final static String  LAST_VALUE_ASSET            = "asset";
+    public final static String  LAST_VALUE_TIMESTAMP        = "timestamp";
+    public final static String  LAST_VALUE_METRICS          = "metrics";
+    public final static String  LAST_VALUE_MTR_NAME         = "name";
+    public final static String  LAST_VALUE_MTR_TYPE         = "type";
+    public final static String  LAST_VALUE_MTR_VALUE        = "value";
+    public final static String  LAST_VALUE_MTR_TIMESTAMP    = "timestamp";
+    public final static String  LAST_VALUE_MTR_MSG_ID       = "message_id";
 //
 //    public final static String  ASSET_TOPIC_TYPE_NAME           = "asset_topic";
 //    public final static String  ASSET_TOPIC_AS_NAME             = "asset_name";
@@ -134,10 +166,11 @@ public class EsSchema
         // Custom mappings can only increase within the same account
         // No removal of existing cached mappings or changes in the
         // existing mappings.
-        private Map<String, EsMetric> messageMappingsCache;
+        // Each mapping is completed once the put mapping request has been executed.
+        private ConcurrentMap<String, CompletableFuture<Void>> messageMappingsCache;
         //
 
-        private Map<String, EsMetric> getMessageMappingsCache()
+        private ConcurrentMap<String, CompletableFuture<Void>> getMessageMappingsCache()
         {
             return messageMappingsCache;
         }
@@ -149,7 +182,7 @@ public class EsSchema
             metricTypeName = METRIC_TYPE_NAME;
             assetTypeName = ASSET_TYPE_NAME;
 
-            messageMappingsCache = new HashMap<String, EsMetric>(100);
+            messageMappingsCache = new ConcurrentHashMap<String, CompletableFuture<Void>>(100);
         }
 
         public String getPublicIndexName()
@@ -183,9 +216,8 @@ public class EsSchema
         }
     }
 
-    private Map<String, Metadata> schemaCache;
-    private Object                schemaCacheSync;
-    private Object                mappingsSync;
+    private final ConcurrentMap<String, CompletableFuture<Metadata>> schemaCache;
+    private final ConcurrentMap<String, CompletableFuture<String>>   kapuaIndexCache;
 
     private XContentBuilder getIndexSettings()
         throws IOException
@@ -239,6 +271,105 @@ public class EsSchema
 
         return builder;
     }
+
+    /**
+     * Return the mapping of the device metrics last values snapshot type. The metrics are kept in the source only, so the values of
+     * different types don't need a mapping each.
+     *
+     * @return
+     * @throws IOException
+     */
+    public static XContentBuilder getLastValueTypeBuilder()
+        throws IOException
+    {
+        XContentBuilder builder = XContentFactory.jsonBuilder()
+         .startObject()
+             .startObject(LAST_VALUE_TYPE_NAME)
+                 .startObject("_all")
+                     .field("enabled", false)
+                 .endObject()
+                 .startObject("properties")
+                     .startObject(LAST_VALUE_ASSET)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(LAST_VALUE_TIMESTAMP)
+                         .field("type", "date")
+                     .endObject()
+                     .startObject(LAST_VALUE_METRICS)
+                         .field("type", "object")
+                         .field("enabled", false)
+                     .endObject()
+                  .endObject() // End Of Properties
+             .endObject() // End of type
+         .endObject();
+
+        return builder;
+    }
+
+    /**
+     * Return the mapping of the metric rollup type (see {@link RollupResolution})
+     *
+     * @return
+     * @throws IOException
+     */
+    public static XContentBuilder getRollupTypeBuilder()
+        throws IOException
+    {
+        XContentBuilder builder = XContentFactory.jsonBuilder()
+         .startObject()
+             .startObject(ROLLUP_TYPE_NAME)
+                 .startObject("_all")
+                     .field("enabled", false)
+                 .endObject()
+                 .startObject("properties")
+                     .startObject(ROLLUP_ACCOUNT)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(ROLLUP_ASSET)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(ROLLUP_METRIC)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(ROLLUP_METRIC_TYPE)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(ROLLUP_TIMESTAMP)
+                         .field("type", "date")
+                     .endObject()
+                     .startObject(ROLLUP_COUNT)
+                         .field("type", "long")
+                     .endObject()
+                     .startObject(ROLLUP_MIN)
+                         .field("type", "double")
+                     .endObject()
+                     .startObject(ROLLUP_MAX)
+                         .field("type", "double")
+                     .endObject()
+                     .startObject(ROLLUP_SUM)
+                         .field("type", "double")
+                     .endObject()
+                     .startObject(ROLLUP_LAST)
+                         .field("type", "double")
+                         .field("index", "no")
+                     .endObject()
+                     .startObject(ROLLUP_LAST_TIMESTAMP)
+                         .field("type", "date")
+                     .endObject()
+                     .startObject(ROLLUP_INCOMPLETE)
+                         .field("type", "boolean")
+                     .endObject()
+                  .endObject() // End Of Properties
+             .endObject() // End of type
+         .endObject();
+
+        return builder;
+    }
 //
 //    private XContentBuilder getAssetTopicTypeBuilder(boolean allEnable, boolean sourceEnable)
 //        throws IOException
@@ -543,78 +674,67 @@ public class EsSchema
         return builder;
     }
 
-    private void initMessageMappings(String indexName, boolean allEnable, boolean sourceEnable)
+    private ImmutableOpenMap<String, MappingMetaData> getMappings(String indexName)
         throws IOException, EsDatastoreException
     {
-
         Client esClient = EsClient.getcurrent();
 
-        // Check message type mapping
+        // A single round-trip returns the mappings of every type of the index
         GetMappingsRequest mappingsRequest = new GetMappingsRequest().indices(indexName);
         GetMappingsResponse mappingsResponse = esClient.admin().indices().getMappings(mappingsRequest).actionGet();
         ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>> mappings = mappingsResponse.getMappings();
-        ImmutableOpenMap<String, MappingMetaData> map = mappings.get(indexName);
-        MappingMetaData metadata = map.get(MESSAGE_TYPE_NAME);
-        if (metadata == null) {
+        return mappings.get(indexName);
+    }
+
+    private void putMapping(String indexName, String typeName, XContentBuilder builder)
+        throws IOException, EsDatastoreException
+    {
+        Client esClient = EsClient.getcurrent();
+        esClient.admin().indices().preparePutMapping(indexName).setType(typeName).setSource(builder).execute().actionGet();
+    }
+
+    private boolean isMappingMissing(ImmutableOpenMap<String, MappingMetaData> mappings, String typeName)
+    {
+        // Null mappings means the index has just been created
+        return mappings == null || mappings.get(typeName) == null;
+    }
+
+    private void initMessageMappings(String indexName, ImmutableOpenMap<String, MappingMetaData> mappings, boolean allEnable, boolean sourceEnable)
+        throws IOException, EsDatastoreException
+    {
+        if (isMappingMissing(mappings, MESSAGE_TYPE_NAME)) {
             XContentBuilder builder = this.getMessageTypeBuilder(allEnable, sourceEnable);
-            esClient.admin().indices().preparePutMapping(indexName).setType(MESSAGE_TYPE_NAME).setSource(builder).execute().actionGet();
+            this.putMapping(indexName, MESSAGE_TYPE_NAME, builder);
             s_logger.trace("Message mapping created: " + builder.string());
         }
     }
 
-    private void initTopicMappings(String indexName, boolean allEnable, boolean sourceEnable)
+    private void initTopicMappings(String indexName, ImmutableOpenMap<String, MappingMetaData> mappings, boolean allEnable, boolean sourceEnable)
         throws IOException, EsDatastoreException
     {
-
-        Client esClient = EsClient.getcurrent();
-
-        // Check message type mapping
-        GetMappingsRequest mappingsRequest = new GetMappingsRequest().indices(indexName);
-        GetMappingsResponse mappingsResponse = esClient.admin().indices().getMappings(mappingsRequest).actionGet();
-        ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>> mappings = mappingsResponse.getMappings();
-        ImmutableOpenMap<String, MappingMetaData> map = mappings.get(indexName);
-        MappingMetaData metadata = map.get(TOPIC_TYPE_NAME);
-        if (metadata == null) {
+        if (isMappingMissing(mappings, TOPIC_TYPE_NAME)) {
             XContentBuilder builder = this.getTopicTypeBuilder(allEnable, sourceEnable);
-            esClient.admin().indices().preparePutMapping(indexName).setType(TOPIC_TYPE_NAME).setSource(builder).execute().actionGet();
+            this.putMapping(indexName, TOPIC_TYPE_NAME, builder);
             s_logger.trace("Topic mapping created: " + builder.string());
         }
     }
 
-    private void initMetricMappings(String indexName, boolean allEnable, boolean sourceEnable)
+    private void initMetricMappings(String indexName, ImmutableOpenMap<String, MappingMetaData> mappings, boolean allEnable, boolean sourceEnable)
         throws IOException, EsDatastoreException
     {
-
-        Client esClient = EsClient.getcurrent();
-
-        // Check message type mapping
-        GetMappingsRequest mappingsRequest = new GetMappingsRequest().indices(indexName);
-        GetMappingsResponse mappingsResponse = esClient.admin().indices().getMappings(mappingsRequest).actionGet();
-        ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>> mappings = mappingsResponse.getMappings();
-        ImmutableOpenMap<String, MappingMetaData> map = mappings.get(indexName);
-        MappingMetaData metadata = map.get(METRIC_TYPE_NAME);
-        if (metadata == null) {
+        if (isMappingMissing(mappings, METRIC_TYPE_NAME)) {
             XContentBuilder builder = this.getMetricTypeBuilder(allEnable, sourceEnable);
-            esClient.admin().indices().preparePutMapping(indexName).setType(METRIC_TYPE_NAME).setSource(builder).execute().actionGet();
+            this.putMapping(indexName, METRIC_TYPE_NAME, builder);
             s_logger.trace("Topic_metric mapping created: " + builder.string());
         }
     }
 
-    private void initAssetMappings(String indexName, boolean allEnable, boolean sourceEnable)
+    private void initAssetMappings(String indexName, ImmutableOpenMap<String, MappingMetaData> mappings, boolean allEnable, boolean sourceEnable)
         throws IOException, EsDatastoreException
     {
-
-        Client esClient = EsClient.getcurrent();
-
-        // Check message type mapping
-        GetMappingsRequest mappingsRequest = new GetMappingsRequest().indices(indexName);
-        GetMappingsResponse mappingsResponse = esClient.admin().indices().getMappings(mappingsRequest).actionGet();
-        ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>> mappings = mappingsResponse.getMappings();
-        ImmutableOpenMap<String, MappingMetaData> map = mappings.get(indexName);
-        MappingMetaData metadata = map.get(ASSET_TYPE_NAME);
-        if (metadata == null) {
+        if (isMappingMissing(mappings, ASSET_TYPE_NAME)) {
             XContentBuilder builder = this.getAssetTypeBuilder(allEnable, sourceEnable);
-            esClient.admin().indices().preparePutMapping(indexName).setType(ASSET_TYPE_NAME).setSource(builder).execute().actionGet();
+            this.putMapping(indexName, ASSET_TYPE_NAME, builder);
             s_logger.trace("Asset mapping created: " + builder.string());
         }
     }
@@ -638,118 +758,151 @@ public class EsSchema
 //        }
 //    }
 
-    private Map<String, EsMetric> getMessageMappingDiffs(Metadata currentMetadata, Map<String, EsMetric> esMetrics)
-    {
-
-        if (esMetrics == null || esMetrics.size() == 0)
-            return null;
-
-        Entry<String, EsMetric> el;
-        Map<String, EsMetric> diffs = null;
-        Iterator<Entry<String, EsMetric>> iter = esMetrics.entrySet().iterator();
-        while (iter.hasNext()) {
+    private static final EsSchema instance = new EsSchema();
 
-            el = iter.next();
-            if (!currentMetadata.getMessageMappingsCache().containsKey(el.getKey())) {
-
-                if (diffs == null)
-                    diffs = new HashMap<String, EsMetric>(100);
-
-                currentMetadata.getMessageMappingsCache().put(el.getKey(), el.getValue());
-                diffs.put(el.getKey(), el.getValue());
-            }
-        }
-
-        return diffs;
+    /**
+     * Return the schema registry shared by the datastore services
+     * 
+     * @return
+     */
+    public static EsSchema getInstance()
+    {
+        return instance;
     }
 
     public EsSchema()
     {
-        schemaCache = new HashMap<String, Metadata>();
-        schemaCacheSync = new Object();
-        mappingsSync = new Object();
+        schemaCache = new ConcurrentHashMap<String, CompletableFuture<Metadata>>();
+        kapuaIndexCache = new ConcurrentHashMap<String, CompletableFuture<String>>();
     }
 
+    /**
+     * Return the schema metadata of the data index the given time falls in.<BR>
+     * The data index (and the account metadata index) and their mappings are created once per index by the first caller,
+     * concurrent callers for the same index wait for its completion while callers for other indexes never contend.
+     * 
+     * @param accountName
+     * @param time
+     * @return
+     * @throws IOException
+     * @throws EsDatastoreException
+     */
     public Metadata synch(String accountName, long time)
         throws IOException, EsDatastoreException
     {
 
         String newIndex = EsUtils.getActualIndexName(accountName, time);
 
-        synchronized (schemaCacheSync) {
-            if (schemaCache.containsKey(newIndex)) {
-                Metadata currentMetadata = schemaCache.get(newIndex);
-                return currentMetadata;
+        // Hot path: a single concurrent map lookup
+        CompletableFuture<Metadata> metadataFuture = schemaCache.get(newIndex);
+        if (metadataFuture == null) {
+            CompletableFuture<Metadata> newMetadataFuture = new CompletableFuture<Metadata>();
+            metadataFuture = schemaCache.putIfAbsent(newIndex, newMetadataFuture);
+            if (metadataFuture == null) {
+                metadataFuture = newMetadataFuture;
+                try {
+                    newMetadataFuture.complete(this.initIndexes(accountName, time, newIndex));
+                }
+                catch (IOException | EsDatastoreException | RuntimeException e) {
+                    // Let the next caller retry
+                    schemaCache.remove(newIndex, newMetadataFuture);
+                    newMetadataFuture.completeExceptionally(e);
+                    throw e;
+                }
             }
         }
 
-        s_logger.info("Before entering updating metadata");
-
-        Metadata currentMetadata = null;
-        synchronized (mappingsSync) {
-            s_logger.info("Entered updating metadata");
-            currentMetadata = new Metadata();
-
-            IndicesExistsResponse existsResponse = null;
-            Client esClient = EsClient.getcurrent();
-
-            // Check existence of the data index
-            existsResponse = esClient.admin().indices()
-                                     .exists(new IndicesExistsRequest(newIndex))
-                                     .actionGet();
-
-            boolean indexExists = existsResponse.isExists();
-            if (!indexExists) {
-                esClient.admin().indices()
-                        .prepareCreate(newIndex)
-                        .setSettings(this.getIndexSettings())
-                        .execute()
-                        .actionGet();
-
-                s_logger.info("Data index created: " + newIndex);
-            }
+        return await(metadataFuture);
+    }
 
-            boolean enableAllField = false;
-            boolean enableSourceField = true;
+    private Metadata initIndexes(String accountName, long time, String newIndex)
+        throws IOException, EsDatastoreException
+    {
+        s_logger.info("Entered updating metadata");
+        Metadata currentMetadata = new Metadata();
 
-            this.initMessageMappings(newIndex, enableAllField, enableSourceField);
+        boolean enableAllField = false;
+        boolean enableSourceField = true;
 
-            // Check existence of the kapua internal index
-            String newKapuaMetadataIdx = EsUtils.getActualKapuaIndexName(accountName, time);
-            existsResponse = esClient.admin().indices()
-                                     .exists(new IndicesExistsRequest(newKapuaMetadataIdx))
-                                     .actionGet();
+        // Check existence of the data index
+        boolean indexCreated = this.createIndexIfMissing(newIndex);
+        if (indexCreated) {
+            s_logger.info("Data index created: " + newIndex);
+        }
+        this.initMessageMappings(newIndex, indexCreated ? null : this.getMappings(newIndex), enableAllField, enableSourceField);
 
-            indexExists = existsResponse.isExists();
-            if (!indexExists) {
-                esClient.admin()
-                        .indices()
-                        .prepareCreate(newKapuaMetadataIdx)
-                        .setSettings(this.getIndexSettings())
-                        .execute()
-                        .actionGet();
+        // Check existence of the kapua internal index (shared by all the data indexes of the account)
+        String newKapuaMetadataIdx = this.synchKapuaIndex(accountName, time, enableAllField, enableSourceField);
 
-                s_logger.info("Metadata index created: " + newKapuaMetadataIdx);
+        currentMetadata.indexName = newIndex;
+        currentMetadata.kapuaIndexName = newKapuaMetadataIdx;
+        s_logger.info("Leaving updating metadata");
+        return currentMetadata;
+    }
 
-                this.initTopicMappings(newKapuaMetadataIdx, enableAllField, enableSourceField);
-                this.initMetricMappings(newKapuaMetadataIdx, enableAllField, enableSourceField);
-                this.initAssetMappings(newKapuaMetadataIdx, enableAllField, enableSourceField);
+    private String synchKapuaIndex(String accountName, long time, boolean enableAllField, boolean enableSourceField)
+        throws IOException, EsDatastoreException
+    {
+        String kapuaIndex = EsUtils.getActualKapuaIndexName(accountName, time);
+
+        CompletableFuture<String> kapuaIndexFuture = kapuaIndexCache.get(kapuaIndex);
+        if (kapuaIndexFuture == null) {
+            CompletableFuture<String> newKapuaIndexFuture = new CompletableFuture<String>();
+            kapuaIndexFuture = kapuaIndexCache.putIfAbsent(kapuaIndex, newKapuaIndexFuture);
+            if (kapuaIndexFuture == null) {
+                kapuaIndexFuture = newKapuaIndexFuture;
+                try {
+                    if (this.createIndexIfMissing(kapuaIndex)) {
+                        s_logger.info("Metadata index created: " + kapuaIndex);
+                        this.initTopicMappings(kapuaIndex, null, enableAllField, enableSourceField);
+                        this.initMetricMappings(kapuaIndex, null, enableAllField, enableSourceField);
+                        this.initAssetMappings(kapuaIndex, null, enableAllField, enableSourceField);
+                    }
+                    newKapuaIndexFuture.complete(kapuaIndex);
+                }
+                catch (IOException | EsDatastoreException | RuntimeException e) {
+                    // Let the next caller retry
+                    kapuaIndexCache.remove(kapuaIndex, newKapuaIndexFuture);
+                    newKapuaIndexFuture.completeExceptionally(e);
+                    throw e;
+                }
             }
-
-            currentMetadata.indexName = newIndex;
-            currentMetadata.kapuaIndexName = newKapuaMetadataIdx;
-            s_logger.info("Leaving updating metadata");
         }
 
-        synchronized (schemaCacheSync) {
-            // Current metadata can only increase the custom mappings
-            // other fields does not change within the same account id
-            // and custom mappings are not and must not be exposed to
-            // outside this class to preserve thread safetyness
-            schemaCache.put(newIndex, currentMetadata);
-        }
+        return await(kapuaIndexFuture);
+    }
 
-        return currentMetadata;
+    /**
+     * Create the index if it does not exist yet
+     * 
+     * @param indexName
+     * @return true if the index has been created by this call
+     * @throws IOException
+     * @throws EsDatastoreException
+     */
+    private boolean createIndexIfMissing(String indexName)
+        throws IOException, EsDatastoreException
+    {
+        Client esClient = EsClient.getcurrent();
+        IndicesExistsResponse existsResponse = esClient.admin().indices()
+                                                       .exists(new IndicesExistsRequest(indexName))
+                                                       .actionGet();
+        if (existsResponse.isExists())
+            return false;
+
+        try {
+            esClient.admin().indices()
+                    .prepareCreate(indexName)
+                    .setSettings(this.getIndexSettings())
+                    .execute()
+                    .actionGet();
+        }
+        catch (IndexAlreadyExistsException e) {
+            // Created in the meantime by another node
+            s_logger.debug("Index already exists: " + indexName);
+            return false;
+        }
+        return true;
     }
 
     public void updateMessageMappings(String accountName, long time, Map<String, EsMetric> esMetrics)
@@ -759,31 +912,85 @@ public class EsSchema
         if (esMetrics.size() == 0)
             return;
 
-        Metadata currentMetadata = null;
-        synchronized (schemaCacheSync) {
-            String newIndex = EsUtils.getActualIndexName(accountName, time);
-            currentMetadata = schemaCache.get(newIndex);
-            assert currentMetadata != null : NULL_METADATA_MSG;
-        }
+        String newIndex = EsUtils.getActualIndexName(accountName, time);
+        CompletableFuture<Metadata> metadataFuture = schemaCache.get(newIndex);
+        assert metadataFuture != null : NULL_METADATA_MSG;
+        Metadata currentMetadata = await(metadataFuture);
 
-        XContentBuilder builder = null;
+        // Claim the metrics not mapped yet: the first thread claiming a metric puts its mapping,
+        // the other threads wait for the mapping to be completed
         Map<String, EsMetric> diffs = null;
+        CompletableFuture<Void> diffsFuture = null;
+        List<CompletableFuture<Void>> pendingMappings = null;
+        for (Entry<String, EsMetric> el : esMetrics.entrySet()) {
+            CompletableFuture<Void> mappingFuture = currentMetadata.getMessageMappingsCache().get(el.getKey());
+            if (mappingFuture == null) {
+                if (diffsFuture == null)
+                    diffsFuture = new CompletableFuture<Void>();
+
+                mappingFuture = currentMetadata.getMessageMappingsCache().putIfAbsent(el.getKey(), diffsFuture);
+                if (mappingFuture == null) {
+                    if (diffs == null)
+                        diffs = new HashMap<String, EsMetric>();
+                    diffs.put(el.getKey(), el.getValue());
+                    continue;
+                }
+            }
 
-        synchronized (mappingsSync) {
+            if (!mappingFuture.isDone()) {
+                if (pendingMappings == null)
+                    pendingMappings = new ArrayList<CompletableFuture<Void>>();
+                pendingMappings.add(mappingFuture);
+            }
+        }
 
-            // Update mappings only if a metric is new (not in cache)
-            diffs = this.getMessageMappingDiffs(currentMetadata, esMetrics);
-            if (diffs == null || diffs.size() == 0)
-                return;
+        if (diffs != null) {
+            try {
+                XContentBuilder builder = this.getNewMessageMappingsBuilder(diffs);
+                s_logger.trace("Sending dynamic message mappings: " + builder.string());
+                this.putMapping(currentMetadata.indexName, MESSAGE_TYPE_NAME, builder);
+                diffsFuture.complete(null);
+            }
+            catch (IOException | ParseException | EsDatastoreException | RuntimeException e) {
+                // Let the next caller retry
+                for (String key : diffs.keySet()) {
+                    currentMetadata.getMessageMappingsCache().remove(key, diffsFuture);
+                }
+                diffsFuture.completeExceptionally(e);
+                throw e;
+            }
+        }
 
-            builder = this.getNewMessageMappingsBuilder(diffs);
+        if (pendingMappings != null) {
+            for (CompletableFuture<Void> pendingMapping : pendingMappings) {
+                await(pendingMapping);
+            }
         }
+    }
 
-        s_logger.trace("Sending dynamic message mappings: " + builder.string());
-        Client esClient = EsClient.getcurrent();
-        esClient.admin().indices().preparePutMapping(currentMetadata.indexName)
-                .setType(MESSAGE_TYPE_NAME)
-                .setSource(builder)
-                .execute().actionGet();
+    private static <T> T await(CompletableFuture<T> future)
+        throws IOException, EsDatastoreException
+    {
+        // Avoid the blocking get if already completed
+        if (future.isDone() && !future.isCompletedExceptionally())
+            return future.getNow(null);
+
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EsDatastoreException("Interrupted while waiting for the schema update");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof EsDatastoreException)
+                throw (EsDatastoreException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new EsDatastoreException(String.format("Schema update failed [%s]", cause));
+        }
     }
 }
@@ -57,6 +57,24 @@ public class EsUtils {
 	public static final String ES_TYPE_SHORT_DATE = "dte";
 	public static final String ES_TYPE_SHORT_BOOL = "bln";
 	public static final String ES_TYPE_SHORT_BINARY = "bin";
+
+	// the date formats are not thread safe and too expensive to be created for every converted value
+	private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT_MILLIS = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+			simpleDateFormat.setTimeZone(KapuaDateUtils.getKapuaTimeZone());
+			return simpleDateFormat;
+		}
+	};
+	private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT_SECONDS = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+			simpleDateFormat.setTimeZone(KapuaDateUtils.getKapuaTimeZone());
+			return simpleDateFormat;
+		}
+	};
 	
 	private static String normalizeIndexName(String name) {
 		String normName = null;
@@ -353,14 +371,10 @@ public class EsUtils {
 			return value == null ? null : Boolean.parseBoolean(value);
 		
 		if (type.equals("date")) {
-			SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
-			simpleDateFormat.setTimeZone(KapuaDateUtils.getKapuaTimeZone());
-			SimpleDateFormat simpleDateFormat2 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-			simpleDateFormat2.setTimeZone(KapuaDateUtils.getKapuaTimeZone());
 			try {
-				return value == null ? null : simpleDateFormat.parse(value);
+				return value == null ? null : DATE_FORMAT_MILLIS.get().parse(value);
 			} catch (ParseException exc) {
-				return value == null ? null : simpleDateFormat2.parse(value);
+				return value == null ? null : DATE_FORMAT_SECONDS.get().parse(value);
 			}
 		}
 		
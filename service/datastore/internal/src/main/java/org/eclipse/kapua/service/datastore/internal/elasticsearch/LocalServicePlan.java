@@ -34,6 +34,7 @@ public class LocalServicePlan
     private Date expirationDate = null;
     private boolean dataStorageEnabled = true;
     private int dataTimeToLive = 90;
+    private int rollupTimeToLive = 365;
     private DataIndexBy dataIndexBy = DataIndexBy.SERVER_TIMESTAMP;
     private MetricsIndexBy metricsIndexBy = MetricsIndexBy.TIMESTAMP;
     
@@ -71,6 +72,22 @@ public class LocalServicePlan
         this.dataTimeToLive = dataTimeToLive;
     }
 
+    /**
+     * Return the metric rollups time to live in days, independent of the raw data one ({@link #DISABLED} disables the rollups,
+     * {@link #UNLIMITED} keeps them forever)
+     * 
+     * @return
+     */
+    public int getRollupTimeToLive()
+    {
+        return rollupTimeToLive;
+    }
+
+    public void setRollupTimeToLive(int rollupTimeToLive)
+    {
+        this.rollupTimeToLive = rollupTimeToLive;
+    }
+
     public DataIndexBy getDataIndexBy()
     {
         return dataIndexBy;
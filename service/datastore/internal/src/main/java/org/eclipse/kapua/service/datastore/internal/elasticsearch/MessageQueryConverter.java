@@ -12,13 +12,77 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
+import java.net.UnknownHostException;
+
+import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.service.datastore.internal.model.query.AbstractStorableQueryConverter;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.eclipse.kapua.service.datastore.model.query.SortDirection;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 
 public class MessageQueryConverter extends AbstractStorableQueryConverter<Message, MessageQuery>
 {
+    /**
+     * Return the search request of the page following the cursor (the first page if the cursor is null).<BR>
+     * The messages are sorted by timestamp in the query sort direction and the query offset is ignored. One message more than the
+     * query limit is requested to know if a next page exists.
+     *
+     * @param indices
+     * @param type
+     * @param query
+     * @param cursor
+     * @return
+     * @throws KapuaException
+     * @throws EsDatastoreException
+     * @throws UnknownHostException
+     */
+    public SearchRequestBuilder toCursorSearchRequestBuilder(String[] indices, String type, MessageQuery query, EsMessageCursor cursor)
+        throws KapuaException, EsDatastoreException, UnknownHostException
+    {
+        SearchRequestBuilder searchReqBuilder = this.toSearchRequestBuilder(indices, type, query);
+        SortDirection sortDirection = query.getSort() != null ? query.getSort() : SortDirection.DESC;
+        if (cursor != null) {
+            PredicateConverter pc = new PredicateConverter();
+            searchReqBuilder.setQuery(QueryBuilders.boolQuery()
+                                                   .must(pc.toElasticsearchQuery(query.getPredicate()))
+                                                   .filter(cursor.toFilter(sortDirection)));
+        }
+
+        searchReqBuilder.setFrom(0)
+                        .setSize(query.getLimit() + 1)
+                        .addSort(EsSchema.MESSAGE_TIMESTAMP, SortDirection.ASC.equals(sortDirection) ? SortOrder.ASC : SortOrder.DESC);
+
+        return searchReqBuilder;
+    }
+
+    /**
+     * Return the scroll request of a full export: the messages are returned in index order (no sorting) in batches of the query limit
+     *
+     * @param indices
+     * @param type
+     * @param query
+     * @param keepAlive
+     * @return
+     * @throws KapuaException
+     * @throws EsDatastoreException
+     * @throws UnknownHostException
+     */
+    public SearchRequestBuilder toScrollRequestBuilder(String[] indices, String type, MessageQuery query, TimeValue keepAlive)
+        throws KapuaException, EsDatastoreException, UnknownHostException
+    {
+        SearchRequestBuilder searchReqBuilder = this.toSearchRequestBuilder(indices, type, query);
+        searchReqBuilder.setFrom(0)
+                        .addSort("_doc", SortOrder.ASC)
+                        .setScroll(keepAlive);
+
+        return searchReqBuilder;
+    }
+
     @Override
     protected String[] getIncludes(MessageFetchStyle fetchStyle)
     {
@@ -64,9 +128,9 @@ public class MessageQueryConverter extends AbstractStorableQueryConverter<Messag
     @Override
     protected String[] getFields()
     {
-        return new String[] {EsMessageField.ACCOUNT.toString(),
-                             EsMessageField.ASSET.toString(),
-                             EsMessageField.SEMANTIC_TOPIC.toString(),
-                             EsMessageField.TIMESTAMP.toString()};
+        return new String[] {EsMessageField.ACCOUNT.field(),
+                             EsMessageField.ASSET.field(),
+                             EsMessageField.SEMANTIC_TOPIC.field(),
+                             EsMessageField.TIMESTAMP.field()};
     }
 }
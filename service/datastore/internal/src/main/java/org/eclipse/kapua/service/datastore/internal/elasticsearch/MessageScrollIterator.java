@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.NoSuchElementException;
+
+import org.eclipse.kapua.KapuaErrorCodes;
+import org.eclipse.kapua.KapuaRuntimeException;
+import org.eclipse.kapua.service.datastore.model.Message;
+import org.eclipse.kapua.service.datastore.model.StorableIterator;
+import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Message iterator backed by an Elasticsearch scroll.<BR>
+ * A batch of hits is held at a time, the next one is fetched when the current one is consumed. The scroll is cleared when the last
+ * batch is consumed or when the iterator is closed.
+ *
+ * @since 1.0
+ */
+public class MessageScrollIterator implements StorableIterator<Message>
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageScrollIterator.class);
+
+    private final Client            client;
+    private final TimeValue         keepAlive;
+    private final TimeValue         timeout;
+    private final MessageFetchStyle fetchStyle;
+    private final MessageBuilder    messageBuilder = new MessageBuilder();
+
+    private String      scrollId;
+    private SearchHit[] hits;
+    private int         position;
+
+    /**
+     * Constructor
+     *
+     * @param client
+     * @param firstResponse the response of the scroll search request
+     * @param keepAlive the scroll keep alive
+     * @param timeout the scroll requests timeout
+     * @param fetchStyle
+     */
+    public MessageScrollIterator(Client client, SearchResponse firstResponse, TimeValue keepAlive, TimeValue timeout, MessageFetchStyle fetchStyle)
+    {
+        this.client = client;
+        this.keepAlive = keepAlive;
+        this.timeout = timeout;
+        this.fetchStyle = fetchStyle;
+        setResponse(firstResponse);
+    }
+
+    /**
+     * Return an already exhausted iterator (i.e. when there is no index to search)
+     *
+     * @return
+     */
+    public static MessageScrollIterator empty()
+    {
+        return new MessageScrollIterator(null, null, null, null, null);
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (hits != null && position < hits.length)
+            return true;
+
+        if (scrollId == null)
+            return false;
+
+        try {
+            setResponse(client.prepareSearchScroll(scrollId)
+                              .setScroll(keepAlive)
+                              .get(timeout));
+        }
+        catch (RuntimeException e) {
+            close();
+            throw new KapuaRuntimeException(KapuaErrorCodes.INTERNAL_ERROR, e, e.getMessage());
+        }
+        return hits != null && position < hits.length;
+    }
+
+    @Override
+    public Message next()
+    {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        try {
+            return messageBuilder.build(hits[position++], fetchStyle).getMessage();
+        }
+        catch (Exception e) {
+            throw new KapuaRuntimeException(KapuaErrorCodes.INTERNAL_ERROR, e, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        hits = null;
+        if (scrollId == null)
+            return;
+
+        String clearScrollId = scrollId;
+        scrollId = null;
+        try {
+            client.prepareClearScroll()
+                  .addScrollId(clearScrollId)
+                  .get(timeout);
+        }
+        catch (RuntimeException e) {
+            // the scroll is released by Elasticsearch anyway once the keep alive expires
+            logger.warn("Cannot clear the message scroll: {}", e.getMessage());
+        }
+    }
+
+    private void setResponse(SearchResponse response)
+    {
+        position = 0;
+        hits = response != null ? response.getHits().getHits() : null;
+        scrollId = response != null ? response.getScrollId() : null;
+
+        // exhausted: release the scroll
+        if (hits == null || hits.length == 0)
+            close();
+    }
+}
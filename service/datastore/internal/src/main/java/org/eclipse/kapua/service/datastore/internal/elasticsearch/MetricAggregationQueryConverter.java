@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaIllegalArgumentException;
+import org.eclipse.kapua.service.datastore.internal.model.MetricAggregationResultImpl;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationResult;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.metrics.stats.Stats;
+import org.elasticsearch.search.aggregations.metrics.tophits.TopHits;
+import org.elasticsearch.search.sort.SortOrder;
+import org.joda.time.DateTime;
+
+/**
+ * Converts a {@link MetricAggregationQuery} to an Elasticsearch date histogram aggregation (with a stats and a latest value sub
+ * aggregation per bucket) over the messages having the metric, and the aggregation response to a {@link MetricAggregationResult}.
+ *
+ * @since 1.0
+ */
+public class MetricAggregationQueryConverter
+{
+    private static final String BUCKETS_AGGREGATION = "buckets";
+    private static final String STATS_AGGREGATION   = "stats";
+    private static final String LAST_AGGREGATION    = "last";
+
+    public SearchRequestBuilder toSearchRequestBuilder(String[] indices, String type, MetricAggregationQuery query)
+        throws KapuaException, EsDatastoreException, UnknownHostException
+    {
+        if (query == null)
+            throw new EsDatastoreException(String.format("Query parameter is undefined"));
+
+        if (query.getInterval() <= 0)
+            throw new KapuaIllegalArgumentException("interval", String.valueOf(query.getInterval()));
+
+        String metricField = getMetricField(query);
+
+        BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
+        if (query.getPredicate() != null) {
+            PredicateConverter pc = new PredicateConverter();
+            boolQuery.must(pc.toElasticsearchQuery(query.getPredicate()));
+        }
+        boolQuery.filter(QueryBuilders.existsQuery(metricField));
+
+        SearchRequestBuilder searchReqBuilder = EsClient.getcurrent().prepareSearch(indices);
+        searchReqBuilder.setTypes(type)
+                        .setQuery(boolQuery)
+                        .setSize(0)
+                        .addAggregation(AggregationBuilders.dateHistogram(BUCKETS_AGGREGATION)
+                                                           .field(EsSchema.MESSAGE_TIMESTAMP)
+                                                           .interval(query.getInterval())
+                                                           .minDocCount(1)
+                                                           .subAggregation(AggregationBuilders.stats(STATS_AGGREGATION)
+                                                                                              .field(metricField))
+                                                           .subAggregation(AggregationBuilders.topHits(LAST_AGGREGATION)
+                                                                                              .setSize(1)
+                                                                                              .addSort(EsSchema.MESSAGE_TIMESTAMP, SortOrder.DESC)
+                                                                                              .setFetchSource(new String[] { metricField }, null)));
+
+        return searchReqBuilder;
+    }
+
+    public MetricAggregationResult toResult(SearchResponse response, MetricAggregationQuery query)
+        throws KapuaException
+    {
+        String[] metricPath = getMetricField(query).split("\\.");
+
+        Histogram histogram = response.getAggregations() != null ? (Histogram) response.getAggregations().get(BUCKETS_AGGREGATION) : null;
+        if (histogram == null)
+            return new MetricAggregationResultImpl(0);
+
+        List<? extends Histogram.Bucket> buckets = histogram.getBuckets();
+        MetricAggregationResultImpl result = new MetricAggregationResultImpl(buckets.size());
+        for (int i = 0; i < buckets.size(); i++) {
+            Histogram.Bucket bucket = buckets.get(i);
+            Stats stats = bucket.getAggregations().get(STATS_AGGREGATION);
+            TopHits lastHits = bucket.getAggregations().get(LAST_AGGREGATION);
+
+            double last = Double.NaN;
+            SearchHit[] hits = lastHits.getHits().getHits();
+            if (hits.length > 0)
+                last = getMetricValue(hits[0].getSource(), metricPath);
+
+            result.setBucket(i,
+                             ((DateTime) bucket.getKey()).getMillis(),
+                             stats.getCount(),
+                             stats.getMin(),
+                             stats.getMax(),
+                             stats.getAvg(),
+                             last);
+        }
+
+        return result;
+    }
+
+    /**
+     * Return the message document field of the metric value (i.e. {@code metrics.temperature.dbl})
+     *
+     * @param query
+     * @return
+     * @throws KapuaException
+     */
+    static String getMetricField(MetricAggregationQuery query)
+        throws KapuaException
+    {
+        if (query.getMetricName() == null)
+            throw new KapuaIllegalArgumentException("metricName", null);
+
+        Class<?> metricType = query.getMetricType();
+        if (metricType != Integer.class && metricType != Long.class && metricType != Float.class && metricType != Double.class)
+            throw new KapuaIllegalArgumentException("metricType", metricType != null ? metricType.getName() : null);
+
+        try {
+            String esType = EsUtils.convertToEsType(metricType);
+            return EsSchema.MESSAGE_MTR + "." + EsUtils.normalizeMetricName(query.getMetricName()) + "." + EsUtils.getEsTypeAcronym(esType);
+        }
+        catch (ParseException e) {
+            throw KapuaException.internalError(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static double getMetricValue(Map<String, Object> source, String[] metricPath)
+    {
+        Object value = source;
+        for (int i = 0; i < metricPath.length && value instanceof Map; i++)
+            value = ((Map<String, Object>) value).get(metricPath[i]);
+
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+}
@@ -38,19 +38,19 @@ public class PredicateConverter
             throw KapuaException.internalError(String.format("Predicate parameter is undefined"));
 
         if (predicate instanceof AndPredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchQuery((AndPredicate) predicate);
 
         if (predicate instanceof IdsPredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchQuery((IdsPredicate) predicate);
 
         if (predicate instanceof TopicMatchPredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchQuery((TopicMatchPredicate) predicate);
 
         if (predicate instanceof RangePredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchQuery((RangePredicate) predicate);
 
         if (predicate instanceof TermPredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchQuery((TermPredicate) predicate);
 
         throw KapuaException.internalError(String.format("Unknown predicate type %s", this.getClass().getName()));
     }
@@ -100,13 +100,13 @@ public class PredicateConverter
         BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
         
         if (kapuaTopic.isAnyAccount())
-            boolQuery.must(QueryBuilders.termQuery(EsMessageField.ACCOUNT.toString(), kapuaTopic.getAccount()));
+            boolQuery.must(QueryBuilders.termQuery(EsMessageField.ACCOUNT.field(), kapuaTopic.getAccount()));
 
         if (kapuaTopic.isAnyAsset())
-            boolQuery.must(QueryBuilders.termQuery(EsMessageField.ASSET.toString(), kapuaTopic.getAsset()));
+            boolQuery.must(QueryBuilders.termQuery(EsMessageField.ASSET.field(), kapuaTopic.getAsset()));
 
         if (kapuaTopic.isAnySubtopic())
-            boolQuery.must(QueryBuilders.termQuery(EsMessageField.SEMANTIC_TOPIC.toString(), kapuaTopic.getSemanticTopic()));
+            boolQuery.must(QueryBuilders.termQuery(EsMessageField.SEMANTIC_TOPIC.field(), kapuaTopic.getSemanticTopic()));
 
         return boolQuery;
     }
@@ -116,7 +116,7 @@ public class PredicateConverter
         if (predicate == null)
             throw KapuaException.internalError(String.format("Predicate parameter is undefined"));
        
-        RangeQueryBuilder rangeQuery = QueryBuilders.rangeQuery(predicate.getField().toString());
+        RangeQueryBuilder rangeQuery = QueryBuilders.rangeQuery(predicate.getField().field());
         if (predicate.getMinValue() != null)
             rangeQuery.from(predicate.getMinValue());
         if (predicate.getMaxValue() != null)
@@ -130,7 +130,7 @@ public class PredicateConverter
         if (predicate == null)
             throw KapuaException.internalError(String.format("Predicate parameter is undefined"));
        
-        TermQueryBuilder termQuery = QueryBuilders.termQuery(predicate.getField().toString(), predicate.getValue());
+        TermQueryBuilder termQuery = QueryBuilders.termQuery(predicate.getField().field(), predicate.getValue());
        
         return termQuery;
     }
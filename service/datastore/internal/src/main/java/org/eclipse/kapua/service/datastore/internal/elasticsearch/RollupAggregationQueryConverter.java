@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.net.UnknownHostException;
+import java.util.List;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaIllegalArgumentException;
+import org.eclipse.kapua.service.datastore.internal.model.MetricAggregationResultImpl;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationResult;
+import org.eclipse.kapua.service.datastore.model.query.AndPredicate;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
+import org.eclipse.kapua.service.datastore.model.query.RangePredicate;
+import org.eclipse.kapua.service.datastore.model.query.StorableField;
+import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
+import org.eclipse.kapua.service.datastore.model.query.TermPredicate;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.filter.Filter;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.metrics.max.Max;
+import org.elasticsearch.search.aggregations.metrics.min.Min;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+import org.elasticsearch.search.aggregations.metrics.tophits.TopHits;
+import org.elasticsearch.search.sort.SortOrder;
+import org.joda.time.DateTime;
+
+/**
+ * Converts a {@link MetricAggregationQuery} to an Elasticsearch date histogram aggregation over the metric rollups (see
+ * {@link RollupResolution}), and the aggregation response to a {@link MetricAggregationResult}.<BR>
+ * The rollups of a query bucket are merged summing the counts and the sums, and taking the minimum of the minimums, the maximum of the
+ * maximums and the most recent last value. A rollup bucket may be stored in more partial documents (i.e. by different nodes), they are
+ * merged the same way.<BR>
+ * The rollups are always filtered by account, since the rollup index names of an account may be a prefix of the ones of another account.
+ * The coverage query tells which part of a time range the rollups can answer (see {@link Coverage}).
+ *
+ * @since 1.0
+ */
+public class RollupAggregationQueryConverter
+{
+    private static final String BUCKETS_AGGREGATION = "buckets";
+    private static final String COUNT_AGGREGATION   = "count";
+    private static final String MIN_AGGREGATION     = "min";
+    private static final String MAX_AGGREGATION     = "max";
+    private static final String SUM_AGGREGATION     = "sum";
+    private static final String LAST_AGGREGATION    = "last";
+    private static final String ROLLUPS_AGGREGATION = "rollups";
+    private static final String FIRST_AGGREGATION   = "first";
+    private static final String GAPS_AGGREGATION    = "gaps";
+
+    /**
+     * Rollups coverage of an account
+     */
+    public static class Coverage
+    {
+
+        private final long firstBucketStart;
+        private final long gaps;
+
+        Coverage(long firstBucketStart, long gaps)
+        {
+            this.firstBucketStart = firstBucketStart;
+            this.gaps = gaps;
+        }
+
+        /**
+         * Return the start of the oldest rollup bucket of the account, {@link Long#MAX_VALUE} if there is no rollup
+         *
+         * @return
+         */
+        public long getFirstBucketStart()
+        {
+            return firstBucketStart;
+        }
+
+        /**
+         * Return the number of incomplete rollup buckets (the buckets some values were dropped from) in the time range
+         *
+         * @return
+         */
+        public long getGaps()
+        {
+            return gaps;
+        }
+    }
+
+    /**
+     * Return true if the rollups can answer the query predicate, that is if the predicate (alone or in a conjunction) only constrains the
+     * account, the asset and the timestamp.<BR>
+     * The timestamp constraints are applied to the rollup bucket start.
+     *
+     * @param predicate
+     * @return
+     */
+    public static boolean supports(StorablePredicate predicate)
+    {
+        if (predicate == null)
+            return true;
+
+        if (predicate instanceof AndPredicate) {
+            for (StorablePredicate subPredicate : ((AndPredicate) predicate).getPredicates()) {
+                if (!supports(subPredicate))
+                    return false;
+            }
+            return true;
+        }
+
+        if (predicate instanceof TermPredicate) {
+            StorableField field = ((TermPredicate) predicate).getField();
+            return field != null && (EsSchema.ROLLUP_ACCOUNT.equals(field.field()) || EsSchema.ROLLUP_ASSET.equals(field.field()));
+        }
+
+        if (predicate instanceof RangePredicate) {
+            StorableField field = ((RangePredicate) predicate).getField();
+            return field != null && EsSchema.ROLLUP_TIMESTAMP.equals(field.field());
+        }
+
+        return false;
+    }
+
+    public SearchRequestBuilder toSearchRequestBuilder(String[] indices, String accountName, MetricAggregationQuery query)
+        throws KapuaException, EsDatastoreException, UnknownHostException
+    {
+        if (query == null)
+            throw new EsDatastoreException(String.format("Query parameter is undefined"));
+
+        if (query.getInterval() <= 0)
+            throw new KapuaIllegalArgumentException("interval", String.valueOf(query.getInterval()));
+
+        // validates the metric name and type
+        MetricAggregationQueryConverter.getMetricField(query);
+
+        BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
+        if (query.getPredicate() != null) {
+            PredicateConverter pc = new PredicateConverter();
+            boolQuery.must(pc.toElasticsearchQuery(query.getPredicate()));
+        }
+        boolQuery.filter(QueryBuilders.termQuery(EsSchema.ROLLUP_ACCOUNT, accountName))
+                 .filter(QueryBuilders.termQuery(EsSchema.ROLLUP_METRIC, EsUtils.normalizeMetricName(query.getMetricName())))
+                 .filter(QueryBuilders.termQuery(EsSchema.ROLLUP_METRIC_TYPE, EsUtils.convertToEsType(query.getMetricType())));
+
+        SearchRequestBuilder searchReqBuilder = EsClient.getcurrent().prepareSearch(indices);
+        searchReqBuilder.setTypes(EsSchema.ROLLUP_TYPE_NAME)
+                        .setQuery(boolQuery)
+                        .setSize(0)
+                        .addAggregation(AggregationBuilders.dateHistogram(BUCKETS_AGGREGATION)
+                                                           .field(EsSchema.ROLLUP_TIMESTAMP)
+                                                           .interval(query.getInterval())
+                                                           .minDocCount(1)
+                                                           .subAggregation(AggregationBuilders.sum(COUNT_AGGREGATION).field(EsSchema.ROLLUP_COUNT))
+                                                           .subAggregation(AggregationBuilders.min(MIN_AGGREGATION).field(EsSchema.ROLLUP_MIN))
+                                                           .subAggregation(AggregationBuilders.max(MAX_AGGREGATION).field(EsSchema.ROLLUP_MAX))
+                                                           .subAggregation(AggregationBuilders.sum(SUM_AGGREGATION).field(EsSchema.ROLLUP_SUM))
+                                                           .subAggregation(AggregationBuilders.topHits(LAST_AGGREGATION)
+                                                                                              .setSize(1)
+                                                                                              .addSort(EsSchema.ROLLUP_LAST_TIMESTAMP, SortOrder.DESC)
+                                                                                              .setFetchSource(new String[] { EsSchema.ROLLUP_LAST }, null)));
+
+        return searchReqBuilder;
+    }
+
+    /**
+     * Return the request of the rollups coverage of the account: the oldest rollup bucket and the incomplete buckets in the time range
+     *
+     * @param indices
+     * @param accountName
+     * @param lower the range lower bound (inclusive), {@link Long#MIN_VALUE} if unbounded
+     * @param upper the range upper bound (inclusive), {@link Long#MAX_VALUE} if unbounded
+     * @return
+     * @throws UnknownHostException
+     * @throws EsDatastoreException
+     */
+    public SearchRequestBuilder toCoverageSearchRequestBuilder(String[] indices, String accountName, long lower, long upper)
+        throws EsDatastoreException, UnknownHostException
+    {
+        RangeQueryBuilder timestampRange = QueryBuilders.rangeQuery(EsSchema.ROLLUP_TIMESTAMP);
+        if (lower != Long.MIN_VALUE)
+            timestampRange.gte(lower);
+        if (upper != Long.MAX_VALUE)
+            timestampRange.lte(upper);
+
+        SearchRequestBuilder searchReqBuilder = EsClient.getcurrent().prepareSearch(indices);
+        searchReqBuilder.setTypes(EsSchema.ROLLUP_TYPE_NAME)
+                        .setQuery(QueryBuilders.boolQuery().filter(QueryBuilders.termQuery(EsSchema.ROLLUP_ACCOUNT, accountName)))
+                        .setSize(0)
+                        .addAggregation(AggregationBuilders.filter(ROLLUPS_AGGREGATION)
+                                                           .filter(QueryBuilders.boolQuery().mustNot(QueryBuilders.termQuery(EsSchema.ROLLUP_INCOMPLETE, true)))
+                                                           .subAggregation(AggregationBuilders.min(FIRST_AGGREGATION).field(EsSchema.ROLLUP_TIMESTAMP)))
+                        .addAggregation(AggregationBuilders.filter(GAPS_AGGREGATION)
+                                                           .filter(QueryBuilders.boolQuery()
+                                                                                .filter(QueryBuilders.termQuery(EsSchema.ROLLUP_INCOMPLETE, true))
+                                                                                .filter(timestampRange)));
+
+        return searchReqBuilder;
+    }
+
+    public Coverage toCoverage(SearchResponse response)
+    {
+        if (response.getAggregations() == null)
+            return new Coverage(Long.MAX_VALUE, 0);
+
+        Filter rollups = response.getAggregations().get(ROLLUPS_AGGREGATION);
+        Filter gaps = response.getAggregations().get(GAPS_AGGREGATION);
+        double first = ((Min) rollups.getAggregations().get(FIRST_AGGREGATION)).getValue();
+        return new Coverage(rollups.getDocCount() > 0 && !Double.isInfinite(first) ? (long) first : Long.MAX_VALUE, gaps.getDocCount());
+    }
+
+    public MetricAggregationResult toResult(SearchResponse response)
+    {
+        Histogram histogram = response.getAggregations() != null ? (Histogram) response.getAggregations().get(BUCKETS_AGGREGATION) : null;
+        if (histogram == null)
+            return new MetricAggregationResultImpl(0);
+
+        List<? extends Histogram.Bucket> buckets = histogram.getBuckets();
+        MetricAggregationResultImpl result = new MetricAggregationResultImpl(buckets.size());
+        for (int i = 0; i < buckets.size(); i++) {
+            Histogram.Bucket bucket = buckets.get(i);
+            long count = (long) ((Sum) bucket.getAggregations().get(COUNT_AGGREGATION)).getValue();
+            double sum = ((Sum) bucket.getAggregations().get(SUM_AGGREGATION)).getValue();
+            TopHits lastHits = bucket.getAggregations().get(LAST_AGGREGATION);
+
+            double last = Double.NaN;
+            SearchHit[] hits = lastHits.getHits().getHits();
+            if (hits.length > 0 && hits[0].getSource().get(EsSchema.ROLLUP_LAST) instanceof Number)
+                last = ((Number) hits[0].getSource().get(EsSchema.ROLLUP_LAST)).doubleValue();
+
+            result.setBucket(i,
+                             ((DateTime) bucket.getKey()).getMillis(),
+                             count,
+                             ((Min) bucket.getAggregations().get(MIN_AGGREGATION)).getValue(),
+                             ((Max) bucket.getAggregations().get(MAX_AGGREGATION)).getValue(),
+                             count > 0 ? sum / count : Double.NaN,
+                             last);
+        }
+
+        return result;
+    }
+}
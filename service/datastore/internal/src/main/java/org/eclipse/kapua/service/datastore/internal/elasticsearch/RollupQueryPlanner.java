@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.kapua.commons.util.KapuaDateUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.RollupAggregationQueryConverter.Coverage;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMessageDAO;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsRollupDAO;
+import org.eclipse.kapua.service.datastore.internal.model.MetricAggregationResultImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.AndPredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.MetricAggregationQueryImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.RangePredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationResult;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
+import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * Metric aggregation planner over the rollups.<BR>
+ * The rollups answer only the part of the query time range they completely cover, aligned to the query buckets:
+ * <ul>
+ * <li>from the end of the oldest rollup bucket of the account (the older messages were stored before the rollups were enabled, or the
+ * rollups are already expired)</li>
+ * <li>up to the current time less the lateness and two flush intervals (the rollups of the most recent messages may not be stored
+ * yet)</li>
+ * </ul>
+ * The rest of the range is aggregated from the raw messages and the buckets are concatenated (the buckets of both the aggregations are
+ * aligned to the epoch, so they don't overlap). If some values of a bucket in the range were dropped (see
+ * {@link EsSchema#ROLLUP_INCOMPLETE}) the whole range is aggregated from the raw messages.
+ *
+ * @since 1.0
+ */
+public class RollupQueryPlanner
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(RollupQueryPlanner.class);
+
+    private static final String METRIC_MODULE    = "datastore";
+    private static final String METRIC_COMPONENT = "rollup";
+
+    private static RollupQueryPlanner instance;
+
+    private final long    flushInterval;
+    private final long    lateness;
+
+    // metrics
+    private final Counter metricRollupQueries;
+    private final Counter metricPartialQueries;
+    private final Counter metricRawQueries;
+
+    private RollupQueryPlanner()
+    {
+        DatastoreSettings config = DatastoreSettings.getInstance();
+        flushInterval = config.getLong(DatastoreSettingKey.CONFIG_ROLLUP_FLUSH_INTERVAL);
+        lateness = config.getLong(DatastoreSettingKey.CONFIG_ROLLUP_LATENESS);
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        metricRollupQueries = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "queries", "rollup", "count");
+        metricPartialQueries = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "queries", "partial", "count");
+        metricRawQueries = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "queries", "raw", "count");
+    }
+
+    /**
+     * Return the planner instance
+     *
+     * @return
+     */
+    public static synchronized RollupQueryPlanner getInstance()
+    {
+        if (instance == null) {
+            instance = new RollupQueryPlanner();
+        }
+        return instance;
+    }
+
+    /**
+     * Aggregate the metric of the account, from the rollups at the provided resolution where they are complete and from the raw
+     * messages elsewhere
+     *
+     * @param accountName
+     * @param query
+     * @param resolution a resolution whose buckets can be merged into the query buckets (see {@link RollupResolution#forInterval(long)})
+     * @return
+     * @throws Exception
+     */
+    public MetricAggregationResult aggregate(String accountName, MetricAggregationQuery query, RollupResolution resolution)
+        throws Exception
+    {
+        EsIndexPlanner.TimestampRange range = EsIndexPlanner.getTimestampRange(query.getPredicate());
+        String[] rollupIndices = getRollupIndices(accountName, resolution, range.getLower());
+        if (rollupIndices.length == 0) {
+            metricRawQueries.inc();
+            return aggregateRaw(accountName, query, range.getLower(), range.getUpper());
+        }
+
+        Coverage coverage = EsRollupDAO.connection(EsClient.getcurrent())
+                                       .instance(rollupIndices)
+                                       .getCoverage(accountName, range.getLower(), range.getUpper());
+        long interval = query.getInterval();
+        long completeUpTo = KapuaDateUtils.getKapuaSysDate().getTime() - lateness - 2 * flushInterval;
+        if (coverage.getGaps() > 0 || coverage.getFirstBucketStart() == Long.MAX_VALUE || completeUpTo <= coverage.getFirstBucketStart()) {
+            logger.debug("Account {} - rollups not complete ({} incomplete buckets), aggregating the raw messages", accountName, coverage.getGaps());
+            metricRawQueries.inc();
+            return aggregateRaw(accountName, query, range.getLower(), range.getUpper());
+        }
+
+        // the rollup part [from, to) of the range, aligned to the query buckets
+        long from = ceil(Math.max(range.getLower(), coverage.getFirstBucketStart() + resolution.getMillis()), interval);
+        long to = floor(range.getUpper() == Long.MAX_VALUE ? completeUpTo : Math.min(range.getUpper() + 1, completeUpTo), interval);
+        if (from >= to) {
+            metricRawQueries.inc();
+            return aggregateRaw(accountName, query, range.getLower(), range.getUpper());
+        }
+
+        List<MetricAggregationResult> results = new ArrayList<MetricAggregationResult>(3);
+        if (range.getLower() < from)
+            results.add(aggregateRaw(accountName, query, range.getLower(), from - 1));
+
+        results.add(EsRollupDAO.connection(EsClient.getcurrent())
+                               .instance(rollupIndices)
+                               .aggregate(accountName, narrow(query, from, to - 1)));
+
+        if (range.getUpper() >= to)
+            results.add(aggregateRaw(accountName, query, to, range.getUpper()));
+
+        if (results.size() > 1)
+            metricPartialQueries.inc();
+        else
+            metricRollupQueries.inc();
+        logger.debug("Account {} - rollups answer [{}, {}), {} raw aggregations", accountName, from, to, results.size() - 1);
+
+        return MetricAggregationResultImpl.concat(results);
+    }
+
+    /**
+     * Return the existing rollup indices of the account (only of this account: the names of another account indices may start with
+     * the names of this account indices) which may hold a bucket later than the lower bound
+     */
+    private String[] getRollupIndices(String accountName, RollupResolution resolution, long lower)
+        throws Exception
+    {
+        String[] existingIndices = EsClient.getcurrent()
+                                           .admin()
+                                           .indices()
+                                           .prepareGetIndex()
+                                           .setIndices(resolution.getAnyIndexName(accountName))
+                                           .setFeatures(GetIndexRequest.Feature.ALIASES)
+                                           .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()))
+                                           .getIndices();
+
+        List<String> indices = new ArrayList<String>(existingIndices.length);
+        for (String index : existingIndices) {
+            long indexEnd = resolution.getIndexEnd(accountName, index);
+            if (indexEnd > 0 && indexEnd > lower)
+                indices.add(index);
+        }
+        return indices.toArray(new String[indices.size()]);
+    }
+
+    private MetricAggregationResult aggregateRaw(String accountName, MetricAggregationQuery query, long lower, long upper)
+        throws Exception
+    {
+        MetricAggregationQuery rawQuery = narrow(query, lower, upper);
+        String[] indices = EsIndexPlanner.getInstance().getMessageIndices(accountName, rawQuery.getPredicate());
+        if (indices.length == 0)
+            return new MetricAggregationResultImpl(0);
+
+        return EsMessageDAO.connection(EsClient.getcurrent())
+                           .instance(indices, EsSchema.MESSAGE_TYPE_NAME)
+                           .aggregate(rawQuery);
+    }
+
+    /**
+     * Return a copy of the query restricted to the timestamp bounds (inclusive, {@link Long#MIN_VALUE} and {@link Long#MAX_VALUE} if
+     * unbounded)
+     */
+    static MetricAggregationQuery narrow(MetricAggregationQuery query, long lower, long upper)
+    {
+        MetricAggregationQueryImpl narrowed = new MetricAggregationQueryImpl(query.getMetricName(), query.getMetricType(), query.getInterval());
+        if (lower == Long.MIN_VALUE && upper == Long.MAX_VALUE) {
+            narrowed.setPredicate(query.getPredicate());
+            return narrowed;
+        }
+
+        AndPredicateImpl predicate = new AndPredicateImpl();
+        if (query.getPredicate() != null)
+            predicate.addPredicate(query.getPredicate());
+        predicate.addPredicate(new RangePredicateImpl(EsMessageField.TIMESTAMP,
+                                                      lower != Long.MIN_VALUE ? new Date(lower) : null,
+                                                      upper != Long.MAX_VALUE ? new Date(upper) : null));
+        narrowed.setPredicate(predicate);
+        return narrowed;
+    }
+
+    static long floor(long timestamp, long interval)
+    {
+        return timestamp - Math.floorMod(timestamp, interval);
+    }
+
+    static long ceil(long timestamp, long interval)
+    {
+        return timestamp + Math.floorMod(-timestamp, interval);
+    }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.kapua.commons.util.KapuaDateUtils;
+
+/**
+ * Resolutions of the metric rollups computed at ingest time.<BR>
+ * The rollup buckets are aligned to the epoch (as the Elasticsearch date histogram buckets with a fixed interval are), and the rollups of
+ * an account are stored in monthly indices per resolution (i.e. {@code .rollup-1h-account-2016-05}). The rollup indices start with a dot
+ * so they are not matched by the account message indices wildcard.
+ *
+ * @since 1.0
+ */
+public enum RollupResolution
+{
+    MINUTE("1m", TimeUnit.MINUTES.toMillis(1)),
+    HOUR("1h", TimeUnit.HOURS.toMillis(1));
+
+    private static final Pattern INDEX_PERIOD_PATTERN = Pattern.compile("(\\d{4})-(\\d{2})");
+
+    private final String name;
+    private final long   millis;
+
+    private RollupResolution(String name, long millis)
+    {
+        this.name = name;
+        this.millis = millis;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public long getMillis()
+    {
+        return millis;
+    }
+
+    /**
+     * Return the start of the bucket the timestamp belongs to
+     *
+     * @param timestamp
+     * @return
+     */
+    public long getBucketStart(long timestamp)
+    {
+        return timestamp - Math.floorMod(timestamp, millis);
+    }
+
+    /**
+     * Return the rollup index name of the account for the provided timestamp
+     *
+     * @param accountName
+     * @param timestamp
+     * @return
+     */
+    public String getIndexName(String accountName, long timestamp)
+    {
+        Calendar cal = KapuaDateUtils.getKapuaCalendar();
+        cal.setTimeInMillis(timestamp);
+        return String.format("%s%04d-%02d", getIndexPrefix(accountName), cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1);
+    }
+
+    /**
+     * Return the wildcard matching all the rollup indices of the account
+     *
+     * @param accountName
+     * @return
+     */
+    public String getAnyIndexName(String accountName)
+    {
+        return getIndexPrefix(accountName) + "*";
+    }
+
+    /**
+     * Return the end (exclusive) of the period covered by a rollup index of the account, or -1 if the index is not a rollup index of
+     * the account at this resolution
+     *
+     * @param accountName
+     * @param indexName
+     * @return
+     */
+    public long getIndexEnd(String accountName, String indexName)
+    {
+        String prefix = getIndexPrefix(accountName);
+        if (!indexName.startsWith(prefix))
+            return -1;
+
+        // another account name may start with this account name
+        Matcher matcher = INDEX_PERIOD_PATTERN.matcher(indexName.substring(prefix.length()));
+        if (!matcher.matches())
+            return -1;
+
+        Calendar cal = KapuaDateUtils.getKapuaCalendar();
+        cal.clear();
+        cal.set(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)) - 1, 1);
+        cal.add(Calendar.MONTH, 1);
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * Return the coarsest resolution whose buckets can be merged into buckets of the provided interval, or null if the interval is not
+     * a multiple of any resolution
+     *
+     * @param interval the requested bucket size in milliseconds
+     * @return
+     */
+    public static RollupResolution forInterval(long interval)
+    {
+        RollupResolution[] resolutions = values();
+        for (int i = resolutions.length - 1; i >= 0; i--) {
+            if (interval > 0 && interval % resolutions[i].millis == 0)
+                return resolutions[i];
+        }
+        return null;
+    }
+
+    private String getIndexPrefix(String accountName)
+    {
+        return String.format(".rollup-%s-%s-", name, EsUtils.normalizedIndexName(accountName));
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch.dao;
+
+import java.util.Map;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+public class EsLastValueDAO
+{
+
+    private EsTypeDAO esTypeDAO;
+
+    private EsLastValueDAO()
+    {
+    }
+
+    public static EsLastValueDAO connection(Client client)
+    {
+        EsLastValueDAO esLastValueDAO = new EsLastValueDAO();
+        esLastValueDAO.esTypeDAO = EsTypeDAO.connection(client);
+        return esLastValueDAO;
+    }
+
+    public EsLastValueDAO instance(String indexName)
+    {
+        this.esTypeDAO.instance(indexName, EsSchema.LAST_VALUE_TYPE_NAME);
+        return this;
+    }
+
+    /**
+     * Put the last value type mapping (the put is a no-op if the mapping is already there)
+     */
+    public void putMapping()
+        throws Exception
+    {
+        this.esTypeDAO.getClient()
+                      .admin()
+                      .indices()
+                      .preparePutMapping(this.esTypeDAO.getIndexName())
+                      .setType(this.esTypeDAO.getTypeName())
+                      .setSource(EsSchema.getLastValueTypeBuilder())
+                      .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+    }
+
+    /**
+     * Return the request storing the device last values document (the document holds all the device metrics, so it replaces the stored one)
+     *
+     * @param clientId
+     * @param esLastValues
+     * @return
+     */
+    public IndexRequest getIndexRequest(String clientId, XContentBuilder esLastValues)
+    {
+        return new IndexRequest(this.esTypeDAO.getIndexName(), this.esTypeDAO.getTypeName(), clientId).source(esLastValues);
+    }
+
+    /**
+     * Return the source of the device last values document, or null if the document doesn't exist
+     *
+     * @param clientId
+     * @return
+     */
+    public Map<String, Object> find(String clientId)
+    {
+        GetResponse response = this.esTypeDAO.getClient()
+                                             .prepareGet(this.esTypeDAO.getIndexName(), this.esTypeDAO.getTypeName(), clientId)
+                                             .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        return response.isExists() ? response.getSourceAsMap() : null;
+    }
+
+    public BulkResponse bulk(BulkRequest bulkRequest)
+    {
+        return this.esTypeDAO.bulk(bulkRequest);
+    }
+}
@@ -19,15 +19,20 @@ import java.util.Map;
 
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMessageCursor;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.MessageBuilder;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.MessageQueryConverter;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MessageScrollIterator;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MetricAggregationQueryConverter;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.PredicateConverter;
 import org.eclipse.kapua.service.datastore.internal.model.MessageListResultImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.MessageQueryImpl;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.MessageListResult;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationResult;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.update.UpdateRequest;
@@ -75,6 +80,12 @@ public class EsMessageDAO
         return this;
     }
 
+    public EsMessageDAO instance(String[] indexNames, String typeName)
+    {
+        this.esTypeDAO.instance(indexNames, typeName);
+        return this;
+    }
+
     public UpdateRequest getUpsertReq(String id, Map<String, Object> esAsset)
     {
         return this.esTypeDAO.getUpsertRequest(id, esAsset);
@@ -85,11 +96,21 @@ public class EsMessageDAO
         return this.esTypeDAO.getUpsertRequest(id, esAsset);
     }
 
+    public UpdateRequest getUpsertReq(String id, byte[] esMessage)
+    {
+        return this.esTypeDAO.getUpsertRequest(id, esMessage);
+    }
+
     public UpdateResponse upsert(String id, XContentBuilder esAsset)
     {
         return this.esTypeDAO.upsert(id, esAsset);
     }
 
+    public UpdateResponse upsert(String id, byte[] esMessage)
+    {
+        return this.esTypeDAO.upsert(id, esMessage);
+    }
+
     public UpdateResponse upsert(String id, Map<String, Object> esAsset)
     {
         return this.esTypeDAO.upsert(id, esAsset);
@@ -231,7 +252,7 @@ public class EsMessageDAO
         localQuery.setLimit(query.getLimit()+1);
         
         MessageQueryConverter converter = new MessageQueryConverter();
-        SearchRequestBuilder builder = converter.toSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
+        SearchRequestBuilder builder = converter.toSearchRequestBuilder(esTypeDAO.getIndexNames(), esTypeDAO.getTypeName(), query);
         SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
         SearchHits searchHits = response.getHits();
         
@@ -277,7 +298,7 @@ public class EsMessageDAO
         throws Exception
     {
         MessageQueryConverter converter = new MessageQueryConverter();
-        SearchRequestBuilder builder = converter.toSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
+        SearchRequestBuilder builder = converter.toSearchRequestBuilder(esTypeDAO.getIndexNames(), esTypeDAO.getTypeName(), query);
         SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
         SearchHits searchHits = response.getHits();
 
@@ -287,6 +308,61 @@ public class EsMessageDAO
         return searchHits.getTotalHits();
     }
 
+    public MessageListResult query(MessageQuery query, EsMessageCursor cursor)
+        throws Exception
+    {
+        MessageQueryConverter converter = new MessageQueryConverter();
+        SearchRequestBuilder builder = converter.toCursorSearchRequestBuilder(esTypeDAO.getIndexNames(), esTypeDAO.getTypeName(), query, cursor);
+        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        SearchHits searchHits = response.getHits();
+
+        if (searchHits == null || searchHits.getHits().length == 0)
+            return new MessageListResultImpl();
+
+        List<Message> messages = new ArrayList<Message>();
+        MessageBuilder msgBuilder = new MessageBuilder();
+        SearchHit[] hits = searchHits.getHits();
+        for (int i = 0; i < hits.length && i < query.getLimit(); i++)
+            messages.add(msgBuilder.build(hits[i], query.getFetchStyle()).getMessage());
+
+        // one more message than the limit is fetched to know if there is a next page
+        String nextCursor = null;
+        if (hits.length > query.getLimit() && !messages.isEmpty())
+            nextCursor = EsMessageCursor.next(cursor, messages).encode();
+
+        long totalCount = 0;
+        if (query.isAskTotalCount())
+            totalCount = searchHits.getTotalHits();
+
+        if (totalCount > Integer.MAX_VALUE)
+            throw new Exception("Total hits exceeds integer max value");
+
+        MessageListResultImpl result = new MessageListResultImpl(nextCursor, (int) totalCount);
+        result.addAll(messages);
+        return result;
+    }
+
+    public MetricAggregationResult aggregate(MetricAggregationQuery query)
+        throws Exception
+    {
+        MetricAggregationQueryConverter converter = new MetricAggregationQueryConverter();
+        SearchRequestBuilder builder = converter.toSearchRequestBuilder(esTypeDAO.getIndexNames(), esTypeDAO.getTypeName(), query);
+        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+
+        return converter.toResult(response, query);
+    }
+
+    public MessageScrollIterator scroll(MessageQuery query, TimeValue keepAlive)
+        throws Exception
+    {
+        MessageQueryConverter converter = new MessageQueryConverter();
+        SearchRequestBuilder builder = converter.toScrollRequestBuilder(esTypeDAO.getIndexNames(), esTypeDAO.getTypeName(), query, keepAlive);
+        TimeValue timeout = TimeValue.timeValueMillis(EsUtils.getQueryTimeout());
+        SearchResponse response = builder.get(timeout);
+
+        return new MessageScrollIterator(esTypeDAO.getClient(), response, keepAlive, timeout, query.getFetchStyle());
+    }
+
 //    
 //    public SearchHits findByTopic(String asset,
 //                                  boolean isAnyAsset,
@@ -81,7 +81,7 @@ public class EsMetricDAO
         return this;
     }
 
-    public UpdateRequest getUpsertRequest(EsMetricDocumentBuilder esTopicMetric)
+    public UpdateRequest getUpsertRequest(EsMetricDocumentBuilder esTopicMetric) throws IOException
     {
         return this.esTypeDAO.getUpsertRequest(esTopicMetric.getId(), esTopicMetric.getContent());
     }
@@ -93,7 +93,7 @@ public class EsMetricDAO
         return esTypeDAO.upsert(metricInfos.get(0).getId(), metricInfos.get(0).getContent());
     }
 
-    public UpdateResponse upsert(EsMetricDocumentBuilder esTopicMetric)
+    public UpdateResponse upsert(EsMetricDocumentBuilder esTopicMetric) throws IOException
     {
         return esTypeDAO.upsert(esTopicMetric.getId(), esTopicMetric.getContent());
     }
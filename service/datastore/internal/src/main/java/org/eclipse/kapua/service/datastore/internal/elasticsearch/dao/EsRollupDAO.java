@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch.dao;
+
+import java.net.UnknownHostException;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.RollupAggregationQueryConverter;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.RollupAggregationQueryConverter.Coverage;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationResult;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+public class EsRollupDAO
+{
+
+    private EsTypeDAO esTypeDAO;
+
+    private EsRollupDAO()
+    {
+    }
+
+    public static EsRollupDAO connection(Client client)
+        throws UnknownHostException
+    {
+        EsRollupDAO esRollupDAO = new EsRollupDAO();
+        esRollupDAO.esTypeDAO = EsTypeDAO.connection(client);
+        return esRollupDAO;
+    }
+
+    public EsRollupDAO instance(String indexName)
+    {
+        this.esTypeDAO.instance(indexName, EsSchema.ROLLUP_TYPE_NAME);
+        return this;
+    }
+
+    public EsRollupDAO instance(String[] indexNames)
+    {
+        this.esTypeDAO.instance(indexNames, EsSchema.ROLLUP_TYPE_NAME);
+        return this;
+    }
+
+    /**
+     * Return the request storing the rollup document (the document holds the whole rollup bucket state, so it replaces the stored one)
+     *
+     * @param id
+     * @param esRollup
+     * @return
+     */
+    public IndexRequest getIndexRequest(String id, XContentBuilder esRollup)
+    {
+        return new IndexRequest(this.esTypeDAO.getIndexName(), this.esTypeDAO.getTypeName(), id).source(esRollup);
+    }
+
+    public BulkResponse bulk(BulkRequest bulkRequest)
+    {
+        return this.esTypeDAO.bulk(bulkRequest);
+    }
+
+    public MetricAggregationResult aggregate(String accountName, MetricAggregationQuery query)
+        throws Exception
+    {
+        RollupAggregationQueryConverter converter = new RollupAggregationQueryConverter();
+        SearchRequestBuilder builder = converter.toSearchRequestBuilder(esTypeDAO.getIndexNames(), accountName, query);
+        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+
+        return converter.toResult(response);
+    }
+
+    public Coverage getCoverage(String accountName, long lower, long upper)
+        throws Exception
+    {
+        RollupAggregationQueryConverter converter = new RollupAggregationQueryConverter();
+        SearchRequestBuilder builder = converter.toCoverageSearchRequestBuilder(esTypeDAO.getIndexNames(), accountName, lower, upper);
+        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+
+        return converter.toCoverage(response);
+    }
+}
@@ -34,6 +34,7 @@ import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
 import org.eclipse.kapua.service.datastore.model.query.TopicInfoQuery;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.unit.TimeValue;
@@ -77,11 +78,11 @@ public class EsTopicDAO
         this.esTypeDAO.instance(indexName, typeName);
         return this;
     }
-//
-//    public UpdateRequest getUpsertRequest(String id, XContentBuilder esAsset)
-//    {
-//        return this.esTypeDAO.getUpsertRequest(id, esAsset);
-//    }
+
+    public UpdateRequest getUpsertRequest(String id, XContentBuilder esAsset)
+    {
+        return this.esTypeDAO.getUpsertRequest(id, esAsset);
+    }
 
     public UpdateResponse upsert(TopicInfo topicInfo) throws IOException, KapuaInvalidTopicException
     {
@@ -37,6 +37,7 @@ public class EsTypeDAO
     private Client        client;
 
     private String        indexName;
+    private String[]      indexNames;
     private String        typeName;
     private EsDaoListener eventListener;
 
@@ -54,6 +55,11 @@ public class EsTypeDAO
         return indexName;
     }
 
+    protected String[] getIndexNames()
+    {
+        return indexNames;
+    }
+
     protected String getTypeName()
     {
         return typeName;
@@ -91,6 +97,22 @@ public class EsTypeDAO
     public EsTypeDAO instance(String indexName, String typeName)
     {
         this.indexName = indexName;
+        this.indexNames = new String[] { indexName };
+        this.typeName = typeName;
+        return this;
+    }
+
+    /**
+     * Search (and delete by query) over the provided indices. The write operations are not allowed on a multiple indices instance.
+     *
+     * @param indexNames
+     * @param typeName
+     * @return
+     */
+    public EsTypeDAO instance(String[] indexNames, String typeName)
+    {
+        this.indexName = null;
+        this.indexNames = indexNames;
         this.typeName = typeName;
         return this;
     }
@@ -143,6 +165,17 @@ public class EsTypeDAO
         return updRequest;
     }
 
+    public UpdateRequest getUpsertRequest(String id, byte[] esSource)
+    {
+
+        assert this.client != null : "ES client must be not null";
+
+        IndexRequest idxRequest = new IndexRequest(this.indexName, this.typeName, id).source(esSource);
+        UpdateRequest updRequest = new UpdateRequest(this.indexName, this.typeName, id).doc(esSource);
+        updRequest.upsert(idxRequest);
+        return updRequest;
+    }
+
     public UpdateResponse upsert(String id, XContentBuilder esAsset)
     {
 
@@ -156,6 +189,19 @@ public class EsTypeDAO
         return response;
     }
 
+    public UpdateResponse upsert(String id, byte[] esSource)
+    {
+
+        assert this.client != null : "ES client must be not null";
+
+        long timeout = EsUtils.getQueryTimeout();
+
+        IndexRequest idxRequest = new IndexRequest(this.indexName, this.typeName, id).source(esSource);
+        UpdateRequest updRequest = new UpdateRequest(this.indexName, this.typeName, id).doc(esSource);
+        UpdateResponse response = this.client.update(updRequest.upsert(idxRequest)).actionGet(TimeValue.timeValueMillis(timeout));
+        return response;
+    }
+
     public UpdateResponse upsert(String id, Map<String, Object> esMessage)
     {
 
@@ -176,7 +222,7 @@ public class EsTypeDAO
         TimeValue scrollTimeout = TimeValue.timeValueMillis(EsUtils.getScrollTimeout());
 
         // delete by query API is deprecated, scroll with bulk delete must be used
-        SearchResponse scrollResponse = this.client.prepareSearch(this.getIndexName())
+        SearchResponse scrollResponse = this.client.prepareSearch(this.getIndexNames())
                                                    .setTypes(this.getTypeName())
                                                    .setFetchSource(false)
                                                    .addSort("_doc", SortOrder.ASC)
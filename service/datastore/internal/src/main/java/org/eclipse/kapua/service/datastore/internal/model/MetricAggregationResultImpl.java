@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.model;
+
+import java.util.List;
+
+import org.eclipse.kapua.service.datastore.model.MetricAggregationResult;
+
+public class MetricAggregationResultImpl implements MetricAggregationResult
+{
+    private final long[]   timestamps;
+    private final long[]   counts;
+    private final double[] min;
+    private final double[] max;
+    private final double[] avg;
+    private final double[] last;
+
+    public MetricAggregationResultImpl(int size)
+    {
+        timestamps = new long[size];
+        counts = new long[size];
+        min = new double[size];
+        max = new double[size];
+        avg = new double[size];
+        last = new double[size];
+    }
+
+    /**
+     * Set the values of the bucket at the given position
+     */
+    public void setBucket(int position, long timestamp, long count, double min, double max, double avg, double last)
+    {
+        this.timestamps[position] = timestamp;
+        this.counts[position] = count;
+        this.min[position] = min;
+        this.max[position] = max;
+        this.avg[position] = avg;
+        this.last[position] = last;
+    }
+
+    /**
+     * Concatenate the buckets of the results (the results must be sorted by time and must not overlap)
+     *
+     * @param results
+     * @return
+     */
+    public static MetricAggregationResultImpl concat(List<MetricAggregationResult> results)
+    {
+        int size = 0;
+        for (MetricAggregationResult result : results)
+            size += result.size();
+
+        MetricAggregationResultImpl concatenated = new MetricAggregationResultImpl(size);
+        int position = 0;
+        for (MetricAggregationResult result : results) {
+            for (int i = 0; i < result.size(); i++)
+                concatenated.setBucket(position++,
+                                       result.getTimestamps()[i],
+                                       result.getCounts()[i],
+                                       result.getMin()[i],
+                                       result.getMax()[i],
+                                       result.getAvg()[i],
+                                       result.getLast()[i]);
+        }
+        return concatenated;
+    }
+
+    @Override
+    public int size()
+    {
+        return timestamps.length;
+    }
+
+    @Override
+    public long[] getTimestamps()
+    {
+        return timestamps;
+    }
+
+    @Override
+    public long[] getCounts()
+    {
+        return counts;
+    }
+
+    @Override
+    public double[] getMin()
+    {
+        return min;
+    }
+
+    @Override
+    public double[] getMax()
+    {
+        return max;
+    }
+
+    @Override
+    public double[] getAvg()
+    {
+        return avg;
+    }
+
+    @Override
+    public double[] getLast()
+    {
+        return last;
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.model;
+
+import java.util.Date;
+
+import org.eclipse.kapua.service.datastore.model.MetricLastValue;
+import org.eclipse.kapua.service.datastore.model.StorableId;
+
+/**
+ * Immutable last known value of a device metric
+ *
+ * @since 1.0
+ */
+public class MetricLastValueImpl implements MetricLastValue
+{
+    private final String     clientId;
+    private final String     name;
+    private final Object     value;
+    private final long       timestamp;
+    private final StorableId messageId;
+
+    public MetricLastValueImpl(String clientId, String name, Object value, long timestamp, StorableId messageId)
+    {
+        this.clientId = clientId;
+        this.name = name;
+        this.value = value;
+        this.timestamp = timestamp;
+        this.messageId = messageId;
+    }
+
+    @Override
+    public String getClientId()
+    {
+        return clientId;
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public Object getValue()
+    {
+        return value;
+    }
+
+    @Override
+    public Date getTimestamp()
+    {
+        return new Date(timestamp);
+    }
+
+    /**
+     * The timestamp of the message carrying the value (milliseconds)
+     *
+     * @return
+     */
+    public long getTime()
+    {
+        return timestamp;
+    }
+
+    @Override
+    public StorableId getMessageId()
+    {
+        return messageId;
+    }
+}
@@ -26,6 +26,11 @@ import org.elasticsearch.action.search.SearchRequestBuilder;
 public abstract class AbstractStorableQueryConverter<S extends Storable, Q extends StorableQuery<S>>
 {
     public SearchRequestBuilder toCountRequestBuilder(String indices, String type, Q query) throws KapuaException, EsDatastoreException, UnknownHostException
+    {
+        return this.toCountRequestBuilder(new String[] { indices }, type, query);
+    }
+
+    public SearchRequestBuilder toCountRequestBuilder(String[] indices, String type, Q query) throws KapuaException, EsDatastoreException, UnknownHostException
     {
         if (query == null)
             throw new EsDatastoreException(String.format("Query parameter is undefined"));
@@ -40,6 +45,11 @@ public abstract class AbstractStorableQueryConverter<S extends Storable, Q exten
     }
 
     public SearchRequestBuilder toSearchRequestBuilder(String indices, String type, Q query) throws KapuaException, EsDatastoreException, UnknownHostException
+    {
+        return this.toSearchRequestBuilder(new String[] { indices }, type, query);
+    }
+
+    public SearchRequestBuilder toSearchRequestBuilder(String[] indices, String type, Q query) throws KapuaException, EsDatastoreException, UnknownHostException
     {
         if (query == null)
             throw new EsDatastoreException(String.format("Query parameter is undefined"));
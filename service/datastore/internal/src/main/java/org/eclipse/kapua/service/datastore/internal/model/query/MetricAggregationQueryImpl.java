@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.model.query;
+
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
+import org.eclipse.kapua.service.datastore.model.query.StorablePredicate;
+
+public class MetricAggregationQueryImpl implements MetricAggregationQuery
+{
+    private StorablePredicate predicate;
+    private String            metricName;
+    private Class<?>          metricType;
+    private long              interval;
+
+    public MetricAggregationQueryImpl()
+    {
+    }
+
+    public MetricAggregationQueryImpl(String metricName, Class<?> metricType, long interval)
+    {
+        this.metricName = metricName;
+        this.metricType = metricType;
+        this.interval = interval;
+    }
+
+    @Override
+    public StorablePredicate getPredicate()
+    {
+        return predicate;
+    }
+
+    @Override
+    public void setPredicate(StorablePredicate predicate)
+    {
+        this.predicate = predicate;
+    }
+
+    @Override
+    public String getMetricName()
+    {
+        return metricName;
+    }
+
+    @Override
+    public void setMetricName(String metricName)
+    {
+        this.metricName = metricName;
+    }
+
+    @Override
+    public Class<?> getMetricType()
+    {
+        return metricType;
+    }
+
+    @Override
+    public void setMetricType(Class<?> metricType)
+    {
+        this.metricType = metricType;
+    }
+
+    @Override
+    public long getInterval()
+    {
+        return interval;
+    }
+
+    @Override
+    public void setInterval(long interval)
+    {
+        this.interval = interval;
+    }
+}
@@ -25,9 +25,31 @@ public enum DatastoreSettingKey implements SettingKey
 
     CONFIG_CACHE_LOCAL_EXPIRE_AFTER("datastore.cache.local.expire.after"),
     CONFIG_CACHE_LOCAL_SIZE_MAXIMUM("datastore.cache.local.size.maximum"),
+    CONFIG_CACHE_ACCOUNT_EXPIRE_AFTER("datastore.cache.account.expire.after"),
     CONFIG_TOPIC_MAX_DEPTH("datastore.elasticsearch.topic.max.depth"),
     CONFIG_DATA_STORAGE_ENABLE_TIMING_PROFILE("datastore.enableTimingProfile"),
-    CONFIG_DATA_STORAGE_TIMING_PROFILE_THRESHOLD("datastore.timingProfileThreshold");
+    CONFIG_DATA_STORAGE_TIMING_PROFILE_THRESHOLD("datastore.timingProfileThreshold"),
+
+    CONFIG_INGEST_BULK_ENABLED("datastore.ingest.bulk.enabled"),
+    CONFIG_INGEST_QUEUE_SIZE("datastore.ingest.queue.size"),
+    CONFIG_INGEST_QUEUE_OFFER_TIMEOUT("datastore.ingest.queue.offer.timeout"),
+    CONFIG_INGEST_BULK_SIZE("datastore.ingest.bulk.size"),
+
+    CONFIG_QUERY_INDEX_PRUNING_ENABLED("datastore.query.index.pruning.enabled"),
+    CONFIG_QUERY_INDEX_PRUNING_MAX_INDICES("datastore.query.index.pruning.max.indices"),
+    CONFIG_QUERY_INDEX_PRUNING_FUTURE_WINDOW("datastore.query.index.pruning.future.window"),
+
+    CONFIG_ROLLUP_ENABLED("datastore.rollup.enabled"),
+    CONFIG_ROLLUP_FLUSH_INTERVAL("datastore.rollup.flush.interval"),
+    CONFIG_ROLLUP_LATENESS("datastore.rollup.lateness"),
+    CONFIG_ROLLUP_BUCKETS_MAX("datastore.rollup.buckets.max"),
+    CONFIG_ROLLUP_QUERY_ENABLED("datastore.rollup.query.enabled"),
+
+    CONFIG_LAST_VALUE_ENABLED("datastore.lastvalue.enabled"),
+    CONFIG_LAST_VALUE_DEVICES_MAX("datastore.lastvalue.devices.max"),
+    CONFIG_LAST_VALUE_LOOKUPS_MAX("datastore.lastvalue.lookups.max"),
+    CONFIG_LAST_VALUE_SNAPSHOT_ENABLED("datastore.lastvalue.snapshot.enabled"),
+    CONFIG_LAST_VALUE_SNAPSHOT_INTERVAL("datastore.lastvalue.snapshot.interval");
     
 	private String key;
 	
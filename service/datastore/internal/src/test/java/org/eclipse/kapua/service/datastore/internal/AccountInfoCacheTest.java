@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.LocalServicePlan;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+public class AccountInfoCacheTest extends Assert
+{
+
+    private static final KapuaId SCOPE_ID       = new KapuaEid(BigInteger.ONE);
+    private static final KapuaId OTHER_SCOPE_ID = new KapuaEid(BigInteger.TEN);
+
+    @Test
+    public void testGet()
+    {
+        AccountInfoCache cache = new AccountInfoCache(10, 60);
+        AccountInfo accountInfo = newAccountInfo();
+
+        cache.put(SCOPE_ID, accountInfo, cache.getGeneration());
+
+        assertSame(accountInfo, cache.get(SCOPE_ID));
+        assertNull(cache.get(OTHER_SCOPE_ID));
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        AccountInfoCache cache = new AccountInfoCache(10, 60);
+        AccountInfo otherAccountInfo = newAccountInfo();
+
+        cache.put(SCOPE_ID, newAccountInfo(), cache.getGeneration());
+        cache.put(OTHER_SCOPE_ID, otherAccountInfo, cache.getGeneration());
+        cache.invalidate(SCOPE_ID);
+
+        assertNull(cache.get(SCOPE_ID));
+        assertSame(otherAccountInfo, cache.get(OTHER_SCOPE_ID));
+    }
+
+    @Test
+    public void testPutAfterInvalidate()
+    {
+        AccountInfoCache cache = new AccountInfoCache(10, 60);
+
+        // the info is loaded, then the service plan is changed by another request before it is cached
+        long loadGeneration = cache.getGeneration();
+        cache.invalidate(SCOPE_ID);
+        cache.put(SCOPE_ID, newAccountInfo(), loadGeneration);
+
+        assertNull(cache.get(SCOPE_ID));
+    }
+
+    @Test
+    public void testExpireAfterTheTtl()
+    {
+        final AtomicLong nanos = new AtomicLong();
+        AccountInfoCache cache = new AccountInfoCache(10, 60, new Ticker() {
+
+            @Override
+            public long read()
+            {
+                return nanos.get();
+            }
+        });
+
+        // a service plan changed by another node is not invalidated here, it is reloaded once the entry expires
+        cache.put(SCOPE_ID, newAccountInfo(), cache.getGeneration());
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertNotNull(cache.get(SCOPE_ID));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertNull(cache.get(SCOPE_ID));
+    }
+
+    private static AccountInfo newAccountInfo()
+    {
+        return new AccountInfo(null, new LocalServicePlan(Collections.<String, Object> emptyMap()));
+    }
+}
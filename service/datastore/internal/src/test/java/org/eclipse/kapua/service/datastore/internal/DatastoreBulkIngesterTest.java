@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.commons.metric.MetricsServiceImpl;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.eclipse.kapua.service.datastore.model.StorableId;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DatastoreBulkIngesterTest extends Assert
+{
+
+    @Test
+    public void testFlushWithoutWaitingForAFullBulk()
+        throws Exception
+    {
+        TestIngester ingester = new TestIngester(100, 500);
+        ingester.start();
+        try {
+            CompletableFuture<StorableId> future = ingester.submit(null, new EsDocumentBuilder());
+
+            assertNotNull(future.get(1, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList(1), ingester.bulkSizes);
+        }
+        finally {
+            ingester.stop();
+        }
+    }
+
+    @Test
+    public void testCoalesceTheMessagesQueuedDuringAFlush()
+        throws Exception
+    {
+        TestIngester ingester = new TestIngester(100, 3);
+        ingester.hold();
+        ingester.start();
+        try {
+            List<CompletableFuture<StorableId>> futures = new ArrayList<>();
+            futures.add(ingester.submit(null, new EsDocumentBuilder()));
+            ingester.awaitFlushing();
+
+            // queued while the first bulk is written
+            for (int i = 0; i < 5; i++) {
+                futures.add(ingester.submit(null, new EsDocumentBuilder()));
+            }
+            ingester.release();
+
+            for (CompletableFuture<StorableId> future : futures) {
+                assertNotNull(future.get(1, TimeUnit.SECONDS));
+            }
+            assertEquals(Arrays.asList(1, 3, 2), ingester.bulkSizes);
+        }
+        finally {
+            ingester.stop();
+        }
+    }
+
+    @Test
+    public void testRejectWhenTheQueueIsFull()
+        throws Exception
+    {
+        TestIngester ingester = new TestIngester(1, 500);
+        ingester.hold();
+        ingester.start();
+        try {
+            ingester.submit(null, new EsDocumentBuilder());
+            ingester.awaitFlushing();
+            ingester.submit(null, new EsDocumentBuilder());
+
+            try {
+                ingester.submit(null, new EsDocumentBuilder());
+                fail("The message should be rejected");
+            }
+            catch (EsDatastoreException e) {
+                // expected
+            }
+        }
+        finally {
+            ingester.release();
+            ingester.stop();
+        }
+    }
+
+    @Test
+    public void testStopFlushesTheQueuedMessages()
+        throws Exception
+    {
+        TestIngester ingester = new TestIngester(100, 2);
+        ingester.hold();
+        ingester.start();
+
+        List<CompletableFuture<StorableId>> futures = new ArrayList<>();
+        futures.add(ingester.submit(null, new EsDocumentBuilder()));
+        ingester.awaitFlushing();
+        for (int i = 0; i < 4; i++) {
+            futures.add(ingester.submit(null, new EsDocumentBuilder()));
+        }
+
+        Thread stopper = new Thread(() -> ingester.stop());
+        stopper.start();
+        ingester.release();
+        stopper.join(5000);
+
+        for (CompletableFuture<StorableId> future : futures) {
+            assertTrue(future.isDone());
+            assertFalse(future.isCompletedExceptionally());
+        }
+        assertEquals(0, ingester.getQueueSize());
+
+        try {
+            ingester.submit(null, new EsDocumentBuilder());
+            fail("The message should be rejected once the ingester is stopped");
+        }
+        catch (EsDatastoreException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Ingester completing the messages without writing them, optionally holding the flush until released
+     */
+    private static class TestIngester extends DatastoreBulkIngester
+    {
+
+        private final List<Integer>   bulkSizes = new CopyOnWriteArrayList<>();
+        private final CountDownLatch  flushing  = new CountDownLatch(1);
+        private volatile CountDownLatch released = new CountDownLatch(0);
+
+        private TestIngester(int queueSize, int bulkSize)
+        {
+            super(queueSize, 10, bulkSize, new MetricsServiceImpl());
+        }
+
+        private void hold()
+        {
+            released = new CountDownLatch(1);
+        }
+
+        private void release()
+        {
+            released.countDown();
+        }
+
+        private void awaitFlushing()
+            throws InterruptedException
+        {
+            assertTrue(flushing.await(1, TimeUnit.SECONDS));
+        }
+
+        @Override
+        void flush(List<IngestItem> batch)
+        {
+            flushing.countDown();
+            try {
+                released.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            bulkSizes.add(batch.size());
+            for (IngestItem item : batch) {
+                item.getFuture().complete(new StorableIdImpl("message-" + bulkSizes.size()));
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.eclipse.kapua.service.datastore.internal.model.MetricLastValueImpl;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeviceLastValuesTest extends Assert
+{
+
+    @Test
+    public void testOutOfOrderUpdate()
+        throws Exception
+    {
+        DeviceLastValues device = new DeviceLastValues("account", "device-1");
+        device.update(value("temperature", 21.5, 2000L));
+        device.update(value("temperature", 19.0, 1000L));
+
+        assertEquals(21.5, device.get("temperature").getValue());
+        assertEquals(2000L, device.get("temperature").getTime());
+        assertTrue(device.takeDirty());
+        assertFalse(device.takeDirty());
+    }
+
+    @Test
+    public void testSnapshotRoundTrip()
+        throws Exception
+    {
+        DeviceLastValues device = new DeviceLastValues("account", "device-1");
+        device.update(value("int", 1, 1000L));
+        device.update(value("long", 2L, 1000L));
+        device.update(value("float", 3.5f, 1000L));
+        device.update(value("double", 4.5, 1000L));
+        device.update(value("string", "on", 1000L));
+        device.update(value("bool", true, 1000L));
+        device.update(value("date", new Date(500L), 1000L));
+        device.update(value("metric.with.dots", 5, 1000L));
+
+        Map<String, Object> source = XContentHelper.convertToMap(device.toDocument(3000L).bytes(), false).v2();
+
+        // the device restarted and published a newer temperature before loading its snapshot
+        DeviceLastValues loaded = new DeviceLastValues("account", "device-1");
+        loaded.update(value("int", 10, 2000L));
+        loaded.load(source, 4000L);
+
+        assertEquals(10, loaded.get("int").getValue());
+        assertEquals(2L, loaded.get("long").getValue());
+        assertEquals(3.5f, loaded.get("float").getValue());
+        assertEquals(4.5, loaded.get("double").getValue());
+        assertEquals("on", loaded.get("string").getValue());
+        assertEquals(true, loaded.get("bool").getValue());
+        assertEquals(new Date(500L), loaded.get("date").getValue());
+        assertEquals(5, loaded.get("metric.with.dots").getValue());
+        assertEquals("message-1000", loaded.get("long").getMessageId().toString());
+        assertEquals(4000L, loaded.getLoadedOn());
+    }
+
+    private static MetricLastValueImpl value(String name, Object value, long timestamp)
+    {
+        return new MetricLastValueImpl("device-1", name, value, timestamp, new StorableIdImpl("message-" + timestamp));
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.RollupResolution;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RollupBucketTest extends Assert
+{
+
+    private static final long START = 1400000040000L;
+
+    @Test
+    public void testAdd()
+        throws Exception
+    {
+        RollupBucket bucket = new RollupBucket("id", "account", "asset", "temperature", "double", RollupResolution.MINUTE, START);
+        assertTrue(bucket.add(20.0, START + 2000L));
+        assertTrue(bucket.add(10.0, START + 3000L));
+        // out of order value, it doesn't replace the last value
+        assertTrue(bucket.add(30.0, START + 1000L));
+
+        assertEquals(3, bucket.getCount());
+        assertEquals(10.0, bucket.getMin(), 0.0);
+        assertEquals(30.0, bucket.getMax(), 0.0);
+        assertEquals(60.0, bucket.getSum(), 0.0);
+        assertEquals(10.0, bucket.getLast(), 0.0);
+    }
+
+    @Test
+    public void testEviction()
+        throws Exception
+    {
+        RollupBucket bucket = new RollupBucket("id", "account", "asset", "temperature", "double", RollupResolution.MINUTE, START);
+        bucket.add(1.0, START);
+        long storedVersion = bucket.getVersion();
+        bucket.add(2.0, START + 1000L);
+
+        // changed after the document was built
+        long closeTime = START + RollupResolution.MINUTE.getMillis();
+        assertFalse(bucket.flushed(storedVersion, closeTime));
+        assertTrue(bucket.isDirty());
+
+        // stored but still open
+        assertFalse(bucket.flushed(bucket.getVersion(), closeTime - 1));
+        assertFalse(bucket.isDirty());
+
+        assertTrue(bucket.flushed(bucket.getVersion(), closeTime));
+        assertFalse(bucket.add(3.0, START + 2000L));
+        assertEquals(2, bucket.getCount());
+    }
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
+import org.eclipse.kapua.service.datastore.internal.model.PayloadImpl;
+import org.eclipse.kapua.service.datastore.internal.model.PositionImpl;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.eclipse.kapua.service.datastore.model.Message;
+import org.eclipse.kapua.service.datastore.model.Position;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EsDocumentBuilderTest extends Assert
+{
+
+    private static final String ACCOUNT = "test-account";
+    private static final String TOPIC   = ACCOUNT + "/test-asset/sensors/temperature";
+
+    @Test
+    public void testMessageDocument()
+        throws Exception
+    {
+        Message message = newMessage(true);
+        StorableIdImpl messageId = new StorableIdImpl("test-message");
+        Date indexedOn = new Date(1000L);
+        Date receivedOn = new Date(2000L);
+
+        EsDocumentBuilder documentBuilder = new EsDocumentBuilder().build(ACCOUNT, messageId, message, indexedOn, receivedOn);
+
+        // the single pass encoding must produce the same document of the map based encoding
+        assertEquals(messageId.toString(), documentBuilder.getMessageId());
+        assertEquals(toMap(mapEncoding(message, indexedOn, receivedOn)),
+                     XContentHelper.convertToMap(documentBuilder.getMessage(), false).v2());
+
+        assertEquals(4, documentBuilder.getMessageMetrics().size());
+        assertEquals(4, documentBuilder.getTopicMetrics().size());
+        Set<String> metricIds = new HashSet<String>();
+        for (EsMetricDocumentBuilder metricBuilder : documentBuilder.getTopicMetrics()) {
+            metricIds.add(metricBuilder.getId());
+        }
+        assertEquals(4, metricIds.size());
+    }
+
+    @Test
+    public void testMessageDocumentWithoutPosition()
+        throws Exception
+    {
+        Message message = newMessage(false);
+        StorableIdImpl messageId = new StorableIdImpl("test-message");
+        Date now = new Date();
+
+        byte[] source = new EsDocumentBuilder().build(ACCOUNT, messageId, message, now, now).getMessage();
+
+        assertEquals(toMap(mapEncoding(message, now, now)), XContentHelper.convertToMap(source, false).v2());
+    }
+
+    @Test
+    public void testMetadataDocuments()
+        throws Exception
+    {
+        StorableIdImpl messageId = new StorableIdImpl("test-message");
+        Date indexedOn = new Date(1000L);
+
+        EsDocumentBuilder documentBuilder = new EsDocumentBuilder().build(ACCOUNT, messageId, newMessage(false), indexedOn, indexedOn);
+
+        Map<String, Object> topic = toMap(documentBuilder.getTopicBuilder());
+        assertEquals("sensors/temperature", topic.get(EsSchema.TOPIC_SEM_NAME));
+        assertEquals("test-asset", topic.get(EsSchema.TOPIC_ASSET));
+        assertEquals(ACCOUNT, topic.get(EsSchema.TOPIC_ACCOUNT));
+        assertEquals(messageId.toString(), topic.get(EsSchema.TOPIC_MESSAGE_ID));
+        assertSame(documentBuilder.getTopicBuilder(), documentBuilder.getTopicBuilder());
+
+        Map<String, Object> asset = toMap(documentBuilder.getAssetBuilder());
+        assertEquals("test-asset", asset.get(EsSchema.ASSET_NAME));
+        assertEquals(ACCOUNT, asset.get(EsSchema.ASSET_ACCOUNT));
+        assertEquals(messageId.toString(), asset.get(EsSchema.ASSET_MESSAGE_ID));
+
+        for (EsMetricDocumentBuilder metricBuilder : documentBuilder.getTopicMetrics()) {
+            Map<String, Object> metric = toMap(metricBuilder.getContent());
+            assertEquals(ACCOUNT, metric.get(EsSchema.METRIC_ACCOUNT));
+            assertEquals("test-asset", metric.get(EsSchema.METRIC_ASSET));
+            assertTrue(metric.get(EsSchema.METRIC_MTR) instanceof Map);
+        }
+
+        // the documents of another message are not built from a stale state
+        documentBuilder.clear();
+        assertNull(documentBuilder.getTopicBuilder());
+        assertNull(documentBuilder.getAssetBuilder());
+    }
+
+    @Test
+    public void testMessageBufferReuse()
+        throws Exception
+    {
+        Date now = new Date();
+        byte[] first = new EsDocumentBuilder().build(ACCOUNT, new StorableIdImpl("message-1"), newMessage(true), now, now).getMessage();
+        byte[] firstCopy = first.clone();
+
+        // the per thread buffer is reused, the returned document must not be
+        new EsDocumentBuilder().build(ACCOUNT, new StorableIdImpl("message-2"), newMessage(false), now, now).getMessage();
+
+        assertArrayEquals(firstCopy, first);
+    }
+
+    private static Message newMessage(boolean withPosition)
+    {
+        Map<String, Object> metrics = new HashMap<String, Object>();
+        metrics.put("temperature", Double.valueOf(21.5));
+        metrics.put("sensor.count", Integer.valueOf(3));
+        metrics.put("status", "on");
+        metrics.put("alarm", Boolean.FALSE);
+
+        PayloadImpl payload = new PayloadImpl();
+        payload.setCollectedOn(new Date(500L));
+        payload.setMetrics(metrics);
+        payload.setBody("body".getBytes(StandardCharsets.UTF_8));
+
+        if (withPosition) {
+            PositionImpl position = new PositionImpl();
+            position.setLongitude(11.2);
+            position.setLatitude(46.1);
+            position.setAltitude(200.0);
+            position.setTimestamp(new Date(400L));
+            position.setSatellites(7);
+            payload.setPosition(position);
+        }
+
+        MessageImpl message = new MessageImpl(null, new Date(), TOPIC);
+        message.setPayload(payload);
+        return message;
+    }
+
+    /**
+     * The message document encoding with a map for the position and for each metric, as it was before the single pass encoding
+     */
+    private static XContentBuilder mapEncoding(Message message, Date indexedOn, Date receivedOn)
+        throws Exception
+    {
+        KapuaTopic kapuaTopic = new KapuaTopic(message.getTopic());
+        XContentBuilder messageBuilder = XContentFactory.jsonBuilder()
+                                                        .startObject()
+                                                            .field(EsSchema.MESSAGE_TIMESTAMP, indexedOn)
+                                                            .field(EsSchema.MESSAGE_RECEIVED_ON, receivedOn)
+                                                            .field(EsSchema.MESSAGE_IP_ADDRESS, "127.0.0.1")
+                                                            .field(EsSchema.MESSAGE_ACCOUNT, ACCOUNT)
+                                                            .field(EsSchema.MESSAGE_AS_NAME, kapuaTopic.getAsset())
+                                                            .field(EsSchema.MESSAGE_SEM_TOPIC, kapuaTopic.getSemanticTopic())
+                                                            .field(EsSchema.MESSAGE_TOPIC_PARTS, kapuaTopic.getTopicParts())
+                                                            .field(EsSchema.MESSAGE_COLLECTED_ON, message.getPayload().getCollectedOn());
+
+        Position kapuaPosition = message.getPayload().getPosition();
+        if (kapuaPosition != null) {
+            Map<String, Object> location = new HashMap<String, Object>();
+            location.put("lon", kapuaPosition.getLongitude());
+            location.put("lat", kapuaPosition.getLatitude());
+
+            Map<String, Object> position = new HashMap<String, Object>();
+            position.put(EsSchema.MESSAGE_POS_LOCATION, location);
+            position.put(EsSchema.MESSAGE_POS_ALT, kapuaPosition.getAltitude());
+            position.put(EsSchema.MESSAGE_POS_PRECISION, kapuaPosition.getPrecision());
+            position.put(EsSchema.MESSAGE_POS_HEADING, kapuaPosition.getHeading());
+            position.put(EsSchema.MESSAGE_POS_SPEED, kapuaPosition.getSpeed());
+            position.put(EsSchema.MESSAGE_POS_TIMESTAMP, kapuaPosition.getTimestamp());
+            position.put(EsSchema.MESSAGE_POS_SATELLITES, kapuaPosition.getSatellites());
+            position.put(EsSchema.MESSAGE_POS_STATUS, kapuaPosition.getStatus());
+            messageBuilder.field(EsSchema.MESSAGE_POS, position);
+        }
+
+        messageBuilder.field(EsSchema.MESSAGE_BODY, message.getPayload().getBody());
+
+        Map<String, Object> metrics = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> kapuaMetric : message.getPayload().getMetrics().entrySet()) {
+            String esType = EsUtils.getEsTypeFromValue(kapuaMetric.getValue());
+            Map<String, Object> field = new HashMap<String, Object>();
+            field.put(EsUtils.getEsTypeAcronym(esType), kapuaMetric.getValue());
+            metrics.put(EsUtils.normalizeMetricName(kapuaMetric.getKey()), field);
+        }
+        return messageBuilder.field(EsSchema.MESSAGE_MTR, metrics)
+                             .endObject();
+    }
+
+    private static Map<String, Object> toMap(XContentBuilder builder)
+    {
+        return XContentHelper.convertToMap(builder.bytes(), false).v2();
+    }
+}
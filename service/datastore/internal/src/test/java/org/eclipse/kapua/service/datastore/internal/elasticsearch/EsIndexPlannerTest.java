@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.commons.util.KapuaDateUtils;
+import org.eclipse.kapua.service.datastore.internal.model.query.AndPredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.RangePredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.TermPredicateImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EsIndexPlannerTest extends Assert
+{
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void testTimestampRangeOfConjunction()
+        throws Exception
+    {
+        Date lower = new Date(1000L);
+        Date upper = new Date(5000L);
+        AndPredicateImpl predicate = new AndPredicateImpl();
+        predicate.addPredicate(new TermPredicateImpl(EsMessageField.ACCOUNT, "account"));
+        predicate.addPredicate(new RangePredicateImpl(EsMessageField.TIMESTAMP, lower, upper));
+        predicate.addPredicate(new RangePredicateImpl(EsMessageField.TIMESTAMP, new Date(2000L), null));
+        predicate.addPredicate(new RangePredicateImpl(EsMessageField.RECEIVED_ON, new Date(3000L), new Date(4000L)));
+
+        EsIndexPlanner.TimestampRange range = EsIndexPlanner.getTimestampRange(predicate);
+        assertEquals(2000L, range.getLower());
+        assertEquals(5000L, range.getUpper());
+    }
+
+    @Test
+    public void testTimestampRangeUnbounded()
+        throws Exception
+    {
+        EsIndexPlanner.TimestampRange range = EsIndexPlanner.getTimestampRange(new TermPredicateImpl(EsMessageField.ACCOUNT, "account"));
+        assertEquals(Long.MIN_VALUE, range.getLower());
+        assertEquals(Long.MAX_VALUE, range.getUpper());
+
+        range = EsIndexPlanner.getTimestampRange(new RangePredicateImpl(EsMessageField.TIMESTAMP, "now-1h", null));
+        assertEquals(Long.MIN_VALUE, range.getLower());
+    }
+
+    @Test
+    public void testIndexNamesAcrossYearBoundary()
+        throws Exception
+    {
+        Calendar cal = KapuaDateUtils.getKapuaCalendar();
+        cal.clear();
+        cal.set(2015, Calendar.DECEMBER, 20, 13, 30);
+        long lower = cal.getTimeInMillis();
+        cal.set(2016, Calendar.JANUARY, 12, 7, 15);
+        long upper = cal.getTimeInMillis();
+
+        // every index a message in the range may have been stored into
+        Set<String> expected = new HashSet<String>();
+        for (long timestamp = lower; timestamp <= upper; timestamp += HOUR_MILLIS)
+            expected.add(EsUtils.getActualIndexName("account", timestamp));
+        expected.add(EsUtils.getActualIndexName("account", upper));
+
+        assertEquals(expected, EsIndexPlanner.getIndexNames("account", lower, upper));
+    }
+
+    @Test
+    public void testIndexNamesOfLastDay()
+        throws Exception
+    {
+        long upper = KapuaDateUtils.getKapuaSysDate().getTime();
+        long lower = upper - TimeUnit.DAYS.toMillis(1);
+
+        Set<String> indexNames = EsIndexPlanner.getIndexNames("account", lower, upper);
+        assertTrue(indexNames.contains(EsUtils.getActualIndexName("account", lower)));
+        assertTrue(indexNames.contains(EsUtils.getActualIndexName("account", upper)));
+        assertTrue(indexNames.size() <= 2);
+    }
+}
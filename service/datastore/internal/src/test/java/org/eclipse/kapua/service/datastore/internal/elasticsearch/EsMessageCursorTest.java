@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.kapua.KapuaIllegalArgumentException;
+import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.eclipse.kapua.service.datastore.model.Message;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EsMessageCursorTest extends Assert
+{
+
+    @Test
+    public void testEncodeDecode()
+        throws Exception
+    {
+        EsMessageCursor cursor = new EsMessageCursor(1400000000000L, Arrays.asList("id-1", "id-2"));
+
+        String encoded = cursor.encode();
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"));
+
+        EsMessageCursor decoded = EsMessageCursor.decode(encoded);
+        assertEquals(cursor.getTimestamp(), decoded.getTimestamp());
+        assertEquals(cursor.getIds(), decoded.getIds());
+    }
+
+    @Test(expected = KapuaIllegalArgumentException.class)
+    public void testDecodeInvalidCursor()
+        throws Exception
+    {
+        EsMessageCursor.decode("not a cursor");
+    }
+
+    @Test(expected = KapuaIllegalArgumentException.class)
+    public void testDecodeTruncatedCursor()
+        throws Exception
+    {
+        String encoded = new EsMessageCursor(1400000000000L, Arrays.asList("id-1")).encode();
+        EsMessageCursor.decode(encoded.substring(0, encoded.length() - 4));
+    }
+
+    @Test
+    public void testNextCursor()
+        throws Exception
+    {
+        List<Message> page = Arrays.asList(message("id-1", 3000L), message("id-2", 2000L), message("id-3", 1000L), message("id-4", 1000L));
+
+        EsMessageCursor cursor = EsMessageCursor.next(null, page);
+        assertEquals(1000L, cursor.getTimestamp());
+        assertEquals(2, cursor.getIds().size());
+        assertTrue(cursor.getIds().containsAll(Arrays.asList("id-3", "id-4")));
+    }
+
+    @Test
+    public void testNextCursorOfPageWithSameTimestamp()
+        throws Exception
+    {
+        EsMessageCursor previous = new EsMessageCursor(1000L, Collections.singleton("id-1"));
+        List<Message> page = Arrays.asList(message("id-2", 1000L), message("id-3", 1000L));
+
+        // the messages with the same timestamp returned by the previous pages must be still excluded
+        EsMessageCursor cursor = EsMessageCursor.next(previous, page);
+        assertEquals(1000L, cursor.getTimestamp());
+        assertEquals(3, cursor.getIds().size());
+        assertTrue(cursor.getIds().containsAll(Arrays.asList("id-1", "id-2", "id-3")));
+    }
+
+    @Test
+    public void testCursorPagingMatchesOffsetPaging()
+        throws Exception
+    {
+        // three messages for each timestamp, sorted by timestamp descending as the cursor search request does
+        List<Message> messages = new ArrayList<Message>();
+        for (int i = 0; i < 30; i++) {
+            messages.add(message(String.format("id-%02d", i), 10000L - (i / 3) * 1000L));
+        }
+
+        // the pages end both inside and at the end of a group of messages with the same timestamp
+        for (int limit : new int[] { 1, 2, 3, 4, 7 }) {
+            List<Message> pagedMessages = new ArrayList<Message>();
+            EsMessageCursor cursor = null;
+            List<Message> page;
+            while (!(page = cursorPage(messages, cursor, limit)).isEmpty()) {
+                pagedMessages.addAll(page);
+                cursor = EsMessageCursor.next(cursor, page);
+            }
+
+            // every message is returned once and in the offset paging order
+            assertEquals("limit " + limit, messages, pagedMessages);
+        }
+    }
+
+    /**
+     * The page returned by the cursor filter (see {@link EsMessageCursor#toFilter}) in descending timestamp order
+     */
+    private static List<Message> cursorPage(List<Message> messages, EsMessageCursor cursor, int limit)
+    {
+        List<Message> page = new ArrayList<Message>();
+        for (Message message : messages) {
+            if (page.size() == limit) {
+                break;
+            }
+            if (cursor == null ||
+                (message.getTimestamp().getTime() <= cursor.getTimestamp() && !cursor.getIds().contains(message.getId().toString()))) {
+                page.add(message);
+            }
+        }
+        return page;
+    }
+
+    private static Message message(String id, long timestamp)
+    {
+        return new MessageImpl(new StorableIdImpl(id), new Date(timestamp), "account/asset/topic");
+    }
+}
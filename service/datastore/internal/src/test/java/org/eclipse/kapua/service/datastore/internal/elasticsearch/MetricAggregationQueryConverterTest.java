@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.KapuaIllegalArgumentException;
+import org.eclipse.kapua.service.datastore.internal.model.query.MetricAggregationQueryImpl;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationResult;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.metrics.stats.Stats;
+import org.elasticsearch.search.aggregations.metrics.tophits.TopHits;
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricAggregationQueryConverterTest extends Assert
+{
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void testMetricField()
+        throws Exception
+    {
+        assertEquals("metrics.temperature.dbl",
+                     MetricAggregationQueryConverter.getMetricField(new MetricAggregationQueryImpl("temperature", Double.class, HOUR_MILLIS)));
+        assertEquals("metrics.counter.int",
+                     MetricAggregationQueryConverter.getMetricField(new MetricAggregationQueryImpl("counter", Integer.class, HOUR_MILLIS)));
+        assertEquals("metrics.engine$2erpm.lng",
+                     MetricAggregationQueryConverter.getMetricField(new MetricAggregationQueryImpl("engine.rpm", Long.class, HOUR_MILLIS)));
+    }
+
+    @Test(expected = KapuaIllegalArgumentException.class)
+    public void testNotNumericMetric()
+        throws Exception
+    {
+        MetricAggregationQueryConverter.getMetricField(new MetricAggregationQueryImpl("status", String.class, HOUR_MILLIS));
+    }
+
+    @Test(expected = KapuaIllegalArgumentException.class)
+    public void testMissingMetricName()
+        throws Exception
+    {
+        MetricAggregationQueryConverter.getMetricField(new MetricAggregationQueryImpl(null, Double.class, HOUR_MILLIS));
+    }
+
+    @Test
+    public void testToResult()
+        throws Exception
+    {
+        MetricAggregationQueryImpl query = new MetricAggregationQueryImpl("temperature", Double.class, HOUR_MILLIS);
+        SearchResponse response = newResponse(newHistogram(newBucket(0L, newStats(3, 10.0, 30.0, 20.0), newSource("temperature", "dbl", 25.0)),
+                                                           newBucket(HOUR_MILLIS, newStats(1, 15.5, 15.5, 15.5), newSource("temperature", "dbl", 15.5))));
+
+        MetricAggregationResult result = new MetricAggregationQueryConverter().toResult(response, query);
+
+        assertEquals(2, result.size());
+        assertArrayEquals(new long[] { 0L, HOUR_MILLIS }, result.getTimestamps());
+        assertArrayEquals(new long[] { 3L, 1L }, result.getCounts());
+        assertArrayEquals(new double[] { 10.0, 15.5 }, result.getMin(), 0.0);
+        assertArrayEquals(new double[] { 30.0, 15.5 }, result.getMax(), 0.0);
+        assertArrayEquals(new double[] { 20.0, 15.5 }, result.getAvg(), 0.0);
+        assertArrayEquals(new double[] { 25.0, 15.5 }, result.getLast(), 0.0);
+    }
+
+    @Test
+    public void testToResultWithoutLastValue()
+        throws Exception
+    {
+        MetricAggregationQueryImpl query = new MetricAggregationQueryImpl("counter", Integer.class, HOUR_MILLIS);
+        SearchResponse response = newResponse(newHistogram(newBucket(0L, newStats(2, 1.0, 3.0, 2.0), null),
+                                                           newBucket(HOUR_MILLIS, newStats(1, 4.0, 4.0, 4.0), newSource("counter", "lng", 4L)),
+                                                           newBucket(2 * HOUR_MILLIS, newStats(1, 5.0, 5.0, 5.0), newSource("counter", "int", "5"))));
+
+        MetricAggregationResult result = new MetricAggregationQueryConverter().toResult(response, query);
+
+        // no hit, a hit without the metric field and a hit with a not numeric value
+        assertEquals(3, result.size());
+        assertTrue(Double.isNaN(result.getLast()[0]));
+        assertTrue(Double.isNaN(result.getLast()[1]));
+        assertTrue(Double.isNaN(result.getLast()[2]));
+        assertArrayEquals(new long[] { 2L, 1L, 1L }, result.getCounts());
+    }
+
+    @Test
+    public void testToResultWithoutAggregations()
+        throws Exception
+    {
+        MetricAggregationQueryImpl query = new MetricAggregationQueryImpl("temperature", Double.class, HOUR_MILLIS);
+
+        assertEquals(0, new MetricAggregationQueryConverter().toResult(newResponse(null), query).size());
+        assertEquals(0, new MetricAggregationQueryConverter().toResult(newResponse(newHistogram()), query).size());
+    }
+
+    private static SearchResponse newResponse(Histogram histogram)
+    {
+        SearchResponse response = mock(SearchResponse.class);
+        if (histogram != null) {
+            Aggregations aggregations = mock(Aggregations.class);
+            doReturn(histogram).when(aggregations).get("buckets");
+            doReturn(aggregations).when(response).getAggregations();
+        }
+        return response;
+    }
+
+    private static Histogram newHistogram(Histogram.Bucket... buckets)
+    {
+        Histogram histogram = mock(Histogram.class);
+        doReturn(Arrays.asList(buckets)).when(histogram).getBuckets();
+        return histogram;
+    }
+
+    private static Histogram.Bucket newBucket(long timestamp, Stats stats, Map<String, Object> lastSource)
+    {
+        SearchHit[] hits = new SearchHit[0];
+        if (lastSource != null) {
+            SearchHit hit = mock(SearchHit.class);
+            doReturn(lastSource).when(hit).getSource();
+            hits = new SearchHit[] { hit };
+        }
+        SearchHits searchHits = mock(SearchHits.class);
+        doReturn(hits).when(searchHits).getHits();
+        TopHits lastHits = mock(TopHits.class);
+        doReturn(searchHits).when(lastHits).getHits();
+
+        Aggregations aggregations = mock(Aggregations.class);
+        doReturn(stats).when(aggregations).get("stats");
+        doReturn(lastHits).when(aggregations).get("last");
+
+        Histogram.Bucket bucket = mock(Histogram.Bucket.class);
+        doReturn(new DateTime(timestamp)).when(bucket).getKey();
+        doReturn(aggregations).when(bucket).getAggregations();
+        return bucket;
+    }
+
+    private static Stats newStats(long count, double min, double max, double avg)
+    {
+        Stats stats = mock(Stats.class);
+        doReturn(count).when(stats).getCount();
+        doReturn(min).when(stats).getMin();
+        doReturn(max).when(stats).getMax();
+        doReturn(avg).when(stats).getAvg();
+        return stats;
+    }
+
+    /**
+     * Return the fetched source of a message with the metric value (i.e. {@code {"metrics": {"temperature": {"dbl": 25.0}}}})
+     */
+    private static Map<String, Object> newSource(String metricName, String typeAcronym, Object value)
+    {
+        Map<String, Object> metric = new HashMap<>();
+        metric.put(typeAcronym, value);
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put(metricName, metric);
+        return Collections.<String, Object> singletonMap(EsSchema.MESSAGE_MTR, metrics);
+    }
+}
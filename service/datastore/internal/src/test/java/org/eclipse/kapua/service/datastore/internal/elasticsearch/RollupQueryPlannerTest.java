@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.service.datastore.internal.model.MetricAggregationResultImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.MetricAggregationQueryImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.TermPredicateImpl;
+import org.eclipse.kapua.service.datastore.model.MetricAggregationResult;
+import org.eclipse.kapua.service.datastore.model.query.MetricAggregationQuery;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RollupQueryPlannerTest extends Assert
+{
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void testAlignment()
+        throws Exception
+    {
+        assertEquals(5 * HOUR_MILLIS, RollupQueryPlanner.floor(6 * HOUR_MILLIS - 1, HOUR_MILLIS));
+        assertEquals(6 * HOUR_MILLIS, RollupQueryPlanner.ceil(5 * HOUR_MILLIS + 1, HOUR_MILLIS));
+        assertEquals(5 * HOUR_MILLIS, RollupQueryPlanner.ceil(5 * HOUR_MILLIS, HOUR_MILLIS));
+        assertEquals(-HOUR_MILLIS, RollupQueryPlanner.floor(-1, HOUR_MILLIS));
+    }
+
+    @Test
+    public void testNarrow()
+        throws Exception
+    {
+        MetricAggregationQueryImpl query = new MetricAggregationQueryImpl("temperature", Double.class, HOUR_MILLIS);
+        query.setPredicate(new TermPredicateImpl(EsMessageField.ASSET, "asset"));
+
+        // the narrowed range is a further constraint on the original predicate
+        MetricAggregationQuery narrowed = RollupQueryPlanner.narrow(query, 2 * HOUR_MILLIS, Long.MAX_VALUE);
+        EsIndexPlanner.TimestampRange range = EsIndexPlanner.getTimestampRange(narrowed.getPredicate());
+        assertEquals(2 * HOUR_MILLIS, range.getLower());
+        assertEquals(Long.MAX_VALUE, range.getUpper());
+        assertEquals("temperature", narrowed.getMetricName());
+        assertEquals(HOUR_MILLIS, narrowed.getInterval());
+        assertTrue(RollupAggregationQueryConverter.supports(narrowed.getPredicate()));
+
+        assertSame(query.getPredicate(), RollupQueryPlanner.narrow(query, Long.MIN_VALUE, Long.MAX_VALUE).getPredicate());
+    }
+
+    @Test
+    public void testConcat()
+        throws Exception
+    {
+        MetricAggregationResultImpl raw = new MetricAggregationResultImpl(1);
+        raw.setBucket(0, 0, 2, 1, 3, 2, 3);
+        MetricAggregationResultImpl rollup = new MetricAggregationResultImpl(2);
+        rollup.setBucket(0, HOUR_MILLIS, 1, 4, 4, 4, 4);
+        rollup.setBucket(1, 2 * HOUR_MILLIS, 1, 5, 5, 5, 5);
+
+        MetricAggregationResult result = MetricAggregationResultImpl.concat(Arrays.<MetricAggregationResult> asList(raw, new MetricAggregationResultImpl(0), rollup));
+        assertEquals(3, result.size());
+        assertArrayEquals(new long[] { 0, HOUR_MILLIS, 2 * HOUR_MILLIS }, result.getTimestamps());
+        assertArrayEquals(new long[] { 2, 1, 1 }, result.getCounts());
+        assertEquals(5, result.getLast()[2], 0);
+    }
+}
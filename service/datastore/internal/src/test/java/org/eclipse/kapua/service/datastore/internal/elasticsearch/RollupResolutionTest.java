@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.commons.util.KapuaDateUtils;
+import org.eclipse.kapua.service.datastore.internal.model.query.AndPredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.RangePredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.TermPredicateImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RollupResolutionTest extends Assert
+{
+
+    @Test
+    public void testForInterval()
+        throws Exception
+    {
+        assertEquals(RollupResolution.HOUR, RollupResolution.forInterval(TimeUnit.DAYS.toMillis(1)));
+        assertEquals(RollupResolution.HOUR, RollupResolution.forInterval(TimeUnit.HOURS.toMillis(1)));
+        assertEquals(RollupResolution.MINUTE, RollupResolution.forInterval(TimeUnit.MINUTES.toMillis(90)));
+        assertNull(RollupResolution.forInterval(TimeUnit.SECONDS.toMillis(30)));
+        assertNull(RollupResolution.forInterval(0));
+    }
+
+    @Test
+    public void testBucketStart()
+        throws Exception
+    {
+        long hour = RollupResolution.HOUR.getMillis();
+        assertEquals(5 * hour, RollupResolution.HOUR.getBucketStart(5 * hour));
+        assertEquals(5 * hour, RollupResolution.HOUR.getBucketStart(6 * hour - 1));
+        assertEquals(-hour, RollupResolution.HOUR.getBucketStart(-1));
+    }
+
+    @Test
+    public void testIndexEnd()
+        throws Exception
+    {
+        Calendar cal = KapuaDateUtils.getKapuaCalendar();
+        cal.clear();
+        cal.set(2016, Calendar.DECEMBER, 20, 13, 30);
+        String indexName = RollupResolution.MINUTE.getIndexName("account", cal.getTimeInMillis());
+        assertEquals(".rollup-1m-account-2016-12", indexName);
+
+        cal.clear();
+        cal.set(2017, Calendar.JANUARY, 1);
+        assertEquals(cal.getTimeInMillis(), RollupResolution.MINUTE.getIndexEnd("account", indexName));
+
+        // other resolutions and other accounts sharing the prefix
+        assertEquals(-1, RollupResolution.HOUR.getIndexEnd("account", indexName));
+        assertEquals(-1, RollupResolution.MINUTE.getIndexEnd("account", ".rollup-1m-account-other-2016-12"));
+    }
+
+    @Test
+    public void testSupportedPredicates()
+        throws Exception
+    {
+        AndPredicateImpl predicate = new AndPredicateImpl();
+        predicate.addPredicate(new TermPredicateImpl(EsMessageField.ASSET, "asset"));
+        predicate.addPredicate(new RangePredicateImpl(EsMessageField.TIMESTAMP, new Date(1000L), new Date(5000L)));
+        assertTrue(RollupAggregationQueryConverter.supports(predicate));
+        assertTrue(RollupAggregationQueryConverter.supports(null));
+
+        // the rollups don't keep the topic
+        predicate.addPredicate(new TermPredicateImpl(EsMessageField.SEMANTIC_TOPIC, "topic"));
+        assertFalse(RollupAggregationQueryConverter.supports(predicate));
+    }
+}
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.management.bundle;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.KapuaService;
@@ -49,6 +51,19 @@ public interface DeviceBundleManagementService extends KapuaService
     public void start(KapuaId scopeId, KapuaId deviceId, String bundleId, Long timeout)
         throws KapuaException;
 
+    /**
+     * Start the device bundle identified by the given device identifier and device bundle identifier without waiting for the device response
+     * 
+     * @param scopeId
+     * @param deviceId
+     * @param bundleId
+     * @param timeout timeout waiting for the device response
+     * @return the future completed when the device has executed the request
+     * @throws KapuaException if the request cannot be sent
+     */
+    public CompletableFuture<Void> startAsync(KapuaId scopeId, KapuaId deviceId, String bundleId, Long timeout)
+        throws KapuaException;
+
     /**
      * Stop the device bundle identified by the given device identifier and device bundle identifier
      * 
@@ -60,4 +75,17 @@ public interface DeviceBundleManagementService extends KapuaService
      */
     public void stop(KapuaId scopeId, KapuaId deviceId, String bundleId, Long timeout)
         throws KapuaException;
+
+    /**
+     * Stop the device bundle identified by the given device identifier and device bundle identifier without waiting for the device response
+     * 
+     * @param scopeId
+     * @param deviceId
+     * @param bundleId
+     * @param timeout timeout waiting for the device response
+     * @return the future completed when the device has executed the request
+     * @throws KapuaException if the request cannot be sent
+     */
+    public CompletableFuture<Void> stopAsync(KapuaId scopeId, KapuaId deviceId, String bundleId, Long timeout)
+        throws KapuaException;
 }
@@ -13,6 +13,7 @@
 package org.eclipse.kapua.service.device.management.bundle.internal;
 
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.util.ArgumentValidator;
@@ -135,66 +136,67 @@ public class DeviceBundleManagementServiceImpl implements DeviceBundleManagement
     @Override
     public void start(KapuaId scopeId, KapuaId deviceId, String bundleId, Long timeout)
             throws KapuaException {
-        //
-        // Argument Validation
-        ArgumentValidator.notNull(scopeId, "scopeId");
-        ArgumentValidator.notNull(deviceId, "deviceId");
-        ArgumentValidator.notEmptyOrNull(bundleId, "bundleId");
+        BundleRequestMessage bundleRequestMessage = prepareStartStopRequest(scopeId, deviceId, bundleId, true);
 
         //
-        // Check Access
-        KapuaLocator locator = KapuaLocator.getInstance();
-        AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
-        PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
-        authorizationService.checkPermission(permissionFactory.newPermission(deviceManagementDomain, Actions.execute, scopeId));
-
-        //
-        // Prepare the request
-        BundleRequestChannel bundleRequestChannel = new BundleRequestChannel();
-        bundleRequestChannel.setAppName(DeviceBundleAppProperties.APP_NAME);
-        bundleRequestChannel.setVersion(DeviceBundleAppProperties.APP_VERSION);
-        bundleRequestChannel.setMethod(KapuaMethod.EXECUTE);
-        bundleRequestChannel.setStart(true);
-        bundleRequestChannel.setBundleId(bundleId);
+        // Do start
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(bundleRequestMessage, timeout);
+        BundleResponseMessage responseMessage = (BundleResponseMessage) deviceApplicationCall.send();
 
-        BundleRequestPayload bundleRequestPayload = new BundleRequestPayload();
+        handleStartStopResponse(scopeId, deviceId, responseMessage);
+    }
 
-        BundleRequestMessage bundleRequestMessage = new BundleRequestMessage();
-        bundleRequestMessage.setScopeId(scopeId);
-        bundleRequestMessage.setDeviceId(deviceId);
-        bundleRequestMessage.setCapturedOn(new Date());
-        bundleRequestMessage.setPayload(bundleRequestPayload);
-        bundleRequestMessage.setChannel(bundleRequestChannel);
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Override
+    public CompletableFuture<Void> startAsync(KapuaId scopeId, KapuaId deviceId, String bundleId, Long timeout)
+            throws KapuaException {
+        BundleRequestMessage bundleRequestMessage = prepareStartStopRequest(scopeId, deviceId, bundleId, true);
 
         //
-        // Do get
+        // Do start
         DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(bundleRequestMessage, timeout);
-        BundleResponseMessage responseMessage = (BundleResponseMessage) deviceApplicationCall.send();
+        return deviceApplicationCall.sendAsync(responseMessage -> {
+            handleStartStopResponse(scopeId, deviceId, (BundleResponseMessage) responseMessage);
+            return null;
+        });
+    }
 
-        //
-        // Create event
-        DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
-        DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Override
+    public void stop(KapuaId scopeId, KapuaId deviceId, String bundleId, Long timeout)
+            throws KapuaException {
+        BundleRequestMessage bundleRequestMessage = prepareStartStopRequest(scopeId, deviceId, bundleId, false);
 
-        DeviceEventCreator deviceEventCreator = deviceEventFactory.newCreator(scopeId, deviceId, responseMessage.getReceivedOn(), DeviceBundleAppProperties.APP_NAME.getValue());
-        deviceEventCreator.setPosition(responseMessage.getPosition());
-        deviceEventCreator.setSentOn(responseMessage.getSentOn());
-        deviceEventCreator.setAction(KapuaMethod.EXECUTE);
-        deviceEventCreator.setResponseCode(responseMessage.getResponseCode());
-        deviceEventCreator.setEventMessage(responseMessage.getPayload().toDisplayString());
+        //
+        // Do stop
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(bundleRequestMessage, timeout);
+        BundleResponseMessage responseMessage = (BundleResponseMessage) deviceApplicationCall.send();
 
-        deviceEventService.create(deviceEventCreator);
+        handleStartStopResponse(scopeId, deviceId, responseMessage);
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
     @Override
-    public void stop(KapuaId scopeId, KapuaId deviceId, String bundleId, Long timeout)
+    public CompletableFuture<Void> stopAsync(KapuaId scopeId, KapuaId deviceId, String bundleId, Long timeout)
+            throws KapuaException {
+        BundleRequestMessage bundleRequestMessage = prepareStartStopRequest(scopeId, deviceId, bundleId, false);
+
+        //
+        // Do stop
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(bundleRequestMessage, timeout);
+        return deviceApplicationCall.sendAsync(responseMessage -> {
+            handleStartStopResponse(scopeId, deviceId, (BundleResponseMessage) responseMessage);
+            return null;
+        });
+    }
+
+    private BundleRequestMessage prepareStartStopRequest(KapuaId scopeId, KapuaId deviceId, String bundleId, boolean start)
             throws KapuaException {
         //
         // Argument Validation
         ArgumentValidator.notNull(scopeId, "scopeId");
         ArgumentValidator.notNull(deviceId, "deviceId");
-        ArgumentValidator.notEmptyOrNull(bundleId, "bundleID");
+        ArgumentValidator.notEmptyOrNull(bundleId, "bundleId");
 
         //
         // Check Access
@@ -209,7 +211,7 @@ public class DeviceBundleManagementServiceImpl implements DeviceBundleManagement
         bundleRequestChannel.setAppName(DeviceBundleAppProperties.APP_NAME);
         bundleRequestChannel.setVersion(DeviceBundleAppProperties.APP_VERSION);
         bundleRequestChannel.setMethod(KapuaMethod.EXECUTE);
-        bundleRequestChannel.setStart(false);
+        bundleRequestChannel.setStart(start);
         bundleRequestChannel.setBundleId(bundleId);
 
         BundleRequestPayload bundleRequestPayload = new BundleRequestPayload();
@@ -221,13 +223,14 @@ public class DeviceBundleManagementServiceImpl implements DeviceBundleManagement
         bundleRequestMessage.setPayload(bundleRequestPayload);
         bundleRequestMessage.setChannel(bundleRequestChannel);
 
-        //
-        // Do get
-        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(bundleRequestMessage, timeout);
-        BundleResponseMessage responseMessage = (BundleResponseMessage) deviceApplicationCall.send();
+        return bundleRequestMessage;
+    }
 
+    private void handleStartStopResponse(KapuaId scopeId, KapuaId deviceId, BundleResponseMessage responseMessage)
+            throws KapuaException {
         //
         // Create event
+        KapuaLocator locator = KapuaLocator.getInstance();
         DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
         DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
 
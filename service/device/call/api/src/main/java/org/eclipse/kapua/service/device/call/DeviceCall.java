@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.call;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.service.device.call.message.DeviceMessage;
 import org.eclipse.kapua.service.device.call.message.app.request.DeviceRequestMessage;
@@ -96,6 +98,18 @@ public interface DeviceCall<RQ extends DeviceRequestMessage, RS extends DeviceRe
     public RS options(RQ requestMessage, Long timeout)
         throws KapuaException;
 
+    /**
+     * Sends the command without blocking while waiting for the device response.<br>
+     * The command method is the one set in the request message channel.
+     * 
+     * @param requestMessage
+     * @param timeout
+     * @return the future device response
+     * @throws KapuaException
+     */
+    public CompletableFuture<RS> sendAsync(RQ requestMessage, Long timeout)
+        throws KapuaException;
+
     /**
      * Get the device base message type
      * 
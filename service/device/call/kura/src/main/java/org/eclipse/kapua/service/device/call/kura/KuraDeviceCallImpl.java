@@ -11,8 +11,11 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.call.kura;
 
+import java.security.SecureRandom;
 import java.util.Date;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.locator.KapuaLocator;
@@ -38,6 +41,12 @@ import org.eclipse.kapua.transport.message.TransportMessage;
 @SuppressWarnings("rawtypes")
 public class KuraDeviceCallImpl implements DeviceCall<KuraRequestMessage, KuraResponseMessage>
 {
+
+    /**
+     * Shared request id generator, so concurrent requests don't get the same id
+     */
+    private static final Random REQUEST_ID_GENERATOR = new SecureRandom();
+
     @Override
     public KuraResponseMessage create(KuraRequestMessage requestMessage, Long timeout)
         throws KapuaException
@@ -80,11 +89,37 @@ public class KuraDeviceCallImpl implements DeviceCall<KuraRequestMessage, KuraRe
         return send(requestMessage, timeout);
     }
 
-    @SuppressWarnings({ "unchecked" })
     private KuraResponseMessage send(KuraRequestMessage requestMessage, Long timeout)
         throws KuraMqttDeviceCallException
     {
-        KuraResponseMessage response = null;
+        CompletableFuture<KuraResponseMessage> response = sendAsync(requestMessage, timeout);
+        try {
+            return response.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KuraMqttDeviceCallException(KuraMqttDeviceCallErrorCodes.CALL_ERROR,
+                                                  e,
+                                                  (Object[]) null);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof KuraMqttDeviceCallException) {
+                throw (KuraMqttDeviceCallException) cause;
+            }
+            throw new KuraMqttDeviceCallException(KuraMqttDeviceCallErrorCodes.CALL_ERROR,
+                                                  new KuraMqttDeviceCallException(KuraMqttDeviceCallErrorCodes.CLIENT_SEND_ERROR,
+                                                                                  cause,
+                                                                                  (Object[]) null),
+                                                  (Object[]) null);
+        }
+    }
+
+    @Override
+    @SuppressWarnings({ "unchecked" })
+    public CompletableFuture<KuraResponseMessage> sendAsync(KuraRequestMessage requestMessage, Long timeout)
+        throws KuraMqttDeviceCallException
+    {
         TransportFacade transportFacade = null;
         try {
             //
@@ -103,9 +138,7 @@ public class KuraDeviceCallImpl implements DeviceCall<KuraRequestMessage, KuraRe
             KuraRequestChannel requestChannel = requestMessage.getChannel();
             KuraRequestPayload requestPayload = requestMessage.getPayload();
             if (timeout != null) {
-                // FIXME: create an utilty class to use the same synchronized random instance to avoid duplicates
-                Random r = new Random();
-                String requestId = String.valueOf(r.nextLong());
+                String requestId = String.valueOf(REQUEST_ID_GENERATOR.nextLong());
 
                 requestChannel.setRequestId(requestId);
                 requestChannel.setRequesterClientId(transportFacade.getClientId());
@@ -116,21 +149,47 @@ public class KuraDeviceCallImpl implements DeviceCall<KuraRequestMessage, KuraRe
 
             //
             // Do send
+            CompletableFuture<TransportMessage> transportResponse;
             try {
                 // Set current timestamp
                 requestMessage.setTimestamp(new Date());
 
                 // Send
-                TransportMessage transportResponseMessage = transportFacade.sendSync((TransportMessage) translatorKuraTransport.translate(requestMessage), timeout);
-
-                // Translate response
-                response = (KuraResponseMessage) translatorTransportKura.translate(transportResponseMessage);
+                transportResponse = transportFacade.sendAsync((TransportMessage) translatorKuraTransport.translate(requestMessage), timeout);
             }
             catch (KapuaException e) {
                 throw new KuraMqttDeviceCallException(KuraMqttDeviceCallErrorCodes.CLIENT_SEND_ERROR,
                                                       e,
                                                       (Object[]) null);
             }
+
+            //
+            // Translate response
+            CompletableFuture<KuraResponseMessage> response = new CompletableFuture<>();
+            transportResponse.whenComplete((transportResponseMessage, throwable) -> {
+                if (throwable != null) {
+                    response.completeExceptionally(new KuraMqttDeviceCallException(KuraMqttDeviceCallErrorCodes.CALL_ERROR,
+                                                                                   new KuraMqttDeviceCallException(KuraMqttDeviceCallErrorCodes.CLIENT_SEND_ERROR,
+                                                                                                                   throwable,
+                                                                                                                   (Object[]) null),
+                                                                                   (Object[]) null));
+                }
+                else if (transportResponseMessage == null) {
+                    // No response expected
+                    response.complete(null);
+                }
+                else {
+                    try {
+                        response.complete((KuraResponseMessage) translatorTransportKura.translate(transportResponseMessage));
+                    }
+                    catch (KapuaException | RuntimeException e) {
+                        response.completeExceptionally(new KuraMqttDeviceCallException(KuraMqttDeviceCallErrorCodes.CALL_ERROR,
+                                                                                       e,
+                                                                                       (Object[]) null));
+                    }
+                }
+            });
+            return response;
         }
         catch (KapuaException ke) {
             throw new KuraMqttDeviceCallException(KuraMqttDeviceCallErrorCodes.CALL_ERROR,
@@ -142,8 +201,6 @@ public class KuraDeviceCallImpl implements DeviceCall<KuraRequestMessage, KuraRe
                 transportFacade.clean();
             }
         }
-
-        return response;
     }
 
     @Override
@@ -0,0 +1,348 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.bulk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformReservoir;
+
+/**
+ * Device management bulk job.<br>
+ * The job sends the operation request to every device keeping at most window size requests in flight, and it collects the device
+ * results as they complete, so the job progress and the partial results can be read while the job is running.<br>
+ * Every operation runs on behalf of the job submitter, without trusted mode, so the submitter permissions are checked for each device.
+ *
+ * @param <R> operation result type
+ *
+ * @since 1.0
+ *
+ */
+public class DeviceBulkJob<R>
+{
+
+    private static final Logger s_logger = LoggerFactory.getLogger(DeviceBulkJob.class);
+
+    private final String                   id;
+    private final KapuaId                  scopeId;
+    private final List<KapuaId>            deviceIds;
+    private final DeviceBulkOperation<R>   operation;
+    private final Actions                  action;
+    private final KapuaSession             session;
+    private final DeviceBulkJobManager     manager;
+    private final int                      windowSize;
+    private final Semaphore                window;
+    private final Date                     createdOn;
+
+    private final AtomicInteger            dispatched = new AtomicInteger();
+    private final AtomicInteger            succeeded  = new AtomicInteger();
+    private final AtomicInteger            failed     = new AtomicInteger();
+    private final Histogram                latency    = new Histogram(new UniformReservoir());
+    private final List<DeviceBulkResult<R>> results   = new ArrayList<>();
+
+    private volatile DeviceBulkJobStatus   status     = DeviceBulkJobStatus.RUNNING;
+    private volatile boolean               dispatchEnded;
+    private volatile Date                  endedOn;
+
+    /**
+     * Constructor
+     *
+     * @param scopeId
+     * @param deviceIds
+     * @param operation
+     * @param action the device management action performed by the operation
+     * @param session the session of the job submitter
+     * @param manager
+     * @param windowSize
+     */
+    DeviceBulkJob(KapuaId scopeId, List<KapuaId> deviceIds, DeviceBulkOperation<R> operation, Actions action, KapuaSession session, DeviceBulkJobManager manager, int windowSize)
+    {
+        this.id = UUID.randomUUID().toString();
+        this.scopeId = scopeId;
+        this.deviceIds = Collections.unmodifiableList(new ArrayList<>(deviceIds));
+        this.operation = operation;
+        this.action = action;
+        this.session = session;
+        this.manager = manager;
+        this.windowSize = windowSize;
+        this.window = new Semaphore(windowSize);
+        this.createdOn = new Date();
+    }
+
+    /**
+     * Dispatch the requests to the devices.<br>
+     * It blocks while the window is full, so it runs on a job manager dispatcher thread.
+     */
+    void dispatch()
+    {
+        try {
+            for (KapuaId deviceId : deviceIds) {
+                window.acquire();
+                if (status == DeviceBulkJobStatus.CANCELLED) {
+                    window.release();
+                    break;
+                }
+
+                long delay = manager.reserveDeviceSlot(deviceId);
+                if (delay > 0) {
+                    manager.schedule(() -> send(deviceId), delay);
+                }
+                else {
+                    send(deviceId);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+        }
+        finally {
+            dispatchEnded = true;
+            checkEnded();
+        }
+    }
+
+    private void send(KapuaId deviceId)
+    {
+        if (status == DeviceBulkJobStatus.CANCELLED) {
+            window.release();
+            checkEnded();
+            return;
+        }
+
+        dispatched.incrementAndGet();
+        long start = System.nanoTime();
+
+        CompletableFuture<R> future;
+        try {
+            future = KapuaSecurityUtils.doAs(session, () -> operation.execute(scopeId, deviceId));
+        }
+        catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((result, throwable) -> complete(deviceId, result, throwable, System.nanoTime() - start));
+    }
+
+    private void complete(KapuaId deviceId, R result, Throwable throwable, long elapsed)
+    {
+        window.release();
+
+        String exceptionMessage = null;
+        if (throwable != null) {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            exceptionMessage = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getName();
+            s_logger.debug("Bulk job {}: operation failed on device {}", id, deviceId, cause);
+            failed.incrementAndGet();
+        }
+        else {
+            succeeded.incrementAndGet();
+        }
+
+        latency.update(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        manager.recordResult(throwable == null, elapsed);
+
+        synchronized (results) {
+            results.add(new DeviceBulkResult<>(deviceId, throwable == null ? result : null, exceptionMessage, TimeUnit.NANOSECONDS.toMillis(elapsed)));
+        }
+        checkEnded();
+    }
+
+    private synchronized void checkEnded()
+    {
+        if (endedOn == null && dispatchEnded && getCompleted() == dispatched.get() && window.availablePermits() == windowSize) {
+            endedOn = new Date();
+            if (status == DeviceBulkJobStatus.RUNNING) {
+                status = DeviceBulkJobStatus.COMPLETED;
+            }
+            manager.recordJobEnded(endedOn.getTime() - createdOn.getTime());
+        }
+    }
+
+    /**
+     * Cancel the job (see {@link DeviceBulkJobManager#cancel(KapuaId, String)}).<br>
+     * The requests not yet dispatched are skipped, the in flight ones are still collected.
+     */
+    synchronized void cancel()
+    {
+        if (status == DeviceBulkJobStatus.RUNNING) {
+            status = DeviceBulkJobStatus.CANCELLED;
+        }
+    }
+
+    /**
+     * Get the job identifier
+     *
+     * @return
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Get the job scope identifier
+     *
+     * @return
+     */
+    public KapuaId getScopeId()
+    {
+        return scopeId;
+    }
+
+    /**
+     * Get the device management action performed by the job operation
+     *
+     * @return
+     */
+    public Actions getAction()
+    {
+        return action;
+    }
+
+    /**
+     * Get the job status
+     *
+     * @return
+     */
+    public DeviceBulkJobStatus getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * Get the job creation date
+     *
+     * @return
+     */
+    public Date getCreatedOn()
+    {
+        return createdOn;
+    }
+
+    /**
+     * Get the date of the last device operation completion, or null if the job is still running
+     *
+     * @return
+     */
+    public Date getEndedOn()
+    {
+        return endedOn;
+    }
+
+    /**
+     * Get the number of the job devices
+     *
+     * @return
+     */
+    public int getTotal()
+    {
+        return deviceIds.size();
+    }
+
+    /**
+     * Get the number of the requests sent
+     *
+     * @return
+     */
+    public int getDispatched()
+    {
+        return dispatched.get();
+    }
+
+    /**
+     * Get the number of the completed operations
+     *
+     * @return
+     */
+    public int getCompleted()
+    {
+        return succeeded.get() + failed.get();
+    }
+
+    /**
+     * Get the number of the succeeded operations
+     *
+     * @return
+     */
+    public int getSucceeded()
+    {
+        return succeeded.get();
+    }
+
+    /**
+     * Get the number of the failed operations
+     *
+     * @return
+     */
+    public int getFailed()
+    {
+        return failed.get();
+    }
+
+    /**
+     * Get the job throughput, as completed operations per second since the job creation
+     *
+     * @return
+     */
+    public double getThroughput()
+    {
+        Date end = endedOn != null ? endedOn : new Date();
+        long elapsed = end.getTime() - createdOn.getTime();
+        return elapsed > 0 ? getCompleted() * 1000d / elapsed : 0;
+    }
+
+    /**
+     * Get the latency (milliseconds) distribution of the completed operations
+     *
+     * @return
+     */
+    public Snapshot getLatency()
+    {
+        return latency.getSnapshot();
+    }
+
+    /**
+     * Get the device results in completion order, starting from the given offset.<br>
+     * The results are only appended, so the progress can be followed reading from the number of results already read.
+     *
+     * @param offset
+     * @param limit
+     * @return
+     */
+    public List<DeviceBulkResult<R>> getResults(int offset, int limit)
+    {
+        synchronized (results) {
+            int from = Math.min(Math.max(offset, 0), results.size());
+            int to = Math.min(from + Math.max(limit, 0), results.size());
+            return new ArrayList<>(results.subList(from, to));
+        }
+    }
+}
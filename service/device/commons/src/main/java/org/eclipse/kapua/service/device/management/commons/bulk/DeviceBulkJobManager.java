@@ -0,0 +1,398 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.bulk;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.KapuaEntityNotFoundException;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaIllegalNullArgumentException;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.model.query.FieldSortCriteria;
+import org.eclipse.kapua.commons.model.query.FieldSortCriteria.SortOrder;
+import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.util.ArgumentValidator;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.model.query.KapuaListResult;
+import org.eclipse.kapua.service.authorization.AuthorizationService;
+import org.eclipse.kapua.service.authorization.domain.Domain;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
+import org.eclipse.kapua.service.device.management.commons.DeviceManagementDomain;
+import org.eclipse.kapua.service.device.management.commons.setting.DeviceManagementSetting;
+import org.eclipse.kapua.service.device.management.commons.setting.DeviceManagementSettingKey;
+import org.eclipse.kapua.service.device.registry.Device;
+import org.eclipse.kapua.service.device.registry.DeviceFactory;
+import org.eclipse.kapua.service.device.registry.DeviceQuery;
+import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
+import org.eclipse.kapua.service.metric.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Device management bulk job manager.<br>
+ * It runs the {@link DeviceBulkJob} dispatchers, it enforces the minimum interval between two requests to the same device across all
+ * the jobs and it keeps the jobs for the configured retention time, so their progress and results can be read.<br>
+ * The request latency and throughput of all the jobs are recorded in the metrics service.
+ *
+ * @since 1.0
+ *
+ */
+public class DeviceBulkJobManager
+{
+
+    private static final String METRIC_MODULE    = "device_management";
+    private static final String METRIC_COMPONENT = "bulk";
+
+    private static final long   SLOT_PRUNE_PERIOD = 60;
+
+    private static final Domain deviceManagementDomain = new DeviceManagementDomain();
+
+    private static DeviceBulkJobManager instance;
+
+    private final int                                windowSize;
+    private final long                               deviceRequestInterval;
+    private final int                                queryPageSize;
+    private final Cache<String, DeviceBulkJob<?>>    jobs;
+    private final ConcurrentMap<BigInteger, Long>    deviceSlots;
+    private final ExecutorService                    dispatcher;
+    private final ScheduledExecutorService           scheduler;
+
+    private final Timer                              requestLatency;
+    private final Counter                            requestSucceeded;
+    private final Counter                            requestFailed;
+    private final Timer                              jobDuration;
+
+    private DeviceBulkJobManager()
+    {
+        this(DeviceManagementSetting.getInstance().getInt(DeviceManagementSettingKey.BULK_WINDOW_SIZE, 100),
+             DeviceManagementSetting.getInstance().getLong(DeviceManagementSettingKey.BULK_DEVICE_REQUEST_INTERVAL, 1000L),
+             DeviceManagementSetting.getInstance().getInt(DeviceManagementSettingKey.BULK_QUERY_PAGE_SIZE, 500),
+             DeviceManagementSetting.getInstance().getInt(DeviceManagementSettingKey.BULK_JOB_RETENTION, 3600),
+             KapuaLocator.getInstance().getService(MetricsService.class));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param windowSize the maximum number of requests in flight of a job
+     * @param deviceRequestInterval the minimum interval (milliseconds) between two requests to the same device
+     * @param queryPageSize the page size of the device registry queries
+     * @param jobRetention the job retention time (seconds)
+     * @param metricsService
+     */
+    DeviceBulkJobManager(int windowSize, long deviceRequestInterval, int queryPageSize, int jobRetention, MetricsService metricsService)
+    {
+        this.windowSize = windowSize;
+        this.deviceRequestInterval = deviceRequestInterval;
+        this.queryPageSize = queryPageSize;
+
+        jobs = CacheBuilder.newBuilder()
+                           .expireAfterWrite(jobRetention, TimeUnit.SECONDS)
+                           .build();
+        deviceSlots = new ConcurrentHashMap<>();
+
+        dispatcher = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("DeviceBulkJobDispatcher-%d")
+                                                                             .setDaemon(true)
+                                                                             .build());
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("DeviceBulkJobScheduler-%d")
+                                                                                         .setDaemon(true)
+                                                                                         .build());
+        // a slot older than the interval doesn't delay the next request, so it can be dropped
+        scheduler.scheduleWithFixedDelay(() -> {
+            long now = System.currentTimeMillis();
+            deviceSlots.values().removeIf(slot -> slot + deviceRequestInterval <= now);
+        }, SLOT_PRUNE_PERIOD, SLOT_PRUNE_PERIOD, TimeUnit.SECONDS);
+
+        requestLatency = metricsService.getTimer(METRIC_MODULE, METRIC_COMPONENT, "request", "latency");
+        requestSucceeded = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "request", "succeeded", "count");
+        requestFailed = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "request", "failed", "count");
+        jobDuration = metricsService.getTimer(METRIC_MODULE, METRIC_COMPONENT, "job", "duration");
+    }
+
+    /**
+     * Get the bulk job manager instance
+     *
+     * @return
+     */
+    public static synchronized DeviceBulkJobManager getInstance()
+    {
+        if (instance == null) {
+            instance = new DeviceBulkJobManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Start a bulk job executing the operation on the given devices.<br>
+     * The caller permission for the operation action is checked here and the devices must belong to the scope. The operation then runs
+     * on behalf of the caller on the job threads: the caller permissions are checked again for every device, so the operation has to be
+     * bound to the caller security context (see {@link DeviceBulkOperation}).
+     *
+     * @param scopeId
+     * @param deviceIds
+     * @param action the device management action performed by the operation
+     * @param operation
+     * @return the started job
+     * @throws KapuaException
+     */
+    public <R> DeviceBulkJob<R> submit(KapuaId scopeId, List<KapuaId> deviceIds, Actions action, DeviceBulkOperation<R> operation)
+        throws KapuaException
+    {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notNull(deviceIds, "deviceIds");
+        ArgumentValidator.notNull(action, "action");
+        ArgumentValidator.notNull(operation, "operation");
+        if (deviceIds.isEmpty()) {
+            throw new KapuaIllegalNullArgumentException("deviceIds");
+        }
+
+        //
+        // Check Access
+        checkPermission(scopeId, action);
+        checkScope(scopeId, deviceIds);
+
+        return start(scopeId, deviceIds, action, operation);
+    }
+
+    /**
+     * Start a bulk job executing the operation on the devices matching the query.<br>
+     * The query must have a predicate, so the whole fleet of the scope is never selected by omission. The devices are resolved when
+     * the job is submitted.
+     *
+     * @param query
+     * @param action the device management action performed by the operation
+     * @param operation
+     * @return the started job
+     * @throws KapuaException
+     */
+    public <R> DeviceBulkJob<R> submit(DeviceQuery query, Actions action, DeviceBulkOperation<R> operation)
+        throws KapuaException
+    {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(query, "query");
+        ArgumentValidator.notNull(query.getScopeId(), "query.scopeId");
+        ArgumentValidator.notNull(query.getPredicate(), "query.predicate");
+        ArgumentValidator.notNull(action, "action");
+        ArgumentValidator.notNull(operation, "operation");
+
+        //
+        // Check Access
+        checkPermission(query.getScopeId(), action);
+
+        // the query is bound to the scope
+        return start(query.getScopeId(), findDeviceIds(query), action, operation);
+    }
+
+    /**
+     * Find the bulk job in the scope
+     *
+     * @param scopeId
+     * @param jobId
+     * @return the job or null if the job doesn't exist (or it has already been dropped)
+     * @throws KapuaException
+     */
+    public DeviceBulkJob<?> find(KapuaId scopeId, String jobId)
+        throws KapuaException
+    {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notEmptyOrNull(jobId, "jobId");
+
+        //
+        // Check Access
+        checkPermission(scopeId, Actions.read);
+
+        return findInScope(scopeId, jobId);
+    }
+
+    /**
+     * Cancel the bulk job in the scope: the requests not yet dispatched are skipped, the in flight ones are still collected.<br>
+     * The caller needs the same permission required to submit the job.
+     *
+     * @param scopeId
+     * @param jobId
+     * @return the cancelled job or null if the job doesn't exist (or it has already been dropped)
+     * @throws KapuaException
+     */
+    public DeviceBulkJob<?> cancel(KapuaId scopeId, String jobId)
+        throws KapuaException
+    {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notEmptyOrNull(jobId, "jobId");
+
+        //
+        // Check Access
+        checkPermission(scopeId, Actions.read);
+        DeviceBulkJob<?> job = findInScope(scopeId, jobId);
+        if (job == null) {
+            return null;
+        }
+        checkPermission(scopeId, job.getAction());
+
+        job.cancel();
+        return job;
+    }
+
+    private <R> DeviceBulkJob<R> start(KapuaId scopeId, List<KapuaId> deviceIds, Actions action, DeviceBulkOperation<R> operation)
+    {
+        DeviceBulkJob<R> job = new DeviceBulkJob<>(scopeId, deviceIds, operation, action, KapuaSecurityUtils.getSession(), this, windowSize);
+        jobs.put(job.getId(), job);
+        dispatcher.execute(job::dispatch);
+        return job;
+    }
+
+    private DeviceBulkJob<?> findInScope(KapuaId scopeId, String jobId)
+    {
+        DeviceBulkJob<?> job = jobs.getIfPresent(jobId);
+        return job != null && job.getScopeId().getId().equals(scopeId.getId()) ? job : null;
+    }
+
+    /**
+     * Check that all the devices belong to the scope (the device registry finds a device by id in any scope).<br>
+     * The devices are looked up a page at a time, with a query bound to the scope and matching the page ids.
+     */
+    private void checkScope(KapuaId scopeId, List<KapuaId> deviceIds)
+        throws KapuaException
+    {
+        KapuaLocator locator = KapuaLocator.getInstance();
+        DeviceRegistryService deviceRegistryService = locator.getService(DeviceRegistryService.class);
+        DeviceFactory deviceFactory = locator.getFactory(DeviceFactory.class);
+
+        Set<BigInteger> uniqueIds = new HashSet<>();
+        List<KapuaId> uniqueDeviceIds = new ArrayList<>();
+        for (KapuaId deviceId : deviceIds) {
+            ArgumentValidator.notNull(deviceId, "deviceIds");
+            if (uniqueIds.add(deviceId.getId())) {
+                uniqueDeviceIds.add(deviceId);
+            }
+        }
+
+        for (int from = 0; from < uniqueDeviceIds.size(); from += queryPageSize) {
+            List<KapuaId> page = uniqueDeviceIds.subList(from, Math.min(from + queryPageSize, uniqueDeviceIds.size()));
+
+            KapuaEid[] pageIds = new KapuaEid[page.size()];
+            for (int i = 0; i < pageIds.length; i++) {
+                pageIds[i] = new KapuaEid(page.get(i));
+            }
+            DeviceQuery query = deviceFactory.newQuery(scopeId);
+            query.setPredicate(new AttributePredicate<KapuaEid[]>("id", pageIds));
+
+            Set<BigInteger> foundIds = new HashSet<>();
+            for (Device device : deviceRegistryService.query(query).getItems()) {
+                foundIds.add(device.getId().getId());
+            }
+            for (KapuaId deviceId : page) {
+                if (!foundIds.contains(deviceId.getId())) {
+                    throw new KapuaEntityNotFoundException(Device.TYPE, deviceId);
+                }
+            }
+        }
+    }
+
+    private List<KapuaId> findDeviceIds(DeviceQuery query)
+        throws KapuaException
+    {
+        DeviceRegistryService deviceRegistryService = KapuaLocator.getInstance().getService(DeviceRegistryService.class);
+
+        if (query.getSortCriteria() == null) {
+            // stable order for the paging
+            query.setSortCriteria(new FieldSortCriteria("id", SortOrder.ASCENDING));
+        }
+        query.setLimit(queryPageSize);
+
+        List<KapuaId> deviceIds = new ArrayList<>();
+        int offset = 0;
+        KapuaListResult<Device> devices;
+        do {
+            query.setOffset(offset);
+            devices = deviceRegistryService.query(query);
+            for (Device device : devices.getItems()) {
+                deviceIds.add(device.getId());
+            }
+            offset += devices.getSize();
+        }
+        while (devices.isLimitExceeded() && !devices.isEmpty());
+
+        return deviceIds;
+    }
+
+    private static void checkPermission(KapuaId scopeId, Actions action)
+        throws KapuaException
+    {
+        KapuaLocator locator = KapuaLocator.getInstance();
+        AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
+        PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
+        authorizationService.checkPermission(permissionFactory.newPermission(deviceManagementDomain, action, scopeId));
+    }
+
+    /**
+     * Reserve the next request slot for the device
+     *
+     * @param deviceId
+     * @return the time (milliseconds) to wait before sending the request
+     */
+    long reserveDeviceSlot(KapuaId deviceId)
+    {
+        if (deviceRequestInterval <= 0) {
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        Long slot = deviceSlots.compute(deviceId.getId(), (id, lastSlot) -> lastSlot == null || lastSlot + deviceRequestInterval <= now ? now : lastSlot + deviceRequestInterval);
+        return slot - now;
+    }
+
+    void schedule(Runnable task, long delay)
+    {
+        scheduler.schedule(() -> dispatcher.execute(task), delay, TimeUnit.MILLISECONDS);
+    }
+
+    void recordResult(boolean succeeded, long elapsed)
+    {
+        requestLatency.update(elapsed, TimeUnit.NANOSECONDS);
+        if (succeeded) {
+            requestSucceeded.inc();
+        }
+        else {
+            requestFailed.inc();
+        }
+    }
+
+    void recordJobEnded(long duration)
+    {
+        jobDuration.update(duration, TimeUnit.MILLISECONDS);
+    }
+}
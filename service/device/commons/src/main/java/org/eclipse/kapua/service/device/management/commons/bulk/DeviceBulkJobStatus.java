@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.bulk;
+
+/**
+ * {@link DeviceBulkJob} status
+ *
+ * @since 1.0
+ *
+ */
+public enum DeviceBulkJobStatus
+{
+    /**
+     * The job is dispatching the requests or waiting for the responses
+     */
+    RUNNING,
+    /**
+     * All the device operations are completed
+     */
+    COMPLETED,
+    /**
+     * The job has been cancelled: the requests not yet dispatched are skipped
+     */
+    CANCELLED;
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.bulk;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.model.id.KapuaId;
+
+/**
+ * Device management operation executed by a {@link DeviceBulkJob} on every device of the job.<br>
+ * The operation has to send the request without waiting for the device response (ie calling one of the asynchronous methods of the
+ * device management services), since the job bounds the number of in flight requests on the returned futures.<br>
+ * The operation runs on the job threads with a copy of the submitter session which is not trusted: if the authorization needs a
+ * thread bound security context (ie the Shiro subject of the submitter), the operation has to bind it.
+ *
+ * @param <R> operation result type
+ *
+ * @since 1.0
+ *
+ */
+public interface DeviceBulkOperation<R>
+{
+
+    /**
+     * Send the request to the device
+     *
+     * @param scopeId
+     * @param deviceId
+     * @return the future operation result
+     * @throws KapuaException if the request cannot be sent
+     */
+    public CompletableFuture<R> execute(KapuaId scopeId, KapuaId deviceId)
+        throws KapuaException;
+}
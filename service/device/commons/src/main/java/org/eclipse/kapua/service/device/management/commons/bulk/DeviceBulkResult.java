@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.bulk;
+
+import java.util.Date;
+
+import org.eclipse.kapua.model.id.KapuaId;
+
+/**
+ * Result of a {@link DeviceBulkOperation} on a single device
+ *
+ * @param <R> operation result type
+ *
+ * @since 1.0
+ *
+ */
+public class DeviceBulkResult<R>
+{
+
+    private final KapuaId deviceId;
+    private final R       result;
+    private final String  exceptionMessage;
+    private final long    latency;
+    private final Date    completedOn;
+
+    /**
+     * Constructor
+     *
+     * @param deviceId
+     * @param result
+     * @param exceptionMessage
+     * @param latency
+     */
+    DeviceBulkResult(KapuaId deviceId, R result, String exceptionMessage, long latency)
+    {
+        this.deviceId = deviceId;
+        this.result = result;
+        this.exceptionMessage = exceptionMessage;
+        this.latency = latency;
+        this.completedOn = new Date();
+    }
+
+    /**
+     * Get the device identifier
+     *
+     * @return
+     */
+    public KapuaId getDeviceId()
+    {
+        return deviceId;
+    }
+
+    /**
+     * Get the operation result (null if the operation failed or it has no result)
+     *
+     * @return
+     */
+    public R getResult()
+    {
+        return result;
+    }
+
+    /**
+     * Get the failure message (null if the operation succeeded)
+     *
+     * @return
+     */
+    public String getExceptionMessage()
+    {
+        return exceptionMessage;
+    }
+
+    /**
+     * Return true if the operation succeeded
+     *
+     * @return
+     */
+    public boolean isSucceeded()
+    {
+        return exceptionMessage == null;
+    }
+
+    /**
+     * Get the time (milliseconds) elapsed from the request dispatch to the operation completion
+     *
+     * @return
+     */
+    public long getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * Get the operation completion date
+     *
+     * @return
+     */
+    public Date getCompletedOn()
+    {
+        return completedOn;
+    }
+}
@@ -12,7 +12,14 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.management.commons.call;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
 import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.service.device.call.DeviceCall;
 import org.eclipse.kapua.service.device.call.DeviceCallFactory;
@@ -28,6 +35,8 @@ import org.eclipse.kapua.service.device.management.request.KapuaRequestPayload;
 import org.eclipse.kapua.service.device.management.response.KapuaResponseMessage;
 import org.eclipse.kapua.translator.Translator;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Device call executor definition.<br>
  * This object executes call, collecting the response from the device.
@@ -132,4 +141,93 @@ public class DeviceCallExecutor<C extends KapuaRequestChannel, P extends KapuaRe
 
         return (RS) tClientToKapua.translate(responseMessage);
     }
+
+    /**
+     * Performs the device call without blocking while waiting for the device response.<br>
+     * Many calls can be in flight at the same time, since they don't hold a transport client or a thread until the response arrives.
+     * 
+     * @return the future response
+     * @throws KapuaException if the call cannot be sent
+     */
+    @SuppressWarnings({ "unchecked" })
+    public CompletableFuture<RS> sendAsync()
+        throws KapuaException
+    {
+        //
+        // Get the correct device call
+        KapuaLocator locator = KapuaLocator.getInstance();
+        DeviceCallFactory kapuaDeviceCallFactory = locator.getFactory(DeviceCallFactory.class);
+        DeviceCall<DeviceRequestMessage, DeviceResponseMessage> deviceCall = kapuaDeviceCallFactory.newDeviceCall();
+        Translator tKapuaToClient = Translator.getTranslatorFor(requestMessage.getRequestClass(),
+                                                                deviceCall.getBaseMessageClass());
+        Translator tClientToKapua = Translator.getTranslatorFor(deviceCall.getBaseMessageClass(),
+                                                                requestMessage.getResponseClass());
+
+        timeout = timeout == null ? DeviceManagementSetting.getInstance().getLong(DeviceManagementSettingKey.REQUEST_TIMEOUT) : timeout;
+
+        DeviceRequestMessage deviceRequestMessage = (DeviceRequestMessage) tKapuaToClient.translate(requestMessage);
+
+        CompletableFuture<RS> response = new CompletableFuture<>();
+        deviceCall.sendAsync(deviceRequestMessage, timeout).whenComplete((responseMessage, throwable) -> {
+            if (throwable != null) {
+                response.completeExceptionally(throwable);
+            }
+            else {
+                try {
+                    response.complete((RS) tClientToKapua.translate(responseMessage));
+                }
+                catch (KapuaException | RuntimeException e) {
+                    response.completeExceptionally(e);
+                }
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Performs the device call without blocking and completes it with the given response handler.<br>
+     * The handler runs on the device response handler threads with a trusted copy of the caller session, since the caller permissions
+     * have already been checked when the call was sent.
+     * 
+     * @param responseHandler
+     * @return the future handler result
+     * @throws KapuaException if the call cannot be sent
+     */
+    public <T> CompletableFuture<T> sendAsync(DeviceResponseHandler<RS, T> responseHandler)
+        throws KapuaException
+    {
+        KapuaSession session = KapuaSecurityUtils.getSession();
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        sendAsync().whenCompleteAsync((responseMessage, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+            }
+            else if (responseMessage == null) {
+                result.completeExceptionally(new DeviceManagementException(DeviceManagementErrorCodes.REQUEST_EXCEPTION, null, requestMessage));
+            }
+            else {
+                try {
+                    result.complete(KapuaSecurityUtils.doPriviledge(session, () -> responseHandler.handle(responseMessage)));
+                }
+                catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        }, ResponseExecutorHolder.EXECUTOR);
+        return result;
+    }
+
+    /**
+     * Lazy holder of the threads handling the asynchronous device call responses.<br>
+     * The handlers usually write to the database, so they don't run on the transport callback threads.
+     */
+    private static class ResponseExecutorHolder
+    {
+
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(DeviceManagementSetting.getInstance().getInt(DeviceManagementSettingKey.RESPONSE_HANDLER_THREADS, 10),
+                                                                                     new ThreadFactoryBuilder().setNameFormat("DeviceResponseHandler-%d")
+                                                                                                               .setDaemon(true)
+                                                                                                               .build());
+    }
 }
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.call;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.service.device.management.response.KapuaResponseMessage;
+
+/**
+ * Device response handler definition.<br>
+ * It completes an asynchronous device call (ie creating the device event) and converts the response to the expected object type.
+ *
+ * @param <RS> response message type
+ * @param <T> expected response type
+ *
+ * @since 1.0
+ *
+ */
+@SuppressWarnings("rawtypes")
+public interface DeviceResponseHandler<RS extends KapuaResponseMessage, T>
+{
+
+    /**
+     * Handle the device response
+     *
+     * @param responseMessage
+     * @return
+     * @throws KapuaException
+     */
+    public T handle(RS responseMessage)
+        throws KapuaException;
+}
@@ -31,7 +31,32 @@ public enum DeviceManagementSettingKey implements SettingKey
     /**
      * Request timeout
      */
-    REQUEST_TIMEOUT("request.timeout");
+    REQUEST_TIMEOUT("request.timeout"),
+
+    /**
+     * Number of threads handling the responses of the asynchronous device calls
+     */
+    RESPONSE_HANDLER_THREADS("response.handler.threads"),
+
+    /**
+     * Maximum number of in flight device requests for a bulk job
+     */
+    BULK_WINDOW_SIZE("bulk.window.size"),
+
+    /**
+     * Minimum interval (milliseconds) between two bulk requests to the same device
+     */
+    BULK_DEVICE_REQUEST_INTERVAL("bulk.device.request.interval"),
+
+    /**
+     * Page size used to resolve the devices of a bulk job from a device query
+     */
+    BULK_QUERY_PAGE_SIZE("bulk.query.page.size"),
+
+    /**
+     * Time (seconds) a bulk job is kept after its creation, so its progress and results can be read
+     */
+    BULK_JOB_RETENTION("bulk.job.retention");
 
     private String key;
 
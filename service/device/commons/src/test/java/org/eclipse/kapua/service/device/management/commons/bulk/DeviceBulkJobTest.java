@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.bulk;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.metric.MetricsServiceImpl;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeviceBulkJobTest extends Assert
+{
+
+    private static final KapuaId SCOPE_ID = new KapuaEid(BigInteger.ONE);
+
+    @Test
+    public void testWindowBoundsTheRequestsInFlight()
+        throws Exception
+    {
+        PendingOperation operation = new PendingOperation();
+        DeviceBulkJob<String> job = newJob(newDeviceIds(5), operation, 2);
+        Thread dispatcher = startDispatch(job);
+
+        await(() -> job.getDispatched() == 2);
+        Thread.sleep(100);
+        assertEquals(2, job.getDispatched());
+
+        operation.complete(0, "result-0");
+        await(() -> job.getDispatched() == 3);
+
+        for (int i = 1; i < 5; i++) {
+            await(operation.hasRequest(i));
+            operation.complete(i, "result-" + i);
+        }
+        dispatcher.join(5000);
+
+        assertEquals(DeviceBulkJobStatus.COMPLETED, job.getStatus());
+        assertNotNull(job.getEndedOn());
+        assertEquals(5, job.getCompleted());
+        assertEquals(5, job.getSucceeded());
+        assertEquals(5, job.getResults(0, 10).size());
+        assertEquals("result-0", job.getResults(0, 1).get(0).getResult());
+    }
+
+    @Test
+    public void testCollectTheFailures()
+        throws Exception
+    {
+        DeviceBulkJob<String> job = newJob(newDeviceIds(3), (scopeId, deviceId) -> {
+            if (deviceId.getId().equals(BigInteger.valueOf(1))) {
+                throw KapuaException.internalError("cannot send");
+            }
+            CompletableFuture<String> future = new CompletableFuture<>();
+            if (deviceId.getId().equals(BigInteger.valueOf(2))) {
+                future.completeExceptionally(new IllegalStateException("device error"));
+            }
+            else {
+                future.complete("ok");
+            }
+            return future;
+        }, 10);
+        job.dispatch();
+
+        assertEquals(DeviceBulkJobStatus.COMPLETED, job.getStatus());
+        assertEquals(1, job.getSucceeded());
+        assertEquals(2, job.getFailed());
+
+        List<String> exceptionMessages = new ArrayList<>();
+        for (DeviceBulkResult<String> result : job.getResults(0, 10)) {
+            if (!result.isSucceeded()) {
+                exceptionMessages.add(result.getExceptionMessage());
+                assertNull(result.getResult());
+            }
+        }
+        assertEquals(2, exceptionMessages.size());
+        assertTrue(exceptionMessages.contains("device error"));
+    }
+
+    @Test
+    public void testCancelSkipsTheRequestsNotDispatched()
+        throws Exception
+    {
+        PendingOperation operation = new PendingOperation();
+        DeviceBulkJob<String> job = newJob(newDeviceIds(3), operation, 1);
+        Thread dispatcher = startDispatch(job);
+
+        await(() -> job.getDispatched() == 1);
+        job.cancel();
+        assertEquals(DeviceBulkJobStatus.CANCELLED, job.getStatus());
+        assertNull("The in flight request is still collected", job.getEndedOn());
+
+        operation.complete(0, "result-0");
+        dispatcher.join(5000);
+
+        assertEquals(DeviceBulkJobStatus.CANCELLED, job.getStatus());
+        assertNotNull(job.getEndedOn());
+        assertEquals(1, job.getDispatched());
+        assertEquals(1, job.getCompleted());
+        assertEquals(3, job.getTotal());
+    }
+
+    @Test
+    public void testDeviceRequestInterval()
+    {
+        DeviceBulkJobManager manager = new DeviceBulkJobManager(10, 60000L, 100, 60, new MetricsServiceImpl());
+        KapuaId deviceId = new KapuaEid(BigInteger.ONE);
+
+        assertEquals(0, manager.reserveDeviceSlot(deviceId));
+        assertTrue(manager.reserveDeviceSlot(deviceId) > 59000);
+        assertTrue(manager.reserveDeviceSlot(deviceId) > 119000);
+        assertEquals(0, manager.reserveDeviceSlot(new KapuaEid(BigInteger.TEN)));
+    }
+
+    private static DeviceBulkJob<String> newJob(List<KapuaId> deviceIds, DeviceBulkOperation<String> operation, int windowSize)
+    {
+        DeviceBulkJobManager manager = new DeviceBulkJobManager(windowSize, 0L, 100, 60, new MetricsServiceImpl());
+        return new DeviceBulkJob<>(SCOPE_ID, deviceIds, operation, Actions.execute, new KapuaSession(), manager, windowSize);
+    }
+
+    private static List<KapuaId> newDeviceIds(int count)
+    {
+        List<KapuaId> deviceIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            deviceIds.add(new KapuaEid(BigInteger.valueOf(i)));
+        }
+        return deviceIds;
+    }
+
+    private static Thread startDispatch(DeviceBulkJob<?> job)
+    {
+        Thread dispatcher = new Thread(job::dispatch);
+        dispatcher.start();
+        return dispatcher;
+    }
+
+    private static void await(BooleanSupplier condition)
+        throws InterruptedException
+    {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    /**
+     * Operation whose requests are completed by the test, in device order
+     */
+    private static class PendingOperation implements DeviceBulkOperation<String>
+    {
+
+        private final List<CompletableFuture<String>> requests = new CopyOnWriteArrayList<>();
+
+        @Override
+        public CompletableFuture<String> execute(KapuaId scopeId, KapuaId deviceId)
+        {
+            CompletableFuture<String> request = new CompletableFuture<>();
+            requests.add(request);
+            return request;
+        }
+
+        private BooleanSupplier hasRequest(int index)
+        {
+            return () -> requests.size() > index;
+        }
+
+        private void complete(int index, String result)
+        {
+            requests.get(index).complete(result);
+        }
+    }
+}
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.management.configuration;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.KapuaService;
@@ -67,6 +69,19 @@ public interface DeviceConfigurationManagementService extends KapuaService
     public void put(KapuaId scopeId, KapuaId deviceId, DeviceConfiguration deviceConfig, Long timeout)
         throws KapuaException;
 
+    /**
+     * Put the provided configuration to the device identified by the provided device identifier without waiting for the device response
+     * 
+     * @param scopeId
+     * @param deviceId
+     * @param deviceConfig
+     * @param timeout timeout waiting for the device response
+     * @return the future completed when the device has applied the configuration
+     * @throws KapuaException if the configuration cannot be sent
+     */
+    public CompletableFuture<Void> putAsync(KapuaId scopeId, KapuaId deviceId, DeviceConfiguration deviceConfig, Long timeout)
+        throws KapuaException;
+
     /**
      * Put the provided configuration to the device identified by the provided device identifier
      * 
@@ -14,6 +14,7 @@ package org.eclipse.kapua.service.device.management.configuration.internal;
 
 import java.io.StringWriter;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 import javax.xml.bind.JAXBException;
 import javax.xml.stream.FactoryConfigurationError;
@@ -236,6 +237,33 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
     @Override
     public void put(KapuaId scopeId, KapuaId deviceId, DeviceConfiguration deviceConfiguration, Long timeout)
             throws KapuaException {
+        ConfigurationRequestMessage configurationRequestMessage = preparePutRequest(scopeId, deviceId, deviceConfiguration);
+
+        //
+        // Do put
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
+        ConfigurationResponseMessage responseMessage = (ConfigurationResponseMessage) deviceApplicationCall.send();
+
+        handlePutResponse(scopeId, deviceId, responseMessage);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public CompletableFuture<Void> putAsync(KapuaId scopeId, KapuaId deviceId, DeviceConfiguration deviceConfiguration, Long timeout)
+            throws KapuaException {
+        ConfigurationRequestMessage configurationRequestMessage = preparePutRequest(scopeId, deviceId, deviceConfiguration);
+
+        //
+        // Do put
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
+        return deviceApplicationCall.sendAsync(responseMessage -> {
+            handlePutResponse(scopeId, deviceId, (ConfigurationResponseMessage) responseMessage);
+            return null;
+        });
+    }
+
+    private ConfigurationRequestMessage preparePutRequest(KapuaId scopeId, KapuaId deviceId, DeviceConfiguration deviceConfiguration)
+            throws KapuaException {
         //
         // Argument Validation
         ArgumentValidator.notNull(scopeId, "scopeId");
@@ -278,13 +306,14 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
         configurationRequestMessage.setPayload(configurationRequestPayload);
         configurationRequestMessage.setChannel(configurationRequestChannel);
 
-        //
-        // Do put
-        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
-        ConfigurationResponseMessage responseMessage = (ConfigurationResponseMessage) deviceApplicationCall.send();
+        return configurationRequestMessage;
+    }
 
+    private void handlePutResponse(KapuaId scopeId, KapuaId deviceId, ConfigurationResponseMessage responseMessage)
+            throws KapuaException {
         //
         // Create event
+        KapuaLocator locator = KapuaLocator.getInstance();
         DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
         DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
 
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.management.packages;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.KapuaService;
@@ -56,6 +58,19 @@ public interface DevicePackageManagementService extends KapuaService
     public void downloadExec(KapuaId scopeId, KapuaId deviceId, DevicePackageDownloadRequest packageDownloadRequest, Long timeout)
         throws KapuaException;
 
+    /**
+     * Starts a download package operation without waiting for the device response
+     * 
+     * @param scopeId
+     * @param deviceId
+     * @param packageDownloadRequest
+     * @param timeout
+     * @return the future completed when the device has accepted the operation
+     * @throws KapuaException if the request cannot be sent
+     */
+    public CompletableFuture<Void> downloadExecAsync(KapuaId scopeId, KapuaId deviceId, DevicePackageDownloadRequest packageDownloadRequest, Long timeout)
+        throws KapuaException;
+
     /**
      * Interrupt a download package operation
      * 
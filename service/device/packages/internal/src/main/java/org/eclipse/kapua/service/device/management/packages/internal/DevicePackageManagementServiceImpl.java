@@ -13,6 +13,7 @@
 package org.eclipse.kapua.service.device.management.packages.internal;
 
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.model.id.IdGenerator;
@@ -152,6 +153,34 @@ public class DevicePackageManagementServiceImpl implements DevicePackageManageme
     @Override
     public void downloadExec(KapuaId scopeId, KapuaId deviceId, DevicePackageDownloadRequest packageDownloadRequest, Long timeout)
             throws KapuaException {
+        PackageRequestMessage packageRequestMessage = prepareDownloadRequest(scopeId, deviceId, packageDownloadRequest);
+
+        //
+        // Do exec
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(packageRequestMessage, timeout);
+        PackageResponseMessage responseMessage = (PackageResponseMessage) deviceApplicationCall.send();
+
+        handleDownloadResponse(scopeId, deviceId, responseMessage);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public CompletableFuture<Void> downloadExecAsync(KapuaId scopeId, KapuaId deviceId, DevicePackageDownloadRequest packageDownloadRequest, Long timeout)
+            throws KapuaException {
+        PackageRequestMessage packageRequestMessage = prepareDownloadRequest(scopeId, deviceId, packageDownloadRequest);
+
+        //
+        // Do exec
+        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(packageRequestMessage, timeout);
+        return deviceApplicationCall.sendAsync(responseMessage -> {
+            handleDownloadResponse(scopeId, deviceId, (PackageResponseMessage) responseMessage);
+            return null;
+        });
+    }
+
+    private PackageRequestMessage prepareDownloadRequest(KapuaId scopeId, KapuaId deviceId, DevicePackageDownloadRequest packageDownloadRequest)
+            throws KapuaException {
         //
         // Argument Validation
         ArgumentValidator.notNull(scopeId, "scopeId");
@@ -193,14 +222,14 @@ public class DevicePackageManagementServiceImpl implements DevicePackageManageme
         packageRequestMessage.setPayload(packageRequestPayload);
         packageRequestMessage.setChannel(packageRequestChannel);
 
-        //
-        // Do exec
-        @SuppressWarnings({ "rawtypes", "unchecked" })
-        DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(packageRequestMessage, timeout);
-        PackageResponseMessage responseMessage = (PackageResponseMessage) deviceApplicationCall.send();
+        return packageRequestMessage;
+    }
 
+    private void handleDownloadResponse(KapuaId scopeId, KapuaId deviceId, PackageResponseMessage responseMessage)
+            throws KapuaException {
         //
         // Create event
+        KapuaLocator locator = KapuaLocator.getInstance();
         DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
         DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
 
@@ -93,4 +93,18 @@ public interface DeviceConnectionCreator extends KapuaUpdatableEntityCreator<Dev
      * @param serverIp
      */
     public void setServerIp(String serverIp);
+
+    /**
+     * Get the connection status (if not set the connection is created as connected)
+     * 
+     * @return
+     */
+    public DeviceConnectionStatus getStatus();
+
+    /**
+     * Set the connection status
+     * 
+     * @param status
+     */
+    public void setStatus(DeviceConnectionStatus status);
 }
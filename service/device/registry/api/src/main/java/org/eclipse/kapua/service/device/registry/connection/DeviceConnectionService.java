@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.connection;
 
+import java.util.List;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.KapuaEntityService;
@@ -39,6 +41,18 @@ public interface DeviceConnectionService extends KapuaEntityService<DeviceConnec
     public DeviceConnection findByClientId(KapuaId scopeId, String clientId)
         throws KapuaException;
 
+    /**
+     * Apply a batch of connection status changes in a single transaction.<BR>
+     * For every creator the device connection with the same scope and client id is updated with the creator status and the not null
+     * creator fields, or created if it doesn't exist yet. The batch must contain at most one creator per client id.
+     * 
+     * @param creators
+     * @return the created or updated device connections, in the creators order
+     * @throws KapuaException
+     */
+    public List<DeviceConnection> updateStatus(List<DeviceConnectionCreator> creators)
+        throws KapuaException;
+
     /**
      * Updated the status of provided device connection to connected;
      * if a device connection for the provided clientId is not found,
@@ -12,6 +12,9 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.event;
 
+import java.util.List;
+
+import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.service.KapuaEntityService;
 
 /**
@@ -23,4 +26,13 @@ import org.eclipse.kapua.service.KapuaEntityService;
 public interface DeviceEventService extends KapuaEntityService<DeviceEvent, DeviceEventCreator>
 {
 
+    /**
+     * Create the device events in a single transaction
+     * 
+     * @param deviceEventCreators
+     * @return the created device events, in the creators order
+     * @throws KapuaException
+     */
+    public List<DeviceEvent> createBatch(List<DeviceEventCreator> deviceEventCreators)
+        throws KapuaException;
 }
@@ -18,6 +18,7 @@ import org.eclipse.kapua.commons.model.AbstractKapuaEntityCreator;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.device.registry.connection.DeviceConnection;
 import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionCreator;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionStatus;
 
 /**
  * Device connection creator service implementation.
@@ -44,6 +45,9 @@ public class DeviceConnectionCreatorImpl extends AbstractKapuaEntityCreator<Devi
     @XmlElement(name = "serverIp")
     private String            serverIp;
 
+    @XmlElement(name = "status")
+    private DeviceConnectionStatus status;
+
     /**
      * Constructor
      * 
@@ -112,4 +116,16 @@ public class DeviceConnectionCreatorImpl extends AbstractKapuaEntityCreator<Devi
     {
         this.serverIp = serverIp;
     }
+
+    @Override
+    public DeviceConnectionStatus getStatus()
+    {
+        return status;
+    }
+
+    @Override
+    public void setStatus(DeviceConnectionStatus status)
+    {
+        this.status = status;
+    }
 }
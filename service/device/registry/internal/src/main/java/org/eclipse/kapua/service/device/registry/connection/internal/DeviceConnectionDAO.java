@@ -12,7 +12,14 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.connection.internal;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
 import org.eclipse.kapua.commons.service.internal.ServiceDAO;
 import org.eclipse.kapua.commons.jpa.EntityManager;
 import org.eclipse.kapua.model.id.KapuaId;
@@ -41,7 +48,7 @@ public class DeviceConnectionDAO extends ServiceDAO
     public static DeviceConnection create(EntityManager em, DeviceConnectionCreator deviceConnectionCreator)
     {
         DeviceConnection deviceConnection = new DeviceConnectionImpl(deviceConnectionCreator.getScopeId());
-        deviceConnection.setStatus(DeviceConnectionStatus.CONNECTED);
+        deviceConnection.setStatus(deviceConnectionCreator.getStatus() != null ? deviceConnectionCreator.getStatus() : DeviceConnectionStatus.CONNECTED);
         deviceConnection.setClientId(deviceConnectionCreator.getClientId());
         deviceConnection.setUserId(deviceConnectionCreator.getUserId());
         deviceConnection.setProtocol(deviceConnectionCreator.getProtocol());
@@ -66,6 +73,73 @@ public class DeviceConnectionDAO extends ServiceDAO
         return ServiceDAO.update(em, DeviceConnectionImpl.class, deviceConnectionImpl);
     }
 
+    /**
+     * Create or update the device connections of the provided creators (one creator per client id).<BR>
+     * The existing connections are loaded with a single query per scope and both the inserts and the updates are left to the transaction
+     * commit, so the persistence provider can send them as JDBC batches.
+     * 
+     * @param em
+     * @param deviceConnectionCreators
+     * @return the created or updated device connections, in the creators order
+     */
+    public static List<DeviceConnection> updateStatus(EntityManager em, List<DeviceConnectionCreator> deviceConnectionCreators)
+    {
+        // Group the client ids by scope
+        Map<KapuaId, List<String>> clientIdsByScope = new LinkedHashMap<>();
+        for (DeviceConnectionCreator deviceConnectionCreator : deviceConnectionCreators) {
+            clientIdsByScope.computeIfAbsent(deviceConnectionCreator.getScopeId(), scopeId -> new ArrayList<>())
+                            .add(deviceConnectionCreator.getClientId());
+        }
+
+        Map<KapuaId, Map<String, DeviceConnectionImpl>> existingByScope = new HashMap<>();
+        for (Map.Entry<KapuaId, List<String>> scopeClientIds : clientIdsByScope.entrySet()) {
+            Map<String, DeviceConnectionImpl> existing = new HashMap<>();
+            List<DeviceConnectionImpl> found = em.createNamedQuery("DeviceConnection.findByClientIds", DeviceConnectionImpl.class)
+                                                 .setParameter("scopeId", new KapuaEid(scopeClientIds.getKey()))
+                                                 .setParameter("clientIds", scopeClientIds.getValue())
+                                                 .getResultList();
+            for (DeviceConnectionImpl deviceConnection : found) {
+                existing.put(deviceConnection.getClientId(), deviceConnection);
+            }
+            existingByScope.put(scopeClientIds.getKey(), existing);
+        }
+
+        List<DeviceConnection> deviceConnections = new ArrayList<>(deviceConnectionCreators.size());
+        for (DeviceConnectionCreator deviceConnectionCreator : deviceConnectionCreators) {
+            DeviceConnectionImpl deviceConnection = existingByScope.get(deviceConnectionCreator.getScopeId()).get(deviceConnectionCreator.getClientId());
+            if (deviceConnection == null) {
+                deviceConnection = new DeviceConnectionImpl(deviceConnectionCreator.getScopeId());
+                deviceConnection.setClientId(deviceConnectionCreator.getClientId());
+                deviceConnection.setStatus(deviceConnectionCreator.getStatus() != null ? deviceConnectionCreator.getStatus() : DeviceConnectionStatus.CONNECTED);
+                deviceConnection.setUserId(deviceConnectionCreator.getUserId());
+                deviceConnection.setProtocol(deviceConnectionCreator.getProtocol());
+                deviceConnection.setClientIp(deviceConnectionCreator.getClientIp());
+                deviceConnection.setServerIp(deviceConnectionCreator.getServerIp());
+                em.persist(deviceConnection);
+            }
+            else {
+                // the connection is managed by the entity manager, the changes are written on commit
+                if (deviceConnectionCreator.getStatus() != null) {
+                    deviceConnection.setStatus(deviceConnectionCreator.getStatus());
+                }
+                if (deviceConnectionCreator.getUserId() != null) {
+                    deviceConnection.setUserId(deviceConnectionCreator.getUserId());
+                }
+                if (deviceConnectionCreator.getProtocol() != null) {
+                    deviceConnection.setProtocol(deviceConnectionCreator.getProtocol());
+                }
+                if (deviceConnectionCreator.getClientIp() != null) {
+                    deviceConnection.setClientIp(deviceConnectionCreator.getClientIp());
+                }
+                if (deviceConnectionCreator.getServerIp() != null) {
+                    deviceConnection.setServerIp(deviceConnectionCreator.getServerIp());
+                }
+            }
+            deviceConnections.add(deviceConnection);
+        }
+        return deviceConnections;
+    }
+
     /**
      * Find the device connection by device connection identifier
      * 
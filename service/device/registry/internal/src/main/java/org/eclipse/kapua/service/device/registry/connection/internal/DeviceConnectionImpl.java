@@ -20,6 +20,8 @@ import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -41,6 +43,9 @@ import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionStat
 @XmlRootElement
 @XmlAccessorType(XmlAccessType.FIELD)
 @Entity(name = "DeviceConnection")
+@NamedQueries({
+                @NamedQuery(name = "DeviceConnection.findByClientIds", query = "SELECT dc FROM DeviceConnection dc WHERE dc.scopeId = :scopeId AND dc.clientId IN :clientIds")
+})
 @Table(name = "dvc_device_connection")
 public class DeviceConnectionImpl extends AbstractKapuaUpdatableEntity implements DeviceConnection
 {
@@ -12,6 +12,10 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.connection.internal;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
@@ -94,6 +98,33 @@ public class DeviceConnectionServiceImpl extends AbstractKapuaService implements
         });
     }
 
+    @Override
+    public List<DeviceConnection> updateStatus(List<DeviceConnectionCreator> deviceConnectionCreators)
+            throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(deviceConnectionCreators, "deviceConnectionCreators");
+        Set<KapuaId> scopeIds = new HashSet<>();
+        for (DeviceConnectionCreator deviceConnectionCreator : deviceConnectionCreators) {
+            ArgumentValidator.notNull(deviceConnectionCreator, "deviceConnectionCreator");
+            ArgumentValidator.notNull(deviceConnectionCreator.getScopeId(), "deviceConnectionCreator.scopeId");
+            ArgumentValidator.notEmptyOrNull(deviceConnectionCreator.getClientId(), "deviceConnectionCreator.clientId");
+            ArgumentValidator.notNull(deviceConnectionCreator.getUserId(), "deviceConnectionCreator.userId");
+            scopeIds.add(deviceConnectionCreator.getScopeId());
+        }
+
+        //
+        // Check Access
+        KapuaLocator locator = KapuaLocator.getInstance();
+        AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
+        PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
+        for (KapuaId scopeId : scopeIds) {
+            authorizationService.checkPermission(permissionFactory.newPermission(deviceConnectonDomain, Actions.write, scopeId));
+        }
+
+        return entityManagerSession.onTransactedResult(em -> DeviceConnectionDAO.updateStatus(em, deviceConnectionCreators));
+    }
+
     @Override
     public DeviceConnection find(KapuaId scopeId, KapuaId entityId)
             throws KapuaException {
@@ -12,6 +12,9 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.event.internal;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.service.internal.ServiceDAO;
 import org.eclipse.kapua.commons.jpa.EntityManager;
@@ -38,6 +41,31 @@ public class DeviceEventDAO extends ServiceDAO
      * @return
      */
     public static DeviceEvent create(EntityManager em, DeviceEventCreator deviceEventCreator)
+    {
+        return ServiceDAO.create(em, newDeviceEvent(deviceEventCreator));
+    }
+
+    /**
+     * Create the new device events.<BR>
+     * Unlike {@link #create(EntityManager, DeviceEventCreator)} the events are not flushed one by one: the inserts are left to the
+     * transaction commit, so the persistence provider can send them as JDBC batches.
+     * 
+     * @param em
+     * @param deviceEventCreators
+     * @return the created device events, in the creators order
+     */
+    public static List<DeviceEvent> createBatch(EntityManager em, List<DeviceEventCreator> deviceEventCreators)
+    {
+        List<DeviceEvent> deviceEvents = new ArrayList<>(deviceEventCreators.size());
+        for (DeviceEventCreator deviceEventCreator : deviceEventCreators) {
+            DeviceEvent deviceEvent = newDeviceEvent(deviceEventCreator);
+            em.persist(deviceEvent);
+            deviceEvents.add(deviceEvent);
+        }
+        return deviceEvents;
+    }
+
+    private static DeviceEvent newDeviceEvent(DeviceEventCreator deviceEventCreator)
     {
         DeviceEvent deviceEvent = new DeviceEventImpl(deviceEventCreator.getScopeId());
         deviceEvent.setDeviceId(deviceEventCreator.getDeviceId());
@@ -48,8 +76,7 @@ public class DeviceEventDAO extends ServiceDAO
         deviceEvent.setResponseCode(deviceEventCreator.getResponseCode());
         deviceEvent.setEventMessage(deviceEventCreator.getEventMessage());
         deviceEvent.setPosition(deviceEventCreator.getPosition());
-
-        return ServiceDAO.create(em, deviceEvent);
+        return deviceEvent;
     }
 
     /**
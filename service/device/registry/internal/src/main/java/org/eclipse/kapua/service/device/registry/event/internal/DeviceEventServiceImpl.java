@@ -12,6 +12,10 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.event.internal;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.service.internal.AbstractKapuaService;
@@ -86,6 +90,30 @@ public class DeviceEventServiceImpl extends AbstractKapuaService implements Devi
         return entityManagerSession.onTransactedInsert(entityManager -> DeviceEventDAO.create(entityManager, deviceEventCreator));
     }
 
+    @Override
+    public List<DeviceEvent> createBatch(List<DeviceEventCreator> deviceEventCreators) throws KapuaException {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(deviceEventCreators, "deviceEventCreators");
+        Set<KapuaId> scopeIds = new HashSet<>();
+        for (DeviceEventCreator deviceEventCreator : deviceEventCreators) {
+            ArgumentValidator.notNull(deviceEventCreator, "deviceEventCreator");
+            ArgumentValidator.notNull(deviceEventCreator.getScopeId(), "deviceEventCreator.scopeId");
+            ArgumentValidator.notNull(deviceEventCreator.getDeviceId(), "deviceEventCreator.deviceId");
+            ArgumentValidator.notNull(deviceEventCreator.getReceivedOn(), "deviceEventCreator.receivedOn");
+            ArgumentValidator.notEmptyOrNull(deviceEventCreator.getResource(), "deviceEventCreator.eventType");
+            scopeIds.add(deviceEventCreator.getScopeId());
+        }
+
+        // Check Access
+        for (KapuaId scopeId : scopeIds) {
+            authorizationService.checkPermission(permissionFactory.newPermission(deviceEventDomain, Actions.write, scopeId));
+        }
+
+        // Create the events
+        return entityManagerSession.onTransactedResult(entityManager -> DeviceEventDAO.createBatch(entityManager, deviceEventCreators));
+    }
+
     @Override
     public DeviceEvent find(KapuaId scopeId, KapuaId entityId)
             throws KapuaException {
@@ -13,6 +13,7 @@ package org.eclipse.kapua.service.device.registry.internal;
 
 import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.cache.KapuaIdentityCache;
 import org.eclipse.kapua.commons.jpa.EntityManagerSession;
 import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
 import org.eclipse.kapua.locator.KapuaLocator;
@@ -142,12 +143,16 @@ public class DeviceRegistryServiceImpl implements DeviceRegistryService {
     @Override
     public void delete(KapuaId scopeId, KapuaId deviceId) throws KapuaException {
         deviceValidation.validateDeletePreconditions(scopeId, deviceId);
-        entityManagerSession.onTransactedAction(entityManager -> {
-            if (DeviceDAO.find(entityManager, deviceId) == null) {
+        Device device = entityManagerSession.onTransactedResult(entityManager -> {
+            Device devicex = DeviceDAO.find(entityManager, deviceId);
+            if (devicex == null) {
                 throw new KapuaEntityNotFoundException(Device.TYPE, deviceId);
             }
             DeviceDAO.delete(entityManager, deviceId);
+            return devicex;
         });
+        // invalidated once committed, so the device is not cached again by a concurrent lookup
+        KapuaIdentityCache.getInstance().removeDeviceId(device.getScopeId(), device.getClientId());
     }
 
     @Override
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.registry.internal.setting;
+
+import org.eclipse.kapua.commons.setting.AbstractKapuaSetting;
+
+/**
+ * Class that offers access to device registry settings
+ * 
+ * @since 1.0
+ *
+ */
+public class KapuaDeviceRegistrySetting extends AbstractKapuaSetting<KapuaDeviceRegistrySettingKeys>
+{
+
+    /**
+     * Resource file from which source properties.
+     * 
+     */
+    private static final String                     DEVICE_REGISTRY_CONFIG_RESOURCE = "kapua-device-registry-setting.properties";
+
+    private static final KapuaDeviceRegistrySetting instance                        = new KapuaDeviceRegistrySetting();
+
+    /**
+     * Initialize the {@link AbstractKapuaSetting} with the {@link KapuaDeviceRegistrySetting#DEVICE_REGISTRY_CONFIG_RESOURCE} value.
+     * 
+     */
+    private KapuaDeviceRegistrySetting()
+    {
+        super(DEVICE_REGISTRY_CONFIG_RESOURCE);
+    }
+
+    /**
+     * Gets a singleton instance of {@link KapuaDeviceRegistrySetting}.
+     * 
+     * @return A singleton instance of KapuaDeviceRegistrySetting.
+     */
+    public static KapuaDeviceRegistrySetting getInstance()
+    {
+        return instance;
+    }
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.registry.internal.setting;
+
+import org.eclipse.kapua.commons.setting.SettingKey;
+
+/**
+ * Available settings key for device registry service
+ * 
+ * @since 1.0
+ *
+ */
+public enum KapuaDeviceRegistrySettingKeys implements SettingKey
+{
+    /**
+     * Enable the batched write of the device life cycle events
+     */
+    LIFECYCLE_EVENT_BATCH_ENABLED("device.lifecycle.event.batch.enabled"),
+    /**
+     * Maximum number of life cycle events waiting to be written (the events submitted when the queue is full are rejected)
+     */
+    LIFECYCLE_EVENT_QUEUE_SIZE("device.lifecycle.event.queue.size"),
+    /**
+     * Maximum number of life cycle events written in a single transaction
+     */
+    LIFECYCLE_EVENT_BATCH_SIZE("device.lifecycle.event.batch.size"),
+    /**
+     * Maximum time (milliseconds) a life cycle event waits for the batch to fill up
+     */
+    LIFECYCLE_EVENT_BATCH_LINGER("device.lifecycle.event.batch.linger");
+
+    private String key;
+
+    /**
+     * Set up the {@code enum} with the key value provided
+     * 
+     * @param key The value mapped by this {@link enum} value
+     */
+    private KapuaDeviceRegistrySettingKeys(String key)
+    {
+        this.key = key;
+    }
+
+    /**
+     * Gets the key for this {@link KapuaDeviceRegistrySettingKeys}
+     * 
+     */
+    public String key()
+    {
+        return key;
+    }
+}
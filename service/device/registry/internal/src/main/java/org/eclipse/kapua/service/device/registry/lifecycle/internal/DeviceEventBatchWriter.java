@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.registry.lifecycle.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authorization.AuthorizationService;
+import org.eclipse.kapua.service.authorization.domain.Domain;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventCreator;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventService;
+import org.eclipse.kapua.service.device.registry.event.internal.DeviceEventDomain;
+import org.eclipse.kapua.service.device.registry.internal.setting.KapuaDeviceRegistrySetting;
+import org.eclipse.kapua.service.device.registry.internal.setting.KapuaDeviceRegistrySettingKeys;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+
+/**
+ * Batched writer of the device life cycle events.<BR>
+ * The events are queued in a bounded queue and written by a single worker through {@link DeviceEventService#createBatch(List)}, one
+ * transaction per batch. A batch is written when it reaches the configured size or when the linger time elapsed since its first event,
+ * whichever comes first.<BR>
+ * The write permission is checked on submission, on behalf of the caller. The submission never blocks the caller: when the queue is full
+ * the event is rejected with an exception, so the message it comes from is not acknowledged and it is delivered again.<BR>
+ * The submission returns a future completed once the transaction writing the event is committed (or failed if the event cannot be
+ * written), so the caller acknowledges the message the event comes from only after the event is stored.<BR>
+ * On stop (also on the JVM shutdown) the queued events are written before the worker exits.
+ * 
+ * @since 1.0
+ *
+ */
+public class DeviceEventBatchWriter
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceEventBatchWriter.class);
+
+    private static final String METRIC_MODULE    = "device_registry";
+    private static final String METRIC_COMPONENT = "lifecycle_event";
+
+    private static final long POLL_TIMEOUT = 1000;
+    private static final long STOP_TIMEOUT = 10000;
+
+    private static final Domain deviceEventDomain = new DeviceEventDomain();
+
+    private static DeviceEventBatchWriter instance;
+
+    private final DeviceEventService      deviceEventService;
+    private final AuthorizationService    authorizationService;
+    private final PermissionFactory       permissionFactory;
+
+    private final BlockingQueue<QueuedEvent> queue;
+    private final int                        batchSize;
+    private final long                       linger;
+
+    private final Thread                     worker;
+    private volatile boolean                 running;
+
+    // metrics
+    private final Histogram                  metricBatchSize;
+    private final Histogram                  metricLag;
+    private final Timer                      metricWriteTime;
+    private final Counter                    metricWritten;
+    private final Counter                    metricFailed;
+    private final Counter                    metricRejected;
+
+    /**
+     * An event waiting to be written, together with the session of the caller it is written on behalf of
+     */
+    private static class QueuedEvent
+    {
+
+        private final DeviceEventCreator      creator;
+        private final KapuaSession            session;
+        private final long                    queuedOn;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private QueuedEvent(DeviceEventCreator creator, KapuaSession session)
+        {
+            this.creator = creator;
+            this.session = session;
+            this.queuedOn = System.currentTimeMillis();
+        }
+    }
+
+    private DeviceEventBatchWriter(KapuaLocator locator, KapuaDeviceRegistrySetting config)
+    {
+        this(locator.getService(DeviceEventService.class),
+             locator.getService(AuthorizationService.class),
+             locator.getFactory(PermissionFactory.class),
+             config.getInt(KapuaDeviceRegistrySettingKeys.LIFECYCLE_EVENT_QUEUE_SIZE),
+             config.getInt(KapuaDeviceRegistrySettingKeys.LIFECYCLE_EVENT_BATCH_SIZE),
+             config.getLong(KapuaDeviceRegistrySettingKeys.LIFECYCLE_EVENT_BATCH_LINGER),
+             locator.getService(MetricsService.class));
+    }
+
+    /**
+     * Constructor, the worker is started
+     * 
+     * @param deviceEventService
+     * @param authorizationService
+     * @param permissionFactory
+     * @param queueSize max number of events waiting to be written
+     * @param batchSize max number of events written in a transaction
+     * @param linger max time in milliseconds a batch waits for more events after its first one
+     * @param metricsService
+     */
+    DeviceEventBatchWriter(DeviceEventService deviceEventService,
+                           AuthorizationService authorizationService,
+                           PermissionFactory permissionFactory,
+                           int queueSize,
+                           int batchSize,
+                           long linger,
+                           MetricsService metricsService)
+    {
+        this.deviceEventService = deviceEventService;
+        this.authorizationService = authorizationService;
+        this.permissionFactory = permissionFactory;
+
+        queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.linger = linger;
+
+        metricBatchSize = metricsService.getHistogram(METRIC_MODULE, METRIC_COMPONENT, "batch", "size");
+        metricLag = metricsService.getHistogram(METRIC_MODULE, METRIC_COMPONENT, "lag", "ms");
+        metricWriteTime = metricsService.getTimer(METRIC_MODULE, METRIC_COMPONENT, "batch", "write", "time", "s");
+        metricWritten = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "written", "count");
+        metricFailed = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "failed", "count");
+        metricRejected = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "rejected", "count");
+        try {
+            metricsService.registerGauge(new Gauge<Integer>() {
+
+                @Override
+                public Integer getValue()
+                {
+                    return queue.size();
+                }
+            }, METRIC_MODULE, METRIC_COMPONENT, "queue", "size");
+        }
+        catch (KapuaException e) {
+            logger.warn("Cannot register the life cycle event queue size gauge: {}", e.getMessage());
+        }
+
+        running = true;
+        worker = new Thread(() -> processQueue(), "DeviceEventBatchWriter");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Return the writer instance, creating and starting it on the first call
+     * 
+     * @return
+     */
+    public static synchronized DeviceEventBatchWriter getInstance()
+    {
+        if (instance == null) {
+            DeviceEventBatchWriter writer = new DeviceEventBatchWriter(KapuaLocator.getInstance(), KapuaDeviceRegistrySetting.getInstance());
+
+            // the queued events are written on shutdown
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> writer.stop(), "DeviceEventBatchWriterShutdown"));
+            instance = writer;
+        }
+        return instance;
+    }
+
+    /**
+     * Queue the event for the next batch.<BR>
+     * The method never blocks: if the queue is full (or the writer is stopped) the event is rejected.
+     * 
+     * @param deviceEventCreator
+     * @return a future completed once the event is stored, or failed with the cause if the event cannot be written
+     * @throws KapuaException if the caller is not allowed to write the event or the event is rejected
+     */
+    public CompletableFuture<Void> submit(DeviceEventCreator deviceEventCreator)
+        throws KapuaException
+    {
+        authorizationService.checkPermission(permissionFactory.newPermission(deviceEventDomain, Actions.write, deviceEventCreator.getScopeId()));
+
+        KapuaSession session = KapuaSecurityUtils.getSession();
+        if (session == null) {
+            // no session to write the event on behalf of later
+            deviceEventService.create(deviceEventCreator);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        QueuedEvent event = new QueuedEvent(deviceEventCreator, session);
+        if (!running || !queue.offer(event)) {
+            metricRejected.inc();
+            throw KapuaException.internalError(running ? "The life cycle event queue is full" : "The life cycle event writer is stopped");
+        }
+
+        // stopped while queuing: the worker may have already exited, so the event is rejected unless it was taken
+        if (!running && queue.remove(event)) {
+            metricRejected.inc();
+            throw KapuaException.internalError("The life cycle event writer is stopped");
+        }
+        return event.future;
+    }
+
+    /**
+     * Return the number of events waiting to be written
+     * 
+     * @return
+     */
+    public int getQueueSize()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Stop the worker. The queued events are written before the worker exits (waiting up to ten seconds).
+     */
+    public void stop()
+    {
+        running = false;
+        try {
+            worker.join(STOP_TIMEOUT);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.warn("Life cycle event writer stopped with {} queued events", queue.size());
+
+            // the worker didn't exit in time, the callers are not left waiting
+            QueuedEvent event;
+            while ((event = queue.poll()) != null) {
+                event.future.completeExceptionally(KapuaException.internalError("The life cycle event writer is stopped"));
+            }
+        }
+    }
+
+    private void processQueue()
+    {
+        List<QueuedEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                QueuedEvent first = running ? queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS) : queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(linger);
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !running) {
+                        break;
+                    }
+
+                    // wake up at least every poll timeout to notice a stop during a long linger
+                    QueuedEvent next = queue.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(POLL_TIMEOUT)), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+
+                write(batch);
+            }
+            catch (InterruptedException e) {
+                // write what was collected so far
+                write(batch);
+            }
+            catch (Throwable t) {
+                metricFailed.inc(batch.size());
+                logger.error("Unexpected error while writing {} life cycle events", batch.size(), t);
+                for (QueuedEvent event : batch) {
+                    event.future.completeExceptionally(t);
+                }
+            }
+            finally {
+                batch.clear();
+            }
+        }
+        logger.info("Life cycle event writer stopped");
+    }
+
+    private void write(List<QueuedEvent> batch)
+    {
+        // the events are created on behalf of the caller, so a transaction is run for each user
+        Map<KapuaId, List<QueuedEvent>> eventsByUser = new LinkedHashMap<>();
+        for (QueuedEvent event : batch) {
+            eventsByUser.computeIfAbsent(event.session.getUserId(), userId -> new ArrayList<>()).add(event);
+        }
+
+        for (List<QueuedEvent> events : eventsByUser.values()) {
+            List<DeviceEventCreator> creators = new ArrayList<>(events.size());
+            for (QueuedEvent event : events) {
+                creators.add(event.creator);
+            }
+
+            metricBatchSize.update(events.size());
+            Context metricWriteTimeContext = metricWriteTime.time();
+            try {
+                KapuaSecurityUtils.doPriviledge(events.get(0).session, () -> deviceEventService.createBatch(creators));
+                written(events);
+            }
+            catch (Exception e) {
+                logger.warn("Cannot write {} life cycle events in a batch, writing them one by one: {}", events.size(), e.getMessage());
+                writeOneByOne(events);
+            }
+            finally {
+                metricWriteTimeContext.stop();
+            }
+        }
+    }
+
+    private void writeOneByOne(List<QueuedEvent> events)
+    {
+        for (QueuedEvent event : events) {
+            try {
+                KapuaSecurityUtils.doPriviledge(event.session, () -> deviceEventService.create(event.creator));
+                written(Collections.singletonList(event));
+            }
+            catch (Exception e) {
+                metricFailed.inc();
+                logger.error("Cannot write the {} life cycle event of device {}", event.creator.getResource(), event.creator.getDeviceId(), e);
+                event.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void written(List<QueuedEvent> events)
+    {
+        long now = System.currentTimeMillis();
+        for (QueuedEvent event : events) {
+            metricWritten.inc();
+            metricLag.update(now - event.queuedOn);
+            event.future.complete(null);
+        }
+    }
+}
@@ -12,7 +12,11 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.lifecycle.internal;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.cache.KapuaIdentityCache;
 import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.locator.KapuaProvider;
 import org.eclipse.kapua.message.KapuaPayload;
@@ -30,9 +34,13 @@ import org.eclipse.kapua.service.device.registry.DeviceCreator;
 import org.eclipse.kapua.service.device.registry.DeviceCredentialsMode;
 import org.eclipse.kapua.service.device.registry.DeviceFactory;
 import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnection;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionService;
 import org.eclipse.kapua.service.device.registry.event.DeviceEventCreator;
 import org.eclipse.kapua.service.device.registry.event.DeviceEventFactory;
 import org.eclipse.kapua.service.device.registry.event.DeviceEventService;
+import org.eclipse.kapua.service.device.registry.internal.setting.KapuaDeviceRegistrySetting;
+import org.eclipse.kapua.service.device.registry.internal.setting.KapuaDeviceRegistrySettingKeys;
 import org.eclipse.kapua.service.device.registry.lifecycle.DeviceLifeCycleService;
 
 /**
@@ -45,6 +53,8 @@ import org.eclipse.kapua.service.device.registry.lifecycle.DeviceLifeCycleServic
 public class DeviceLifeCycleServiceImpl implements DeviceLifeCycleService
 {
 
+    private final boolean eventBatchEnabled = KapuaDeviceRegistrySetting.getInstance().getBoolean(KapuaDeviceRegistrySettingKeys.LIFECYCLE_EVENT_BATCH_ENABLED, true);
+
     @Override
     public void birth(KapuaId connectionId, KapuaBirthMessage message)
         throws KapuaException
@@ -53,15 +63,34 @@ public class DeviceLifeCycleServiceImpl implements DeviceLifeCycleService
         KapuaBirthChannel channel = message.getChannel();
         KapuaId scopeId = message.getScopeId();
         KapuaId deviceId = message.getDeviceId();
+        long cacheGeneration = KapuaIdentityCache.getInstance().getGeneration();
 
         //
         // Device update
         KapuaLocator locator = KapuaLocator.getInstance();
         DeviceRegistryService deviceRegistryService = locator.getService(DeviceRegistryService.class);
+        String clientId = channel.getClientId();
+
+        // the broker writes the device connection asynchronously, so its id may not be known yet when the birth arrives:
+        // look for the connection of the client and never replace the device connection with none
+        if (connectionId == null) {
+            DeviceConnection deviceConnection = locator.getService(DeviceConnectionService.class).findByClientId(scopeId, clientId);
+            if (deviceConnection != null) {
+                connectionId = deviceConnection.getId();
+            }
+        }
+
         Device device = null;
-        if (deviceId == null) {
-        	String clientId = channel.getClientId();
+        if (deviceId != null) {
+            device = deviceRegistryService.find(scopeId, deviceId);
+            if (device == null) {
+                // the device id was resolved from the identity cache, while the device was deleted by another node within the cache ttl
+                KapuaIdentityCache.getInstance().removeDeviceId(scopeId, clientId);
+                cacheGeneration = KapuaIdentityCache.getInstance().getGeneration();
+            }
+        }
 
+        if (device == null) {
         	DeviceFactory deviceFactory = locator.getFactory(DeviceFactory.class);
             DeviceCreator deviceCreator = deviceFactory.newCreator(scopeId, clientId);
 
@@ -86,7 +115,6 @@ public class DeviceLifeCycleServiceImpl implements DeviceLifeCycleService
             device = deviceRegistryService.create(deviceCreator);
         }
         else {
-        	device = deviceRegistryService.find(scopeId, deviceId);
             device.setDisplayName(payload.getDisplayName());
             device.setSerialNumber(payload.getSerialNumber());
             device.setModelId(payload.getModelId());
@@ -102,14 +130,16 @@ public class DeviceLifeCycleServiceImpl implements DeviceLifeCycleService
             device.setAcceptEncoding(payload.getAcceptEncoding());
 
             // issue #57
-            device.setConnectionId(connectionId);
+            if (connectionId != null) {
+                device.setConnectionId(connectionId);
+            }
 
             deviceRegistryService.update(device);
         }
+        KapuaIdentityCache.getInstance().putDeviceId(scopeId, device.getClientId(), device.getId(), cacheGeneration);
 
         //
         // Event create
-        DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
         DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
         DeviceEventCreator deviceEventCreator = deviceEventFactory.newCreator(scopeId, device.getId(), message.getReceivedOn(), "BIRTH");
 
@@ -123,7 +153,7 @@ public class DeviceLifeCycleServiceImpl implements DeviceLifeCycleService
             deviceEventCreator.setPosition(position);
         }
 
-        deviceEventService.create(deviceEventCreator);
+        createEvent(deviceEventCreator);
     }
 
     @Override
@@ -142,7 +172,6 @@ public class DeviceLifeCycleServiceImpl implements DeviceLifeCycleService
 
         //
         // Event create
-        DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
         DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
         DeviceEventCreator deviceEventCreator = deviceEventFactory.newCreator(scopeId, deviceId, message.getReceivedOn(), "DEATH");
 
@@ -156,7 +185,7 @@ public class DeviceLifeCycleServiceImpl implements DeviceLifeCycleService
             deviceEventCreator.setPosition(position);
         }
 
-        deviceEventService.create(deviceEventCreator);
+        createEvent(deviceEventCreator);
     }
 
     @Override
@@ -175,7 +204,6 @@ public class DeviceLifeCycleServiceImpl implements DeviceLifeCycleService
 
         //
         // Event create
-        DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
         DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
         DeviceEventCreator deviceEventCreator = deviceEventFactory.newCreator(scopeId, device.getId(), message.getReceivedOn(), "MISSING");
 
@@ -189,8 +217,7 @@ public class DeviceLifeCycleServiceImpl implements DeviceLifeCycleService
             deviceEventCreator.setPosition(position);
         }
 
-        deviceEventService.create(deviceEventCreator);
-
+        createEvent(deviceEventCreator);
     }
 
     @Override
@@ -209,7 +236,6 @@ public class DeviceLifeCycleServiceImpl implements DeviceLifeCycleService
 
         //
         // Event create
-        DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
         DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
         DeviceEventCreator deviceEventCreator = deviceEventFactory.newCreator(scopeId, device.getId(), message.getReceivedOn(), "APPLICATION");
 
@@ -223,6 +249,37 @@ public class DeviceLifeCycleServiceImpl implements DeviceLifeCycleService
             deviceEventCreator.setPosition(position);
         }
 
-        deviceEventService.create(deviceEventCreator);
+        createEvent(deviceEventCreator);
+    }
+
+    /**
+     * Create the life cycle event, through the batched writer if enabled.<BR>
+     * The method returns once the event is stored, so the message it comes from is acknowledged only after that.
+     * 
+     * @param deviceEventCreator
+     * @throws KapuaException
+     */
+    private void createEvent(DeviceEventCreator deviceEventCreator)
+        throws KapuaException
+    {
+        if (eventBatchEnabled) {
+            CompletableFuture<Void> future = DeviceEventBatchWriter.getInstance().submit(deviceEventCreator);
+            try {
+                future.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw KapuaException.internalError(e);
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof KapuaException) {
+                    throw (KapuaException) e.getCause();
+                }
+                throw KapuaException.internalError(e.getCause());
+            }
+        }
+        else {
+            KapuaLocator.getInstance().getService(DeviceEventService.class).create(deviceEventCreator);
+        }
     }
 }
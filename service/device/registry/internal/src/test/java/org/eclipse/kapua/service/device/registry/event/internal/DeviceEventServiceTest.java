@@ -16,7 +16,9 @@ import static java.math.BigInteger.ONE;
 import static org.eclipse.kapua.commons.security.KapuaSecurityUtils.doPriviledge;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import org.assertj.core.api.Assertions;
 import org.eclipse.kapua.KapuaErrorCodes;
@@ -79,6 +81,24 @@ public class DeviceEventServiceTest extends KapuaTest {
         });
     }
 
+    @Test
+    public void shouldCreateEventsInBatch() throws Exception {
+        doPriviledge(() -> {
+            // Given
+            DeviceEventCreator otherDeviceEventCreator = new DeviceEventFactoryImpl().newCreator(scope, new KapuaEid(ONE), new Date(), "other");
+            otherDeviceEventCreator.setResponseCode(KapuaResponseCode.ACCEPTED);
+
+            // When
+            List<DeviceEvent> deviceEvents = deviceEventService.createBatch(Arrays.asList(deviceEventCreator, otherDeviceEventCreator));
+
+            // Then
+            Assertions.assertThat(deviceEvents).hasSize(2);
+            Assertions.assertThat(deviceEvents.get(0).getId()).isNotNull();
+            Assertions.assertThat(deviceEvents.get(1).getResource()).isEqualTo("other");
+            return null;
+        });
+    }
+
     @Test
     @Ignore
     public void shouldFindDeviceEventByID() throws Exception {
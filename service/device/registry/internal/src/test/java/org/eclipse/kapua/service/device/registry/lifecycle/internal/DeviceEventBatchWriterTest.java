@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.registry.lifecycle.internal;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.metric.MetricsServiceImpl;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authorization.AuthorizationService;
+import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventCreator;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventService;
+import org.eclipse.kapua.service.device.registry.event.internal.DeviceEventFactoryImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeviceEventBatchWriterTest extends Assert
+{
+
+    private static final KapuaId SCOPE_ID = new KapuaEid(BigInteger.ONE);
+    private static final KapuaId USER_ID  = new KapuaEid(BigInteger.TEN);
+
+    private final List<Integer>   batchSizes = new CopyOnWriteArrayList<>();
+    private final List<String>    created    = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch writing  = new CountDownLatch(1);
+    private volatile CountDownLatch released = new CountDownLatch(0);
+    private volatile boolean      failBatch;
+
+    private DeviceEventService deviceEventService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp()
+        throws Exception
+    {
+        KapuaSecurityUtils.setSession(new KapuaSession(null, SCOPE_ID, USER_ID));
+
+        deviceEventService = mock(DeviceEventService.class);
+        doAnswer(invocation -> {
+            writing.countDown();
+            released.await();
+            if (failBatch) {
+                throw KapuaException.internalError("batch failure");
+            }
+            batchSizes.add(((List<DeviceEventCreator>) invocation.getArguments()[0]).size());
+            return new ArrayList<>();
+        }).when(deviceEventService).createBatch(anyListOf(DeviceEventCreator.class));
+        doAnswer(invocation -> {
+            DeviceEventCreator creator = (DeviceEventCreator) invocation.getArguments()[0];
+            if ("fail".equals(creator.getResource())) {
+                throw KapuaException.internalError("event failure");
+            }
+            created.add(creator.getResource());
+            return null;
+        }).when(deviceEventService).create(any(DeviceEventCreator.class));
+    }
+
+    @After
+    public void tearDown()
+    {
+        KapuaSecurityUtils.clearSession();
+    }
+
+    @Test
+    public void testWriteFullBatches()
+        throws Exception
+    {
+        DeviceEventBatchWriter writer = newWriter(100, 3, 60000L);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(writer.submit(newEvent("event-" + i)));
+            }
+
+            // the batches are full, they don't wait for the linger time
+            for (CompletableFuture<Void> future : futures) {
+                future.get(1, TimeUnit.SECONDS);
+            }
+            assertEquals(Arrays.asList(3, 3), batchSizes);
+        }
+        finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void testWriteAfterTheLinger()
+        throws Exception
+    {
+        DeviceEventBatchWriter writer = newWriter(100, 100, 200L);
+        try {
+            CompletableFuture<Void> first = writer.submit(newEvent("event-0"));
+            CompletableFuture<Void> second = writer.submit(newEvent("event-1"));
+            assertFalse("The event is not stored yet", first.isDone());
+
+            first.get(1, TimeUnit.SECONDS);
+            second.get(1, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList(2), batchSizes);
+        }
+        finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void testRejectWhenTheQueueIsFull()
+        throws Exception
+    {
+        released = new CountDownLatch(1);
+        DeviceEventBatchWriter writer = newWriter(1, 1, 0L);
+        try {
+            CompletableFuture<Void> first = writer.submit(newEvent("event-0"));
+            assertTrue(writing.await(1, TimeUnit.SECONDS));
+            CompletableFuture<Void> second = writer.submit(newEvent("event-1"));
+
+            try {
+                writer.submit(newEvent("event-2"));
+                fail("The event should be rejected");
+            }
+            catch (KapuaException e) {
+                // expected
+            }
+
+            released.countDown();
+            first.get(1, TimeUnit.SECONDS);
+            second.get(1, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList(1, 1), batchSizes);
+        }
+        finally {
+            released.countDown();
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void testWriteOneByOneWhenTheBatchFails()
+        throws Exception
+    {
+        failBatch = true;
+        DeviceEventBatchWriter writer = newWriter(100, 3, 60000L);
+        try {
+            CompletableFuture<Void> first = writer.submit(newEvent("event-0"));
+            CompletableFuture<Void> failing = writer.submit(newEvent("fail"));
+            CompletableFuture<Void> third = writer.submit(newEvent("event-2"));
+
+            first.get(1, TimeUnit.SECONDS);
+            third.get(1, TimeUnit.SECONDS);
+            try {
+                failing.get(1, TimeUnit.SECONDS);
+                fail("The event should not be stored");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof KapuaException);
+            }
+            assertEquals(Arrays.asList("event-0", "event-2"), created);
+        }
+        finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void testStopWritesTheQueuedEvents()
+        throws Exception
+    {
+        DeviceEventBatchWriter writer = newWriter(100, 100, 60000L);
+        CompletableFuture<Void> future = writer.submit(newEvent("event-0"));
+
+        writer.stop();
+
+        assertTrue(future.isDone());
+        assertFalse(future.isCompletedExceptionally());
+        try {
+            writer.submit(newEvent("event-1"));
+            fail("The event should be rejected once the writer is stopped");
+        }
+        catch (KapuaException e) {
+            // expected
+        }
+    }
+
+    private DeviceEventBatchWriter newWriter(int queueSize, int batchSize, long linger)
+    {
+        return new DeviceEventBatchWriter(deviceEventService,
+                                          mock(AuthorizationService.class),
+                                          mock(PermissionFactory.class),
+                                          queueSize,
+                                          batchSize,
+                                          linger,
+                                          new MetricsServiceImpl());
+    }
+
+    private static DeviceEventCreator newEvent(String resource)
+    {
+        return new DeviceEventFactoryImpl().newCreator(SCOPE_ID, new KapuaEid(BigInteger.ONE), new Date(), resource);
+    }
+}
@@ -37,6 +37,21 @@ public interface AuthenticationService extends KapuaService {
     public AccessToken login(LoginCredentials loginCredentials)
             throws KapuaException;
 
+    /**
+     * Login the provided user login credentials on the system (if the credentials are valid).<br>
+     * If the access token is not persisted, it is valid only for the current session and it cannot be used to authenticate again:
+     * this is meant for the short lived logins (e.g. the broker connection checks) which logout as soon as they are done.
+     * 
+     * @param loginCredentials
+     * @param persistAccessToken
+     *            whether the returned access token has to be persisted
+     * @return
+     * @throws KapuaException
+     *             an exception is thrown if the credentials are not found on the system, are expired or are disabled
+     */
+    public AccessToken login(LoginCredentials loginCredentials, boolean persistAccessToken)
+            throws KapuaException;
+
     /**
      * FIXME: add javadoc
      * 
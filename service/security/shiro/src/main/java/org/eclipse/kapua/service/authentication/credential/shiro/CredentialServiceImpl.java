@@ -39,6 +39,7 @@ import org.eclipse.kapua.service.authentication.credential.CredentialQuery;
 import org.eclipse.kapua.service.authentication.credential.CredentialService;
 import org.eclipse.kapua.service.authentication.credential.CredentialType;
 import org.eclipse.kapua.service.authentication.shiro.AuthenticationEntityManagerFactory;
+import org.eclipse.kapua.service.authentication.shiro.realm.UserPassCredentialsCache;
 import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSetting;
 import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSettingKeys;
 import org.eclipse.kapua.service.authorization.AuthorizationService;
@@ -164,7 +165,7 @@ public class CredentialServiceImpl extends AbstractKapuaService implements Crede
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(credentialDomain, Actions.write, credential.getScopeId()));
 
-        return entityManagerSession.onTransactedResult(em -> {
+        Credential updatedCredential = entityManagerSession.onTransactedResult(em -> {
             Credential currentCredential = CredentialDAO.find(em, credential.getId());
 
             if (currentCredential == null) {
@@ -178,6 +179,9 @@ public class CredentialServiceImpl extends AbstractKapuaService implements Crede
             // Passing attributes??
             return CredentialDAO.update(em, credential);
         });
+
+        UserPassCredentialsCache.getInstance().invalidate(credential.getUserId());
+        return updatedCredential;
     }
 
     @Override
@@ -248,12 +252,16 @@ public class CredentialServiceImpl extends AbstractKapuaService implements Crede
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(credentialDomain, Actions.delete, scopeId));
 
-        entityManagerSession.onTransactedAction(em -> {
-            if (CredentialDAO.find(em, credentialId) == null) {
+        Credential deletedCredential = entityManagerSession.onTransactedResult(em -> {
+            Credential credential = CredentialDAO.find(em, credentialId);
+            if (credential == null) {
                 throw new KapuaEntityNotFoundException(Credential.TYPE, credentialId);
             }
             CredentialDAO.delete(em, credentialId);
+            return credential;
         });
+
+        UserPassCredentialsCache.getInstance().invalidate(deletedCredential.getUserId());
     }
 
     @Override
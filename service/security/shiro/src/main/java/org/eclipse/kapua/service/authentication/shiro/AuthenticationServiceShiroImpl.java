@@ -15,6 +15,7 @@ package org.eclipse.kapua.service.authentication.shiro;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.UUID;
 
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.ShiroException;
@@ -42,12 +43,12 @@ import org.eclipse.kapua.service.authentication.LoginCredentials;
 import org.eclipse.kapua.service.authentication.SessionCredentials;
 import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSetting;
 import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSettingKeys;
-import org.eclipse.kapua.service.authentication.shiro.utils.RSAUtil;
+import org.eclipse.kapua.service.authentication.shiro.utils.JwtSigningKeys;
 import org.eclipse.kapua.service.authentication.token.AccessToken;
 import org.eclipse.kapua.service.authentication.token.AccessTokenCreator;
 import org.eclipse.kapua.service.authentication.token.AccessTokenFactory;
 import org.eclipse.kapua.service.authentication.token.AccessTokenService;
-import org.jose4j.jws.AlgorithmIdentifiers;
+import org.eclipse.kapua.service.authentication.token.shiro.AccessTokenImpl;
 import org.jose4j.jws.JsonWebSignature;
 import org.jose4j.jwt.JwtClaims;
 import org.jose4j.jwt.NumericDate;
@@ -119,6 +120,12 @@ public class AuthenticationServiceShiroImpl implements AuthenticationService {
     @Override
     public AccessToken login(LoginCredentials loginCredentials)
             throws KapuaException {
+        return login(loginCredentials, true);
+    }
+
+    @Override
+    public AccessToken login(LoginCredentials loginCredentials, boolean persistAccessToken)
+            throws KapuaException {
 
         checkCurrentSubjectNotAuthenticated();
 
@@ -150,7 +157,7 @@ public class AuthenticationServiceShiroImpl implements AuthenticationService {
             // Create the access token
             Subject shiroSubject = SecurityUtils.getSubject();
             Session shiroSession = shiroSubject.getSession();
-            accessToken = createAccessToken(shiroSession);
+            accessToken = persistAccessToken ? createAccessToken(shiroSession) : createTransientAccessToken(shiroSession);
 
             //
             // Establish session
@@ -257,7 +264,8 @@ public class AuthenticationServiceShiroImpl implements AuthenticationService {
             if (kapuaSession != null) {
                 AccessToken accessToken = kapuaSession.getAccessToken();
 
-                if (accessToken != null) {
+                // a transient access token has never been persisted
+                if (accessToken != null && accessToken.getId() != null) {
                     KapuaLocator locator = KapuaLocator.getInstance();
                     AccessTokenService accessTokenService = locator.getService(AccessTokenService.class);
                     KapuaSecurityUtils.doPriviledge(() -> {
@@ -360,6 +368,26 @@ public class AuthenticationServiceShiroImpl implements AuthenticationService {
         return accessToken;
     }
 
+    /**
+     * Create a not persisted {@link AccessToken} from the data contained in the Shiro {@link Session}.<br>
+     * The token identifier is random and it is not signed, since the token can only be used by the current session.
+     * 
+     * @param session
+     *            The Shiro {@link Session} from which extract data
+     * @return The transient {@link AccessToken}
+     * 
+     * @since 1.0
+     */
+    private AccessToken createTransientAccessToken(Session session) {
+        KapuaEid scopeId = (KapuaEid) session.getAttribute("scopeId");
+        KapuaEid userId = (KapuaEid) session.getAttribute("userId");
+
+        KapuaAuthenticationSetting settings = KapuaAuthenticationSetting.getInstance();
+        long ttl = settings.getLong(KapuaAuthenticationSettingKeys.AUTHENTICATION_TOKEN_EXPIRE_AFTER);
+
+        return new AccessTokenImpl(scopeId, userId, UUID.randomUUID().toString(), new Date(System.currentTimeMillis() + ttl));
+    }
+
     private void enstablishSession(Subject subject, AccessToken accessToken) {
         KapuaSession kapuaSession = new KapuaSession(accessToken, accessToken.getScopeId(), accessToken.getUserId());
         KapuaSecurityUtils.setSession(kapuaSession);
@@ -396,10 +424,12 @@ public class AuthenticationServiceShiroImpl implements AuthenticationService {
 
         String jwt = null;
         try {
+            JwtSigningKeys signingKeys = JwtSigningKeys.getInstance();
             JsonWebSignature jws = new JsonWebSignature();
-            jws.setAlgorithmHeaderValue(AlgorithmIdentifiers.RSA_USING_SHA256);
+            jws.setAlgorithmHeaderValue(signingKeys.getAlgorithm());
+            jws.setKeyIdHeaderValue(signingKeys.getSigningKeyId());
             jws.setPayload(claims.toJson());
-            jws.setKey(RSAUtil.getPrivateKey());
+            jws.setKey(signingKeys.getSigningKey());
 
             jwt = jws.getCompactSerialization();
         } catch (JoseException e) {
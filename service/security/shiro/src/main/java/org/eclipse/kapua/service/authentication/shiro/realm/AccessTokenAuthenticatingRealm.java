@@ -13,6 +13,7 @@
 package org.eclipse.kapua.service.authentication.shiro.realm;
 
 import java.util.Date;
+import java.util.concurrent.Callable;
 
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.ShiroException;
@@ -68,16 +69,7 @@ public class AccessTokenAuthenticatingRealm extends AuthenticatingRealm {
         // Credential matcher for access tokens
         setCredentialsMatcher(new AccessTokenCredentialsMatcher());
 
-        // // Access token caching
-        // KapuaAuthenticationSetting settings = KapuaAuthenticationSetting.getInstance();
-        // boolean cachingEnabled = settings.getBoolean(KapuaAuthenticationSettingKeys.AUTHENTICATION_SESSION_JWT_CACHE_ENABLE);
-        //
-        // setCachingEnabled(cachingEnabled);
-        //
-        // if (cachingEnabled) {
-        //
-        //// setCacheManager(cacheManager);
-        // }
+        // Access token caching is done by the AccessTokenCache (see doGetAuthenticationInfo and assertCredentialsMatch)
     }
 
     @Override
@@ -93,28 +85,44 @@ public class AccessTokenAuthenticatingRealm extends AuthenticatingRealm {
         KapuaLocator locator;
         UserService userService;
         AccountService accountService;
-        AccessTokenService accessTokenService;
 
         try {
             locator = KapuaLocator.getInstance();
             userService = locator.getService(UserService.class);
             accountService = locator.getService(AccountService.class);
-            accessTokenService = locator.getService(AccessTokenService.class);
         } catch (KapuaRuntimeException kre) {
             throw new ShiroException("Error while getting services!", kre);
         }
 
         //
-        // Find accessToken
-        final AccessToken accessToken;
+        // Already verified token: the user and account status is checked anyway
+        AccessTokenCache accessTokenCache = AccessTokenCache.getInstance();
+        long cacheGeneration = accessTokenCache.getGeneration();
+        SessionAuthenticationInfo cachedInfo = accessTokenCache.get(tokenTokenId);
+        if (cachedInfo != null) {
+            AccessToken cachedAccessToken = cachedInfo.getAccessToken();
+            try {
+                User user = find(() -> userService.find(cachedAccessToken.getScopeId(), cachedAccessToken.getUserId()), "user");
+                checkUser(user);
+                checkAccount(find(() -> accountService.find(user.getScopeId()), "account"));
+            } catch (AuthenticationException ae) {
+                accessTokenCache.invalidate(cachedAccessToken.getId());
+                throw ae;
+            }
+            return cachedInfo;
+        }
+
+        AccessTokenService accessTokenService;
         try {
-            accessToken = KapuaSecurityUtils.doPriviledge(() -> accessTokenService.findByTokenId(tokenTokenId));
-        } catch (AuthenticationException ae) {
-            throw ae;
-        } catch (Exception e) {
-            throw new ShiroException("Error while find access token!", e);
+            accessTokenService = locator.getService(AccessTokenService.class);
+        } catch (KapuaRuntimeException kre) {
+            throw new ShiroException("Error while getting services!", kre);
         }
 
+        //
+        // Find accessToken
+        final AccessToken accessToken = find(() -> accessTokenService.findByTokenId(tokenTokenId), "access token");
+
         // Check existence
         if (accessToken == null) {
             throw new UnknownAccountException();
@@ -128,15 +136,35 @@ public class AccessTokenAuthenticatingRealm extends AuthenticatingRealm {
 
         //
         // Get the associated user by name
-        final User user;
+        final User user = find(() -> userService.find(accessToken.getScopeId(), accessToken.getUserId()), "user");
+        checkUser(user);
+
+        //
+        // Find account
+        final Account account = find(() -> accountService.find(user.getScopeId()), "account");
+        checkAccount(account);
+
+        //
+        // BuildAuthenticationInfo
+        SessionAuthenticationInfo info = new SessionAuthenticationInfo(getName(),
+                account,
+                user,
+                accessToken);
+        info.setCacheGeneration(cacheGeneration);
+        return info;
+    }
+
+    private static <T> T find(Callable<T> finder, String entityName) {
         try {
-            user = KapuaSecurityUtils.doPriviledge(() -> userService.find(accessToken.getScopeId(), accessToken.getUserId()));
+            return KapuaSecurityUtils.doPriviledge(finder);
         } catch (AuthenticationException ae) {
             throw ae;
         } catch (Exception e) {
-            throw new ShiroException("Error while find user!", e);
+            throw new ShiroException("Error while find " + entityName + "!", e);
         }
+    }
 
+    private static void checkUser(User user) {
         // Check existence
         if (user == null) {
             throw new UnknownAccountException();
@@ -146,39 +174,28 @@ public class AccessTokenAuthenticatingRealm extends AuthenticatingRealm {
         if (UserStatus.DISABLED.equals(user.getStatus())) {
             throw new DisabledAccountException();
         }
+    }
 
-        //
-        // Find account
-        final Account account;
-        try {
-            account = KapuaSecurityUtils.doPriviledge(() -> accountService.find(user.getScopeId()));
-        } catch (AuthenticationException ae) {
-            throw ae;
-        } catch (Exception e) {
-            throw new ShiroException("Error while find account!", e);
-        }
-
+    private static void checkAccount(Account account) {
         // Check existence
         if (account == null) {
             throw new UnknownAccountException();
         }
-
-        //
-        // BuildAuthenticationInfo
-        return new SessionAuthenticationInfo(getName(),
-                account,
-                user,
-                accessToken);
     }
 
     @Override
     protected void assertCredentialsMatch(AuthenticationToken authcToken, AuthenticationInfo info)
             throws AuthenticationException {
         SessionAuthenticationInfo kapuaInfo = (SessionAuthenticationInfo) info;
+        AccessTokenCredentialsImpl token = (AccessTokenCredentialsImpl) authcToken;
 
         //
-        // Credential match
-        super.assertCredentialsMatch(authcToken, info);
+        // Credential match (the cached info has already been matched against the token)
+        AccessTokenCache accessTokenCache = AccessTokenCache.getInstance();
+        if (!accessTokenCache.isCached(token.getTokenId(), kapuaInfo)) {
+            super.assertCredentialsMatch(authcToken, info);
+            accessTokenCache.put(token.getTokenId(), kapuaInfo, kapuaInfo.getCacheGeneration());
+        }
 
         //
         // Set kapua session
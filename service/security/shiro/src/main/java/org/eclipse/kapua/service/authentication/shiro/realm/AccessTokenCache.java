@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.realm;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSetting;
+import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSettingKeys;
+import org.eclipse.kapua.service.authentication.token.AccessToken;
+import org.eclipse.kapua.service.metric.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Verified access tokens cache.<br>
+ * After a successful access token login the {@link SessionAuthenticationInfo} (the token subject and expiration) is cached by token id,
+ * so a following request with the same token doesn't query the access token, user and account services and doesn't verify the JWT
+ * signature again.<br>
+ * A cached token is used only until its expiration. The cache only spares the token lookup and the JWT verification: the realm still
+ * checks the current user and account status on a hit, so a user disabled or deleted (by any process) cannot use a cached token. The
+ * entries are invalidated by the access token service when the token is updated, invalidated or deleted, and an info loaded before an
+ * invalidation is not cached (see {@link #getGeneration()}). The entries expire after a short time, which bounds how long a token
+ * invalidated by another node is still accepted.<br>
+ *
+ * @since 1.0
+ *
+ */
+public class AccessTokenCache
+{
+
+    private static final String METRIC_MODULE    = "authentication";
+    private static final String METRIC_COMPONENT = "access_token";
+
+    private static final AccessTokenCache instance = new AccessTokenCache();
+
+    private final boolean                                  enabled;
+    private final Cache<String, SessionAuthenticationInfo> tokens;
+    private final AtomicLong                               generation = new AtomicLong();
+
+    private final Counter hit;
+    private final Counter miss;
+    private final Counter expired;
+    private final Counter invalidated;
+
+    private AccessTokenCache()
+    {
+        KapuaAuthenticationSetting settings = KapuaAuthenticationSetting.getInstance();
+        enabled = settings.getBoolean(KapuaAuthenticationSettingKeys.AUTHENTICATION_SESSION_JWT_CACHE_ENABLE, false);
+        long ttl = settings.getLong(KapuaAuthenticationSettingKeys.AUTHENTICATION_SESSION_JWT_CACHE_CACHE_TTL, 60000L);
+        int sizeMax = settings.getInt(KapuaAuthenticationSettingKeys.AUTHENTICATION_SESSION_JWT_CACHE_SIZE_MAXIMUM, 100000);
+
+        tokens = CacheBuilder.newBuilder()
+                             .maximumSize(sizeMax)
+                             .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                             .build();
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        hit = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "cache", "hit", "count");
+        miss = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "cache", "miss", "count");
+        expired = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "cache", "expired", "count");
+        invalidated = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "cache", "invalidated", "count");
+    }
+
+    /**
+     * Get the access tokens cache instance
+     *
+     * @return
+     */
+    public static AccessTokenCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Return the cached authentication info of the token if it has already been verified and it is not expired, null otherwise
+     *
+     * @param tokenId
+     * @return
+     */
+    public SessionAuthenticationInfo get(String tokenId)
+    {
+        if (!enabled || tokenId == null) {
+            return null;
+        }
+
+        SessionAuthenticationInfo info = tokens.getIfPresent(tokenId);
+        if (info != null) {
+            Date expiresOn = info.getAccessToken().getExpiresOn();
+            if (expiresOn == null || expiresOn.after(new Date())) {
+                hit.inc();
+                return info;
+            }
+
+            // the full check reports the expiration
+            tokens.invalidate(tokenId);
+            expired.inc();
+        }
+
+        miss.inc();
+        return null;
+    }
+
+    /**
+     * Check if the authentication info is the cached one of the token, that is the info returned by {@link #get(String)}
+     *
+     * @param tokenId
+     * @param info
+     * @return
+     */
+    public boolean isCached(String tokenId, SessionAuthenticationInfo info)
+    {
+        return tokenId != null && info != null && tokens.getIfPresent(tokenId) == info;
+    }
+
+    /**
+     * Return the invalidation generation, to be read before loading the authentication info to be cached
+     *
+     * @return
+     */
+    public long getGeneration()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Cache the authentication info of the verified token.<br>
+     * The info is not cached if an invalidation happened since the provided generation was read, since it may have been loaded
+     * before the token was invalidated.
+     *
+     * @param tokenId
+     * @param info
+     * @param loadGeneration the generation read before loading the info (see {@link #getGeneration()})
+     */
+    public void put(String tokenId, SessionAuthenticationInfo info, long loadGeneration)
+    {
+        if (!enabled || generation.get() != loadGeneration) {
+            return;
+        }
+
+        tokens.put(tokenId, info);
+
+        // invalidated while putting
+        if (generation.get() != loadGeneration) {
+            tokens.asMap().remove(tokenId, info);
+        }
+    }
+
+    /**
+     * Invalidate the cached authentication info of the access token
+     *
+     * @param accessTokenId
+     */
+    public void invalidate(KapuaId accessTokenId)
+    {
+        generation.incrementAndGet();
+        if (tokens.asMap().values().removeIf(info -> isAccessToken(info.getAccessToken(), accessTokenId))) {
+            invalidated.inc();
+        }
+    }
+
+    private static boolean isAccessToken(AccessToken accessToken, KapuaId accessTokenId)
+    {
+        return accessToken.getId() != null && accessToken.getId().getId().equals(accessTokenId.getId());
+    }
+}
@@ -12,17 +12,22 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.authentication.shiro.realm;
 
+import java.security.Key;
+
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
 import org.apache.shiro.authc.credential.CredentialsMatcher;
 import org.eclipse.kapua.service.authentication.AccessTokenCredentials;
 import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSetting;
 import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSettingKeys;
-import org.eclipse.kapua.service.authentication.shiro.utils.RSAUtil;
+import org.eclipse.kapua.service.authentication.shiro.utils.JwtSigningKeys;
 import org.eclipse.kapua.service.authentication.token.AccessToken;
+import org.jose4j.jwa.AlgorithmConstraints;
+import org.jose4j.jwa.AlgorithmConstraints.ConstraintType;
 import org.jose4j.jwt.consumer.InvalidJwtException;
 import org.jose4j.jwt.consumer.JwtConsumer;
 import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.jose4j.lang.UnresolvableKeyException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +41,36 @@ public class AccessTokenCredentialsMatcher implements CredentialsMatcher {
 
     private static Logger logger = LoggerFactory.getLogger(AccessTokenCredentialsMatcher.class);
 
+    private final JwtConsumer jwtConsumer;
+
+    /**
+     * Constructor.<br>
+     * The JWT validator is built once from the settings and shared by all the matches (the {@link JwtConsumer} is thread safe).
+     * The verification key is resolved by the token {@code kid} header, so the tokens signed by a rotated key are valid until they expire.
+     */
+    public AccessTokenCredentialsMatcher() {
+        KapuaAuthenticationSetting settings = KapuaAuthenticationSetting.getInstance();
+        String issuer = settings.getString(KapuaAuthenticationSettingKeys.AUTHENTICATION_SESSION_JWT_ISSUER);
+        JwtSigningKeys signingKeys = JwtSigningKeys.getInstance();
+
+        //
+        // Set validator
+        jwtConsumer = new JwtConsumerBuilder()
+                .setVerificationKeyResolver((jws, nestingContext) -> {
+                    Key key = signingKeys.getVerificationKey(jws.getKeyIdHeaderValue());
+                    if (key == null) {
+                        throw new UnresolvableKeyException("Unknown JWT key id: " + jws.getKeyIdHeaderValue());
+                    }
+                    return key;
+                }) // Set verification key by kid
+                .setJwsAlgorithmConstraints(new AlgorithmConstraints(ConstraintType.WHITELIST, signingKeys.getAlgorithm())) // Set accepted algorithm
+                .setExpectedIssuer(issuer) // Set expected issuer
+                .setRequireIssuedAt() // Set require reserved claim: iat
+                .setRequireExpirationTime() // Set require reserved claim: exp
+                .setRequireSubject() // // Set require reserved claim: sub
+                .build();
+    }
+
     @Override
     public boolean doCredentialsMatch(AuthenticationToken authenticationToken, AuthenticationInfo authenticationInfo) {
         //
@@ -51,27 +86,12 @@ public class AccessTokenCredentialsMatcher implements CredentialsMatcher {
         // Match token with info
         boolean credentialMatch = false;
         if (jwt.equals(infoCredential.getTokenId())) {
-            KapuaAuthenticationSetting settings = KapuaAuthenticationSetting.getInstance();
             try {
-                String issuer = settings.getString(KapuaAuthenticationSettingKeys.AUTHENTICATION_SESSION_JWT_ISSUER);
-
-                //
-                // Set validator
-                JwtConsumer jwtConsumer = new JwtConsumerBuilder()
-                        .setVerificationKey(RSAUtil.getPublicKey()) // Set public key
-                        .setExpectedIssuer(issuer) // Set expected issuer
-                        .setRequireIssuedAt() // Set require reserved claim: iat
-                        .setRequireExpirationTime() // Set require reserved claim: exp
-                        .setRequireSubject() // // Set require reserved claim: sub
-                        .build();
-
                 //
                 // This validates JWT
                 jwtConsumer.processToClaims(jwt);
 
                 credentialMatch = true;
-
-                // FIXME: if true cache token password for authentication performance improvement
             } catch (InvalidJwtException e) {
                 logger.error("Error while validating JWT access token", e);
             }
@@ -34,6 +34,9 @@ public class SessionAuthenticationInfo implements AuthenticationInfo {
     private User user;
     private AccessToken accessToken;
 
+    // access token cache generation read before loading the info
+    private transient long cacheGeneration;
+
     /**
      * Constructor
      * 
@@ -70,6 +73,14 @@ public class SessionAuthenticationInfo implements AuthenticationInfo {
         return account;
     }
 
+    long getCacheGeneration() {
+        return cacheGeneration;
+    }
+
+    void setCacheGeneration(long cacheGeneration) {
+        this.cacheGeneration = cacheGeneration;
+    }
+
     public String getRealmName() {
         return realmName;
     }
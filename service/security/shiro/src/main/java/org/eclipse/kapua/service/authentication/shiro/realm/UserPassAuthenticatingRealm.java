@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.authentication.shiro.realm;
 
+import java.util.concurrent.Callable;
+
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.ShiroException;
 import org.apache.shiro.authc.AuthenticationException;
@@ -94,41 +96,32 @@ public class UserPassAuthenticatingRealm extends AuthenticatingRealm {
         }
 
         //
-        // Get the associated user by name
-        final User user;
-        try {
-            user = KapuaSecurityUtils.doPriviledge(() -> userService.findByName(tokenUsername));
-        } catch (AuthenticationException ae) {
-            throw ae;
-        } catch (Exception e) {
-            throw new ShiroException("Error while find user!", e);
+        // Already verified credentials: the user and account status is checked anyway
+        UserPassCredentialsCache credentialsCache = UserPassCredentialsCache.getInstance();
+        long cacheGeneration = credentialsCache.getGeneration();
+        LoginAuthenticationInfo cachedInfo = credentialsCache.get(tokenUsername, token.getPassword());
+        if (cachedInfo != null) {
+            User cachedUser = cachedInfo.getUser();
+            try {
+                User user = find(() -> userService.find(cachedUser.getScopeId(), cachedUser.getId()), "user");
+                checkUser(user);
+                checkAccount(find(() -> accountService.find(cachedUser.getScopeId()), "account"));
+            } catch (AuthenticationException ae) {
+                credentialsCache.invalidate(cachedUser.getId());
+                throw ae;
+            }
+            return cachedInfo;
         }
 
-        // Check existence
-        if (user == null) {
-            throw new UnknownAccountException();
-        }
-
-        // Check disabled
-        if (UserStatus.DISABLED.equals(user.getStatus())) {
-            throw new DisabledAccountException();
-        }
+        //
+        // Get the associated user by name
+        final User user = find(() -> userService.findByName(tokenUsername), "user");
+        checkUser(user);
 
         //
         // Find account
-        final Account account;
-        try {
-            account = KapuaSecurityUtils.doPriviledge(() -> accountService.find(user.getScopeId()));
-        } catch (AuthenticationException ae) {
-            throw ae;
-        } catch (Exception e) {
-            throw new ShiroException("Error while find account!", e);
-        }
-
-        // Check existence
-        if (account == null) {
-            throw new UnknownAccountException();
-        }
+        final Account account = find(() -> accountService.find(user.getScopeId()), "account");
+        checkAccount(account);
 
         //
         // Find credentials
@@ -164,18 +157,55 @@ public class UserPassAuthenticatingRealm extends AuthenticatingRealm {
 
         //
         // BuildAuthenticationInfo
-        return new LoginAuthenticationInfo(getName(),
+        LoginAuthenticationInfo info = new LoginAuthenticationInfo(getName(),
                 account,
                 user,
                 credential);
+        info.setCacheGeneration(cacheGeneration);
+        return info;
+    }
+
+    private static <T> T find(Callable<T> finder, String entityName) {
+        try {
+            return KapuaSecurityUtils.doPriviledge(finder);
+        } catch (AuthenticationException ae) {
+            throw ae;
+        } catch (Exception e) {
+            throw new ShiroException("Error while find " + entityName + "!", e);
+        }
+    }
+
+    private static void checkUser(User user) {
+        // Check existence
+        if (user == null) {
+            throw new UnknownAccountException();
+        }
+
+        // Check disabled
+        if (UserStatus.DISABLED.equals(user.getStatus())) {
+            throw new DisabledAccountException();
+        }
+    }
+
+    private static void checkAccount(Account account) {
+        // Check existence
+        if (account == null) {
+            throw new UnknownAccountException();
+        }
     }
 
     @Override
     protected void assertCredentialsMatch(AuthenticationToken authcToken, AuthenticationInfo info)
             throws AuthenticationException {
         LoginAuthenticationInfo kapuaInfo = (LoginAuthenticationInfo) info;
+        UsernamePasswordCredentialsImpl token = (UsernamePasswordCredentialsImpl) authcToken;
 
-        super.assertCredentialsMatch(authcToken, info);
+        // the cached info has already been matched against the token password
+        UserPassCredentialsCache credentialsCache = UserPassCredentialsCache.getInstance();
+        if (!credentialsCache.isCached(token.getUsername(), kapuaInfo)) {
+            super.assertCredentialsMatch(authcToken, info);
+            credentialsCache.put(token.getUsername(), token.getPassword(), kapuaInfo, kapuaInfo.getCacheGeneration());
+        }
 
         Subject currentSubject = SecurityUtils.getSubject();
         Session session = currentSubject.getSession();
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.realm;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.eclipse.kapua.KapuaRuntimeException;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSetting;
+import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSettingKeys;
+import org.eclipse.kapua.service.metric.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Verified username and password credentials cache.<br>
+ * After a successful login the {@link LoginAuthenticationInfo} is cached together with a keyed digest of the password, so a following
+ * login with the same password doesn't query the user, account and credential services and doesn't run the BCrypt check again.<br>
+ * The plain password is never stored: the digest key is random and it never leaves the process.<br>
+ * A login with a different password always goes through the full check. The cache only spares the credential lookup and the password
+ * check: the realm still checks the current user and account status on a hit, so a user disabled or deleted (by any process) cannot
+ * log in with a cached password. The entries are invalidated by the credential service when the user credentials are changed or
+ * deleted, and an info loaded before an invalidation is not cached (see {@link #getGeneration()}).
+ *
+ * @since 1.0
+ *
+ */
+public class UserPassCredentialsCache
+{
+
+    private static final String METRIC_MODULE    = "authentication";
+    private static final String METRIC_COMPONENT = "userpass";
+
+    private static final String DIGEST_ALGORITHM = "HmacSHA256";
+
+    private static final UserPassCredentialsCache instance = new UserPassCredentialsCache();
+
+    private final boolean                    enabled;
+    private final SecretKeySpec              digestKey;
+    private final Cache<String, CachedLogin> logins;
+    private final AtomicLong                 generation = new AtomicLong();
+
+    private final Counter hit;
+    private final Counter miss;
+
+    private UserPassCredentialsCache()
+    {
+        KapuaAuthenticationSetting settings = KapuaAuthenticationSetting.getInstance();
+        enabled = settings.getBoolean(KapuaAuthenticationSettingKeys.AUTHENTICATION_CREDENTIAL_USERPASS_CACHE_ENABLE, false);
+        long ttl = settings.getLong(KapuaAuthenticationSettingKeys.AUTHENTICATION_CREDENTIAL_USERPASS_CACHE_CACHE_TTL, 60000L);
+        int sizeMax = settings.getInt(KapuaAuthenticationSettingKeys.AUTHENTICATION_CREDENTIAL_USERPASS_CACHE_SIZE_MAXIMUM, 100000);
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        digestKey = new SecretKeySpec(key, DIGEST_ALGORITHM);
+
+        logins = CacheBuilder.newBuilder()
+                             .maximumSize(sizeMax)
+                             .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                             .build();
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        hit = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "cache", "hit", "count");
+        miss = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "cache", "miss", "count");
+    }
+
+    /**
+     * Get the credentials cache instance
+     *
+     * @return
+     */
+    public static UserPassCredentialsCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Return the cached authentication info of the user if the password is the one already verified, null otherwise
+     *
+     * @param username
+     * @param password
+     * @return
+     */
+    public LoginAuthenticationInfo get(String username, char[] password)
+    {
+        if (!enabled) {
+            return null;
+        }
+
+        CachedLogin cachedLogin = logins.getIfPresent(username);
+        if (cachedLogin != null && MessageDigest.isEqual(cachedLogin.passwordDigest, digest(password))) {
+            hit.inc();
+            return cachedLogin.info;
+        }
+
+        miss.inc();
+        return null;
+    }
+
+    /**
+     * Check if the authentication info is the cached one of the user, that is the info returned by {@link #get(String, char[])}
+     * after the password check
+     *
+     * @param username
+     * @param info
+     * @return
+     */
+    public boolean isCached(String username, LoginAuthenticationInfo info)
+    {
+        CachedLogin cachedLogin = logins.getIfPresent(username);
+        return cachedLogin != null && cachedLogin.info == info;
+    }
+
+    /**
+     * Return the invalidation generation, to be read before loading the authentication info to be cached
+     *
+     * @return
+     */
+    public long getGeneration()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Cache the authentication info of the user with the verified password.<br>
+     * The info is not cached if an invalidation happened since the provided generation was read, since it may have been loaded
+     * before the invalidated change.
+     *
+     * @param username
+     * @param password
+     * @param info
+     * @param loadGeneration the generation read before loading the info (see {@link #getGeneration()})
+     */
+    public void put(String username, char[] password, LoginAuthenticationInfo info, long loadGeneration)
+    {
+        if (!enabled || generation.get() != loadGeneration) {
+            return;
+        }
+
+        CachedLogin cachedLogin = new CachedLogin(info, digest(password));
+        logins.put(username, cachedLogin);
+
+        // invalidated while putting
+        if (generation.get() != loadGeneration) {
+            logins.asMap().remove(username, cachedLogin);
+        }
+    }
+
+    /**
+     * Invalidate the cached authentication info of the user
+     *
+     * @param userId
+     */
+    public void invalidate(KapuaId userId)
+    {
+        generation.incrementAndGet();
+        logins.asMap().values().removeIf(cachedLogin -> cachedLogin.info.getUser().getId().getId().equals(userId.getId()));
+    }
+
+    private byte[] digest(char[] password)
+    {
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        try {
+            Mac mac = Mac.getInstance(DIGEST_ALGORITHM);
+            mac.init(digestKey);
+            return mac.doFinal(bytes);
+        }
+        catch (GeneralSecurityException e) {
+            throw KapuaRuntimeException.internalError(e);
+        }
+        finally {
+            Arrays.fill(bytes, (byte) 0);
+            if (buffer.hasArray()) {
+                Arrays.fill(buffer.array(), (byte) 0);
+            }
+        }
+    }
+
+    private static class CachedLogin
+    {
+
+        private final LoginAuthenticationInfo info;
+        private final byte[]                  passwordDigest;
+
+        private CachedLogin(LoginAuthenticationInfo info, byte[] passwordDigest)
+        {
+            this.info = info;
+            this.passwordDigest = passwordDigest;
+        }
+    }
+}
@@ -55,8 +55,6 @@ public class UserPassCredentialsMatcher implements CredentialsMatcher {
         boolean credentialMatch = false;
         if (tokenUsername.equals(infoUser.getName()) && CredentialType.PASSWORD.equals(infoCredential.getCredentialType()) && BCrypt.checkpw(tokenPassword, infoCredential.getCredentialKey())) {
             credentialMatch = true;
-
-            // FIXME: if true cache token password for authentication performance improvement
         }
 
         return credentialMatch;
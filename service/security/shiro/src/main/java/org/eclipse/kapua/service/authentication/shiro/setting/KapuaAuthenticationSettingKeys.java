@@ -29,9 +29,17 @@ public enum KapuaAuthenticationSettingKeys implements SettingKey {
     AUTHENTICATION_SESSION_JWT_ISSUER("authentication.session.jwt.issuer"),//
     AUTHENTICATION_SESSION_JWT_CACHE_ENABLE("authentication.session.jwt.cache.enabled"), //
     AUTHENTICATION_SESSION_JWT_CACHE_CACHE_TTL("authentication.session.jwt.cache.ttl"), //
+    AUTHENTICATION_SESSION_JWT_CACHE_SIZE_MAXIMUM("authentication.session.jwt.cache.size.maximum"), //
+    AUTHENTICATION_SESSION_JWT_ALGORITHM("authentication.session.jwt.algorithm"), //
+    AUTHENTICATION_SESSION_JWT_KEYSTORE_PATH("authentication.session.jwt.keystore.path"), //
+    AUTHENTICATION_SESSION_JWT_KEYSTORE_TYPE("authentication.session.jwt.keystore.type"), //
+    AUTHENTICATION_SESSION_JWT_KEYSTORE_PASSWORD("authentication.session.jwt.keystore.password"), //
+    AUTHENTICATION_SESSION_JWT_KEY_PASSWORD("authentication.session.jwt.key.password"), //
+    AUTHENTICATION_SESSION_JWT_KEY_ID("authentication.session.jwt.key.id"), //
 
     AUTHENTICATION_CREDENTIAL_USERPASS_CACHE_ENABLE("authentication.credential.userpass.cache.enabled"), //
     AUTHENTICATION_CREDENTIAL_USERPASS_CACHE_CACHE_TTL("authentication.credential.userpass.cache.ttl"), //
+    AUTHENTICATION_CREDENTIAL_USERPASS_CACHE_SIZE_MAXIMUM("authentication.credential.userpass.cache.size.maximum"), //
 
     AUTHENTICATION_CREDENTIAL_AUDIENCE_ALLOWED("authentication.credential.jwt.audience.allowed"), //
     AUTHENTICATION_CREDENTIAL_JWT_CACHE_ENABLE("authentication.credential.jwt.cache.enabled"), //
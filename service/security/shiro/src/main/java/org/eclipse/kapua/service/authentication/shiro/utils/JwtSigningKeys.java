@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.utils;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.eclipse.kapua.KapuaRuntimeException;
+import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSetting;
+import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSettingKeys;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keys of the session JWTs (the access tokens).<br>
+ * The keys are loaded from a local keystore, shared by all the nodes, so a token issued by a node is verified by any other node. Every
+ * keystore entry matching the configured algorithm is a verification key, identified by its alias (the JWT {@code kid} header): the
+ * tokens are signed with the configured key id and verified with the key of their {@code kid}. A key is rotated adding the new key to
+ * the keystores, switching the signing key id to it and removing the old key once the tokens it signed are expired.<br>
+ * The supported algorithms are RS256 (RSA private key entries), ES256 (P-256 EC private key entries) and HS256 (secret key entries,
+ * meant for the tokens exchanged inside the cluster).<br>
+ * If no keystore is configured a key is generated at startup: its tokens are valid only on the node that issued them.
+ *
+ * @since 1.0
+ */
+public class JwtSigningKeys {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtSigningKeys.class);
+
+    private static final String EPHEMERAL_KEY_ID = "ephemeral";
+
+    private static JwtSigningKeys instance;
+
+    private final String algorithm;
+    private final String signingKeyId;
+    private final Key signingKey;
+    private final Map<String, Key> verificationKeys;
+
+    /**
+     * Constructor
+     * 
+     * @param algorithm
+     *            the JWS algorithm (RS256, ES256 or HS256)
+     * @param keyStorePath
+     *            the keystore path (a key is generated if null or empty)
+     * @param keyStoreType
+     * @param keyStorePassword
+     * @param keyPassword
+     *            the password of the keystore entries
+     * @param signingKeyId
+     *            the alias of the signing key (it may be omitted if the keystore has a single key)
+     */
+    JwtSigningKeys(String algorithm, String keyStorePath, String keyStoreType, char[] keyStorePassword, char[] keyPassword, String signingKeyId) {
+        this.algorithm = algorithm;
+        checkAlgorithm(algorithm);
+
+        Map<String, Key[]> keys;
+        if (keyStorePath == null || keyStorePath.isEmpty()) {
+            logger.warn("No JWT keystore configured, generating a {} key: the tokens issued by this node cannot be verified by the other nodes", algorithm);
+            keys = Collections.singletonMap(EPHEMERAL_KEY_ID, generateKey(algorithm));
+            signingKeyId = EPHEMERAL_KEY_ID;
+        } else {
+            keys = loadKeys(algorithm, keyStorePath, keyStoreType, keyStorePassword, keyPassword);
+            if (keys.isEmpty()) {
+                throw KapuaRuntimeException.internalError("No " + algorithm + " key in the JWT keystore " + keyStorePath);
+            }
+            if ((signingKeyId == null || signingKeyId.isEmpty()) && keys.size() == 1) {
+                signingKeyId = keys.keySet().iterator().next();
+            }
+            if (!keys.containsKey(signingKeyId)) {
+                throw KapuaRuntimeException.internalError("JWT signing key " + signingKeyId + " not found in the keystore " + keyStorePath);
+            }
+        }
+
+        this.signingKeyId = signingKeyId;
+        this.signingKey = keys.get(signingKeyId)[0];
+        Map<String, Key> verificationKeys = new HashMap<>();
+        for (Map.Entry<String, Key[]> key : keys.entrySet()) {
+            verificationKeys.put(key.getKey(), key.getValue()[1]);
+        }
+        this.verificationKeys = Collections.unmodifiableMap(verificationKeys);
+        logger.info("JWT {} keys: {} - signing key: {}", algorithm, this.verificationKeys.keySet(), signingKeyId);
+    }
+
+    /**
+     * Return the keys configured by the authentication settings, loading them on the first call
+     * 
+     * @return
+     */
+    public static synchronized JwtSigningKeys getInstance() {
+        if (instance == null) {
+            KapuaAuthenticationSetting settings = KapuaAuthenticationSetting.getInstance();
+            String keyStorePassword = settings.getString(KapuaAuthenticationSettingKeys.AUTHENTICATION_SESSION_JWT_KEYSTORE_PASSWORD, "");
+            String keyPassword = settings.getString(KapuaAuthenticationSettingKeys.AUTHENTICATION_SESSION_JWT_KEY_PASSWORD, "");
+            instance = new JwtSigningKeys(settings.getString(KapuaAuthenticationSettingKeys.AUTHENTICATION_SESSION_JWT_ALGORITHM, AlgorithmIdentifiers.RSA_USING_SHA256),
+                    settings.getString(KapuaAuthenticationSettingKeys.AUTHENTICATION_SESSION_JWT_KEYSTORE_PATH, null),
+                    settings.getString(KapuaAuthenticationSettingKeys.AUTHENTICATION_SESSION_JWT_KEYSTORE_TYPE, "PKCS12"),
+                    keyStorePassword.toCharArray(),
+                    // the keystore password protects the entries too, if no key password is set
+                    (keyPassword.isEmpty() ? keyStorePassword : keyPassword).toCharArray(),
+                    settings.getString(KapuaAuthenticationSettingKeys.AUTHENTICATION_SESSION_JWT_KEY_ID, null));
+        }
+        return instance;
+    }
+
+    /**
+     * Return the JWS algorithm of the tokens
+     * 
+     * @return
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Return the id of the signing key (to be set as the JWT {@code kid} header)
+     * 
+     * @return
+     */
+    public String getSigningKeyId() {
+        return signingKeyId;
+    }
+
+    public Key getSigningKey() {
+        return signingKey;
+    }
+
+    /**
+     * Return the key verifying the tokens signed by the key with the provided id, or null if the key is not known
+     * 
+     * @param keyId
+     * @return
+     */
+    public Key getVerificationKey(String keyId) {
+        return keyId != null ? verificationKeys.get(keyId) : null;
+    }
+
+    private static void checkAlgorithm(String algorithm) {
+        switch (algorithm) {
+        case AlgorithmIdentifiers.RSA_USING_SHA256:
+        case AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256:
+        case AlgorithmIdentifiers.HMAC_SHA256:
+            return;
+        default:
+            throw KapuaRuntimeException.internalError("Unsupported JWT algorithm: " + algorithm);
+        }
+    }
+
+    /**
+     * Load the keystore entries matching the algorithm, as alias - (signing key, verification key)
+     */
+    private static Map<String, Key[]> loadKeys(String algorithm, String keyStorePath, String keyStoreType, char[] keyStorePassword, char[] keyPassword) {
+        Map<String, Key[]> keys = new HashMap<>();
+        try (InputStream is = new FileInputStream(keyStorePath)) {
+            KeyStore keyStore = KeyStore.getInstance(keyStoreType);
+            keyStore.load(is, keyStorePassword);
+
+            Enumeration<String> aliases = keyStore.aliases();
+            while (aliases.hasMoreElements()) {
+                String alias = aliases.nextElement();
+                if (!keyStore.isKeyEntry(alias)) {
+                    continue;
+                }
+
+                Key key = keyStore.getKey(alias, keyPassword);
+                if (key instanceof SecretKey && AlgorithmIdentifiers.HMAC_SHA256.equals(algorithm)) {
+                    keys.put(alias, new Key[] { key, key });
+                } else if ((key instanceof RSAPrivateKey && AlgorithmIdentifiers.RSA_USING_SHA256.equals(algorithm)) ||
+                        (key instanceof ECPrivateKey && AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256.equals(algorithm))) {
+                    if (key instanceof ECPrivateKey && !isP256((ECPrivateKey) key)) {
+                        logger.warn("JWT key {} is an EC key on a {} bit curve while ES256 requires a P-256 key, ignoring it",
+                                alias, ((ECPrivateKey) key).getParams().getCurve().getField().getFieldSize());
+                        continue;
+                    }
+                    Certificate certificate = keyStore.getCertificate(alias);
+                    if (certificate == null) {
+                        logger.warn("JWT key {} has no certificate, ignoring it", alias);
+                        continue;
+                    }
+                    keys.put(alias, new Key[] { (PrivateKey) key, certificate.getPublicKey() });
+                }
+            }
+        } catch (Exception e) {
+            throw KapuaRuntimeException.internalError(e, "Cannot load the JWT keystore " + keyStorePath);
+        }
+        return keys;
+    }
+
+    /**
+     * Tell if the EC key is on the P-256 curve, the only one of ES256
+     */
+    static boolean isP256(ECPrivateKey key) {
+        return key.getParams().getCurve().getField().getFieldSize() == 256;
+    }
+
+    /**
+     * Generate a key for the algorithm, as (signing key, verification key)
+     */
+    private static Key[] generateKey(String algorithm) {
+        try {
+            switch (algorithm) {
+            case AlgorithmIdentifiers.HMAC_SHA256:
+                byte[] secret = new byte[32];
+                new SecureRandom().nextBytes(secret);
+                Key key = new SecretKeySpec(secret, "HmacSHA256");
+                return new Key[] { key, key };
+            case AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256:
+                KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+                ecGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+                KeyPair ecKeyPair = ecGenerator.generateKeyPair();
+                return new Key[] { ecKeyPair.getPrivate(), ecKeyPair.getPublic() };
+            default:
+                KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+                rsaGenerator.initialize(2048);
+                KeyPair rsaKeyPair = rsaGenerator.generateKeyPair();
+                return new Key[] { rsaKeyPair.getPrivate(), rsaKeyPair.getPublic() };
+            }
+        } catch (GeneralSecurityException e) {
+            throw KapuaRuntimeException.internalError(e, "Cannot generate the JWT " + algorithm + " key");
+        }
+    }
+}
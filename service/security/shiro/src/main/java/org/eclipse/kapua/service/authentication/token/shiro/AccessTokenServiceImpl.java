@@ -24,6 +24,7 @@ import org.eclipse.kapua.locator.KapuaProvider;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.model.query.KapuaQuery;
 import org.eclipse.kapua.model.query.predicate.KapuaPredicate;
+import org.eclipse.kapua.service.authentication.shiro.realm.AccessTokenCache;
 import org.eclipse.kapua.service.authentication.token.AccessToken;
 import org.eclipse.kapua.service.authentication.token.AccessTokenCreator;
 import org.eclipse.kapua.service.authentication.token.AccessTokenListResult;
@@ -96,7 +97,7 @@ public class AccessTokenServiceImpl extends AbstractKapuaService implements Acce
 
         //
         // Do update
-        return entityManagerSession.onTransactedResult(em -> {
+        AccessToken updatedAccessToken = entityManagerSession.onTransactedResult(em -> {
             AccessToken currentAccessToken = AccessTokenDAO.find(em, accessToken.getId());
             if (currentAccessToken == null) {
                 throw new KapuaEntityNotFoundException(AccessToken.TYPE, accessToken.getId());
@@ -104,6 +105,9 @@ public class AccessTokenServiceImpl extends AbstractKapuaService implements Acce
 
             return AccessTokenDAO.update(em, accessToken);
         });
+
+        AccessTokenCache.getInstance().invalidate(accessToken.getId());
+        return updatedAccessToken;
     }
 
     @Override
@@ -189,6 +193,8 @@ public class AccessTokenServiceImpl extends AbstractKapuaService implements Acce
 
             AccessTokenDAO.delete(em, accessTokenId);
         });
+
+        AccessTokenCache.getInstance().invalidate(accessTokenId);
     }
 
     @Override
@@ -261,5 +267,7 @@ public class AccessTokenServiceImpl extends AbstractKapuaService implements Acce
             accessToken.setExpiresOn(new Date());
             return AccessTokenDAO.update(em, accessToken);
         });
+
+        AccessTokenCache.getInstance().invalidate(accessTokenId);
     }
 }
@@ -45,6 +45,7 @@ import org.eclipse.kapua.service.authorization.role.RoleService;
 import org.eclipse.kapua.service.authorization.shiro.AuthorizationEntityManagerFactory;
 import org.eclipse.kapua.service.authorization.shiro.KapuaAuthorizationErrorCodes;
 import org.eclipse.kapua.service.authorization.shiro.KapuaAuthorizationException;
+import org.eclipse.kapua.service.authorization.shiro.PermissionSnapshotCache;
 
 /**
  * {@link AccessInfoService} implementation based on JPA.
@@ -91,15 +92,15 @@ public class AccessInfoServiceImpl extends AbstractKapuaService implements Acces
             }
         }
 
-        return entityManagerSession.onTransactedInsert(em -> {
-            AccessInfo accessInfo = AccessInfoDAO.create(em, accessInfoCreator);
+        AccessInfo accessInfo = entityManagerSession.onTransactedInsert(em -> {
+            AccessInfo newAccessInfo = AccessInfoDAO.create(em, accessInfoCreator);
 
             if (!accessInfoCreator.getPermissions().isEmpty()) {
                 AccessPermissionFactory accessInfoFactory = locator.getFactory(AccessPermissionFactory.class);
                 for (Permission p : accessInfoCreator.getPermissions()) {
                     AccessPermissionCreator accessPermissionCreator = accessInfoFactory.newCreator(accessInfoCreator.getScopeId());
 
-                    accessPermissionCreator.setAccessInfoId(accessInfo.getId());
+                    accessPermissionCreator.setAccessInfoId(newAccessInfo.getId());
                     accessPermissionCreator.setPermission(p);
 
                     AccessPermissionDAO.create(em, accessPermissionCreator);
@@ -111,15 +112,18 @@ public class AccessInfoServiceImpl extends AbstractKapuaService implements Acces
                 for (KapuaId roleId : accessInfoCreator.getRoleIds()) {
                     AccessRoleCreator accessRoleCreator = accessRoleFactory.newCreator(accessInfoCreator.getScopeId());
 
-                    accessRoleCreator.setAccessInfoId(accessInfo.getId());
+                    accessRoleCreator.setAccessInfoId(newAccessInfo.getId());
                     accessRoleCreator.setRoleId(roleId);
 
                     AccessRoleDAO.create(em, accessRoleCreator);
                 }
             }
 
-            return accessInfo;
+            return newAccessInfo;
         });
+
+        PermissionSnapshotCache.getInstance().invalidate(accessInfo.getUserId());
+        return accessInfo;
     }
 
     @Override
@@ -178,8 +182,9 @@ public class AccessInfoServiceImpl extends AbstractKapuaService implements Acces
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(accessInfoDomain, Actions.write, scopeId));
 
-        entityManagerSession.onTransactedAction(em -> {
-            if (AccessInfoDAO.find(em, accessInfoId) == null) {
+        AccessInfo accessInfo = entityManagerSession.onTransactedResult(em -> {
+            AccessInfo currentAccessInfo = AccessInfoDAO.find(em, accessInfoId);
+            if (currentAccessInfo == null) {
                 throw new KapuaEntityNotFoundException(AccessPermission.TYPE, accessInfoId);
             }
 
@@ -199,6 +204,9 @@ public class AccessInfoServiceImpl extends AbstractKapuaService implements Acces
 
             // Finally, delete role
             AccessInfoDAO.delete(em, accessInfoId);
+            return currentAccessInfo;
         });
+
+        PermissionSnapshotCache.getInstance().invalidate(accessInfo.getUserId());
     }
 }
@@ -17,6 +17,8 @@ import javax.persistence.AttributeOverrides;
 import javax.persistence.Column;
 import javax.persistence.Embedded;
 import javax.persistence.Entity;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 
 import org.eclipse.kapua.commons.model.AbstractKapuaEntity;
@@ -33,6 +35,9 @@ import org.eclipse.kapua.service.authorization.permission.shiro.PermissionImpl;
  *
  */
 @Entity(name = "AccessPermission")
+@NamedQueries({
+                @NamedQuery(name = "AccessPermission.findPermissionsByUserId", query = "SELECT ap.permission FROM AccessInfo ai, AccessPermission ap WHERE ai.userId = :userId AND ap.accessInfoId = ai.id")
+})
 @Table(name = "athz_access_permission")
 public class AccessPermissionImpl extends AbstractKapuaEntity implements AccessPermission {
 
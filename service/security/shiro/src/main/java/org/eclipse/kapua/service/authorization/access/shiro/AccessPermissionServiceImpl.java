@@ -22,6 +22,7 @@ import org.eclipse.kapua.locator.KapuaProvider;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.model.query.KapuaQuery;
 import org.eclipse.kapua.service.authorization.AuthorizationService;
+import org.eclipse.kapua.service.authorization.access.AccessInfo;
 import org.eclipse.kapua.service.authorization.access.AccessPermission;
 import org.eclipse.kapua.service.authorization.access.AccessPermissionCreator;
 import org.eclipse.kapua.service.authorization.access.AccessPermissionListResult;
@@ -31,6 +32,7 @@ import org.eclipse.kapua.service.authorization.domain.Domain;
 import org.eclipse.kapua.service.authorization.permission.Actions;
 import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
 import org.eclipse.kapua.service.authorization.shiro.AuthorizationEntityManagerFactory;
+import org.eclipse.kapua.service.authorization.shiro.PermissionSnapshotCache;
 
 /**
  * {@link AccessPermission} service implementation.
@@ -60,7 +62,10 @@ public class AccessPermissionServiceImpl extends AbstractKapuaService implements
         AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(accessInfoDomain, Actions.write, accessPermissionCreator.getScopeId()));
-        return entityManagerSession.onTransactedInsert(em -> AccessPermissionDAO.create(em, accessPermissionCreator));
+        AccessPermission accessPermission = entityManagerSession.onTransactedInsert(em -> AccessPermissionDAO.create(em, accessPermissionCreator));
+
+        invalidatePermissionSnapshot(accessPermission.getAccessInfoId());
+        return accessPermission;
     }
 
     @Override
@@ -74,13 +79,17 @@ public class AccessPermissionServiceImpl extends AbstractKapuaService implements
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(accessInfoDomain, Actions.delete, scopeId));
 
-        entityManagerSession.onTransactedAction(em -> {
-            if (AccessPermissionDAO.find(em, accessPermissionId) == null) {
+        AccessPermission accessPermission = entityManagerSession.onTransactedResult(em -> {
+            AccessPermission currentAccessPermission = AccessPermissionDAO.find(em, accessPermissionId);
+            if (currentAccessPermission == null) {
                 throw new KapuaEntityNotFoundException(AccessPermission.TYPE, accessPermissionId);
             }
 
             AccessPermissionDAO.delete(em, accessPermissionId);
+            return currentAccessPermission;
         });
+
+        invalidatePermissionSnapshot(accessPermission.getAccessInfoId());
     }
 
     @Override
@@ -144,4 +153,18 @@ public class AccessPermissionServiceImpl extends AbstractKapuaService implements
 
         return entityManagerSession.onResult(em -> AccessPermissionDAO.count(em, query));
     }
+
+    /**
+     * Invalidate the permission snapshot of the user owning the access info
+     * 
+     * @param accessInfoId
+     * @throws KapuaException
+     */
+    private void invalidatePermissionSnapshot(KapuaId accessInfoId)
+            throws KapuaException {
+        AccessInfo accessInfo = entityManagerSession.onResult(em -> AccessInfoDAO.find(em, accessInfoId));
+        if (accessInfo != null) {
+            PermissionSnapshotCache.getInstance().invalidate(accessInfo.getUserId());
+        }
+    }
 }
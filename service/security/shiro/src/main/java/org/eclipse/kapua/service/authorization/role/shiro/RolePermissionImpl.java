@@ -19,6 +19,8 @@ import javax.persistence.AttributeOverrides;
 import javax.persistence.Column;
 import javax.persistence.Embedded;
 import javax.persistence.Entity;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 
@@ -37,6 +39,9 @@ import org.eclipse.kapua.service.authorization.role.RolePermission;
  * @since 1.0
  */
 @Entity(name = "RolePermission")
+@NamedQueries({
+                @NamedQuery(name = "RolePermission.findPermissionsByUserId", query = "SELECT rp.permission FROM AccessInfo ai, AccessRole ar, RolePermission rp WHERE ai.userId = :userId AND ar.accessInfoId = ai.id AND rp.roleId = ar.roleId")
+})
 @Table(name = "athz_role_permission")
 public class RolePermissionImpl extends AbstractKapuaEntity implements RolePermission {
 
@@ -35,6 +35,7 @@ import org.eclipse.kapua.service.authorization.role.RolePermissionListResult;
 import org.eclipse.kapua.service.authorization.role.RolePermissionService;
 import org.eclipse.kapua.service.authorization.role.RoleService;
 import org.eclipse.kapua.service.authorization.shiro.AuthorizationEntityManagerFactory;
+import org.eclipse.kapua.service.authorization.shiro.PermissionSnapshotCache;
 
 /**
  * Role service implementation.
@@ -127,6 +128,8 @@ public class RoleServiceImpl extends AbstractKapuaService implements RoleService
 
             RoleDAO.delete(em, roleId);
         });
+
+        PermissionSnapshotCache.getInstance().invalidateAll();
     }
 
     @Override
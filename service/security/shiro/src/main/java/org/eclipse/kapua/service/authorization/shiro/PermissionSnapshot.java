@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authorization.shiro;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.eclipse.kapua.service.authorization.permission.Permission;
+
+/**
+ * Immutable snapshot of the permissions granted to a user, directly or through the user roles.<br>
+ * The permissions are indexed by domain, action and target scope, so the check of a {@link RequestedPermission} is a couple of hash
+ * lookups instead of a scan of all the user permissions.<br>
+ * The matching follows the {@link WildcardPermission} rules of the permission string representation: a permission without target scope
+ * is granted on all the scopes and a permission without action is granted for all the actions of the domain.
+ * The permissions which can't be indexed (e.g. containing wildcards) are matched as {@link WildcardPermission}s.
+ *
+ * @since 1.0
+ *
+ */
+public class PermissionSnapshot implements org.apache.shiro.authz.Permission
+{
+
+    private final Map<String, DomainPermissions>          domains;
+    private final List<org.apache.shiro.authz.Permission> wildcardPermissions;
+
+    /**
+     * Constructor
+     *
+     * @param permissions the user permissions
+     */
+    PermissionSnapshot(Collection<? extends Permission> permissions)
+    {
+        Map<String, DomainPermissions> domains = new HashMap<>();
+        List<org.apache.shiro.authz.Permission> wildcardPermissions = new ArrayList<>();
+        for (Permission permission : permissions) {
+            String domain = normalize(permission.getDomain());
+            String action = permission.getAction() != null ? normalize(permission.getAction().name()) : null;
+            String targetScopeId = permission.getTargetScopeId() != null ? permission.getTargetScopeId().getId().toString() : null;
+
+            if (!isIndexable(domain) || (action == null && targetScopeId != null) || (action != null && !isIndexable(action))) {
+                wildcardPermissions.add(new WildcardPermission(permission.toString()));
+                continue;
+            }
+
+            DomainPermissions domainPermissions = domains.computeIfAbsent(domain, d -> new DomainPermissions());
+            if (action == null) {
+                domainPermissions.allActions = true;
+            }
+            else if (targetScopeId == null) {
+                domainPermissions.allScopesActions.add(action);
+            }
+            else {
+                domainPermissions.scopeActions.computeIfAbsent(action, a -> new HashSet<>()).add(targetScopeId);
+            }
+        }
+
+        this.domains = Collections.unmodifiableMap(domains);
+        this.wildcardPermissions = Collections.unmodifiableList(wildcardPermissions);
+    }
+
+    @Override
+    public boolean implies(org.apache.shiro.authz.Permission permission)
+    {
+        if (permission instanceof RequestedPermission) {
+            RequestedPermission requested = (RequestedPermission) permission;
+            if (isGranted(requested.getDomain(), requested.getAction(), requested.getTargetScopeId())) {
+                return true;
+            }
+        }
+
+        for (org.apache.shiro.authz.Permission wildcardPermission : wildcardPermissions) {
+            if (wildcardPermission.implies(permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isGranted(String domain, String action, String targetScopeId)
+    {
+        DomainPermissions domainPermissions = domains.get(domain);
+        if (domainPermissions == null) {
+            return false;
+        }
+        if (domainPermissions.allActions) {
+            return true;
+        }
+        if (action == null) {
+            return false;
+        }
+        if (domainPermissions.allScopesActions.contains(action)) {
+            return true;
+        }
+        if (targetScopeId == null) {
+            return false;
+        }
+
+        Set<String> targetScopeIds = domainPermissions.scopeActions.get(action);
+        return targetScopeIds != null && targetScopeIds.contains(targetScopeId);
+    }
+
+    /**
+     * Permission parts are case insensitive, as in the {@link WildcardPermission}
+     *
+     * @param part
+     * @return
+     */
+    static String normalize(String part)
+    {
+        return part.trim().toLowerCase();
+    }
+
+    private static boolean isIndexable(String part)
+    {
+        return !part.isEmpty() && part.indexOf('*') < 0 && part.indexOf(',') < 0;
+    }
+
+    private static class DomainPermissions
+    {
+
+        private boolean                        allActions;
+        private final Set<String>              allScopesActions = new HashSet<>();
+        private final Map<String, Set<String>> scopeActions     = new HashMap<>();
+    }
+}
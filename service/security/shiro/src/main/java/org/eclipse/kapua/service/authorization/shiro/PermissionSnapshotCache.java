@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authorization.shiro;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.jpa.EntityManager;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.util.KapuaExceptionUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authorization.permission.Permission;
+import org.eclipse.kapua.service.authorization.permission.shiro.PermissionImpl;
+import org.eclipse.kapua.service.authorization.shiro.setting.KapuaAuthorizationSetting;
+import org.eclipse.kapua.service.authorization.shiro.setting.KapuaAuthorizationSettingKeys;
+import org.eclipse.kapua.service.metric.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Process wide cache of the user {@link PermissionSnapshot}s.<br>
+ * A snapshot is loaded with one query for the permissions granted through the user access infos and one for the permissions granted
+ * through the user roles. The authorization services invalidate the snapshots when the access permissions, the access roles or the
+ * role permissions change; the entries also expire after the configured time, which bounds how long a change made by another process
+ * takes to be seen.
+ *
+ * @since 1.0
+ *
+ */
+public class PermissionSnapshotCache
+{
+
+    private static final String METRIC_MODULE    = "authorization";
+    private static final String METRIC_COMPONENT = "permission";
+
+    private static final PermissionSnapshotCache instance = new PermissionSnapshotCache();
+
+    private final Cache<BigInteger, PermissionSnapshot> snapshots;
+    // incremented on every invalidation, so a snapshot loaded across an invalidation is not cached
+    private final AtomicLong                            generation = new AtomicLong();
+
+    private final Counter hit;
+    private final Counter miss;
+    private final Timer   load;
+
+    private PermissionSnapshotCache()
+    {
+        KapuaAuthorizationSetting settings = KapuaAuthorizationSetting.getInstance();
+        long ttl = settings.getLong(KapuaAuthorizationSettingKeys.AUTHORIZATION_PERMISSION_CACHE_TTL, 60000L);
+        int sizeMax = settings.getInt(KapuaAuthorizationSettingKeys.AUTHORIZATION_PERMISSION_CACHE_SIZE_MAXIMUM, 10000);
+
+        snapshots = CacheBuilder.newBuilder()
+                                .maximumSize(sizeMax)
+                                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                                .build();
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        hit = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "snapshot", "hit", "count");
+        miss = metricsService.getCounter(METRIC_MODULE, METRIC_COMPONENT, "snapshot", "miss", "count");
+        load = metricsService.getTimer(METRIC_MODULE, METRIC_COMPONENT, "snapshot", "load");
+    }
+
+    /**
+     * Get the permission snapshot cache instance
+     *
+     * @return
+     */
+    public static PermissionSnapshotCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Return the permission snapshot of the user, loading it if it's not cached
+     *
+     * @param userId
+     * @return
+     * @throws KapuaException
+     */
+    public PermissionSnapshot get(KapuaId userId)
+        throws KapuaException
+    {
+        PermissionSnapshot snapshot = snapshots.getIfPresent(userId.getId());
+        if (snapshot != null) {
+            hit.inc();
+            return snapshot;
+        }
+
+        miss.inc();
+        long loadGeneration = generation.get();
+        snapshot = load(userId);
+        if (loadGeneration == generation.get()) {
+            snapshots.put(userId.getId(), snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Invalidate the permission snapshot of the user
+     *
+     * @param userId
+     */
+    public void invalidate(KapuaId userId)
+    {
+        generation.incrementAndGet();
+        snapshots.invalidate(userId.getId());
+    }
+
+    /**
+     * Invalidate all the permission snapshots (e.g. when the permissions of a role shared by many users change)
+     */
+    public void invalidateAll()
+    {
+        generation.incrementAndGet();
+        snapshots.invalidateAll();
+    }
+
+    private PermissionSnapshot load(KapuaId userId)
+        throws KapuaException
+    {
+        Context loadContext = load.time();
+        EntityManager em = AuthorizationEntityManagerFactory.getEntityManager();
+        try {
+            KapuaEid userEid = new KapuaEid(userId);
+
+            List<Permission> permissions = new ArrayList<>();
+            permissions.addAll(em.createNamedQuery("AccessPermission.findPermissionsByUserId", PermissionImpl.class)
+                                 .setParameter("userId", userEid)
+                                 .getResultList());
+            permissions.addAll(em.createNamedQuery("RolePermission.findPermissionsByUserId", PermissionImpl.class)
+                                 .setParameter("userId", userEid)
+                                 .getResultList());
+
+            return new PermissionSnapshot(permissions);
+        }
+        catch (Exception e) {
+            throw KapuaExceptionUtils.convertPersistenceException(e);
+        }
+        finally {
+            em.close();
+            loadContext.stop();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authorization.shiro;
+
+import org.apache.shiro.authz.permission.PermissionResolver;
+import org.apache.shiro.authz.permission.WildcardPermission;
+
+/**
+ * Permission checked by the {@link AuthorizationServiceImpl}, parsed from the permission string representation
+ * ({@code domain[:action[:targetScopeId]]}).<br>
+ * It is a {@link WildcardPermission}, so it is still matched by the string permissions, and it exposes the parsed parts for the
+ * {@link PermissionSnapshot} index lookup.
+ *
+ * @since 1.0
+ *
+ */
+public class RequestedPermission extends WildcardPermission
+{
+
+    private static final long serialVersionUID = -3137466402283434003L;
+
+    /**
+     * {@link PermissionResolver} of the {@link RequestedPermission}s
+     */
+    public static final PermissionResolver RESOLVER = permissionString -> new RequestedPermission(permissionString);
+
+    private final String domain;
+    private final String action;
+    private final String targetScopeId;
+
+    /**
+     * Constructor
+     *
+     * @param permissionString
+     */
+    public RequestedPermission(String permissionString)
+    {
+        super(permissionString);
+
+        String[] parts = permissionString.split(PART_DIVIDER_TOKEN, -1);
+        domain = PermissionSnapshot.normalize(parts[0]);
+        action = parts.length > 1 ? PermissionSnapshot.normalize(parts[1]) : null;
+        targetScopeId = parts.length > 2 ? parts[2].trim() : null;
+    }
+
+    public String getDomain()
+    {
+        return domain;
+    }
+
+    public String getAction()
+    {
+        return action;
+    }
+
+    public String getTargetScopeId()
+    {
+        return targetScopeId;
+    }
+}
@@ -22,7 +22,10 @@ import org.eclipse.kapua.commons.setting.SettingKey;
  */
 public enum KapuaAuthorizationSettingKeys implements SettingKey
 {
-    AUTHORIZATION_KEY("authorization.key");
+    AUTHORIZATION_KEY("authorization.key"), //
+
+    AUTHORIZATION_PERMISSION_CACHE_TTL("authorization.permission.cache.ttl"), //
+    AUTHORIZATION_PERMISSION_CACHE_SIZE_MAXIMUM("authorization.permission.cache.size.maximum");
 
     private String key;
 
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.realm;
+
+import java.math.BigInteger;
+import java.util.Date;
+
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.authc.DisabledAccountException;
+import org.apache.shiro.mgt.DefaultSecurityManager;
+import org.apache.shiro.util.ThreadContext;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.account.Account;
+import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.service.authentication.shiro.AccessTokenCredentialsImpl;
+import org.eclipse.kapua.service.authentication.token.shiro.AccessTokenImpl;
+import org.eclipse.kapua.service.user.User;
+import org.eclipse.kapua.service.user.UserFactory;
+import org.eclipse.kapua.service.user.UserService;
+import org.eclipse.kapua.service.user.UserStatus;
+import org.eclipse.kapua.test.account.AccountMock;
+import org.eclipse.kapua.test.user.UserMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AccessTokenCacheTest extends Assert
+{
+
+    private static final KapuaId SCOPE_ID = new KapuaEid(BigInteger.ONE);
+
+    @Test
+    public void testGet()
+        throws Exception
+    {
+        AccessTokenCache cache = AccessTokenCache.getInstance();
+        SessionAuthenticationInfo info = newInfo(new KapuaEid(BigInteger.valueOf(10)), "cache-get", new Date(System.currentTimeMillis() + 60000));
+
+        cache.put("cache-get", info, cache.getGeneration());
+
+        assertSame(info, cache.get("cache-get"));
+        assertTrue(cache.isCached("cache-get", info));
+        assertNull(cache.get("cache-other"));
+        assertFalse(cache.isCached("cache-other", info));
+    }
+
+    @Test
+    public void testExpiredToken()
+        throws Exception
+    {
+        AccessTokenCache cache = AccessTokenCache.getInstance();
+        SessionAuthenticationInfo info = newInfo(new KapuaEid(BigInteger.valueOf(11)), "cache-expired", new Date(System.currentTimeMillis() - 1000));
+
+        // the token expires before the cache entry, the full check reports the expiration
+        cache.put("cache-expired", info, cache.getGeneration());
+
+        assertNull(cache.get("cache-expired"));
+        assertFalse(cache.isCached("cache-expired", info));
+    }
+
+    @Test
+    public void testInvalidate()
+        throws Exception
+    {
+        AccessTokenCache cache = AccessTokenCache.getInstance();
+        KapuaId accessTokenId = new KapuaEid(BigInteger.valueOf(12));
+        SessionAuthenticationInfo info = newInfo(accessTokenId, "cache-invalidate", new Date(System.currentTimeMillis() + 60000));
+        SessionAuthenticationInfo otherInfo = newInfo(new KapuaEid(BigInteger.valueOf(13)), "cache-invalidate-other", new Date(System.currentTimeMillis() + 60000));
+
+        cache.put("cache-invalidate", info, cache.getGeneration());
+        cache.put("cache-invalidate-other", otherInfo, cache.getGeneration());
+
+        // as done by the access token service on update, invalidate and delete
+        cache.invalidate(new KapuaEid(accessTokenId.getId()));
+
+        assertNull(cache.get("cache-invalidate"));
+        assertSame(otherInfo, cache.get("cache-invalidate-other"));
+    }
+
+    @Test
+    public void testPutAfterInvalidate()
+        throws Exception
+    {
+        AccessTokenCache cache = AccessTokenCache.getInstance();
+        KapuaId accessTokenId = new KapuaEid(BigInteger.valueOf(14));
+        SessionAuthenticationInfo info = newInfo(accessTokenId, "cache-stale", new Date(System.currentTimeMillis() + 60000));
+
+        // the token is verified, then it is invalidated (e.g. logout) before the login completes
+        long loadGeneration = cache.getGeneration();
+        cache.invalidate(accessTokenId);
+        cache.put("cache-stale", info, loadGeneration);
+
+        assertNull(cache.get("cache-stale"));
+    }
+
+    @Test
+    public void testCachedTokenLogin()
+        throws Exception
+    {
+        AccessTokenCache cache = AccessTokenCache.getInstance();
+        User user = newUser("cache-login");
+
+        // not a JWT, so the login succeeds only if the cached token is not verified again
+        SessionAuthenticationInfo info = newInfo(new KapuaEid(BigInteger.valueOf(15)), "cache-login", user, new Date(System.currentTimeMillis() + 60000));
+        cache.put("cache-login", info, cache.getGeneration());
+
+        SecurityUtils.setSecurityManager(new DefaultSecurityManager());
+        try {
+            AccessTokenAuthenticatingRealm realm = new AccessTokenAuthenticatingRealm();
+
+            assertSame(info, realm.getAuthenticationInfo(new AccessTokenCredentialsImpl("cache-login")));
+            assertEquals(user.getId(), KapuaSecurityUtils.getSession().getUserId());
+        }
+        finally {
+            KapuaSecurityUtils.clearSession();
+            ThreadContext.unbindSubject();
+            SecurityUtils.setSecurityManager(null);
+        }
+    }
+
+    @Test
+    public void testCachedTokenOfDisabledUser()
+        throws Exception
+    {
+        AccessTokenCache cache = AccessTokenCache.getInstance();
+        User user = newUser("cache-disabled");
+        SessionAuthenticationInfo info = newInfo(new KapuaEid(BigInteger.valueOf(16)), "cache-disabled", user, new Date(System.currentTimeMillis() + 60000));
+        cache.put("cache-disabled", info, cache.getGeneration());
+
+        // disabled from the console after the token was verified
+        user.setStatus(UserStatus.DISABLED);
+
+        try {
+            new AccessTokenAuthenticatingRealm().getAuthenticationInfo(new AccessTokenCredentialsImpl("cache-disabled"));
+            fail("The disabled user must not log in with a cached token");
+        }
+        catch (DisabledAccountException e) {
+            // expected
+        }
+        assertNull(cache.get("cache-disabled"));
+    }
+
+    private static User newUser(String name)
+        throws Exception
+    {
+        KapuaLocator locator = KapuaLocator.getInstance();
+        Account account = locator.getService(AccountService.class).findByName("kapua-sys");
+        return locator.getService(UserService.class).create(locator.getFactory(UserFactory.class).newCreator(account.getId(), name));
+    }
+
+    private static SessionAuthenticationInfo newInfo(KapuaId accessTokenId, String tokenId, Date expiresOn)
+    {
+        return newInfo(accessTokenId, tokenId, new UserMock(SCOPE_ID, tokenId), expiresOn);
+    }
+
+    private static SessionAuthenticationInfo newInfo(KapuaId accessTokenId, String tokenId, User user, Date expiresOn)
+    {
+        AccessTokenImpl accessToken = new AccessTokenImpl(user.getScopeId(), user.getId(), tokenId, expiresOn);
+        accessToken.setId(accessTokenId);
+        return new SessionAuthenticationInfo("test-realm",
+                                             new AccountMock(user.getScopeId(), "test-account"),
+                                             user,
+                                             accessToken);
+    }
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.realm;
+
+import java.math.BigInteger;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.test.account.AccountMock;
+import org.eclipse.kapua.test.user.UserMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UserPassCredentialsCacheTest extends Assert
+{
+
+    private static final KapuaId SCOPE_ID = new KapuaEid(BigInteger.ONE);
+
+    @Test
+    public void testGet()
+        throws Exception
+    {
+        UserPassCredentialsCache cache = UserPassCredentialsCache.getInstance();
+        LoginAuthenticationInfo info = newInfo("cache-get");
+
+        cache.put("cache-get", "password".toCharArray(), info, cache.getGeneration());
+
+        assertSame(info, cache.get("cache-get", "password".toCharArray()));
+        assertTrue(cache.isCached("cache-get", info));
+        assertNull(cache.get("cache-get", "wrong-password".toCharArray()));
+        assertNull(cache.get("cache-other", "password".toCharArray()));
+    }
+
+    @Test
+    public void testInvalidate()
+        throws Exception
+    {
+        UserPassCredentialsCache cache = UserPassCredentialsCache.getInstance();
+        LoginAuthenticationInfo info = newInfo("cache-invalidate");
+
+        cache.put("cache-invalidate", "password".toCharArray(), info, cache.getGeneration());
+        cache.invalidate(info.getUser().getId());
+
+        assertNull(cache.get("cache-invalidate", "password".toCharArray()));
+        assertFalse(cache.isCached("cache-invalidate", info));
+    }
+
+    @Test
+    public void testPutAfterInvalidate()
+        throws Exception
+    {
+        UserPassCredentialsCache cache = UserPassCredentialsCache.getInstance();
+        LoginAuthenticationInfo info = newInfo("cache-stale");
+
+        // the info is loaded, then the user is changed by another request before the login completes
+        long loadGeneration = cache.getGeneration();
+        cache.invalidate(info.getUser().getId());
+        cache.put("cache-stale", "password".toCharArray(), info, loadGeneration);
+
+        assertNull(cache.get("cache-stale", "password".toCharArray()));
+    }
+
+    private static LoginAuthenticationInfo newInfo(String username)
+    {
+        return new LoginAuthenticationInfo("test-realm",
+                                           new AccountMock(SCOPE_ID, "test-account"),
+                                           new UserMock(SCOPE_ID, username),
+                                           null);
+    }
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.Key;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+
+import javax.crypto.KeyGenerator;
+
+import org.eclipse.kapua.KapuaRuntimeException;
+import org.jose4j.jwa.AlgorithmConstraints;
+import org.jose4j.jwa.AlgorithmConstraints.ConstraintType;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.jose4j.lang.UnresolvableKeyException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JwtSigningKeysTest extends Assert
+{
+
+    private static final char[] PASSWORD = "kapua-password".toCharArray();
+
+    @Test
+    public void testKeyRotation()
+        throws Exception
+    {
+        File keyStoreFile = createHmacKeyStore("k1", "k2");
+        try {
+            JwtSigningKeys oldKeys = new JwtSigningKeys(AlgorithmIdentifiers.HMAC_SHA256, keyStoreFile.getPath(), "PKCS12", PASSWORD, PASSWORD, "k1");
+            JwtSigningKeys newKeys = new JwtSigningKeys(AlgorithmIdentifiers.HMAC_SHA256, keyStoreFile.getPath(), "PKCS12", PASSWORD, PASSWORD, "k2");
+            assertEquals("k2", newKeys.getSigningKeyId());
+
+            // the tokens signed before the rotation are still valid
+            JwtConsumer consumer = consumer(newKeys);
+            consumer.processToClaims(sign(oldKeys));
+            consumer.processToClaims(sign(newKeys));
+        }
+        finally {
+            keyStoreFile.delete();
+        }
+    }
+
+    @Test(expected = InvalidJwtException.class)
+    public void testUnknownKeyId()
+        throws Exception
+    {
+        File keyStoreFile = createHmacKeyStore("k1");
+        try {
+            JwtSigningKeys keys = new JwtSigningKeys(AlgorithmIdentifiers.HMAC_SHA256, keyStoreFile.getPath(), "PKCS12", PASSWORD, PASSWORD, null);
+            assertEquals("k1", keys.getSigningKeyId());
+
+            // a key of another node
+            consumer(keys).processToClaims(sign(new JwtSigningKeys(AlgorithmIdentifiers.HMAC_SHA256, null, null, null, null, null)));
+        }
+        finally {
+            keyStoreFile.delete();
+        }
+    }
+
+    @Test(expected = KapuaRuntimeException.class)
+    public void testMissingSigningKey()
+        throws Exception
+    {
+        File keyStoreFile = createHmacKeyStore("k1");
+        try {
+            new JwtSigningKeys(AlgorithmIdentifiers.HMAC_SHA256, keyStoreFile.getPath(), "PKCS12", PASSWORD, PASSWORD, "k2");
+        }
+        finally {
+            keyStoreFile.delete();
+        }
+    }
+
+    @Test
+    public void testGeneratedKeys()
+        throws Exception
+    {
+        for (String algorithm : new String[] { AlgorithmIdentifiers.RSA_USING_SHA256, AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256, AlgorithmIdentifiers.HMAC_SHA256 }) {
+            JwtSigningKeys keys = new JwtSigningKeys(algorithm, "", null, null, null, null);
+            assertEquals(algorithm, keys.getAlgorithm());
+            assertEquals("sub-1", consumer(keys).processToClaims(sign(keys)).getSubject());
+        }
+    }
+
+    @Test
+    public void testEcCurve()
+        throws Exception
+    {
+        assertTrue(JwtSigningKeys.isP256(generateEcKey("secp256r1")));
+        assertFalse(JwtSigningKeys.isP256(generateEcKey("secp384r1")));
+        assertFalse(JwtSigningKeys.isP256(generateEcKey("secp521r1")));
+    }
+
+    @Test(expected = KapuaRuntimeException.class)
+    public void testUnsupportedAlgorithm()
+        throws Exception
+    {
+        new JwtSigningKeys(AlgorithmIdentifiers.NONE, null, null, null, null, null);
+    }
+
+    private static String sign(JwtSigningKeys keys)
+        throws Exception
+    {
+        JwtClaims claims = new JwtClaims();
+        claims.setIssuer("kapua");
+        claims.setIssuedAtToNow();
+        claims.setExpirationTimeMinutesInTheFuture(30);
+        claims.setSubject("sub-1");
+
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setAlgorithmHeaderValue(keys.getAlgorithm());
+        jws.setKeyIdHeaderValue(keys.getSigningKeyId());
+        jws.setPayload(claims.toJson());
+        jws.setKey(keys.getSigningKey());
+        return jws.getCompactSerialization();
+    }
+
+    /**
+     * Build a consumer as done by the access token credentials matcher
+     */
+    private static JwtConsumer consumer(JwtSigningKeys keys)
+    {
+        return new JwtConsumerBuilder()
+                                       .setVerificationKeyResolver((jws, nestingContext) -> {
+                                           Key key = keys.getVerificationKey(jws.getKeyIdHeaderValue());
+                                           if (key == null)
+                                               throw new UnresolvableKeyException("Unknown JWT key id: " + jws.getKeyIdHeaderValue());
+                                           return key;
+                                       })
+                                       .setJwsAlgorithmConstraints(new AlgorithmConstraints(ConstraintType.WHITELIST, keys.getAlgorithm()))
+                                       .setExpectedIssuer("kapua")
+                                       .setRequireIssuedAt()
+                                       .setRequireExpirationTime()
+                                       .setRequireSubject()
+                                       .build();
+    }
+
+    private static ECPrivateKey generateEcKey(String curve)
+        throws Exception
+    {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec(curve));
+        return (ECPrivateKey) generator.generateKeyPair().getPrivate();
+    }
+
+    private static File createHmacKeyStore(String... aliases)
+        throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, PASSWORD);
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("HmacSHA256");
+        for (String alias : aliases)
+            keyStore.setEntry(alias, new KeyStore.SecretKeyEntry(keyGenerator.generateKey()), new KeyStore.PasswordProtection(PASSWORD));
+
+        File keyStoreFile = File.createTempFile("kapua-jwt", ".p12");
+        try (OutputStream os = new FileOutputStream(keyStoreFile)) {
+            keyStore.store(os, PASSWORD);
+        }
+        return keyStoreFile;
+    }
+}
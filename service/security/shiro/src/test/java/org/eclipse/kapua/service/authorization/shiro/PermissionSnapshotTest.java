@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authorization.shiro;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.eclipse.kapua.service.authorization.permission.Permission;
+import org.eclipse.kapua.service.authorization.permission.shiro.PermissionImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PermissionSnapshotTest extends Assert {
+
+    private static final KapuaEid SCOPE_1 = new KapuaEid(BigInteger.ONE);
+    private static final KapuaEid SCOPE_2 = new KapuaEid(BigInteger.valueOf(2));
+
+    @Test
+    public void testScopedPermission()
+            throws Exception {
+        PermissionSnapshot snapshot = new PermissionSnapshot(Arrays.asList(new PermissionImpl("device", Actions.read, SCOPE_1)));
+
+        assertTrue(snapshot.implies(requested("device", Actions.read, SCOPE_1)));
+        assertFalse(snapshot.implies(requested("device", Actions.read, SCOPE_2)));
+        assertFalse(snapshot.implies(requested("device", Actions.write, SCOPE_1)));
+        assertFalse(snapshot.implies(requested("user", Actions.read, SCOPE_1)));
+        assertFalse(snapshot.implies(requested("device", Actions.read, null)));
+    }
+
+    @Test
+    public void testAllScopesPermission()
+            throws Exception {
+        PermissionSnapshot snapshot = new PermissionSnapshot(Arrays.asList(new PermissionImpl("device", Actions.read, null)));
+
+        assertTrue(snapshot.implies(requested("device", Actions.read, SCOPE_1)));
+        assertTrue(snapshot.implies(requested("device", Actions.read, SCOPE_2)));
+        assertTrue(snapshot.implies(requested("device", Actions.read, null)));
+        assertFalse(snapshot.implies(requested("device", Actions.write, SCOPE_1)));
+    }
+
+    @Test
+    public void testAllActionsPermission()
+            throws Exception {
+        PermissionSnapshot snapshot = new PermissionSnapshot(Arrays.asList(new PermissionImpl("device", null, null)));
+
+        assertTrue(snapshot.implies(requested("device", Actions.read, SCOPE_1)));
+        assertTrue(snapshot.implies(requested("device", Actions.delete, SCOPE_2)));
+        assertFalse(snapshot.implies(requested("user", Actions.read, SCOPE_1)));
+    }
+
+    @Test
+    public void testSameResultsOfWildcardPermissions()
+            throws Exception {
+        List<Permission> granted = Arrays.asList(new PermissionImpl("device", Actions.read, SCOPE_1),
+                new PermissionImpl("Device_Management", Actions.execute, null),
+                new PermissionImpl("user", null, null),
+                new PermissionImpl("*", Actions.connect, SCOPE_2));
+        PermissionSnapshot snapshot = new PermissionSnapshot(granted);
+
+        for (String domain : Arrays.asList("device", "device_management", "DEVICE_MANAGEMENT", "user", "broker")) {
+            for (Actions action : Actions.values()) {
+                for (KapuaEid scope : Arrays.asList(SCOPE_1, SCOPE_2, null)) {
+                    RequestedPermission requested = requested(domain, action, scope);
+
+                    boolean wildcardImplies = false;
+                    for (Permission permission : granted) {
+                        wildcardImplies |= new WildcardPermission(permission.toString()).implies(requested);
+                    }
+                    assertEquals(requested.toString(), wildcardImplies, snapshot.implies(requested));
+                }
+            }
+        }
+    }
+
+    private static RequestedPermission requested(String domain, Actions action, KapuaEid scope) {
+        return new RequestedPermission(new PermissionImpl(domain, action, scope).toString());
+    }
+}
@@ -50,6 +50,12 @@ public class AuthenticationServiceMock implements AuthenticationService {
         return null;
     }
 
+    @Override
+    public AccessToken login(LoginCredentials authenticationToken, boolean persistAccessToken)
+            throws KapuaException {
+        return login(authenticationToken);
+    }
+
     @Override
     public void logout()
             throws KapuaException {
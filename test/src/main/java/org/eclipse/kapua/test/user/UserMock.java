@@ -31,6 +31,7 @@ public class UserMock implements User
     private String name;
     private UserType userType;
     private String externalId;
+    private UserStatus status;
 
     public UserMock(KapuaId scopeId, String name)
     {
@@ -140,15 +141,13 @@ public class UserMock implements User
     @Override
     public UserStatus getStatus()
     {
-        // TODO Auto-generated method stub
-        return null;
+        return status;
     }
 
     @Override
     public void setStatus(UserStatus status)
     {
-        // TODO Auto-generated method stub
-
+        this.status = status;
     }
 
     @Override
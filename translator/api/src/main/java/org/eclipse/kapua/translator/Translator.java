@@ -12,7 +12,6 @@
  *******************************************************************************/
 package org.eclipse.kapua.translator;
 
-import java.util.Iterator;
 import java.util.ServiceLoader;
 
 import org.eclipse.kapua.KapuaException;
@@ -44,10 +43,18 @@ public abstract class Translator<FROM_M extends Message, TO_M extends Message>
 	
 	public static final Logger logger = LoggerFactory.getLogger(Translator.class);
 	
-    static ServiceLoader<?> translators = ServiceLoader.load(Translator.class);
+    /**
+     * Translators loaded through {@link java.util.ServiceLoader}, initialized on the first lookup
+     */
+    private static class RegistryHolder
+    {
+
+        private static final TranslatorRegistry registry = new TranslatorRegistry(ServiceLoader.load(Translator.class));
+    }
 
     /**
-     * Return a translator for the given messages classes. This method lookup for the Translator through {@link java.util.ServiceLoader}
+     * Return a translator for the given messages classes. The translators are loaded once through {@link java.util.ServiceLoader}
+     * and looked up in a precomputed table, so this method doesn't lock.
      * 
      * @param fromMessageClass message from type
      * @param toMessageClass message to type
@@ -55,29 +62,18 @@ public abstract class Translator<FROM_M extends Message, TO_M extends Message>
      * @throws KapuaException
      */
     @SuppressWarnings("unchecked")
-    public static synchronized <FROM_M extends Message, TO_M extends Message, T extends Translator<FROM_M, TO_M>> T getTranslatorFor(Class<FROM_M> fromMessageClass,
-                                                                                                                        Class<TO_M> toMessageClass)
+    public static <FROM_M extends Message, TO_M extends Message, T extends Translator<FROM_M, TO_M>> T getTranslatorFor(Class<FROM_M> fromMessageClass,
+                                                                                                           Class<TO_M> toMessageClass)
         throws KapuaException
     {
-        T translator = null;
-
-        Iterator<T> translatorIterator = (Iterator<T>) translators.iterator();
-        while (translatorIterator.hasNext()) {
-            T t = translatorIterator.next();
-
-            if ((fromMessageClass.isAssignableFrom(t.getClassFrom())) &&
-                toMessageClass.isAssignableFrom(t.getClassTo())) {
-                translator = t;
-                break;
-            }
-        }
+        T translator = (T) RegistryHolder.registry.get(fromMessageClass, toMessageClass);
 
         if (translator == null) {
         	logger.error("Cannot find translator from - to: {} - {}", new Object[]{fromMessageClass.getName(), toMessageClass.getName()});
             throw new KapuaRuntimeException(KapuaRuntimeErrorCodes.TRANSLATOR_NOT_FOUND,
                                             null,
                                             new Object[] {
-                                                           translators,
+                                                           RegistryHolder.registry.getTranslators(),
                                                            fromMessageClass.getName(),
                                                            toMessageClass.getName(),
                                             });
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.translator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Translator lookup table.<br>
+ * The translators are loaded once and the translator for every (from, to) message classes pair they declare is resolved when the
+ * registry is built, so the lookup is a lock-free map read.<br>
+ * Lookups for other pairs (ie for message super types) are resolved with the same rule on the first call and then memoized.
+ *
+ * @since 1.0
+ */
+@SuppressWarnings("rawtypes")
+final class TranslatorRegistry
+{
+
+    private final List<Translator> translators;
+    private final Map<TranslatorKey, Translator> declaredTranslators;
+    private final ConcurrentMap<TranslatorKey, Translator> resolvedTranslators = new ConcurrentHashMap<TranslatorKey, Translator>();
+
+    /**
+     * Build the registry for the given translators.<br>
+     * The translators order is preserved: if more translators match the same lookup, the first one wins.
+     *
+     * @param translators
+     */
+    TranslatorRegistry(Iterable<? extends Translator> translators)
+    {
+        List<Translator> translatorList = new ArrayList<Translator>();
+        for (Translator translator : translators) {
+            translatorList.add(translator);
+        }
+        this.translators = Collections.unmodifiableList(translatorList);
+
+        Map<TranslatorKey, Translator> declared = new HashMap<TranslatorKey, Translator>();
+        for (Translator translator : translatorList) {
+            TranslatorKey key = new TranslatorKey(translator.getClassFrom(), translator.getClassTo());
+            if (!declared.containsKey(key)) {
+                declared.put(key, lookup(key.from, key.to));
+            }
+        }
+        this.declaredTranslators = Collections.unmodifiableMap(declared);
+    }
+
+    /**
+     * Return the translator for the given messages classes or null if no translator matches
+     *
+     * @param fromMessageClass
+     * @param toMessageClass
+     * @return
+     */
+    Translator get(Class<?> fromMessageClass, Class<?> toMessageClass)
+    {
+        TranslatorKey key = new TranslatorKey(fromMessageClass, toMessageClass);
+        Translator translator = declaredTranslators.get(key);
+        if (translator == null) {
+            translator = resolvedTranslators.get(key);
+            if (translator == null) {
+                translator = lookup(fromMessageClass, toMessageClass);
+                if (translator != null) {
+                    resolvedTranslators.putIfAbsent(key, translator);
+                }
+            }
+        }
+        return translator;
+    }
+
+    /**
+     * Return the loaded translators
+     *
+     * @return
+     */
+    List<Translator> getTranslators()
+    {
+        return translators;
+    }
+
+    private Translator lookup(Class<?> fromMessageClass, Class<?> toMessageClass)
+    {
+        for (Translator translator : translators) {
+            if (fromMessageClass.isAssignableFrom(translator.getClassFrom()) &&
+                toMessageClass.isAssignableFrom(translator.getClassTo())) {
+                return translator;
+            }
+        }
+        return null;
+    }
+
+    private static final class TranslatorKey
+    {
+
+        private final Class<?> from;
+        private final Class<?> to;
+
+        private TranslatorKey(Class<?> from, Class<?> to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * from.hashCode() + to.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TranslatorKey)) {
+                return false;
+            }
+            TranslatorKey other = (TranslatorKey) obj;
+            return from == other.from && to == other.to;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.translator;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaRuntimeException;
+import org.eclipse.kapua.message.Channel;
+import org.eclipse.kapua.message.Message;
+import org.eclipse.kapua.message.Payload;
+import org.junit.Test;
+
+@SuppressWarnings("rawtypes")
+public class TranslatorRegistryTest
+{
+
+    @Test
+    public void testDeclaredLookup()
+    {
+        TranslatorRegistry registry = new TranslatorRegistry(ServiceLoader.load(Translator.class));
+
+        assertSame(TranslatorSpecificAB.class, registry.get(SpecificMessageA.class, MessageB.class).getClass());
+        assertSame(TranslatorBA.class, registry.get(MessageB.class, MessageA.class).getClass());
+    }
+
+    @Test
+    public void testFirstMatchWins()
+    {
+        TranslatorRegistry registry = new TranslatorRegistry(ServiceLoader.load(Translator.class));
+
+        // both the translators match, the first loaded one has to be returned as the ServiceLoader scan did
+        assertSame(TranslatorSpecificAB.class, registry.get(MessageA.class, MessageB.class).getClass());
+        assertSame(TranslatorSpecificAB.class, registry.get(Message.class, Message.class).getClass());
+    }
+
+    @Test
+    public void testMissingLookup()
+    {
+        TranslatorRegistry registry = new TranslatorRegistry(ServiceLoader.load(Translator.class));
+
+        assertNull(registry.get(MessageB.class, MessageB.class));
+        assertNull(registry.get(MessageB.class, MessageB.class));
+    }
+
+    @Test
+    public void testSameResultAsScan()
+    {
+        TranslatorRegistry registry = new TranslatorRegistry(ServiceLoader.load(Translator.class));
+        List<Class<?>> messageClasses = Arrays.<Class<?>> asList(Message.class, MessageA.class, SpecificMessageA.class, MessageB.class);
+
+        for (Class<?> from : messageClasses) {
+            for (Class<?> to : messageClasses) {
+                assertSame(scan(registry.getTranslators(), from, to), registry.get(from, to));
+            }
+        }
+    }
+
+    @Test(expected = KapuaRuntimeException.class)
+    public void testTranslatorNotFound()
+        throws KapuaException
+    {
+        Translator.getTranslatorFor(MessageB.class, MessageB.class);
+    }
+
+    private static Translator scan(List<Translator> translators, Class<?> from, Class<?> to)
+    {
+        for (Translator translator : translators) {
+            if (from.isAssignableFrom(translator.getClassFrom()) && to.isAssignableFrom(translator.getClassTo())) {
+                return translator;
+            }
+        }
+        return null;
+    }
+
+    //
+    // Test messages and translators (registered in META-INF/services)
+
+    public interface MessageA extends Message<Channel, Payload>
+    {
+    }
+
+    public interface MessageB extends Message<Channel, Payload>
+    {
+    }
+
+    public static class SpecificMessageA implements MessageA
+    {
+    }
+
+    public static class TranslatorSpecificAB extends Translator<SpecificMessageA, MessageB>
+    {
+
+        @Override
+        public MessageB translate(SpecificMessageA message)
+        {
+            return null;
+        }
+
+        @Override
+        public Class<SpecificMessageA> getClassFrom()
+        {
+            return SpecificMessageA.class;
+        }
+
+        @Override
+        public Class<MessageB> getClassTo()
+        {
+            return MessageB.class;
+        }
+    }
+
+    public static class TranslatorAB extends Translator<MessageA, MessageB>
+    {
+
+        @Override
+        public MessageB translate(MessageA message)
+        {
+            return null;
+        }
+
+        @Override
+        public Class<MessageA> getClassFrom()
+        {
+            return MessageA.class;
+        }
+
+        @Override
+        public Class<MessageB> getClassTo()
+        {
+            return MessageB.class;
+        }
+    }
+
+    public static class TranslatorBA extends Translator<MessageB, MessageA>
+    {
+
+        @Override
+        public MessageA translate(MessageB message)
+        {
+            return null;
+        }
+
+        @Override
+        public Class<MessageB> getClassFrom()
+        {
+            return MessageB.class;
+        }
+
+        @Override
+        public Class<MessageA> getClassTo()
+        {
+            return MessageA.class;
+        }
+    }
+}
@@ -12,15 +12,23 @@
  *******************************************************************************/
 package org.eclipse.kapua.translator.kura.kapua;
 
+import org.eclipse.kapua.KapuaEntityNotFoundException;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.cache.KapuaIdentityCache;
 import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.message.KapuaMessageFactory;
 import org.eclipse.kapua.message.KapuaPosition;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.account.Account;
+import org.eclipse.kapua.service.account.AccountService;
 import org.eclipse.kapua.service.device.call.message.DevicePosition;
 import org.eclipse.kapua.service.device.management.response.KapuaResponseCode;
+import org.eclipse.kapua.service.device.registry.Device;
+import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
 
 /**
  * Messages translator utilities.<br>
- * It provides helpful methods for translate position and response code.
+ * It provides helpful methods for translate position and response code and for resolving the account and device identifiers.
  * 
  * @since 1.0
  *
@@ -28,6 +36,59 @@ import org.eclipse.kapua.service.device.management.response.KapuaResponseCode;
 public class TranslatorKuraKapuaUtils
 {
 
+    /**
+     * Return the scope id of the account with the given name.<br>
+     * The identifier is looked up in the {@link KapuaIdentityCache} first and then in the {@link AccountService}.
+     * 
+     * @param accountName
+     * @return
+     * @throws KapuaEntityNotFoundException if the account doesn't exist
+     * @throws KapuaException
+     */
+    public static KapuaId getScopeId(String accountName)
+        throws KapuaException
+    {
+        KapuaIdentityCache identityCache = KapuaIdentityCache.getInstance();
+        long cacheGeneration = identityCache.getGeneration();
+        KapuaId scopeId = identityCache.getScopeId(accountName);
+        if (scopeId == null) {
+            AccountService accountService = KapuaLocator.getInstance().getService(AccountService.class);
+            Account account = accountService.findByName(accountName);
+            if (account == null) {
+                throw new KapuaEntityNotFoundException(Account.TYPE, accountName);
+            }
+            scopeId = account.getId();
+            identityCache.putScopeId(accountName, scopeId, cacheGeneration);
+        }
+        return scopeId;
+    }
+
+    /**
+     * Return the id of the device with the given client id in the scope.<br>
+     * The identifier is looked up in the {@link KapuaIdentityCache} first and then in the {@link DeviceRegistryService}.
+     * 
+     * @param scopeId
+     * @param clientId
+     * @return the device id or null if the device is not registered yet
+     * @throws KapuaException
+     */
+    public static KapuaId getDeviceId(KapuaId scopeId, String clientId)
+        throws KapuaException
+    {
+        KapuaIdentityCache identityCache = KapuaIdentityCache.getInstance();
+        long cacheGeneration = identityCache.getGeneration();
+        KapuaId deviceId = identityCache.getDeviceId(scopeId, clientId);
+        if (deviceId == null) {
+            DeviceRegistryService deviceRegistryService = KapuaLocator.getInstance().getService(DeviceRegistryService.class);
+            Device device = deviceRegistryService.findByClientId(scopeId, clientId);
+            if (device != null) {
+                deviceId = device.getId();
+                identityCache.putDeviceId(scopeId, clientId, deviceId, cacheGeneration);
+            }
+        }
+        return deviceId;
+    }
+
     /**
      * Translate {@link DevicePosition} to {@link KapuaPosition}
      * 
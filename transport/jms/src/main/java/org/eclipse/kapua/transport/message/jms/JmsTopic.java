@@ -37,6 +37,13 @@ public class JmsTopic implements TransportChannel {
      */
     private String topic;
 
+    /**
+     * The topic tokens, if already known.
+     * 
+     * @since 1.0.0
+     */
+    private String[] splittedTopic;
+
     /**
      * Construct a {@link JmsTopic} with the given parameter
      * 
@@ -48,6 +55,21 @@ public class JmsTopic implements TransportChannel {
         setTopic(topic);
     }
 
+    /**
+     * Construct a {@link JmsTopic} with the given topic and its tokens, already split by the topic separator configured in
+     * {@link JmsClientSetting}.{@link JmsClientSettingKeys#TRANSPORT_TOPIC_SEPARATOR} (e.g. by the broker topic classification).
+     * 
+     * @param topic
+     *            The topic to set for this {@link JmsTopic}
+     * @param splittedTopic
+     *            The topic tokens or {@code null} to split the topic when needed
+     * @since 1.0.0
+     */
+    public JmsTopic(String topic, String[] splittedTopic) {
+        setTopic(topic);
+        this.splittedTopic = splittedTopic;
+    }
+
     /**
      * Construct a {@link JmsTopic} with the given parameters.
      * <p>
@@ -92,6 +114,7 @@ public class JmsTopic implements TransportChannel {
      */
     public void setTopic(String topic) {
         this.topic = topic;
+        this.splittedTopic = null;
     }
 
     /**
@@ -104,6 +127,9 @@ public class JmsTopic implements TransportChannel {
         if (topic == null) {
             return null;
         }
+        if (splittedTopic != null) {
+            return splittedTopic.clone();
+        }
         return topic.split("\\" + topicSeparator);
     }
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ import org.eclipse.kapua.transport.TransportClientConnectOptions;
 import org.eclipse.kapua.transport.message.mqtt.MqttMessage;
 import org.eclipse.kapua.transport.message.mqtt.MqttPayload;
 import org.eclipse.kapua.transport.message.mqtt.MqttTopic;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
@@ -250,14 +251,14 @@ public class MqttClient {
     }
 
     /**
-     * Sets a {@link MqttClientCallback} to this client.
+     * Sets a {@link MqttCallback} to this client.
      * 
      * @param mqttClientCallback
-     *            The {@link MqttClientCallback} to use.
+     *            The {@link MqttCallback} to use (ie a {@link MqttClientCallback}).
      * @throws KapuaException
      *             When set the callback fails.
      */
-    public void setCallback(MqttClientCallback mqttClientCallback)
+    public void setCallback(MqttCallback mqttClientCallback)
             throws KapuaException {
         try {
             getPahoClient().setCallback(mqttClientCallback);
@@ -0,0 +1,433 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.transport.mqtt;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.kapua.KapuaErrorCodes;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.util.SystemUtils;
+import org.eclipse.kapua.transport.message.mqtt.MqttMessage;
+import org.eclipse.kapua.transport.message.mqtt.MqttPayload;
+import org.eclipse.kapua.transport.message.mqtt.MqttTopic;
+import org.eclipse.kapua.transport.mqtt.setting.MqttClientSetting;
+import org.eclipse.kapua.transport.mqtt.setting.MqttClientSettingKeys;
+import org.eclipse.kapua.transport.utils.ClientIdGenerator;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Request/response correlator for the MQTT transport.
+ * <p>
+ * A small number of long-lived {@link MqttClient}s is shared by all the requests. Each client subscribes once to a wildcard filter
+ * matching the response topics addressed to it, and the responses are dispatched to the pending requests by response topic.
+ * Timeouts are handled by a single shared scheduler, so many requests can be in flight at the same time without holding a client
+ * or a thread for the whole round-trip.
+ * </p>
+ * <p>
+ * The pending requests are completed on a small pool of completion threads, never on the client callback or on the timeout scheduler
+ * thread: the stages chained to a response (e.g. its translation) run on the completing thread and must not delay the delivery of the
+ * other responses of the client.
+ * </p>
+ *
+ * @since 1.0.0
+ */
+public class MqttRequestCorrelator {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttRequestCorrelator.class);
+
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+    private static final String SYSTEM_TOPIC_PREFIX = "$";
+
+    private static MqttRequestCorrelator instance;
+
+    private final Map<String, CorrelatorClient> clients;
+    private final CorrelatorClient[] clientArray;
+    private final AtomicInteger nextClient = new AtomicInteger();
+
+    private final ConcurrentMap<String, CompletableFuture<MqttMessage>> pendingRequests = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor timeoutScheduler;
+    private final Executor completionExecutor;
+    private final String topicSeparator;
+
+    /**
+     * Initialize the correlator with the number of clients and of completion threads configured in {@link MqttClientSetting}.
+     *
+     * @since 1.0.0
+     */
+    private MqttRequestCorrelator() {
+        this(Math.max(1, MqttClientSetting.getInstance().getInt(MqttClientSettingKeys.CORRELATOR_CLIENTS, 2)),
+                MqttClientSetting.getInstance().getString(MqttClientSettingKeys.CORRELATOR_CLIENT_ID_PREFIX, "KapuaCorrelator"),
+                newCompletionExecutor(Math.max(1, MqttClientSetting.getInstance().getInt(MqttClientSettingKeys.CORRELATOR_COMPLETION_THREADS, 2))));
+    }
+
+    /**
+     * Initialize the correlator with the given number of clients, completing the requests with the given executor.
+     *
+     * @param clientCount
+     *            The number of clients.
+     * @param clientIdPrefix
+     *            The prefix of the client ids.
+     * @param completionExecutor
+     *            The executor completing the pending requests.
+     * @since 1.0.0
+     */
+    MqttRequestCorrelator(int clientCount, String clientIdPrefix, Executor completionExecutor) {
+        this.completionExecutor = completionExecutor;
+        this.topicSeparator = MqttClientSetting.getInstance().getString(MqttClientSettingKeys.TRANSPORT_TOPIC_SEPARATOR);
+
+        Map<String, CorrelatorClient> clientMap = new LinkedHashMap<>();
+        for (int i = 0; i < clientCount; i++) {
+            CorrelatorClient client = new CorrelatorClient(ClientIdGenerator.getInstance().next(clientIdPrefix));
+            clientMap.put(client.clientId, client);
+        }
+        clients = Collections.unmodifiableMap(clientMap);
+        clientArray = clientMap.values().toArray(new CorrelatorClient[0]);
+
+        timeoutScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, MqttRequestCorrelator.class.getSimpleName() + "-TimeoutScheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timeoutScheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    private static Executor newCompletionExecutor(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, MqttRequestCorrelator.class.getSimpleName() + "-Completion-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Gets the singleton instance of {@link MqttRequestCorrelator}.
+     *
+     * @return The singleton instance of {@link MqttRequestCorrelator}.
+     * @since 1.0.0
+     */
+    public static synchronized MqttRequestCorrelator getInstance() {
+        if (instance == null) {
+            instance = new MqttRequestCorrelator();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the id of the client to use for the next request.
+     * <p>
+     * The clients are assigned in round robin. The returned id is the one to set as requester client id of the request,
+     * so the device replies on a topic the client is subscribed to.
+     * </p>
+     *
+     * @return The client id.
+     * @since 1.0.0
+     */
+    public String nextClientId() {
+        int index = (nextClient.getAndIncrement() & Integer.MAX_VALUE) % clientArray.length;
+        return clientArray[index].clientId;
+    }
+
+    /**
+     * Sends the request with the given client without blocking.
+     * <p>
+     * If the request has a response topic and the timeout is not {@code null}, the returned future completes with the response,
+     * or exceptionally with a {@link MqttClientErrorCodes#CLIENT_TIMEOUT_EXCEPTION} if no response arrives in time.
+     * Otherwise the future completes with {@code null} once the request is published.
+     * </p>
+     *
+     * @param clientId
+     *            The id of the client to use, as returned by {@link #nextClientId()}.
+     * @param mqttMessage
+     *            The request to send.
+     * @param timeout
+     *            The timeout of waiting the response from the device.
+     * @return The future response.
+     * @throws KapuaException
+     *             When the client doesn't exist.
+     * @since 1.0.0
+     */
+    public CompletableFuture<MqttMessage> send(String clientId, MqttMessage mqttMessage, Long timeout)
+            throws KapuaException {
+        CorrelatorClient client = clients.get(clientId);
+        if (client == null) {
+            throw new MqttClientException(MqttClientErrorCodes.CLIENT_NOT_CONNECTED,
+                    null,
+                    new Object[] { clientId });
+        }
+
+        CompletableFuture<MqttMessage> response = new CompletableFuture<>();
+        MqttTopic responseTopic = mqttMessage.getResponseTopic();
+        if (responseTopic == null || timeout == null) {
+            try {
+                client.publish(mqttMessage);
+                response.complete(null);
+            } catch (KapuaException e) {
+                response.completeExceptionally(e);
+            }
+            return response;
+        }
+
+        //
+        // Register the pending request before publishing, the response may arrive before publish returns
+        String responseTopicKey = responseTopic.getTopic();
+        if (pendingRequests.putIfAbsent(responseTopicKey, response) != null) {
+            throw new KapuaException(KapuaErrorCodes.INTERNAL_ERROR, null, "Duplicate pending request: " + responseTopicKey);
+        }
+
+        ScheduledFuture<?> timeoutTask = timeoutScheduler.schedule(() -> {
+            if (pendingRequests.remove(responseTopicKey, response)) {
+                completionExecutor.execute(() -> response.completeExceptionally(new MqttClientException(MqttClientErrorCodes.CLIENT_TIMEOUT_EXCEPTION,
+                        null,
+                        new Object[] { mqttMessage.getRequestTopic() })));
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        response.whenComplete((message, throwable) -> timeoutTask.cancel(false));
+
+        try {
+            client.subscribeReplies(responseTopic);
+            client.publish(mqttMessage);
+        } catch (KapuaException e) {
+            pendingRequests.remove(responseTopicKey, response);
+            response.completeExceptionally(e);
+        }
+        return response;
+    }
+
+    /**
+     * Gets the number of requests waiting for a response.
+     *
+     * @return The number of pending requests.
+     * @since 1.0.0
+     */
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * Dispatches a message received by one of the clients to the pending request waiting on its topic.
+     * <p>
+     * The request is completed by the completion executor, so the client callback returns as soon as the request is matched.
+     * </p>
+     *
+     * @param stringTopic
+     *            The topic of the received message.
+     * @param message
+     *            The received message.
+     * @since 1.0.0
+     */
+    void dispatch(String stringTopic, org.eclipse.paho.client.mqttv3.MqttMessage message) {
+        CompletableFuture<MqttMessage> response = pendingRequests.remove(stringTopic);
+        if (response == null) {
+            logger.debug("Discarding response with no pending request on topic: {}", stringTopic);
+            return;
+        }
+
+        byte[] payload = message.getPayload();
+        Date receivedOn = new Date();
+        completionExecutor.execute(() -> response.complete(new MqttMessage(new MqttTopic(stringTopic),
+                receivedOn,
+                new MqttPayload(payload))));
+    }
+
+    /**
+     * Subscribes the given client to the given filter, connecting it if needed.
+     *
+     * @param clientId
+     *            The id of the client.
+     * @param filter
+     *            The filter to subscribe.
+     * @throws KapuaException
+     *             When the client cannot connect or subscribe.
+     * @since 1.0.0
+     */
+    void subscribe(String clientId, MqttTopic filter)
+            throws KapuaException {
+        clients.get(clientId).getConnectedClient().subscribe(filter);
+    }
+
+    /**
+     * Publishes the given message with the given client, connecting it if needed.
+     *
+     * @param clientId
+     *            The id of the client.
+     * @param mqttMessage
+     *            The message to publish.
+     * @throws KapuaException
+     *             When the client cannot connect or publish.
+     * @since 1.0.0
+     */
+    void publish(String clientId, MqttMessage mqttMessage)
+            throws KapuaException {
+        clients.get(clientId).getConnectedClient().publish(mqttMessage);
+    }
+
+    /**
+     * Returns the wildcard filter which matches the given response topic and all the other response topics with the same structure
+     * addressed to the same client.
+     * <p>
+     * The levels equal to the client id and the system levels (starting with {@code $}, not matched by wildcards) are kept,
+     * all the other levels are replaced with a single-level wildcard.
+     * </p>
+     *
+     * @param responseTopic
+     *            The response topic.
+     * @param clientId
+     *            The client id.
+     * @param separator
+     *            The topic separator.
+     * @return The wildcard filter.
+     * @since 1.0.0
+     */
+    static String getReplyFilter(MqttTopic responseTopic, String clientId, String separator) {
+        StringBuilder filter = new StringBuilder();
+        for (String level : responseTopic.getSplittedTopic()) {
+            if (filter.length() > 0) {
+                filter.append(separator);
+            }
+            if (level.equals(clientId) || level.startsWith(SYSTEM_TOPIC_PREFIX)) {
+                filter.append(level);
+            } else {
+                filter.append(SINGLE_LEVEL_WILDCARD);
+            }
+        }
+        return filter.toString();
+    }
+
+    /**
+     * A long-lived client of the correlator.
+     * <p>
+     * The client is connected lazily and reconnected, with the same client id, if the connection is lost.
+     * </p>
+     *
+     * @since 1.0.0
+     */
+    private class CorrelatorClient implements MqttCallback {
+
+        private final String clientId;
+        private final Set<String> subscribedFilters = ConcurrentHashMap.newKeySet();
+        private MqttClient mqttClient;
+
+        private CorrelatorClient(String clientId) {
+            this.clientId = clientId;
+        }
+
+        private synchronized MqttClient getConnectedClient()
+                throws KapuaException {
+            if (mqttClient == null || !mqttClient.isConnected()) {
+                if (mqttClient != null) {
+                    try {
+                        mqttClient.terminateClient();
+                    } catch (KapuaException e) {
+                        logger.warn("Cannot terminate client: {}", clientId, e);
+                    }
+                }
+                subscribedFilters.clear();
+
+                MqttClientSetting mqttClientSettings = MqttClientSetting.getInstance();
+                URI brokerURI = SystemUtils.getBrokerURI();
+
+                MqttClientConnectionOptions connectionOptions = new MqttClientConnectionOptions();
+                connectionOptions.setClientId(clientId);
+                connectionOptions.setUsername(mqttClientSettings.getString(MqttClientSettingKeys.TRANSPORT_CREDENTIAL_USERNAME));
+                connectionOptions.setPassword(mqttClientSettings.getString(MqttClientSettingKeys.TRANSPORT_CREDENTIAL_PASSWORD).toCharArray());
+                connectionOptions.setEndpointURI(brokerURI);
+
+                MqttClient newClient = new MqttClient();
+                try {
+                    newClient.connectClient(connectionOptions);
+                    newClient.setCallback(this);
+                } catch (KapuaException ke) {
+                    newClient.terminateClient();
+                    throw ke;
+                }
+                mqttClient = newClient;
+            }
+            return mqttClient;
+        }
+
+        private void subscribeReplies(MqttTopic responseTopic)
+                throws KapuaException {
+            String filter = getReplyFilter(responseTopic, clientId, topicSeparator);
+            if (!subscribedFilters.contains(filter)) {
+                synchronized (this) {
+                    if (!subscribedFilters.contains(filter)) {
+                        try {
+                            subscribe(clientId, new MqttTopic(filter));
+                        } catch (KapuaException e) {
+                            throw new MqttClientException(MqttClientErrorCodes.CLIENT_SUBSCRIBE_ERROR,
+                                    e,
+                                    new Object[] { filter });
+                        }
+                        subscribedFilters.add(filter);
+                    }
+                }
+            }
+        }
+
+        private void publish(MqttMessage mqttMessage)
+                throws KapuaException {
+            try {
+                MqttRequestCorrelator.this.publish(clientId, mqttMessage);
+            } catch (KapuaException e) {
+                throw new MqttClientException(MqttClientErrorCodes.CLIENT_PUBLISH_ERROR,
+                        e,
+                        new Object[] { mqttMessage.getRequestTopic().getTopic(),
+                                mqttMessage.getPayload().getBody() });
+            }
+        }
+
+        @Override
+        public void messageArrived(String stringTopic, org.eclipse.paho.client.mqttv3.MqttMessage message)
+                throws Exception {
+            dispatch(stringTopic, message);
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+            // The pending requests of this client will time out, the client reconnects on the next request
+            logger.warn("Connection lost for client: {}", clientId, cause);
+        }
+    }
+}
@@ -55,6 +55,27 @@ public enum MqttClientSettingKeys implements SettingKey {
      * @since 1.0.0
      */
     SEND_TIMEOUT_MAX("send.timeout.max"),
+
+    /**
+     * The number of long-lived clients shared by all the requests sent through the {@link org.eclipse.kapua.transport.mqtt.MqttRequestCorrelator}.
+     * 
+     * @since 1.0.0
+     */
+    CORRELATOR_CLIENTS("correlator.clients"),
+
+    /**
+     * The prefix for the id set to the clients of the {@link org.eclipse.kapua.transport.mqtt.MqttRequestCorrelator}.
+     * 
+     * @since 1.0.0
+     */
+    CORRELATOR_CLIENT_ID_PREFIX("correlator.client.id.prefix"),
+
+    /**
+     * The number of threads completing the requests sent through the {@link org.eclipse.kapua.transport.mqtt.MqttRequestCorrelator}.
+     * 
+     * @since 1.0.0
+     */
+    CORRELATOR_COMPLETION_THREADS("correlator.completion.threads"),
     ;
 
     /**
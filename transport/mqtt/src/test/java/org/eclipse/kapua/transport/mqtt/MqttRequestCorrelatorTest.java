@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.transport.mqtt;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.transport.message.mqtt.MqttMessage;
+import org.eclipse.kapua.transport.message.mqtt.MqttPayload;
+import org.eclipse.kapua.transport.message.mqtt.MqttTopic;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MqttRequestCorrelatorTest extends Assert {
+
+    @Test
+    public void testCorrelateRepliesOnTheCompletionExecutor()
+            throws Exception {
+        TestCorrelator correlator = new TestCorrelator();
+        String clientId = correlator.nextClientId();
+
+        CompletableFuture<MqttMessage> first = correlator.send(clientId, newRequest(clientId, "first"), 60000L);
+        CompletableFuture<MqttMessage> second = correlator.send(clientId, newRequest(clientId, "second"), 60000L);
+        assertEquals(2, correlator.getPendingRequestCount());
+        assertEquals(2, correlator.published.size());
+        assertEquals("$EDC/+/+/+/" + clientId + "/+", correlator.subscribed.get(0));
+
+        // replies out of order, on the client callback thread
+        correlator.dispatch(getResponseTopic(clientId, "second"), new org.eclipse.paho.client.mqttv3.MqttMessage("second-reply".getBytes()));
+        correlator.dispatch(getResponseTopic(clientId, "first"), new org.eclipse.paho.client.mqttv3.MqttMessage("first-reply".getBytes()));
+
+        assertEquals(0, correlator.getPendingRequestCount());
+        assertFalse("The callback thread must not complete the requests", first.isDone() || second.isDone());
+
+        correlator.runCompletions();
+        assertEquals("first-reply", new String(first.get().getPayload().getBody()));
+        assertEquals(getResponseTopic(clientId, "first"), first.get().getRequestTopic().getTopic());
+        assertEquals("second-reply", new String(second.get().getPayload().getBody()));
+    }
+
+    @Test
+    public void testTimeout()
+            throws Exception {
+        TestCorrelator correlator = new TestCorrelator();
+        String clientId = correlator.nextClientId();
+
+        CompletableFuture<MqttMessage> response = correlator.send(clientId, newRequest(clientId, "timeout"), 10L);
+        for (int i = 0; i < 100 && correlator.completions.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, correlator.getPendingRequestCount());
+
+        correlator.runCompletions();
+        try {
+            response.get();
+            fail("The request should time out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof MqttClientException);
+            assertEquals(MqttClientErrorCodes.CLIENT_TIMEOUT_EXCEPTION, ((MqttClientException) e.getCause()).getCode());
+        }
+
+        // a late reply is discarded
+        correlator.dispatch(getResponseTopic(clientId, "timeout"), new org.eclipse.paho.client.mqttv3.MqttMessage("late-reply".getBytes()));
+        assertTrue(correlator.completions.isEmpty());
+    }
+
+    @Test
+    public void testDiscardUnknownReplies()
+            throws Exception {
+        TestCorrelator correlator = new TestCorrelator();
+        String clientId = correlator.nextClientId();
+
+        CompletableFuture<MqttMessage> response = correlator.send(clientId, newRequest(clientId, "known"), 60000L);
+        correlator.dispatch(getResponseTopic(clientId, "unknown"), new org.eclipse.paho.client.mqttv3.MqttMessage("unknown-reply".getBytes()));
+
+        assertTrue(correlator.completions.isEmpty());
+        assertEquals(1, correlator.getPendingRequestCount());
+        assertFalse(response.isDone());
+    }
+
+    @Test
+    public void testPublishFailure()
+            throws Exception {
+        TestCorrelator correlator = new TestCorrelator();
+        correlator.failPublish = true;
+        String clientId = correlator.nextClientId();
+
+        CompletableFuture<MqttMessage> response = correlator.send(clientId, newRequest(clientId, "failure"), 60000L);
+
+        assertEquals(0, correlator.getPendingRequestCount());
+        assertTrue(response.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testReplyFilter() {
+        MqttTopic responseTopic = new MqttTopic("$EDC/acme/device-1/CONF-V1/client-1/req-1");
+
+        assertEquals("$EDC/+/+/+/client-1/+", MqttRequestCorrelator.getReplyFilter(responseTopic, "client-1", "/"));
+    }
+
+    private static MqttMessage newRequest(String clientId, String requestId) {
+        return new MqttMessage(new MqttTopic("$EDC/acme/device-1/CONF-V1/GET/configurations"),
+                new MqttTopic(getResponseTopic(clientId, requestId)),
+                new MqttPayload(requestId.getBytes()));
+    }
+
+    private static String getResponseTopic(String clientId, String requestId) {
+        return "$EDC/acme/device-1/CONF-V1/" + clientId + "/" + requestId;
+    }
+
+    /**
+     * Correlator recording the published messages instead of sending them, and queuing the completions until run by the test
+     */
+    private static class TestCorrelator extends MqttRequestCorrelator {
+
+        private final LinkedBlockingQueue<Runnable> completions;
+        private final List<String> subscribed = new CopyOnWriteArrayList<>();
+        private final List<MqttMessage> published = new CopyOnWriteArrayList<>();
+        private volatile boolean failPublish;
+
+        private TestCorrelator() {
+            this(new LinkedBlockingQueue<>());
+        }
+
+        private TestCorrelator(LinkedBlockingQueue<Runnable> completions) {
+            super(1, "TestCorrelator", completions::add);
+            this.completions = completions;
+        }
+
+        private void runCompletions() {
+            Runnable completion;
+            while ((completion = completions.poll()) != null) {
+                completion.run();
+            }
+        }
+
+        @Override
+        void subscribe(String clientId, MqttTopic filter) {
+            subscribed.add(filter.getTopic());
+        }
+
+        @Override
+        void publish(String clientId, MqttMessage mqttMessage)
+                throws KapuaException {
+            if (failPublish) {
+                throw new MqttClientException(MqttClientErrorCodes.CLIENT_PUBLISH_ERROR, null, (Object[]) null);
+            }
+            published.add(mqttMessage);
+        }
+    }
+}